@@ -24,4 +24,20 @@ public interface IMultiSearchResult {
 
     float getScore(int i);
 
+    /**
+     * Same as getItem(i).getSourceId(), implementations may avoid creating the
+     * item id object.
+     */
+    default int getSourceId(int i) {
+        return getItem(i).getSourceId();
+    }
+
+    /**
+     * Same as getItem(i).getId(), implementations may avoid creating the item id
+     * object.
+     */
+    default int getId(int i) {
+        return getItem(i).getId();
+    }
+
 }
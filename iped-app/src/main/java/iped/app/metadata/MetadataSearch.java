@@ -4,7 +4,6 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -14,8 +13,11 @@
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
+import org.roaringbitmap.RoaringBitmap;
 
 import iped.app.ui.App;
+import iped.app.ui.FieldOrdsCache;
+import iped.app.ui.FieldOrdsCache.FieldOrds;
 import iped.app.ui.Messages;
 import iped.data.IItemId;
 import iped.engine.data.ItemId;
@@ -40,14 +42,14 @@ public class MetadataSearch extends MetadataSearchable {
      * numbers, 20 to 37 -> count positive numbers, 38 -> positive infinite, 39 ->
      * NaN.
      */
-    private static final int logScaleBins = 40;
-    private static final int logScaleHalf = 20;
+    static final int logScaleBins = 40;
+    static final int logScaleHalf = 20;
 
     volatile double min, max, interval;
     volatile long[] actualMin, actualMax;
 
     // LINEAR SCALE: Up to 10 bins
-    private static final int linearScaleBins = 10;
+    static final int linearScaleBins = 10;
 
     volatile IMultiSearchResult ipedResult;
 
@@ -317,6 +319,58 @@ private long[] getEventOrdsFromEventSet(SortedSetDocValues eventDocValues, Strin
         return ords;
     }
 
+    static int getLogScaleOrd(double val) {
+        int ord = logScaleHalf;
+        if (val == Double.NEGATIVE_INFINITY) {
+            ord = 0;
+        } else if (val == Double.POSITIVE_INFINITY) {
+            ord = logScaleBins - 2;
+        } else if (Double.isNaN(val)) {
+            ord = logScaleBins - 1;
+        } else if (val < 0) {
+            ord -= 1;
+            val *= -1;
+            if (val > 1)
+                ord = ord - (int) Math.log10(val);
+            if (ord < 1)
+                ord = 1;
+        } else if (val > 1) {
+            ord = (int) Math.log10(val) + ord;
+            if (ord > logScaleBins - 3)
+                ord = logScaleBins - 3;
+        }
+        return ord;
+    }
+
+    private boolean isTimelineResult() {
+        return ipedResult.getLength() > 0 && ipedResult.getItem(0) instanceof TimeItemId;
+    }
+
+    /**
+     * Uses the doc id bitset of the result if available, or its sorted lucene
+     * ids otherwise. Timeline results have repeated docs, one per event, so each
+     * one is counted.
+     */
+    private ValueCounter getValueCounter(FieldOrds ords, boolean isFloat, boolean isDouble) {
+        if (!isTimelineResult() && ipedResult instanceof MultiSearchResult) {
+            RoaringBitmap docIds = ((MultiSearchResult) ipedResult).getDocIdBitSet();
+            if (docIds != null && docIds.getLongCardinality() == ipedResult.getLength()) {
+                return new ValueCounter(ords, isFloat, isDouble, docIds, null);
+            }
+        }
+        int[] docs = new int[ipedResult.getLength()];
+        int i = 0;
+        for (IItemId item : ipedResult.getIterator()) {
+            docs[i++] = App.get().appCase.getLuceneId(item);
+        }
+        Arrays.parallelSort(docs);
+        return new ValueCounter(ords, isFloat, isDouble, null, docs);
+    }
+
+    /**
+     * Counts the values of the result items, in parallel by index segments.
+     * Values are read from {@link FieldOrdsCache}, shared with the table sorter.
+     */
     public ArrayList<ValueCount> countValues(String field) throws IOException {
         reader = App.get().appCase.getLeafReader();
 
@@ -344,314 +398,64 @@ public ArrayList<ValueCount> countValues(String field) throws IOException {
         boolean hasPositiveInfinite = false;
         boolean hasNaN = false;
 
-        if (isNumeric && numValues != null && !noRanges) {
-            if (logScale) {
-                valueCount = new int[logScaleBins];
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValues.advanceExact(doc);
-                    if (adv) {
-                        double val = numValues.longValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        int ord = logScaleHalf;
-                        if (val == Double.NEGATIVE_INFINITY) {
-                            ord = 0;
-                        } else if (val == Double.POSITIVE_INFINITY) {
-                            ord = logScaleBins - 2;
-                        } else if (Double.isNaN(val)) {
-                            ord = logScaleBins - 1;
-                        } else if (val < 0) {
-                            ord -= 1;
-                            val *= -1;
-                            if (val > 1)
-                                ord = ord - (int) Math.log10(val);
-                            if (ord < 1)
-                                ord = 1;
-                        } else if (val > 1) {
-                            ord = (int) Math.log10(val) + ord;
-                            if (ord > logScaleBins - 3)
-                                ord = logScaleBins - 3;
-                        }
-                        valueCount[ord]++;
-                    }
-                }
-            } else {
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValues.advanceExact(doc);
-                    if (adv) {
-                        double val = numValues.longValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        if (Double.isFinite(val)) {
-                            if (val < min)
-                                min = val;
-                            if (val > max)
-                                max = val;
-                        }
-                    }
-                }
-                valueCount = new int[linearScaleBins];
-                interval = min >= max ? 1 : (max - min) / linearScaleBins;
-                long[] rangeMin = null;
-                long[] rangeMax = null;
-                if (!isFloat && !isDouble) {
-                    rangeMin = new long[valueCount.length];
-                    rangeMax = new long[valueCount.length];
-                    for (int i = 0; i < valueCount.length; i++) {
-                        rangeMin[i] = i == 0 ? (long) Math.floor(i * interval + min) : rangeMax[i - 1] + 1;
-                        rangeMax[i] = (long) Math.ceil((i + 1) * interval + min);
-                    }
-                    actualMin = new long[valueCount.length];
-                    actualMax = new long[valueCount.length];
-                    Arrays.fill(actualMin, Long.MAX_VALUE);
-                    Arrays.fill(actualMax, Long.MIN_VALUE);
-                }
-                // must reset docValues to call advance again
-                loadDocValues(field);
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValues.advanceExact(doc);
-                    if (adv) {
-                        double val = numValues.longValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        int ord = (int) ((val - min) / interval);
-                        if (val == Double.NEGATIVE_INFINITY) {
-                            hasNegativeInfinite = true;
-                            ord = 0;
-                        } else if (val == Double.POSITIVE_INFINITY) {
-                            hasPositiveInfinite = true;
-                            ord = linearScaleBins - 1;
-                        } else if (Double.isNaN(val)) {
-                            hasNaN = true;
-                            ord = linearScaleBins - 1;
-                        } else if (ord >= linearScaleBins)
-                            ord = linearScaleBins - 1;
-                        if (!isFloat && !isDouble) {
-                            long lval = (long) val;
-                            for (int i = Math.max(0, ord - 1); i <= ord + 1 && i < valueCount.length; i++) {
-                                if (lval >= rangeMin[i] && lval <= rangeMax[i]) {
-                                    ord = i;
-                                    break;
-                                }
-                            }
-                            if (lval < actualMin[ord])
-                                actualMin[ord] = lval;
-                            if (lval > actualMax[ord])
-                                actualMax[ord] = lval;
-                        }
-                        if (ord < 0)
-                            ord = 0;
-                        else if (ord >= linearScaleBins)
-                            ord = linearScaleBins - 1;
-                        valueCount[ord]++;
-                    }
-                }
-            }
-        } else if (isNumeric && numValuesSet != null && !noRanges) {
-            if (logScale) {
-                valueCount = new int[logScaleBins];
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValuesSet.advanceExact(doc);
-                    int prevOrd = -1;
-                    for (int i = 0; adv && i < numValuesSet.docValueCount(); i++) {
-                        double val = numValuesSet.nextValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        int ord = logScaleHalf;
-                        if (val == Double.NEGATIVE_INFINITY) {
-                            ord = 0;
-                        } else if (val == Double.POSITIVE_INFINITY) {
-                            ord = logScaleBins - 2;
-                        } else if (Double.isNaN(val)) {
-                            ord = logScaleBins - 1;
-                        } else if (val < 0) {
-                            ord -= 1;
-                            val *= -1;
-                            if (val > 1)
-                                ord = ord - (int) Math.log10(val);
-                            if (ord < 1)
-                                ord = 1;
-                        } else if (val > 1) {
-                            ord = (int) Math.log10(val) + ord;
-                            if (ord > logScaleBins - 3)
-                                ord = logScaleBins - 3;
-                        }
-                        if (ord != prevOrd)
-                            valueCount[ord]++;
-                        prevOrd = ord;
-                    }
-                }
-            } else {
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValuesSet.advanceExact(doc);
-                    for (int i = 0; adv && i < numValuesSet.docValueCount(); i++) {
-                        double val = numValuesSet.nextValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        if (Double.isFinite(val)) {
-                            if (val < min)
-                                min = val;
-                            if (val > max)
-                                max = val;
-                        }
-                    }
-                }
-                valueCount = new int[linearScaleBins];
-                interval = min >= max ? 1 : (max - min) / linearScaleBins;
-                long[] rangeMin = null;
-                long[] rangeMax = null;
-                if (!isFloat && !isDouble) {
-                    rangeMin = new long[valueCount.length];
-                    rangeMax = new long[valueCount.length];
-                    for (int i = 0; i < valueCount.length; i++) {
-                        rangeMin[i] = i == 0 ? (long) Math.floor(i * interval + min) : rangeMax[i - 1] + 1;
-                        rangeMax[i] = (long) Math.ceil((i + 1) * interval + min);
-                    }
-                    actualMin = new long[valueCount.length];
-                    actualMax = new long[valueCount.length];
-                    Arrays.fill(actualMin, Long.MAX_VALUE);
-                    Arrays.fill(actualMax, Long.MIN_VALUE);
-                }
-                // must reset docValues to call advance again
-                loadDocValues(field);
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValuesSet.advanceExact(doc);
-                    int prevOrd = -1;
-                    for (int i = 0; adv && i < numValuesSet.docValueCount(); i++) {
-                        double val = numValuesSet.nextValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        int ord = (int) ((val - min) / interval);
-                        if (val == Double.NEGATIVE_INFINITY) {
-                            hasNegativeInfinite = true;
-                            ord = 0;
-                        } else if (val == Double.POSITIVE_INFINITY) {
-                            hasPositiveInfinite = true;
-                            ord = linearScaleBins - 1;
-                        } else if (Double.isNaN(val)) {
-                            hasNaN = true;
-                            ord = linearScaleBins - 1;
-                        } else if (ord >= linearScaleBins)
-                            ord = linearScaleBins - 1;
-                        if (!isFloat && !isDouble) {
-                            long lval = (long) val;
-                            for (int j = Math.max(0, ord - 1); j <= ord + 1 && j < valueCount.length; j++) {
-                                if (lval >= rangeMin[j] && lval <= rangeMax[j]) {
-                                    ord = j;
-                                    break;
-                                }
-                            }
-                            if (lval < actualMin[ord])
-                                actualMin[ord] = lval;
-                            if (lval > actualMax[ord])
-                                actualMax[ord] = lval;
-                        }
-                        if (ord < 0)
-                            ord = 0;
-                        else if (ord >= linearScaleBins)
-                            ord = linearScaleBins - 1;
-                        if (ord != prevOrd)
-                            valueCount[ord]++;
-                        prevOrd = ord;
-                    }
-                }
-            }
-        } else if (isNumeric && numValuesSet != null && noRanges) {
-            HashMap<Double, SingleValueCount> map = new HashMap<Double, SingleValueCount>();
-            for (IItemId item : ipedResult.getIterator()) {
-                int doc = App.get().appCase.getLuceneId(item);
-                boolean adv = numValuesSet.advanceExact(doc);
-                for (int i = 0; adv && i < numValuesSet.docValueCount(); i++) {
-                    double val = numValuesSet.nextValue();
-                    if (isFloat)
-                        val = NumericUtils.sortableIntToFloat((int) val);
-                    else if (isDouble)
-                        val = NumericUtils.sortableLongToDouble((long) val);
-                    SingleValueCount v = map.get(val);
-                    if (v == null)
-                        map.put(val, v = new SingleValueCount(val));
-                    v.incrementCount();
-                }
-            }
-            ArrayList<SingleValueCount> l = new ArrayList<SingleValueCount>(map.values());
-            Collections.sort(l);
-            for (int i = 0; i < l.size(); i++) {
-                l.get(i).setOrd(i);
-            }
-            list.addAll(l);
-        } else if (isNumeric && numValues != null && noRanges) {
-            HashMap<Double, SingleValueCount> map = new HashMap<Double, SingleValueCount>();
-            for (IItemId item : ipedResult.getIterator()) {
-                int doc = App.get().appCase.getLuceneId(item);
-                boolean adv = numValues.advanceExact(doc);
-                if (adv) {
-                    double val = numValues.longValue();
-                    if (isFloat)
-                        val = NumericUtils.sortableIntToFloat((int) val);
-                    else if (isDouble)
-                        val = NumericUtils.sortableLongToDouble((long) val);
-                    SingleValueCount v = map.get(val);
-                    if (v == null)
-                        map.put(val, v = new SingleValueCount(val));
-                    v.incrementCount();
-                }
-            }
-            ArrayList<SingleValueCount> l = new ArrayList<SingleValueCount>(map.values());
-            Collections.sort(l);
-            for (int i = 0; i < l.size(); i++) {
-                l.get(i).setOrd(i);
-            }
-            list.addAll(l);
-        } else if (docValues != null) {
-            valueCount = new int[docValues.getValueCount()];
+        FieldOrds ords = null;
+        if (numValues != null || numValuesSet != null || docValues != null || docValuesSet != null) {
+            ords = FieldOrdsCache.get(field);
+        }
+        if (ords == null) {
+            return list;
+        }
+
+        if (isTimeEvent && docValuesSet != null && isTimelineResult()) {
+            // each timeline item counts just its own events
+            valueCount = new int[(int) docValuesSet.getValueCount()];
             for (IItemId item : ipedResult.getIterator()) {
-                int doc = App.get().appCase.getLuceneId(item);
-                boolean adv = docValues.advanceExact(doc);
-                if (adv) {
-                    int ord = docValues.ordValue();
-                    valueCount[ord]++;
+                TimeItemId timeId = (TimeItemId) item;
+                String eventSet = timeId.getTimeEventValue(eventDocValuesSet);
+                long[] eventOrds = getEventOrdsFromEventSet(docValuesSet, eventSet);
+                for (long ord : eventOrds) {
+                    valueCount[(int) ord]++;
                 }
             }
-        } else if (docValuesSet != null) {
-            valueCount = new int[(int) docValuesSet.getValueCount()];
-            for (IItemId item : ipedResult.getIterator()) {
-                if (isTimeEvent && item instanceof TimeItemId) {
-                    TimeItemId timeId = (TimeItemId) item;
-                    String eventSet = timeId.getTimeEventValue(eventDocValuesSet);
-                    long[] ords = getEventOrdsFromEventSet(docValuesSet, eventSet);
-                    for (long ord : ords) {
-                        valueCount[(int) ord]++;
-                    }
+        } else {
+            ValueCounter counter = getValueCounter(ords, isFloat, isDouble);
+            if (isNumeric && (numValues != null || numValuesSet != null) && !noRanges) {
+                if (logScale) {
+                    valueCount = counter.countLogScale();
                 } else {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = docValuesSet.advanceExact(doc);
-                    long ord, prevOrd = -1;
-                    while (adv && (ord = docValuesSet.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
-                        if (prevOrd != ord)
-                            valueCount[(int) ord]++;
-                        prevOrd = ord;
+                    ValueCounter.MinMax minMax = counter.minMax();
+                    min = minMax.min;
+                    max = minMax.max;
+                    hasNegativeInfinite = minMax.hasNegativeInfinite;
+                    hasPositiveInfinite = minMax.hasPositiveInfinite;
+                    hasNaN = minMax.hasNaN;
+                    interval = min >= max ? 1 : (max - min) / linearScaleBins;
+                    long[] rangeMin = null;
+                    long[] rangeMax = null;
+                    if (!isFloat && !isDouble) {
+                        rangeMin = new long[linearScaleBins];
+                        rangeMax = new long[linearScaleBins];
+                        for (int i = 0; i < linearScaleBins; i++) {
+                            rangeMin[i] = i == 0 ? (long) Math.floor(i * interval + min) : rangeMax[i - 1] + 1;
+                            rangeMax[i] = (long) Math.ceil((i + 1) * interval + min);
+                        }
                     }
+                    ValueCounter.LinearScaleCount linearCount = counter.countLinearScale(min, interval, rangeMin, rangeMax);
+                    valueCount = linearCount.counts;
+                    actualMin = linearCount.actualMin;
+                    actualMax = linearCount.actualMax;
+                }
+            } else if (isNumeric && (numValues != null || numValuesSet != null) && noRanges) {
+                ArrayList<SingleValueCount> l = counter.countDistinct();
+                for (int i = 0; i < l.size(); i++) {
+                    l.get(i).setOrd(i);
                 }
+                list.addAll(l);
+            } else if (docValues != null || docValuesSet != null) {
+                valueCount = counter.countOrds();
             }
         }
+
         if (isNumeric && !noRanges) {
             for (int ord = 0; ord < valueCount.length; ord++) {
                 if (valueCount[ord] > 0) {
@@ -0,0 +1,496 @@
+package iped.app.metadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.lucene.util.NumericUtils;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import iped.app.ui.FieldOrdsCache;
+import iped.app.ui.FieldOrdsCache.FieldOrds;
+
+/**
+ * Counts the values of a field of the docs of a result. The doc id space is
+ * split in ranges aligned to the index segments, big segments split in more
+ * ranges, visited in doc order by a few threads, each one with its own
+ * counters, merged at the end. Values are read from the doc values arrays of
+ * {@link FieldOrdsCache}.
+ */
+class ValueCounter {
+
+    private static final int RANGES_PER_THREAD = 4;
+
+    private static final int MIN_RANGE_SIZE = 1 << 16;
+
+    private final FieldOrds ords;
+    private final boolean isFloat, isDouble;
+
+    private final RoaringBitmap docIds;
+    private final int[] sortedDocs;
+
+    private final int[] rangeStart, rangeEnd;
+
+    /**
+     * @param docIds
+     *            lucene ids of the result, or null if sortedDocs is used
+     * @param sortedDocs
+     *            sorted lucene ids of the result, possibly repeated, used if
+     *            docIds is null
+     */
+    ValueCounter(FieldOrds ords, boolean isFloat, boolean isDouble, RoaringBitmap docIds, int[] sortedDocs) {
+        this.ords = ords;
+        this.isFloat = isFloat;
+        this.isDouble = isDouble;
+        this.docIds = docIds;
+        this.sortedDocs = sortedDocs;
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        int rangeSize = Math.max(MIN_RANGE_SIZE, ords.maxDoc() / (threads * RANGES_PER_THREAD) + 1);
+        int[] docStarts = ords.getDocStarts();
+        List<int[]> ranges = new ArrayList<>();
+        for (int i = 0; i < docStarts.length - 1; i++) {
+            for (int start = docStarts[i]; start < docStarts[i + 1]; start += rangeSize) {
+                ranges.add(new int[] { start, Math.min(docStarts[i + 1], start + rangeSize) });
+            }
+        }
+        rangeStart = new int[ranges.size()];
+        rangeEnd = new int[ranges.size()];
+        for (int i = 0; i < ranges.size(); i++) {
+            rangeStart[i] = ranges.get(i)[0];
+            rangeEnd[i] = ranges.get(i)[1];
+        }
+    }
+
+    private double toDouble(long val) {
+        if (isFloat)
+            return NumericUtils.sortableIntToFloat((int) val);
+        else if (isDouble)
+            return NumericUtils.sortableLongToDouble(val);
+        return val;
+    }
+
+    /**
+     * Collects the values of the docs of some ranges, used by just one thread.
+     */
+    private static abstract class Collector<T extends Collector<T>> {
+
+        /**
+         * Called before the values of each doc with values.
+         */
+        void newDoc() {
+        }
+
+        abstract void collect(long value);
+
+        abstract void merge(T other);
+    }
+
+    private PeekableIntIterator iterator(int start) {
+        if (docIds != null) {
+            PeekableIntIterator it = docIds.getIntIterator();
+            it.advanceIfNeeded(start);
+            return it;
+        }
+        return new SortedDocsIterator(sortedDocs, start);
+    }
+
+    private void collectRange(int range, Collector<?> collector) {
+        int end = rangeEnd[range];
+        long[] single = ords.ndvOrds;
+        long[][] multi = ords.sndvOrds;
+        PeekableIntIterator it = iterator(rangeStart[range]);
+        while (it.hasNext()) {
+            int doc = it.next();
+            if (doc >= end) {
+                break;
+            }
+            if (single != null) {
+                long val = single[doc];
+                if (val != FieldOrdsCache.MISSING_VALUE) {
+                    collector.newDoc();
+                    collector.collect(val);
+                }
+            } else {
+                long[] vals = multi[doc];
+                if (vals.length > 0) {
+                    collector.newDoc();
+                    for (long val : vals) {
+                        collector.collect(val);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a collector per thread, taking ranges in order until all are
+     * visited, and merges them.
+     */
+    private <T extends Collector<T>> T collect(Supplier<T> supplier) {
+        AtomicInteger nextRange = new AtomicInteger();
+        int threads = Math.min(rangeStart.length, Runtime.getRuntime().availableProcessors());
+        List<T> collectors = IntStream.range(0, Math.max(1, threads)).parallel().mapToObj(t -> {
+            T collector = supplier.get();
+            int range;
+            while ((range = nextRange.getAndIncrement()) < rangeStart.length) {
+                collectRange(range, collector);
+            }
+            return collector;
+        }).collect(Collectors.toList());
+        T result = collectors.get(0);
+        for (int i = 1; i < collectors.size(); i++) {
+            result.merge(collectors.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Min and max of finite values, and if there are infinite and NaN values.
+     */
+    class MinMax extends Collector<MinMax> {
+        double min = Double.MAX_VALUE;
+        double max = Double.MIN_VALUE;
+        boolean hasNegativeInfinite, hasPositiveInfinite, hasNaN;
+
+        @Override
+        void collect(long value) {
+            double val = toDouble(value);
+            if (Double.isFinite(val)) {
+                if (val < min)
+                    min = val;
+                if (val > max)
+                    max = val;
+            } else if (val == Double.NEGATIVE_INFINITY) {
+                hasNegativeInfinite = true;
+            } else if (val == Double.POSITIVE_INFINITY) {
+                hasPositiveInfinite = true;
+            } else {
+                hasNaN = true;
+            }
+        }
+
+        @Override
+        void merge(MinMax other) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            hasNegativeInfinite |= other.hasNegativeInfinite;
+            hasPositiveInfinite |= other.hasPositiveInfinite;
+            hasNaN |= other.hasNaN;
+        }
+    }
+
+    MinMax minMax() {
+        return collect(MinMax::new);
+    }
+
+    /**
+     * Counts docs per bin, each doc counted once per bin.
+     */
+    private abstract class BinCount<T extends BinCount<T>> extends Collector<T> {
+        final int[] counts;
+        int prevOrd;
+
+        BinCount(int bins) {
+            counts = new int[bins];
+        }
+
+        @Override
+        void newDoc() {
+            prevOrd = -1;
+        }
+
+        void count(int ord) {
+            if (ord != prevOrd)
+                counts[ord]++;
+            prevOrd = ord;
+        }
+
+        void mergeCounts(T other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+        }
+    }
+
+    private class LogScaleCount extends BinCount<LogScaleCount> {
+
+        LogScaleCount() {
+            super(MetadataSearch.logScaleBins);
+        }
+
+        @Override
+        void collect(long value) {
+            count(MetadataSearch.getLogScaleOrd(toDouble(value)));
+        }
+
+        @Override
+        void merge(LogScaleCount other) {
+            mergeCounts(other);
+        }
+    }
+
+    int[] countLogScale() {
+        return collect(LogScaleCount::new).counts;
+    }
+
+    /**
+     * Counts docs per linear bin. For integer values, bins are adjusted to the
+     * given integer ranges and the actual min and max values of each one are
+     * collected.
+     */
+    class LinearScaleCount extends BinCount<LinearScaleCount> {
+        final double min, interval;
+        final long[] rangeMin, rangeMax;
+        final long[] actualMin, actualMax;
+
+        LinearScaleCount(double min, double interval, long[] rangeMin, long[] rangeMax) {
+            super(MetadataSearch.linearScaleBins);
+            this.min = min;
+            this.interval = interval;
+            this.rangeMin = rangeMin;
+            this.rangeMax = rangeMax;
+            if (rangeMin != null) {
+                actualMin = new long[counts.length];
+                actualMax = new long[counts.length];
+                Arrays.fill(actualMin, Long.MAX_VALUE);
+                Arrays.fill(actualMax, Long.MIN_VALUE);
+            } else {
+                actualMin = actualMax = null;
+            }
+        }
+
+        @Override
+        void collect(long value) {
+            double val = toDouble(value);
+            int ord = (int) ((val - min) / interval);
+            if (val == Double.NEGATIVE_INFINITY) {
+                ord = 0;
+            } else if (val == Double.POSITIVE_INFINITY || Double.isNaN(val) || ord >= counts.length) {
+                ord = counts.length - 1;
+            }
+            if (rangeMin != null) {
+                long lval = (long) val;
+                for (int i = Math.max(0, ord - 1); i <= ord + 1 && i < counts.length; i++) {
+                    if (lval >= rangeMin[i] && lval <= rangeMax[i]) {
+                        ord = i;
+                        break;
+                    }
+                }
+                if (lval < actualMin[ord])
+                    actualMin[ord] = lval;
+                if (lval > actualMax[ord])
+                    actualMax[ord] = lval;
+            }
+            if (ord < 0)
+                ord = 0;
+            count(ord);
+        }
+
+        @Override
+        void merge(LinearScaleCount other) {
+            mergeCounts(other);
+            if (actualMin != null) {
+                for (int i = 0; i < counts.length; i++) {
+                    actualMin[i] = Math.min(actualMin[i], other.actualMin[i]);
+                    actualMax[i] = Math.max(actualMax[i], other.actualMax[i]);
+                }
+            }
+        }
+    }
+
+    LinearScaleCount countLinearScale(double min, double interval, long[] rangeMin, long[] rangeMax) {
+        return collect(() -> new LinearScaleCount(min, interval, rangeMin, rangeMax));
+    }
+
+    /**
+     * Counts each distinct value, in a primitive open addressing hash table.
+     */
+    private static class DistinctCount extends Collector<DistinctCount> {
+        long[] keys = new long[1024];
+        int[] counts = new int[1024];
+        int size = 0;
+
+        @Override
+        void collect(long value) {
+            add(value, 1);
+        }
+
+        private int find(long value) {
+            int mask = keys.length - 1;
+            int slot = Long.hashCode(value * 0x9E3779B97F4A7C15L) & mask;
+            while (counts[slot] != 0 && keys[slot] != value) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void add(long value, int count) {
+            int slot = find(value);
+            if (counts[slot] == 0) {
+                keys[slot] = value;
+                if (++size > keys.length / 2) {
+                    counts[slot] = count;
+                    rehash();
+                    return;
+                }
+            }
+            counts[slot] += count;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[oldCounts.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] != 0) {
+                    add(oldKeys[i], oldCounts[i]);
+                }
+            }
+        }
+
+        @Override
+        void merge(DistinctCount other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.keys[i], other.counts[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the count of each distinct value, sorted by value.
+     */
+    ArrayList<SingleValueCount> countDistinct() {
+        DistinctCount distinct = collect(DistinctCount::new);
+        long[] keys = new long[distinct.size];
+        int n = 0;
+        for (int i = 0; i < distinct.keys.length; i++) {
+            if (distinct.counts[i] != 0) {
+                keys[n++] = distinct.keys[i];
+            }
+        }
+        // sortable encoding of float and double values keep the order
+        Arrays.sort(keys);
+        ArrayList<SingleValueCount> list = new ArrayList<>();
+        SingleValueCount prev = null;
+        for (long key : keys) {
+            double val = toDouble(key);
+            if (prev == null || Double.compare(prev.value, val) != 0) {
+                list.add(prev = new SingleValueCount(val));
+            }
+            prev.count += distinct.counts[distinct.find(key)];
+        }
+        return list;
+    }
+
+    /**
+     * Counts docs per global ord of SORTED and SORTED_SET fields.
+     */
+    int[] countOrds() {
+        AtomicInteger nextRange = new AtomicInteger();
+        int threads = Math.min(rangeStart.length, Runtime.getRuntime().availableProcessors());
+        List<int[]> counts = IntStream.range(0, Math.max(1, threads)).parallel().mapToObj(t -> {
+            int[] valueCount = new int[ords.valueCount];
+            int range;
+            while ((range = nextRange.getAndIncrement()) < rangeStart.length) {
+                countOrds(range, valueCount);
+            }
+            return valueCount;
+        }).collect(Collectors.toList());
+        int[] result = counts.get(0);
+        for (int i = 1; i < counts.size(); i++) {
+            int[] other = counts.get(i);
+            for (int ord = 0; ord < result.length; ord++) {
+                result[ord] += other[ord];
+            }
+        }
+        return result;
+    }
+
+    private void countOrds(int range, int[] valueCount) {
+        int end = rangeEnd[range];
+        int[] single = ords.sdvOrds;
+        int[][] multi = ords.ssdvOrds;
+        PeekableIntIterator it = iterator(rangeStart[range]);
+        while (it.hasNext()) {
+            int doc = it.next();
+            if (doc >= end) {
+                break;
+            }
+            if (single != null) {
+                int ord = single[doc];
+                if (ord != -1)
+                    valueCount[ord]++;
+            } else {
+                int prevOrd = -1;
+                for (int ord : multi[doc]) {
+                    if (ord != prevOrd)
+                        valueCount[ord]++;
+                    prevOrd = ord;
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterates sorted doc ids, possibly repeated, of an array.
+     */
+    private static class SortedDocsIterator implements PeekableIntIterator {
+
+        private final int[] docs;
+        private int pos;
+
+        private SortedDocsIterator(int[] docs, int start) {
+            this.docs = docs;
+            advanceIfNeeded(start);
+        }
+
+        @Override
+        public void advanceIfNeeded(int minval) {
+            if (pos < docs.length && docs[pos] < minval) {
+                int i = Arrays.binarySearch(docs, pos, docs.length, minval);
+                if (i < 0) {
+                    pos = -i - 1;
+                } else {
+                    // first of repeated ids
+                    while (i > pos && docs[i - 1] == minval) {
+                        i--;
+                    }
+                    pos = i;
+                }
+            }
+        }
+
+        @Override
+        public int peekNext() {
+            return docs[pos];
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pos < docs.length;
+        }
+
+        @Override
+        public int next() {
+            return docs[pos++];
+        }
+
+        @Override
+        public PeekableIntIterator clone() {
+            SortedDocsIterator it = new SortedDocsIterator(docs, 0);
+            it.pos = pos;
+            return it;
+        }
+    }
+
+}
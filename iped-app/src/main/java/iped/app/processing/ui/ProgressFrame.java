@@ -38,8 +38,11 @@
 import java.nio.file.Files;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.TreeMap;
 
 import javax.swing.BorderFactory;
@@ -60,6 +63,8 @@
 import iped.engine.core.Worker;
 import iped.engine.core.Worker.STATE;
 import iped.engine.localization.Messages;
+import iped.engine.metrics.LatencyHistogram;
+import iped.engine.metrics.ProcessingMetrics;
 import iped.engine.task.AbstractTask;
 import iped.engine.task.ExportFileTask;
 import iped.engine.task.ParsingTask;
@@ -78,10 +83,11 @@
 public class ProgressFrame extends JFrame implements PropertyChangeListener, ActionListener {
 
     private static final int MAX_PROGRESS_BAR = 10000;
+    private static final int MAX_MEDIA_TYPE_LATENCIES = 20;
     private static final long serialVersionUID = -1130342847618772236L;
     private JProgressBar progressBar;
     private JButton pause, openApp;
-    private JLabel tasks, itens, stats, parsers;
+    private JLabel tasks, itens, stats, parsers, latencies;
     private int prevVolume;
     private boolean discoverEnded;
     private long rate, instantRate;
@@ -164,21 +170,25 @@ public ProgressFrame(UIPropertyListenerProvider task) {
         itens = new RestrictedSizeLabel();
         stats = new RestrictedSizeLabel();
         parsers = new RestrictedSizeLabel();
+        latencies = new RestrictedSizeLabel();
 
         int sz = 10;
         stats.setBorder(BorderFactory.createEmptyBorder(sz, sz, sz, sz));
         tasks.setBorder(BorderFactory.createEmptyBorder(sz, 0, sz, sz));
         parsers.setBorder(BorderFactory.createEmptyBorder(sz, 0, sz, sz));
+        latencies.setBorder(BorderFactory.createEmptyBorder(sz, 0, sz, sz));
         itens.setBorder(BorderFactory.createEmptyBorder(sz, 0, sz, sz));
 
         stats.setAlignmentY(TOP_ALIGNMENT);
         tasks.setAlignmentY(TOP_ALIGNMENT);
         parsers.setAlignmentY(TOP_ALIGNMENT);
+        latencies.setAlignmentY(TOP_ALIGNMENT);
         itens.setAlignmentY(TOP_ALIGNMENT);
 
         panel.add(stats);
         panel.add(tasks);
         panel.add(parsers);
+        panel.add(latencies);
         panel.add(itens);
         JScrollPane scrollPane = new JScrollPane(panel);
 
@@ -227,6 +237,7 @@ private void update() {
         itens.setText(getItemList());
         stats.setText(getStats());
         parsers.setText(getParserTimes());
+        latencies.setText(getLatencies());
         if (processedItems > 0)
             openApp.setEnabled(true);
 
@@ -277,6 +288,7 @@ public void propertyChange(PropertyChangeEvent evt) {
             itens.setText(getItemList());
             stats.setText(getStats());
             parsers.setText(getParserTimes());
+            latencies.setText(getLatencies());
 
         } else if ("workers".equals(evt.getPropertyName())) { //$NON-NLS-1$
             workers = (Worker[]) evt.getNewValue();
@@ -421,6 +433,57 @@ private String getParserTimes() {
         return msg.toString();
     }
 
+    private String getLatencies() {
+        if (workers == null) {
+            return "";
+        }
+        StringBuilder msg = new StringBuilder();
+        startTable(msg);
+        addTitle(msg, 5, Messages.getString("ProgressFrame.TaskLatencies"));
+        addLatencyHeader(msg);
+
+        Map<String, LatencyHistogram> taskLatencies = ProcessingMetrics.get().getHistograms(ProcessingMetrics.TASK);
+        for (AbstractTask task : workers[0].tasks) {
+            LatencyHistogram histogram = taskLatencies.get(task.getName());
+            if (task.isEnabled() && histogram != null) {
+                addLatencyRow(msg, task.getName(), histogram);
+            }
+        }
+
+        List<Entry<String, LatencyHistogram>> mediaLatencies = new ArrayList<>(
+                ProcessingMetrics.get().getHistograms(ProcessingMetrics.MEDIA_TYPE).entrySet());
+        if (!mediaLatencies.isEmpty()) {
+            // show just the media types that took more time
+            mediaLatencies.sort((a, b) -> Long.compare(b.getValue().getTotalTime(), a.getValue().getTotalTime()));
+            skipRow(msg, 5);
+            addTitle(msg, 5, Messages.getString("ProgressFrame.MediaTypeLatencies"));
+            addLatencyHeader(msg);
+            for (Entry<String, LatencyHistogram> entry : mediaLatencies.subList(0,
+                    Math.min(MAX_MEDIA_TYPE_LATENCIES, mediaLatencies.size()))) {
+                addLatencyRow(msg, entry.getKey(), entry.getValue());
+            }
+        }
+
+        finishTable(msg);
+        return msg.toString();
+    }
+
+    private void addLatencyHeader(StringBuilder msg) {
+        startRow(msg, "");
+        addCell(msg, Messages.getString("ProgressFrame.Count"), Align.RIGHT);
+        addCell(msg, Messages.getString("ProgressFrame.Mean"), Align.RIGHT);
+        addCell(msg, "p99", Align.RIGHT);
+        finishRow(msg, Messages.getString("ProgressFrame.Max"), Align.RIGHT);
+    }
+
+    private void addLatencyRow(StringBuilder msg, String name, LatencyHistogram histogram) {
+        startRow(msg, name);
+        addCell(msg, nf.format(histogram.getCount()), Align.RIGHT);
+        addCell(msg, formatLatency(histogram.getMean()), Align.RIGHT);
+        addCell(msg, formatLatency(histogram.getPercentile(99)), Align.RIGHT);
+        finishRow(msg, formatLatency(histogram.getMax()), Align.RIGHT);
+    }
+
     private String getStats() {
         if (Statistics.get() == null)
             return "";
@@ -482,6 +545,12 @@ private String getStats() {
         startRow(msg, Messages.getString("ProgressFrame.Timeouts"));
         finishRow(msg, nf.format(Statistics.get().getTimeouts()), Align.RIGHT);
 
+        Long queueSize = ProcessingMetrics.get().getGauges().get("queueSize");
+        if (queueSize != null) {
+            startRow(msg, Messages.getString("ProgressFrame.QueueSize"));
+            finishRow(msg, nf.format(queueSize), Align.RIGHT);
+        }
+
         // Some environment information
         skipRow(msg, 2);
         addTitle(msg, 2, Messages.getString("ProgressFrame.Environment"));
@@ -507,6 +576,12 @@ private void addEnvironmentInfo(StringBuilder msg) {
             finishRow(msg, formatMB(maxMemory), Align.RIGHT);
         }
 
+        Long directMemory = ProcessingMetrics.get().getGauges().get("directBufferBytes");
+        if (directMemory != null) {
+            startRow(msg, Messages.getString("ProgressFrame.DirectMemory"));
+            finishRow(msg, formatMB(directMemory), Align.RIGHT);
+        }
+
         if (physicalMemory != 0) {
             startRow(msg, Messages.getString("ProgressFrame.PhysicalMemory"));
             finishRow(msg, formatMB(physicalMemory), Align.RIGHT);
@@ -724,6 +799,16 @@ private void updateTaskBar(int totalVolume, int processedVolume, boolean discove
         }
     }
 
+    private static String formatLatency(long micros) {
+        if (micros < 1000) {
+            return micros + "us";
+        }
+        if (micros < 1000000) {
+            return nf.format(micros / 1000) + "ms";
+        }
+        return nf.format(micros / 1000000) + "s";
+    }
+
     private static String formatMB(long value) {
         return nf.format(value >>> 20) + " MB";
     }
@@ -1,10 +1,13 @@
 package iped.app.timelinegraph;
 
 import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.LocalDate;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.TimeZone;
 
+import org.apache.lucene.util.BytesRef;
 import org.jfree.data.time.Day;
 import org.jfree.data.time.FixedMillisecond;
 import org.jfree.data.time.Hour;
@@ -72,6 +75,34 @@ static public String getTimePeriodName(Class<? extends TimePeriod> tpclass) {
         return Messages.getString("TimeLineGraph." + tpclass.getSimpleName());
     }
 
+    /*
+     * Parses the UTC ISO 8601 timestamps (yyyy-MM-ddTHH:mm:ss...) of the index,
+     * with second precision.
+     *
+     * @return the epoch millis, or null if the value is not a valid timestamp
+     */
+    public static Long ISO8601ToEpochMillis(BytesRef ref) {
+        if (ref.length < 19) {
+            return null;
+        }
+        byte[] b = ref.bytes;
+        int o = ref.offset;
+        for (int i : new int[] { 0, 1, 2, 3, 5, 6, 8, 9, 11, 12, 14, 15, 17, 18 }) {
+            if (b[o + i] < '0' || b[o + i] > '9') {
+                return null;
+            }
+        }
+        try {
+            int year = (b[o] - 48) * 1000 + (b[o + 1] - 48) * 100 + (b[o + 2] - 48) * 10 + (b[o + 3] - 48);
+            int month = (b[o + 5] - 48) * 10 + (b[o + 6] - 48);
+            int day = (b[o + 8] - 48) * 10 + (b[o + 9] - 48);
+            long seconds = ((b[o + 11] - 48) * 10 + (b[o + 12] - 48)) * 3600 + ((b[o + 14] - 48) * 10 + (b[o + 15] - 48)) * 60 + (b[o + 17] - 48) * 10 + (b[o + 18] - 48);
+            return (LocalDate.of(year, month, day).toEpochDay() * 86400 + seconds) * 1000;
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
     public static Date ISO8601DateParse(Class<? extends TimePeriod> timePeriodClass, byte[] b) {
         try {
             if (b.length < 18)
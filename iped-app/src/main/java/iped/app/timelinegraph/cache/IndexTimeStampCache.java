@@ -1,43 +1,36 @@
 package iped.app.timelinegraph.cache;
 
-import java.io.IOException;
-import java.util.ArrayList;
+import java.io.File;
 import java.util.Date;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.SortedSet;
 import java.util.TimeZone;
-import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.LeafReader;
 import org.jfree.data.time.TimePeriod;
-import org.roaringbitmap.RoaringBitmap;
 
 import iped.app.timelinegraph.IpedChartsPanel;
 import iped.app.timelinegraph.cache.persistance.CachePersistance;
-import iped.engine.core.Manager;
+import iped.app.timelinegraph.datasets.IpedTimelineDatasetManager;
 import iped.viewers.api.IMultiSearchResultProvider;
 
+/*
+ * Opens the timeline column store of the case, building it on first use.
+ */
 public class IndexTimeStampCache implements TimeStampCache {
 
     private static final Logger logger = LogManager.getLogger(IndexTimeStampCache.class);
 
-    ArrayList<Class<? extends TimePeriod>> periodClassesToCache = new ArrayList<Class<? extends TimePeriod>>();
-
-    AtomicInteger running = new AtomicInteger();
     Semaphore timeStampCacheSemaphore = new Semaphore(1);
     IMultiSearchResultProvider resultsProvider;
     IpedChartsPanel ipedChartsPanel;
     TimeZone timezone;
 
-    TimeIndexedMap newCache = new TimeIndexedMap();
+    volatile TimelineColumnStore columnStore;
 
     public IndexTimeStampCache(IpedChartsPanel ipedChartsPanel, IMultiSearchResultProvider resultsProvider) {
         this.resultsProvider = resultsProvider;
@@ -50,94 +43,53 @@ public IndexTimeStampCache(IpedChartsPanel ipedChartsPanel, IMultiSearchResultPr
         }
     }
 
-    SortedSet<String> eventTypes = new TreeSet<String>();
-    final Object monitor = new Object();
-
     @Override
     public void run() {
         int oldPriority = Thread.currentThread().getPriority();
         Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
         try {
-
-            if (newCache.size() > 0) {
+            if (columnStore != null) {
                 return;
             }
 
-            boolean cacheExists = false;
+            LeafReader reader = resultsProvider.getIPEDSource().getLeafReader();
+            String[] cachedEventNames = IpedChartsPanel.getOrdToEventName();
+            CachePersistance cp = CachePersistance.getInstance();
+            File storeDir = new File(cp.getBaseDir(), TimelineColumnStore.STORE_DIR);
 
-            if (periodClassesToCache.size() == 0) {
-                periodClassesToCache.add(ipedChartsPanel.getTimePeriodClass());
-            }
-            for (Class periodClasses : periodClassesToCache) {
-                CachePersistance cp = CachePersistance.getInstance();
-                try {
-                    TimeIndexedMap c = cp.loadNewCache(periodClasses);
-                    if (c != null) {
-                        cacheExists = true;
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            columnStore = TimelineColumnStore.open(storeDir, reader.maxDoc(), cachedEventNames.length);
 
-            if (!cacheExists) {
+            if (columnStore == null) {
                 Date d1 = new Date();
-                logger.info("Starting to build time cache of [{}]...", periodClassesToCache.toString());
+                logger.info("Starting to build timeline index...");
 
-                ArrayList<EventTimestampCache> cacheLoaders = new ArrayList<EventTimestampCache>();
+                // removes caches of older versions
+                cp.deleteOtherCaches(TimelineColumnStore.STORE_DIR);
 
-                String[] cachedEventNames = ipedChartsPanel.getOrdToEventName();
+                TimelineColumnStore.Builder builder = new TimelineColumnStore.Builder(storeDir, reader.maxDoc(), cachedEventNames.length);
 
-                int ord = 0;
-                while (ord < cachedEventNames.length) {
+                int poolSize = 1;
+                int totalItems = resultsProvider.getIPEDSource().getTotalItems();
+                if (IpedTimelineDatasetManager.getAvailableMemory() > totalItems * 100L) {
+                    poolSize = (int) Math.ceil((float) Runtime.getRuntime().availableProcessors() / 2f);
+                } else {
+                    logger.info("Only {}MB of free memory for {} total items. Timeline index creation will occur sequentially. ", IpedTimelineDatasetManager.getAvailableMemory() >> 20, totalItems);
+                }
+                ExecutorService threadPool = Executors.newFixedThreadPool(poolSize);
+                for (int ord = 0; ord < cachedEventNames.length; ord++) {
                     String eventType = cachedEventNames[ord];
                     if (eventType != null && !eventType.isEmpty()) {
-                        cacheLoaders.add(new EventTimestampCache(ipedChartsPanel, resultsProvider, this, cachedEventNames[ord], ord));
+                        threadPool.execute(new EventTimestampCache(ipedChartsPanel, resultsProvider, this, builder, eventType, ord));
                     }
-                    ord++;
-                }
-                running.set(cacheLoaders.size());
-
-                ExecutorService threadPool = Executors.newFixedThreadPool(1);
-                for (EventTimestampCache cacheLoader : cacheLoaders) {
-                    threadPool.execute(cacheLoader);
                 }
+                threadPool.shutdown();
+                threadPool.awaitTermination(12, TimeUnit.HOURS);
 
-                try {
-                    synchronized (monitor) {
-                        monitor.wait();
+                builder.finish();
+                columnStore = TimelineColumnStore.open(storeDir, reader.maxDoc(), cachedEventNames.length);
 
-                        if (Manager.getInstance() != null && Manager.getInstance().isProcessingFinished()) {
-                        }
-                        CachePersistance cp = CachePersistance.getInstance();
-                        cp.saveNewCache(this);
-
-                        cacheLoaders.clear();
-
-                        newCache = null;// liberates data used to create indexes for garbage collection
-
-                        newCache = new TimeIndexedMap();
-                        for (Class periodClasses : periodClassesToCache) {
-                            newCache.setIndexFile(periodClasses.getSimpleName(), cp.getBaseDir());
-                            LinkedHashSet<CacheTimePeriodEntry> times = new LinkedHashSet<CacheTimePeriodEntry>();
-                            newCache.put(periodClasses.getSimpleName(), times);
-                        }
-
-                        newCache.createOrLoadUpperPeriodIndex(this);
-
-                        Date d2 = new Date();
-                        logger.info("Time to build timeline index of [{}]: {}ms", periodClassesToCache.toString(), (d2.getTime() - d1.getTime()));
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-
-            } else {
-                CachePersistance cp = CachePersistance.getInstance();
-                for (Class periodClasses : periodClassesToCache) {
-                    newCache.setIndexFile(periodClasses.getSimpleName(), cp.getBaseDir());
-                }
-                newCache.createOrLoadUpperPeriodIndex(this);
+                Date d2 = new Date();
+                logger.info("Time to build timeline index with {} events: {}ms", columnStore != null ? columnStore.size() : 0, (d2.getTime() - d1.getTime()));
             }
             ipedChartsPanel.getIpedTimelineDatasetManager().setCacheLoaded(true);
         } catch (Exception e) {
@@ -148,10 +100,7 @@ public void run() {
         }
     }
 
-    public void addTimePeriodClassToCache(Class<? extends TimePeriod> timePeriodClass) {
-        periodClassesToCache.add(timePeriodClass);
-    }
-
+    @Override
     public boolean hasTimePeriodClassToCache(Class<? extends TimePeriod> timePeriodClass) {
         try {
             timeStampCacheSemaphore.acquire();// pause until cache is populated
@@ -160,117 +109,13 @@ public boolean hasTimePeriodClassToCache(Class<? extends TimePeriod> timePeriodC
         } finally {
             timeStampCacheSemaphore.release();
         }
-        return periodClassesToCache.contains(timePeriodClass);
+        // buckets of any time period are computed from the column store
+        return columnStore != null;
     }
 
     @Override
-    public ArrayList<Class<? extends TimePeriod>> getPeriodClassesToCache() {
-        return periodClassesToCache;
-    }
-
-    @Override
-    public Map<String, List<CacheTimePeriodEntry>> getCachedList() {
-        // TODO Auto-generated method stub
-        return null;
-    }
-
-    public RoaringBitmap add(Class<? extends TimePeriod> timePeriodClass, Date t, String eventType, RoaringBitmap docs) {
-        PersistedArrayList l = (PersistedArrayList) newCache.get(timePeriodClass.getSimpleName());
-        if (l == null) {
-            l = new PersistedArrayList(timePeriodClass);
-            newCache.put(timePeriodClass.getSimpleName(), l);
-        }
-
-        if (docs == null) {
-            docs = new RoaringBitmap();
-        }
-
-        CacheTimePeriodEntry selectedCt = null;
-        CacheEventEntry selectedCe = null;
-
-        selectedCt = l.get(t.getTime());
-
-        if (selectedCt == null) {
-            selectedCt = new CacheTimePeriodEntry();
-            selectedCt.date = t.getTime();
-            l.add(selectedCt);
-        }
-
-        selectedCt.addEventEntry(eventType, docs);
-
-        return docs;
-    }
-
-    public RoaringBitmap add(Class<? extends TimePeriod> timePeriodClass, Date t, int eventInternalOrd, RoaringBitmap docs) {
-        PersistedArrayList l = (PersistedArrayList) newCache.get(timePeriodClass.getSimpleName());
-        if (l == null) {
-            l = new PersistedArrayList(timePeriodClass);
-            newCache.put(timePeriodClass.getSimpleName(), l);
-        }
-
-        if (docs == null) {
-            docs = new RoaringBitmap();
-        }
-
-        CacheTimePeriodEntry selectedCt = null;
-        CacheEventEntry selectedCe = null;
-
-        selectedCt = l.get(t.getTime());
-
-        if (selectedCt == null) {
-            selectedCt = new CacheTimePeriodEntry();
-            selectedCt.date = t.getTime();
-            l.add(selectedCt);
-        }
-
-        selectedCt.addEventEntry(eventInternalOrd, docs);
-
-        return docs;
-    }
-
-    public RoaringBitmap get(Class<? extends TimePeriod> timePeriodClass, Date t, Integer eventInternalOrd) {
-        PersistedArrayList l = (PersistedArrayList) newCache.get(timePeriodClass.getSimpleName());
-        if (l == null) {
-            l = new PersistedArrayList(timePeriodClass);
-            newCache.put(timePeriodClass.getSimpleName(), l);
-        }
-        CacheTimePeriodEntry selectedCt = l.get(t.getTime());
-
-        if (selectedCt == null) {
-            return null;
-        }
-
-        RoaringBitmap result = selectedCt.getEventDocIds(eventInternalOrd);
-        if (result == null) {
-            return null;
-        }
-
-        return result;
-    }
-
-    public RoaringBitmap get(Class<? extends TimePeriod> timePeriodClass, Date t, String eventType) {
-        PersistedArrayList l = (PersistedArrayList) newCache.get(timePeriodClass.getSimpleName());
-        if (l == null) {
-            l = new PersistedArrayList(timePeriodClass);
-            newCache.put(timePeriodClass.getSimpleName(), l);
-        }
-        CacheTimePeriodEntry selectedCt = l.get(t.getTime());
-
-        if (selectedCt == null) {
-            return null;
-        }
-
-        RoaringBitmap result = selectedCt.getEventDocIds(eventType);
-        if (result == null) {
-            return null;
-        }
-
-        return result;
-    }
-
-    @Override
-    public Map<String, Set<CacheTimePeriodEntry>> getNewCache() {
-        return newCache;
+    public TimelineColumnStore getColumnStore() {
+        return columnStore;
     }
 
     @Override
@@ -278,27 +123,4 @@ public TimeZone getCacheTimeZone() {
         return this.timezone;
     }
 
-    public void add(Class<? extends TimePeriod> timePeriodClass, Date t, Integer eventInternalOrd, int doc) {
-        PersistedArrayList l = (PersistedArrayList) newCache.get(timePeriodClass.getSimpleName());
-        if (l == null) {
-            l = new PersistedArrayList(timePeriodClass);
-            synchronized (this) {
-                newCache.put(timePeriodClass.getSimpleName(), l);
-            }
-        }
-
-        CacheTimePeriodEntry selectedCt = null;
-        CacheEventEntry selectedCe = null;
-
-        selectedCt = l.get(t.getTime());
-
-        if (selectedCt == null) {
-            selectedCt = new CacheTimePeriodEntry();
-            selectedCt.date = t.getTime();
-            l.add(selectedCt);
-        }
-
-        selectedCt.addEventEntry(eventInternalOrd, doc);
-    }
-
-}
\ No newline at end of file
+}
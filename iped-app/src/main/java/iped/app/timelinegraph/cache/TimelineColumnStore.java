@@ -0,0 +1,403 @@
+package iped.app.timelinegraph.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jfree.data.time.TimePeriod;
+import org.roaringbitmap.RoaringBitmap;
+
+import iped.utils.IOUtil;
+
+/*
+ * Columnar store of all timeline events of the case, sorted by timestamp. Each
+ * event occurrence has its timestamp (epoch millis, second precision), its
+ * event ord and its lucene doc id, each one in a memory mapped column file.
+ * There is no cache per time period granularity: the counts of any bucket
+ * size and range are computed on demand, finding the range by binary search
+ * and aggregating parts of it in parallel.
+ */
+public class TimelineColumnStore implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(TimelineColumnStore.class);
+
+    public static final String STORE_DIR = "timeline";
+
+    private static final int MAGIC = 0x544C4353; // TLCS
+    private static final int VERSION = 1;
+
+    private static final String INFO_FILE = "info";
+    private static final String TIMESTAMPS_FILE = "timestamps";
+    private static final String EVENTS_FILE = "events";
+    private static final String DOCS_FILE = "docs";
+
+    /**
+     * set in the event ord of occurrences of docs with more than one timestamp of
+     * the same event, which must be counted once per bucket
+     */
+    static final int MULTI_VALUED = 1 << 31;
+
+    private static final int CHUNK_SHIFT = 27;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private static final int MIN_SLICE_SIZE = 1 << 16;
+
+    private final int size;
+    private final int numEvents;
+    private final FileChannel[] channels = new FileChannel[3];
+    private final MappedByteBuffer[] timestamps;
+    private final MappedByteBuffer[] events;
+    private final MappedByteBuffer[] docs;
+
+    /*
+     * Returns the time period containing the timestamp, or null if it is out of
+     * the chart range
+     */
+    public interface BucketFunction {
+        TimePeriod getBucket(long timestamp);
+    }
+
+    public interface BucketConsumer {
+        /*
+         * Receives the count of docs of each event ord in the bucket. Called once per
+         * bucket, possibly by concurrent threads.
+         */
+        void accept(TimePeriod bucket, int[] eventCounts);
+    }
+
+    private TimelineColumnStore(File dir, int size, int numEvents) throws IOException {
+        this.size = size;
+        this.numEvents = numEvents;
+        timestamps = map(new File(dir, TIMESTAMPS_FILE), 0, Long.BYTES);
+        events = map(new File(dir, EVENTS_FILE), 1, Integer.BYTES);
+        docs = map(new File(dir, DOCS_FILE), 2, Integer.BYTES);
+    }
+
+    /*
+     * Opens the store in the directory.
+     *
+     * @return null if it does not exist, is not complete or was built for other
+     * index
+     */
+    public static TimelineColumnStore open(File dir, int maxDoc, int numEvents) {
+        File info = new File(dir, INFO_FILE);
+        if (!info.exists()) {
+            return null;
+        }
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(info)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+                return null;
+            }
+            int size = dis.readInt();
+            if (dis.readInt() != maxDoc || dis.readInt() != numEvents) {
+                logger.info("Timeline index was built for other case index, rebuilding it.");
+                return null;
+            }
+            if (new File(dir, TIMESTAMPS_FILE).length() != (long) size * Long.BYTES || new File(dir, EVENTS_FILE).length() != (long) size * Integer.BYTES
+                    || new File(dir, DOCS_FILE).length() != (long) size * Integer.BYTES) {
+                return null;
+            }
+            return new TimelineColumnStore(dir, size, numEvents);
+
+        } catch (IOException e) {
+            logger.warn("Error opening timeline index {}: {}", dir.getAbsolutePath(), e.toString());
+            return null;
+        }
+    }
+
+    private MappedByteBuffer[] map(File file, int channel, int bytes) throws IOException {
+        channels[channel] = new RandomAccessFile(file, "r").getChannel();
+        int numChunks = (int) (((long) size + CHUNK_MASK) >>> CHUNK_SHIFT);
+        MappedByteBuffer[] chunks = new MappedByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            long start = (long) i << CHUNK_SHIFT;
+            long len = Math.min(size - start, 1L << CHUNK_SHIFT);
+            chunks[i] = channels[channel].map(MapMode.READ_ONLY, start * bytes, len * bytes);
+        }
+        return chunks;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int i) {
+        return timestamps[i >>> CHUNK_SHIFT].getLong((i & CHUNK_MASK) << 3);
+    }
+
+    public int getEventOrd(int i) {
+        return events[i >>> CHUNK_SHIFT].getInt((i & CHUNK_MASK) << 2) & ~MULTI_VALUED;
+    }
+
+    public int getDoc(int i) {
+        return docs[i >>> CHUNK_SHIFT].getInt((i & CHUNK_MASK) << 2);
+    }
+
+    /*
+     * @return the index of the first occurrence with timestamp greater than or
+     * equal to the given one, or size() if none
+     */
+    public int lowerBound(long timestamp) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getTimestamp(mid) < timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /*
+     * Counts the docs of each event per bucket, for the buckets intersecting the
+     * [start, end] interval. Only docs in the given set are counted. Buckets are
+     * always complete, even if they are partially inside the interval. The range
+     * is split in slices of whole buckets, aggregated in parallel in the given
+     * pool.
+     */
+    public void aggregate(long start, long end, RoaringBitmap docSet, BucketFunction buckets, BucketConsumer consumer, ExecutorService pool, BooleanSupplier cancelled)
+            throws InterruptedException {
+        int lo = lowerBound(start);
+        int hi = lowerBound(end + 1);
+        if (lo >= hi) {
+            return;
+        }
+        TimePeriod first = buckets.getBucket(getTimestamp(lo));
+        if (first != null) {
+            lo = Math.min(lo, lowerBound(first.getStart().getTime()));
+        }
+        TimePeriod last = buckets.getBucket(getTimestamp(hi - 1));
+        if (last != null) {
+            hi = Math.max(hi, lowerBound(last.getEnd().getTime() + 1));
+        }
+
+        // slice boundaries are moved to bucket starts, so each bucket is counted by one
+        // thread only
+        int numSlices = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 2, (hi - lo) / MIN_SLICE_SIZE));
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(lo);
+        for (int i = 1; i < numSlices; i++) {
+            int idx = lo + (int) ((long) (hi - lo) * i / numSlices);
+            TimePeriod bucket = buckets.getBucket(getTimestamp(idx));
+            if (bucket != null) {
+                idx = lowerBound(bucket.getStart().getTime());
+            }
+            if (idx > bounds.get(bounds.size() - 1) && idx < hi) {
+                bounds.add(idx);
+            }
+        }
+        bounds.add(hi);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < bounds.size() - 1; i++) {
+            int sliceStart = bounds.get(i);
+            int sliceEnd = bounds.get(i + 1);
+            futures.add(pool.submit(() -> aggregateSlice(sliceStart, sliceEnd, docSet, buckets, consumer, cancelled)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void aggregateSlice(int start, int end, RoaringBitmap docSet, BucketFunction buckets, BucketConsumer consumer, BooleanSupplier cancelled) {
+        TimePeriod bucket = null;
+        long bucketEnd = Long.MIN_VALUE;
+        int[] counts = null;
+        HashSet<Long> seenMultiValued = new HashSet<>();
+
+        for (int i = start; i < end; i++) {
+            long timestamp = getTimestamp(i);
+            if (timestamp > bucketEnd || timestamp < bucket.getStart().getTime()) {
+                if (counts != null) {
+                    consumer.accept(bucket, counts);
+                    counts = null;
+                }
+                if (cancelled.getAsBoolean()) {
+                    return;
+                }
+                bucket = buckets.getBucket(timestamp);
+                if (bucket == null) {
+                    bucketEnd = Long.MIN_VALUE;
+                    continue;
+                }
+                bucketEnd = bucket.getEnd().getTime();
+                seenMultiValued.clear();
+            }
+            int doc = getDoc(i);
+            if (!docSet.contains(doc)) {
+                continue;
+            }
+            int ord = events[i >>> CHUNK_SHIFT].getInt((i & CHUNK_MASK) << 2);
+            if ((ord & MULTI_VALUED) != 0) {
+                ord &= ~MULTI_VALUED;
+                if (!seenMultiValued.add((long) ord << 32 | doc)) {
+                    continue;
+                }
+            }
+            if (counts == null) {
+                counts = new int[numEvents];
+            }
+            counts[ord]++;
+        }
+        if (counts != null) {
+            consumer.accept(bucket, counts);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel channel : channels) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /*
+     * Builds the store from sorted runs of event occurrences, one run per event,
+     * that are merged when finished.
+     */
+    public static class Builder {
+
+        private final File dir;
+        private final File runsDir;
+        private final int maxDoc;
+        private final int numEvents;
+        private final List<File> runs = new ArrayList<>();
+        private final List<Integer> runEvents = new ArrayList<>();
+
+        public Builder(File dir, int maxDoc, int numEvents) throws IOException {
+            this.dir = dir;
+            this.maxDoc = maxDoc;
+            this.numEvents = numEvents;
+            if (dir.exists()) {
+                IOUtil.deleteDirectory(dir, false);
+            }
+            runsDir = new File(dir, "runs");
+            runsDir.mkdirs();
+        }
+
+        /*
+         * Adds the occurrences of an event, sorted by timestamp. The doc id may have
+         * the MULTI_VALUED flag.
+         */
+        public void addRun(int eventOrd, long[] timestamps, int[] docs, int length) throws IOException {
+            File run = new File(runsDir, Integer.toString(eventOrd));
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run.toPath()), 1 << 16))) {
+                for (int i = 0; i < length; i++) {
+                    dos.writeLong(timestamps[i]);
+                    dos.writeInt(docs[i]);
+                }
+            }
+            synchronized (runs) {
+                runs.add(run);
+                runEvents.add(eventOrd);
+            }
+        }
+
+        private static class RunReader implements Closeable {
+            DataInputStream dis;
+            int eventOrd;
+            long timestamp;
+            int doc;
+
+            RunReader(File run, int eventOrd) throws IOException {
+                this.dis = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+                this.eventOrd = eventOrd;
+            }
+
+            boolean next() throws IOException {
+                try {
+                    timestamp = dis.readLong();
+                    doc = dis.readInt();
+                    return true;
+                } catch (EOFException e) {
+                    return false;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                dis.close();
+            }
+        }
+
+        /*
+         * Merges the runs into the column files, then writes the info file, which
+         * marks the store as complete.
+         */
+        public void finish() throws IOException {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> a.timestamp != b.timestamp ? Long.compare(a.timestamp, b.timestamp) : Integer.compare(a.eventOrd, b.eventOrd));
+            int size = 0;
+            try (DataOutputStream timestamps = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(new File(dir, TIMESTAMPS_FILE).toPath()), 1 << 16));
+                    DataOutputStream events = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(new File(dir, EVENTS_FILE).toPath()), 1 << 16));
+                    DataOutputStream docs = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(new File(dir, DOCS_FILE).toPath()), 1 << 16))) {
+
+                for (int i = 0; i < runs.size(); i++) {
+                    RunReader reader = new RunReader(runs.get(i), runEvents.get(i));
+                    if (reader.next()) {
+                        queue.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+                while (!queue.isEmpty()) {
+                    RunReader reader = queue.poll();
+                    int doc = reader.doc;
+                    timestamps.writeLong(reader.timestamp);
+                    events.writeInt(reader.eventOrd | (doc & MULTI_VALUED));
+                    docs.writeInt(doc & ~MULTI_VALUED);
+                    if (++size < 0) {
+                        throw new IOException("Too many timeline events");
+                    }
+                    if (reader.next()) {
+                        queue.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+            } finally {
+                for (RunReader reader : queue) {
+                    reader.close();
+                }
+                IOUtil.deleteDirectory(runsDir, false);
+            }
+
+            try (DataOutputStream dos = new DataOutputStream(Files.newOutputStream(new File(dir, INFO_FILE).toPath()))) {
+                dos.writeInt(MAGIC);
+                dos.writeInt(VERSION);
+                dos.writeInt(size);
+                dos.writeInt(maxDoc);
+                dos.writeInt(numEvents);
+            }
+        }
+    }
+
+}
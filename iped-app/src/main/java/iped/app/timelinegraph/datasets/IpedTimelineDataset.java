@@ -7,7 +7,6 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
@@ -23,7 +22,6 @@
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.search.DocIdSetIterator;
-import org.apache.pdfbox.io.RandomAccessBufferedFileInputStream;
 import org.jfree.chart.event.PlotChangeEvent;
 import org.jfree.chart.util.Args;
 import org.jfree.chart.util.PublicCloneable;
@@ -45,11 +43,9 @@
 import iped.app.timelinegraph.IpedChartPanel;
 import iped.app.timelinegraph.IpedChartsPanel;
 import iped.app.timelinegraph.IpedDateAxis;
-import iped.app.timelinegraph.cache.CacheEventEntry;
-import iped.app.timelinegraph.cache.CacheTimePeriodEntry;
 import iped.app.timelinegraph.cache.EventTimestampCache;
-import iped.app.timelinegraph.cache.TimeIndexedMap;
 import iped.app.timelinegraph.cache.TimeStampCache;
+import iped.app.timelinegraph.cache.TimelineColumnStore;
 import iped.app.timelinegraph.cache.persistance.CachePersistance;
 import iped.app.ui.App;
 import iped.app.ui.BookmarksTreeModel;
@@ -65,7 +61,6 @@
 import iped.viewers.api.IQueryFilterer;
 
 public class IpedTimelineDataset extends AbstractIntervalXYDataset implements Cloneable, PublicCloneable, IntervalXYDataset, DomainInfo, TimelineDataset, TableXYDataset, XYDomainInfo, AsynchronousDataset {
-    private static final int CTITEMS_PER_THREAD = 500;
     IMultiSearchResultProvider resultsProvider;
     private Set<IQueryFilterer> exceptThis = new HashSet<IQueryFilterer>();
 
@@ -218,59 +213,6 @@ public void run() {
 
     }
 
-    class PopulateDatasetTask implements Runnable {
-        int threadCtsEnd;
-        CacheTimePeriodEntry[] threadLocalCts;
-        Semaphore timeSem;
-        IMultiSearchResult result;
-        Semaphore addValueSem;// semaphore to control block for adding value to the dataset
-
-        public PopulateDatasetTask(IMultiSearchResult result, CacheTimePeriodEntry[] threadLocalCts, int threadCtsEnd, Semaphore timeSem, Semaphore addValueSem) {
-            this.result = result;
-            this.threadLocalCts = threadLocalCts;
-            this.threadCtsEnd = threadCtsEnd;
-            this.timeSem = timeSem;
-            this.addValueSem = addValueSem;
-        }
-
-        @Override
-        public void run() {
-            try {
-                App app = App.get();
-                Set<String> selectedBookmarks = app.getSelectedBookmarks();
-                IPEDMultiSource appcase = (IPEDMultiSource) app.getIPEDSource();
-                
-                for (int i = 0; i < threadCtsEnd; i++) {
-                    CacheTimePeriodEntry ct = threadLocalCts[i];
-                    for (CacheEventEntry ce : ct.getEvents()) {
-                        if (ce.docIds != null) {
-                            RoaringBitmap rb = RoaringBitmap.and(((MultiSearchResult) result).getDocIdBitSet(), ce.docIds);
-                            
-                            Count count = new Count();
-                            count.value = rb.getCardinality();
-                            if (count.value > 0) {
-                                addValueSem.acquire();
-                                try {
-                                    TimePeriod t = ipedChartsPanel.getDomainAxis().getDateOnConfiguredTimePeriod(ipedChartsPanel.getTimePeriodClass(), ct.getDate());
-                                    addValue(count, t, ce.getEventName());
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                } finally {
-                                    addValueSem.release();
-                                }
-                            }
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                timeSem.release();
-            }
-        }
-
-    }
-
     public String getWindowQuery() {
         IpedChartPanel chartPanel = ipedChartsPanel.getChartPanel();
         Range dateRange = ipedChartsPanel.getDomainAxis().getRange();
@@ -299,7 +241,7 @@ public String getWindowQuery() {
 
     int MEMORY_WINDOW_CACHE_PROPORTION = 2;// how many times the visible range the memory window will load, forward and
                                            // backward.
-    List<CacheTimePeriodEntry> memoryWindowCache = new ArrayList<CacheTimePeriodEntry>();
+    Set<TimePeriod> memoryWindowPeriods = new HashSet<TimePeriod>();// periods already added to the accumulator
 
     static public Date MIN_DATE = new Date(0, 0, 1);// 01/01/1900 is the min JfreeChart date
     static public Date MAX_DATE = new Date(8099, 11, 31);// 01/01/9999 is the maxJfreeChart date
@@ -342,16 +284,12 @@ public void caseSearchFilterLoad() throws Exception {
 
             if (result.getLength() > 0) {
                 TimeStampCache cache = ipedChartsPanel.getIpedTimelineDatasetManager().getCache();
-                TimeIndexedMap a = (TimeIndexedMap) cache.getNewCache();
-
-                String className = ipedChartsPanel.getTimePeriodClass().getSimpleName();
+                TimelineColumnStore store = cache.getColumnStore();
+                Class<? extends TimePeriod> timePeriodClass = ipedChartsPanel.getTimePeriodClass();
+                RoaringBitmap docIds = ((MultiSearchResult) result).getDocIdBitSet();
 
                 Semaphore addValueSem = new Semaphore(1);
 
-                List<CacheTimePeriodEntry> visibleIntervalCache;
-                LinkedList<CacheTimePeriodEntry> beforecache = new LinkedList<CacheTimePeriodEntry>();
-                List<CacheTimePeriodEntry> aftercache = new ArrayList<CacheTimePeriodEntry>();
-
                 Range dateRange = ipedChartsPanel.getDomainAxis().getRange();
                 Date startDate = new Date((long) dateRange.getLowerBound());
                 Date endDate = new Date((long) dateRange.getUpperBound());
@@ -363,7 +301,6 @@ public void caseSearchFilterLoad() throws Exception {
                     fullrange = true;
                 }
 
-                visibleIntervalCache = new ArrayList<CacheTimePeriodEntry>();
                 Date cacheWindowStartDate = ipedChartsPanel.getChartPanel().removeFromDatePart(startDate);
                 Date cacheWindowEndDate = new Date(ipedChartsPanel.getChartPanel().removeNextFromDatePart(endDate).getTime() - 1);
                 long visibleRangeLength = cacheWindowEndDate.getTime() - cacheWindowStartDate.getTime();
@@ -380,71 +317,37 @@ public void caseSearchFilterLoad() throws Exception {
                     cacheWindowEndDate = new Date(ipedChartsPanel.getChartPanel().removeNextFromDatePart(endDate).getTime() - 1);
                 }
 
-                try (RandomAccessBufferedFileInputStream sfis = a.getTmpCacheSfis(className)) {
-                    if (sfis != null) {
-                        Iterator<CacheTimePeriodEntry> it = a.iterator(className, sfis, startDate, endDate);
-                        while (it != null && it.hasNext()) {
-                            ipedChartsPanel.getIpedTimelineDatasetManager().waitMemory();// method to wait available mem to continue.
-                            if (cancelled) {
-                                break;
-                            }
-
-                            CacheTimePeriodEntry ctpe = it.next();
-
-                            boolean remove = false;
-                            if (!fullrange) {
-                                if (ctpe.getDate().before(startDate)) {
-                                    if (ctpe.getDate().getTime() > cacheWindowStartDate.getTime()) {
-                                        if (!memoryWindowCache.contains(ctpe)) {
-                                            beforecache.addFirst(ctpe);
-                                            memoryWindowCache.add(ctpe);
-                                        }
-                                        remove = false;
-                                    } else {
-                                        // remove from memoryCacheWindow
-                                        remove = true;
-                                    }
-                                } else if (ctpe.getDate().after(endDate)) {
-                                    if (ctpe.getDate().getTime() < cacheWindowEndDate.getTime()) {
-                                        if (!memoryWindowCache.contains(ctpe)) {
-                                            aftercache.add(ctpe);
-                                            memoryWindowCache.add(ctpe);
-                                        }
-                                        remove = false;
-                                    } else {
-                                        // remove from memoryCacheWindow
-                                        remove = true;
-                                    }
-                                } else {// inside visible window
-                                    if (!memoryWindowCache.contains(ctpe)) {
-                                        visibleIntervalCache.add(ctpe);
-                                        memoryWindowCache.add(ctpe);
-                                    }
-                                    remove = false;
-                                }
-                            } else {
-                                if (!memoryWindowCache.contains(ctpe)) {
-                                    visibleIntervalCache.add(ctpe);
-                                    memoryWindowCache.add(ctpe);
-                                }
-                            }
-                            if (remove) {
-                                TimePeriod t = ipedChartsPanel.getDomainAxis().getDateOnConfiguredTimePeriod(ipedChartsPanel.getTimePeriodClass(), ctpe.getDate());
+                // removes periods out of the memory window
+                if (!fullrange) {
+                    synchronized (memoryWindowPeriods) {
+                        for (Iterator<TimePeriod> iterator = memoryWindowPeriods.iterator(); iterator.hasNext();) {
+                            TimePeriod t = iterator.next();
+                            if (t.getEnd().getTime() < cacheWindowStartDate.getTime() || t.getStart().getTime() > cacheWindowEndDate.getTime()) {
                                 accumulator.remove(t);
-                                memoryWindowCache.remove(ctpe);
+                                iterator.remove();
                             }
                         }
                     }
                 }
 
-                populatesWithList(result, visibleIntervalCache, addValueSem);// creates first the visible interval itens to be plotted
+                // creates first the visible interval itens to be plotted
+                populatesWithRange(store, timePeriodClass, docIds, startDate.getTime(), endDate.getTime(), addValueSem);
 
-                if (beforecache.size() > 0 || aftercache.size() > 0) {
+                if (!fullrange) {
+                    long beforeEnd = startDate.getTime() - 1;
+                    long afterStart = endDate.getTime() + 1;
+                    long windowStart = cacheWindowStartDate.getTime();
+                    long windowEnd = cacheWindowEndDate.getTime();
                     Runnable r = new Runnable() {
                         @Override
                         public void run() {
                             try {
-                                populatesWithBeforeAndAfterList(result, beforecache, aftercache, addValueSem);
+                                if (windowStart <= beforeEnd) {
+                                    populatesWithRange(store, timePeriodClass, docIds, windowStart, beforeEnd, addValueSem);
+                                }
+                                if (afterStart <= windowEnd) {
+                                    populatesWithRange(store, timePeriodClass, docIds, afterStart, windowEnd, addValueSem);
+                                }
                             } finally {
                                 memoryCacheReloadSem.release();// releases after thread end
                             }
@@ -467,107 +370,37 @@ public void run() {
 
     }
 
-    public void populatesWithBeforeAndAfterList(IMultiSearchResult result, List<CacheTimePeriodEntry> beforecache, List<CacheTimePeriodEntry> aftercache, Semaphore addValueSem) {
+    /*
+     * Adds the counts of the periods intersecting the range, computed from the
+     * timeline column store, except the periods already added.
+     */
+    public void populatesWithRange(TimelineColumnStore store, Class<? extends TimePeriod> timePeriodClass, RoaringBitmap docIds, long start, long end, Semaphore addValueSem) {
         try {
-            int threadCount = (int) Math.ceil((double) (beforecache.size() + aftercache.size()) / (double) CTITEMS_PER_THREAD);
-            Semaphore timeSem = new Semaphore(threadCount);
-            timeSem.acquire(threadCount);
-            CacheTimePeriodEntry[] threadCts = new CacheTimePeriodEntry[CTITEMS_PER_THREAD];
-            int threadCtsCount = 0;
-            int totalInCount = beforecache.size() + aftercache.size();
-
-            // populates dataset for inside visible range items
-            int beforeindex = 0;
-            int afterindex = 0;
-            CacheTimePeriodEntry ctpeBefore = beforecache.size() > 0 ? beforecache.get(beforeindex) : null;
-            CacheTimePeriodEntry ctpeAfter = aftercache.size() > 0 ? aftercache.get(afterindex) : null;
-            while (ctpeBefore != null || ctpeAfter != null) {
-                CacheTimePeriodEntry ctpe = null;
-                if (totalInCount % 2 == 0) {// alternate between lists
-                    ctpe = ctpeBefore;
-                    if (ctpe == null) {
-                        ctpe = ctpeAfter;
-                        afterindex++;
-                        if (afterindex < aftercache.size()) {
-                            ctpeAfter = aftercache.get(afterindex);
-                        } else {
-                            ctpeAfter = null;
-                        }
-                    } else {
-                        beforeindex++;
-                        if (beforeindex < beforecache.size()) {
-                            ctpeBefore = beforecache.get(beforeindex);
-                        } else {
-                            ctpeBefore = null;
-                        }
+            store.aggregate(start, end, docIds, timestamp -> ipedChartsPanel.getDomainAxis().getDateOnConfiguredTimePeriod(timePeriodClass, new Date(timestamp)), (t, eventCounts) -> {
+                synchronized (memoryWindowPeriods) {
+                    if (!memoryWindowPeriods.add(t)) {
+                        return;
                     }
-                } else {
-                    ctpe = ctpeAfter;
-                    if (ctpe == null) {
-                        ctpe = ctpeBefore;
-                        beforeindex++;
-                        if (beforeindex < beforecache.size()) {
-                            ctpeBefore = beforecache.get(beforeindex);
-                        } else {
-                            ctpeBefore = null;
-                        }
-                    } else {
-                        afterindex++;
-                        if (afterindex < aftercache.size()) {
-                            ctpeAfter = aftercache.get(afterindex);
-                        } else {
-                            ctpeAfter = null;
+                }
+                for (int ord = 0; ord < eventCounts.length; ord++) {
+                    if (eventCounts[ord] > 0) {
+                        Count count = new Count();
+                        count.value = eventCounts[ord];
+                        try {
+                            addValueSem.acquire();
+                            try {
+                                addValue(count, t, IpedChartsPanel.getEventName(ord));
+                            } finally {
+                                addValueSem.release();
+                            }
+                        } catch (Exception e) {
+                            e.printStackTrace();
                         }
                     }
-
-                }
-
-                threadCts[threadCtsCount++] = ctpe;
-                totalInCount--;
-                if (threadCtsCount >= CTITEMS_PER_THREAD || totalInCount <= 0) {
-                    int threadCtsEnd = threadCtsCount;
-                    Runnable r = new PopulateDatasetTask(result, threadCts, threadCtsEnd, timeSem, addValueSem);
-                    Thread t = new Thread(r);
-                    queriesThreadPool.execute(t);
-                    threadCts = new CacheTimePeriodEntry[CTITEMS_PER_THREAD];
-                    threadCtsCount = 0;
-                }
-            }
-            timeSem.acquire(threadCount);
-            timeSem.release(threadCount);
-
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-    }
-
-    public void populatesWithList(IMultiSearchResult result, List<CacheTimePeriodEntry> cache, Semaphore addValueSem) {
-        try {
-            int threadCount = (int) Math.ceil((double) cache.size() / (double) CTITEMS_PER_THREAD);
-            Semaphore timeSem = new Semaphore(threadCount);
-            timeSem.acquire(threadCount);
-            CacheTimePeriodEntry[] threadCts = new CacheTimePeriodEntry[CTITEMS_PER_THREAD];
-            int threadCtsCount = 0;
-            int totalInCount = cache.size();
-
-            // populates dataset for inside visible range items
-            for (CacheTimePeriodEntry ctpe : cache) {
-                threadCts[threadCtsCount++] = ctpe;
-                totalInCount--;
-                if (threadCtsCount >= CTITEMS_PER_THREAD || totalInCount <= 0) {
-                    int threadCtsEnd = threadCtsCount;
-                    CacheTimePeriodEntry[] threadLocalCts = threadCts.clone();
-                    threadCtsCount = 0;
-                    Runnable r = new PopulateDatasetTask(result, threadLocalCts, threadCtsEnd, timeSem, addValueSem);
-                    Thread t = new Thread(r);
-                    queriesThreadPool.execute(t);
                 }
-            }
-            timeSem.acquire(threadCount);
-            timeSem.release(threadCount);
+            }, queriesThreadPool, () -> cancelled);
         } catch (InterruptedException e) {
             e.printStackTrace();
-        } finally {
         }
     }
 
@@ -1013,8 +846,7 @@ public List<IItemId> bitSetItems(String eventType, RoaringBitmap bs) {
             MultiSearchResult resultSet = (MultiSearchResult) csf.get();
             List<IItemId> result = new ArrayList<IItemId>();
             for (int i = 0; i < resultSet.getLength(); i++) {
-                IItemId itemId = resultSet.getItem(i);
-                bs.add(is.getLuceneId(itemId));
+                bs.add(is.getLuceneId(resultSet.getSourceId(i), resultSet.getId(i)));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -1051,8 +883,7 @@ public List<IItemId> getItems(int item, int seriesId) {
             SortedSetDocValues values = reader.getSortedSetDocValues(eventField);
             if (values != null) {
                 for (int i = 0; i < resultSet.getLength(); i++) {
-                    IItemId itemId = resultSet.getItem(i);
-                    int doc = srcCase.getLuceneId(itemId);
+                    int doc = srcCase.getLuceneId(resultSet.getSourceId(i), resultSet.getId(i));
                     boolean adv = values.advanceExact(doc);
                     if (adv = false) {
                         values = reader.getSortedSetDocValues(eventField);
@@ -1077,14 +908,13 @@ public List<IItemId> getItems(int item, int seriesId) {
                         }
                     }
                     if (found) {
-                        result.add(itemId);
+                        result.add(resultSet.getItem(i));
                     }
                 }
             } else {
                 SortedDocValues svalues = reader.getSortedDocValues(eventField);
                 for (int i = 0; i < resultSet.getLength(); i++) {
-                    IItemId itemId = resultSet.getItem(i);
-                    int doc = srcCase.getLuceneId(itemId);
+                    int doc = srcCase.getLuceneId(resultSet.getSourceId(i), resultSet.getId(i));
                     boolean adv = svalues.advanceExact(doc);
                     if (adv = false) {
                         svalues = reader.getSortedDocValues(eventField);
@@ -1108,7 +938,7 @@ public List<IItemId> getItems(int item, int seriesId) {
                         }
                     }
                     if (found) {
-                        result.add(itemId);
+                        result.add(resultSet.getItem(i));
                     }
                 }
             }
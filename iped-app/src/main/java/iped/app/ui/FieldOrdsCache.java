@@ -0,0 +1,235 @@
+package iped.app.ui;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues.MultiSortedDocValues;
+import org.apache.lucene.index.MultiDocValues.MultiSortedSetDocValues;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.LongValues;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.engine.task.index.IndexItem;
+import iped.properties.ExtraProperties;
+
+/**
+ * Cache of field doc values loaded to arrays indexed by the lucene id of the
+ * case composite reader, so they can be read by many threads in any order
+ * without decoding doc values again. Ords of sorted values are already mapped
+ * to the global ords of the composite reader. Each segment is loaded
+ * separately, in parallel. Used by the table sorter and by the metadata value
+ * counting.
+ */
+public class FieldOrdsCache {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(FieldOrdsCache.class);
+
+    private static final int MAX_CACHED_FIELDS = 4;
+
+    /**
+     * Value of docs without value in {@link FieldOrds#ndvOrds}.
+     */
+    public static final long MISSING_VALUE = Long.MIN_VALUE;
+
+    private static final int[] EMPTY_ORDS = new int[0];
+    private static final long[] EMPTY_VALUES = new long[0];
+
+    private static LeafReader atomicReader;
+
+    private static final Map<String, FieldOrds> cache = new LinkedHashMap<String, FieldOrds>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FieldOrds> eldest) {
+            return this.size() > MAX_CACHED_FIELDS;
+        }
+    };
+
+    public static class FieldOrds {
+
+        /**
+         * global ords of SORTED fields, -1 if the doc has no value
+         */
+        public int[] sdvOrds;
+
+        /**
+         * values of NUMERIC fields, {@link FieldOrdsCache#MISSING_VALUE} if the doc
+         * has no value
+         */
+        public long[] ndvOrds;
+
+        /**
+         * global ords of SORTED_SET fields
+         */
+        public int[][] ssdvOrds;
+
+        /**
+         * values of SORTED_NUMERIC fields
+         */
+        public long[][] sndvOrds;
+
+        /**
+         * number of global ords of SORTED and SORTED_SET fields
+         */
+        public int valueCount;
+
+        private int[] docStarts;
+
+        /**
+         * @return the first lucene id of each segment, plus maxDoc at the end
+         */
+        public int[] getDocStarts() {
+            return docStarts;
+        }
+
+        public int maxDoc() {
+            return docStarts[docStarts.length - 1];
+        }
+    }
+
+    /**
+     * Returns the cached doc values of the field, loading them if needed.
+     *
+     * @return null if the field has no doc values
+     */
+    public static synchronized FieldOrds get(String field) throws IOException {
+        LeafReader reader = App.get().appCase.getLeafReader();
+        if (reader != atomicReader) {
+            cache.clear();
+            atomicReader = reader;
+        }
+        FieldOrds ords = cache.get(field);
+        if (ords == null && !cache.containsKey(field)) {
+            long t = System.currentTimeMillis();
+            ords = load(reader, App.get().appCase.getReader().leaves(), field);
+            cache.put(field, ords);
+            LOGGER.info("Loading doc values of {} took {}ms", field, System.currentTimeMillis() - t); //$NON-NLS-1$
+        }
+        return ords;
+    }
+
+    private static FieldOrds load(LeafReader reader, List<LeafReaderContext> leaves, String field) throws IOException {
+        FieldOrds ords = new FieldOrds();
+        int maxDoc = reader.maxDoc();
+        ords.docStarts = new int[leaves.size() + 1];
+        for (int i = 0; i < leaves.size(); i++) {
+            ords.docStarts[i] = leaves.get(i).docBase;
+        }
+        ords.docStarts[leaves.size()] = maxDoc;
+
+        if (reader.getNumericDocValues(field) != null) {
+            ords.ndvOrds = new long[maxDoc];
+            forEachLeaf(leaves, i -> {
+                LeafReaderContext leaf = leaves.get(i);
+                int base = leaf.docBase;
+                Arrays.fill(ords.ndvOrds, base, base + leaf.reader().maxDoc(), MISSING_VALUE);
+                NumericDocValues ndv = leaf.reader().getNumericDocValues(field);
+                if (ndv != null) {
+                    for (int doc = ndv.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = ndv.nextDoc()) {
+                        ords.ndvOrds[base + doc] = ndv.longValue();
+                    }
+                }
+            });
+
+        } else if (reader.getSortedNumericDocValues(field) != null) {
+            ords.sndvOrds = new long[maxDoc][];
+            forEachLeaf(leaves, i -> {
+                LeafReaderContext leaf = leaves.get(i);
+                int base = leaf.docBase;
+                Arrays.fill(ords.sndvOrds, base, base + leaf.reader().maxDoc(), EMPTY_VALUES);
+                SortedNumericDocValues sndv = leaf.reader().getSortedNumericDocValues(field);
+                if (sndv != null) {
+                    for (int doc = sndv.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = sndv.nextDoc()) {
+                        long[] values = new long[sndv.docValueCount()];
+                        for (int j = 0; j < values.length; j++) {
+                            values[j] = sndv.nextValue();
+                        }
+                        ords.sndvOrds[base + doc] = values;
+                    }
+                }
+            });
+
+        } else if (reader.getSortedDocValues(field) != null) {
+            SortedDocValues sdv = reader.getSortedDocValues(field);
+            ords.valueCount = sdv.getValueCount();
+            ords.sdvOrds = new int[maxDoc];
+            // single segment readers return the segment doc values
+            SortedDocValues[] values = sdv instanceof MultiSortedDocValues ? ((MultiSortedDocValues) sdv).values : new SortedDocValues[] { sdv };
+            OrdinalMap mapping = sdv instanceof MultiSortedDocValues ? ((MultiSortedDocValues) sdv).mapping : null;
+            forEachLeaf(leaves, i -> {
+                LeafReaderContext leaf = leaves.get(i);
+                int base = leaf.docBase;
+                Arrays.fill(ords.sdvOrds, base, base + leaf.reader().maxDoc(), -1);
+                LongValues globalOrds = mapping == null ? LongValues.IDENTITY : mapping.getGlobalOrds(i);
+                SortedDocValues segValues = values[i];
+                for (int doc = segValues.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = segValues.nextDoc()) {
+                    ords.sdvOrds[base + doc] = (int) globalOrds.get(segValues.ordValue());
+                }
+            });
+
+        } else {
+            String prefix = ExtraProperties.LOCATIONS.equals(field) ? IndexItem.GEO_SSDV_PREFIX : ""; //$NON-NLS-1$
+            SortedSetDocValues ssdv = reader.getSortedSetDocValues(prefix + field);
+            if (ssdv == null) {
+                return null;
+            }
+            ords.valueCount = (int) ssdv.getValueCount();
+            ords.ssdvOrds = new int[maxDoc][];
+            SortedSetDocValues[] values = ssdv instanceof MultiSortedSetDocValues ? ((MultiSortedSetDocValues) ssdv).values : new SortedSetDocValues[] { ssdv };
+            OrdinalMap mapping = ssdv instanceof MultiSortedSetDocValues ? ((MultiSortedSetDocValues) ssdv).mapping : null;
+            forEachLeaf(leaves, i -> {
+                LeafReaderContext leaf = leaves.get(i);
+                int base = leaf.docBase;
+                Arrays.fill(ords.ssdvOrds, base, base + leaf.reader().maxDoc(), EMPTY_ORDS);
+                LongValues globalOrds = mapping == null ? LongValues.IDENTITY : mapping.getGlobalOrds(i);
+                SortedSetDocValues segValues = values[i];
+                int[] buf = new int[16];
+                for (int doc = segValues.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = segValues.nextDoc()) {
+                    int n = 0;
+                    long ord;
+                    while ((ord = segValues.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                        if (n == buf.length) {
+                            buf = Arrays.copyOf(buf, n * 2);
+                        }
+                        buf[n++] = (int) globalOrds.get(ord);
+                    }
+                    ords.ssdvOrds[base + doc] = Arrays.copyOf(buf, n);
+                }
+            });
+        }
+        return ords;
+    }
+
+    private interface LeafLoader {
+        void load(int leaf) throws IOException;
+    }
+
+    private static void forEachLeaf(List<LeafReaderContext> leaves, LeafLoader loader) throws IOException {
+        try {
+            IntStream.range(0, leaves.size()).parallel().forEach(i -> {
+                try {
+                    loader.load(i);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+}
@@ -14,7 +14,6 @@
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -40,7 +39,6 @@
 import org.apache.lucene.search.Query;
 import org.roaringbitmap.RoaringBitmap;
 
-import iped.data.IItemId;
 import iped.engine.config.AgeEstimationConfig;
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.FaceRecognitionConfig;
@@ -376,63 +374,17 @@ public void setFilterEnabled(IFilterer t, boolean selected) {
     }
 
     public MultiSearchResult applyExcludeFilter(RoaringBitmap[] resultBitSet, MultiSearchResult input) {
-        LinkedHashSet<IItemId> ids = new LinkedHashSet<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        float[] primitiveScores;
-
-        if (resultBitSet != null) {
-            int i = 0;
-            while (i < input.getLength()) {
-                IItemId itemId = input.getItem(i);
-                if (!resultBitSet[itemId.getSourceId()].contains(itemId.getId())) {
-                    ids.add(itemId);
-                    scores.add(input.getScore(i));
-                }
-                i++;
-            }
-
-            primitiveScores = new float[scores.size()];
-            i = 0;
-            for (Float f : scores) {
-                primitiveScores[i++] = f;
-            }
-        } else {
-            primitiveScores = new float[0];
+        if (resultBitSet == null) {
+            return new MultiSearchResult();
         }
-
-        MultiSearchResult result = new MultiSearchResult(ids.toArray(new IItemId[0]), primitiveScores);
-
-        return result;
+        return input.filter(resultBitSet, true);
     }
 
     public MultiSearchResult applyFilter(RoaringBitmap[] resultBitSet, MultiSearchResult input) {
-        LinkedHashSet<IItemId> ids = new LinkedHashSet<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        float[] primitiveScores;
-
-        if (resultBitSet != null) {
-            int i = 0;
-            while (i < input.getLength()) {
-                IItemId itemId = input.getItem(i);
-                if (resultBitSet[itemId.getSourceId()].contains(itemId.getId())) {
-                    ids.add(itemId);
-                    scores.add(input.getScore(i));
-                }
-                i++;
-            }
-
-            primitiveScores = new float[scores.size()];
-            i = 0;
-            for (Float f : scores) {
-                primitiveScores[i++] = f;
-            }
-        } else {
-            primitiveScores = new float[0];
+        if (resultBitSet == null) {
+            return new MultiSearchResult();
         }
-
-        MultiSearchResult result = new MultiSearchResult(ids.toArray(new IItemId[0]), primitiveScores);
-
-        return result;
+        return input.filter(resultBitSet, false);
     }
 
     public RoaringBitmap[] getCachedBitmaps(IResultSetFilter rsFilter) {
@@ -18,20 +18,29 @@
  */
 package iped.app.ui;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
+import javax.swing.JTable;
 import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 
@@ -95,9 +104,24 @@ protected boolean removeEldestEntry(Map.Entry<IItemId,GalleryValue> eldest) {
     private ErrorIcon errorIcon = new ErrorIcon();
     private static final BufferedImage errorImg = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_BINARY);
     public static final ImageIcon unsupportedIcon = new ImageIcon();
-    private ExecutorService executor;
     private ExternalImageConverter externalImageConverter;
 
+    /**
+     * Shared by gallery models, runs visible cells first, see {@link GalleryTask}
+     */
+    private static ThreadPoolExecutor executor;
+    private static ThumbnailCache thumbnailCache;
+    private static final AtomicLong taskSeq = new AtomicLong();
+
+    private final Map<IItemId, GalleryTask> pending = new HashMap<>();
+    private int prefetchScreens;
+    private int lastFirstRow = -1;
+    private long prefetchGeneration;
+
+    private static final Set<String> fieldsToLoad = new HashSet<>(Arrays.asList(IndexItem.NAME, IndexItem.PATH,
+            IndexItem.CONTENTTYPE, IndexItem.HASH, IndexItem.ISDIR, IndexItem.TYPE, IndexItem.LENGTH,
+            ExtraProperties.ANIMATION_FRAMES_PROP));
+
     private volatile boolean blurFilter;
     private volatile boolean grayFilter;
 
@@ -172,8 +196,16 @@ public Object getValueAt(final int row, final int col) {
             try {
                 imgThumbTask = new ImageThumbTask();
                 imgThumbTask.init(ConfigurationManager.get());
-                galleryThreads = Math.min(imgThumbTask.getImageThumbConfig().getGalleryThreads(), MAX_TSK_POOL_SIZE);
-                logRendering = imgThumbTask.getImageThumbConfig().isLogGalleryRendering();
+                ImageThumbTaskConfig config = imgThumbTask.getImageThumbConfig();
+                galleryThreads = Math.min(config.getGalleryThreads(), MAX_TSK_POOL_SIZE);
+                logRendering = config.isLogGalleryRendering();
+                prefetchScreens = config.getGalleryPrefetchScreens();
+                synchronized (GalleryModel.class) {
+                    if (thumbnailCache == null) {
+                        thumbnailCache = new ThumbnailCache((long) config.getGalleryCacheMemoryMB() << 20,
+                                (long) config.getGalleryCacheDiskMB() << 20, getThumbSize());
+                    }
+                }
 
             } catch (Exception e) {
                 e.printStackTrace();
@@ -195,144 +227,280 @@ public Object getValueAt(final int row, final int col) {
             }
         }
 
-        if (executor == null) {
-            executor = Executors.newFixedThreadPool(galleryThreads);
+        synchronized (GalleryModel.class) {
+            if (executor == null) {
+                executor = new ThreadPoolExecutor(galleryThreads, galleryThreads, 0L, TimeUnit.MILLISECONDS,
+                        new PriorityBlockingQueue<Runnable>());
+            }
+        }
+        if (externalImageConverter == null) {
             // do not use executor above in constructor below, it causes deadlock see #313
             externalImageConverter = new ExternalImageConverter();
         }
 
-        executor.execute(new Runnable() {
-            public void run() {
+        synchronized (pending) {
+            GalleryTask task = pending.get(id);
+            if (task == null) {
+                task = new GalleryTask(id, row, col, false);
+                pending.put(id, task);
+                executor.execute(task);
+
+            } else if (task.prefetch && executor.getQueue().remove(task)) {
+                // requested by prefetch, but now it is visible
+                pending.put(id, task = new GalleryTask(id, row, col, false));
+                executor.execute(task);
+            } else {
+                task.row = row;
+                task.col = col;
+            }
+        }
+
+        schedulePrefetch();
 
-                BufferedImage image = null;
-                InputStream stream = null;
-                Document doc = null;
-                GalleryValue value = new GalleryValue("", null, id);
-                try {
-                    synchronized (cache) {
-                        if (cache.containsKey(id)) {
-                            return;
-                        }
+        return new GalleryValue("...", null, id);
+    }
+
+    /**
+     * Schedules loading of the next screens in the scroll direction, when the
+     * first visible row changes. Prefetch requests of previous positions not
+     * started yet are cancelled.
+     */
+    private void schedulePrefetch() {
+        if (prefetchScreens <= 0) {
+            return;
+        }
+        JTable gallery = App.get().gallery;
+        Rectangle visible = gallery.getVisibleRect();
+        int firstRow = gallery.rowAtPoint(visible.getLocation());
+        if (firstRow < 0 || firstRow == lastFirstRow) {
+            return;
+        }
+        boolean down = firstRow >= lastFirstRow;
+        lastFirstRow = firstRow;
+        long generation = ++prefetchGeneration;
+
+        executor.getQueue().removeIf(r -> {
+            GalleryTask task = (GalleryTask) r;
+            if (task.prefetch && task.generation < generation) {
+                synchronized (pending) {
+                    pending.remove(task.id, task);
+                }
+                return true;
+            }
+            return false;
+        });
+
+        int visibleRows = (int) Math.ceil((double) visible.height / gallery.getRowHeight());
+        int numRows = visibleRows * prefetchScreens;
+        int startRow = down ? firstRow + visibleRows : firstRow - 1;
+        int length = App.get().ipedResult.getLength();
+        for (int i = 0; i < numRows; i++) {
+            int row = down ? startRow + i : startRow - i;
+            for (int col = 0; col < colCount; col++) {
+                int idx = row * colCount + col;
+                if (row < 0 || idx >= length) {
+                    return;
+                }
+                IItemId id = App.get().ipedResult.getItem(App.get().resultsTable.convertRowIndexToModel(idx));
+                synchronized (cache) {
+                    if (cache.containsKey(id)) {
+                        continue;
                     }
+                }
+                synchronized (pending) {
+                    if (!pending.containsKey(id)) {
+                        GalleryTask task = new GalleryTask(id, row, col, true);
+                        task.generation = generation;
+                        pending.put(id, task);
+                        executor.execute(task);
+                    }
+                }
+            }
+        }
+    }
 
-                    if (!App.get().gallery.getVisibleRect().intersects(App.get().gallery.getCellRect(row, col, false))) {
+    /**
+     * Loads the gallery value of an item. Visible cells are loaded first, the
+     * most recently requested first, then prefetched cells, in the order they
+     * were requested.
+     */
+    private class GalleryTask implements Runnable, Comparable<GalleryTask> {
+
+        private final IItemId id;
+        private final boolean prefetch;
+        private final long seq = taskSeq.incrementAndGet();
+        private long generation;
+        private volatile int row, col;
+
+        private GalleryTask(IItemId id, int row, int col, boolean prefetch) {
+            this.id = id;
+            this.row = row;
+            this.col = col;
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        public int compareTo(GalleryTask o) {
+            if (prefetch != o.prefetch) {
+                return prefetch ? 1 : -1;
+            }
+            return prefetch ? Long.compare(seq, o.seq) : Long.compare(o.seq, seq);
+        }
+
+        @Override
+        public void run() {
+            try {
+                synchronized (cache) {
+                    if (cache.containsKey(id)) {
                         return;
                     }
+                }
+                if (!prefetch && !App.get().gallery.getVisibleRect()
+                        .intersects(App.get().gallery.getCellRect(row, col, false))) {
+                    return;
+                }
 
-                    int docId = App.get().appCase.getLuceneId(id);
-                    doc = App.get().appCase.getSearcher().doc(docId);
-                    value.name = doc.get(IndexItem.NAME);
+                GalleryValue value = loadValue(id);
 
-                    if (logRendering) {
-                        String path = doc.get(IndexItem.PATH);
-                        LOGGER.info("Gallery rendering " + path); //$NON-NLS-1$
-                    }
+                synchronized (cache) {
+                    cache.put(id, value);
+                }
 
-                    final String mediaType = doc.get(IndexItem.CONTENTTYPE);
+            } finally {
+                synchronized (pending) {
+                    pending.remove(id, this);
+                }
+            }
 
-                    BytesRef bytesRef = doc.getBinaryValue(IndexItem.THUMB);
-                    if (bytesRef != null && ((!isSupportedVideo(mediaType) && !isAnimationImage(doc, mediaType)) || App.get().useVideoThumbsInGallery)) {
-                        byte[] thumb = bytesRef.bytes;
-                        if (thumb.length > 0) {
-                            image = ImageIO.read(new ByteArrayInputStream(thumb));
-                        } else {
-                            image = errorImg;
-                        }
-                    }
+            final int row = this.row, col = this.col;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    App.get().galleryModel.fireTableCellUpdated(row, col);
+                }
+            });
+        }
+    }
 
-                    if (image == null) {
-                        String hash = doc.get(IndexItem.HASH);
-                        if (image == null && hash != null && !hash.isEmpty()) {
-                            image = getViewImage(docId, hash,
-                                    isSupportedVideo(mediaType) || isAnimationImage(doc, mediaType));
-                        }
-
-                        if (Boolean.valueOf(doc.get(IndexItem.ISDIR))) {
-                            value.unsupportedType = true;
-                            value.icon = IconManager.getFolderIconGallery();
-
-                        } else if (image == null && !isSupportedImage(mediaType) && !isSupportedVideo(mediaType)) {
-                            value.unsupportedType = true;
-                            String type = doc.get(IndexItem.TYPE);
-                            String contentType = doc.get(IndexItem.CONTENTTYPE);
-                            value.icon = IconManager.getFileIconGallery(contentType, type);
-                        }
-
-                        if (image == null && value.icon == null && stream == null && isSupportedImage(mediaType)) {
-                            stream = App.get().appCase.getItemByLuceneID(docId).getBufferedInputStream();
-                        }
-
-                        if (stream != null) {
-                            stream.mark(10000000);
-                        }
-
-                        if (image == null && stream != null && imgThumbTask.getImageThumbConfig().isExtractThumb()
-                                && mediaType.equals("image/jpeg")) { //$NON-NLS-1$
-                            image = ImageMetadataUtil.getThumb(CloseShieldInputStream.wrap(stream));
-                            stream.reset();
-                        }
-
-                        if (image == null && stream != null) {
-                            image = ImageUtil.getSubSampledImage(stream, getThumbSize());
-                            stream.reset();
-                        }
-
-                        if (image == null && stream != null) {
-                            String sizeStr = doc.get(IndexItem.LENGTH);
-                            Long size = sizeStr == null ? null : Long.parseLong(sizeStr);
-                            image = externalImageConverter.getImage(stream, getThumbSize(), false, size);
-                        }
-                    }
+    private GalleryValue loadValue(IItemId id) {
+
+        BufferedImage image = null;
+        InputStream stream = null;
+        Document doc = null;
+        GalleryValue value = new GalleryValue("", null, id);
+        try {
+            int docId = App.get().appCase.getLuceneId(id);
+            doc = App.get().appCase.getSearcher().doc(docId, fieldsToLoad);
+            value.name = doc.get(IndexItem.NAME);
+
+            if (logRendering) {
+                String path = doc.get(IndexItem.PATH);
+                LOGGER.info("Gallery rendering " + path); //$NON-NLS-1$
+            }
 
-                    if (image == null || image == errorImg) {
-                        if (value.icon == null)
-                            value.icon = errorIcon;
+            final String mediaType = doc.get(IndexItem.CONTENTTYPE);
+
+            // scaled thumbs are cached before filters, so they survive filter changes
+            boolean useVideoThumbs = App.get().useVideoThumbsInGallery;
+            image = thumbnailCache.get(id, useVideoThumbs);
+            boolean cached = image != null;
+
+            if (image == null && ((!isSupportedVideo(mediaType) && !isAnimationImage(doc, mediaType)) || useVideoThumbs)) {
+                // thumbs are large, so they are only loaded if not cached
+                Document thumbDoc = App.get().appCase.getSearcher().doc(docId, Collections.singleton(IndexItem.THUMB));
+                BytesRef bytesRef = thumbDoc.getBinaryValue(IndexItem.THUMB);
+                if (bytesRef != null) {
+                    byte[] thumb = bytesRef.bytes;
+                    if (thumb.length > 0) {
+                        image = ImageIO.read(new ByteArrayInputStream(thumb));
                     } else {
-                        // Resize image only if it is too large (> 2x the desired thumbSize)
-                        if (image.getWidth() > getThumbSize() * 2 || image.getHeight() > getThumbSize() * 2) {
-                            image = ImageUtil.resizeImage(image, getThumbSize(), getThumbSize());
-                        }
-
-                        if (blurFilter) {
-                            image = ImageUtil.blur(image, getThumbSize(), blurIntensity);
-                        }
-                        if (grayFilter) {
-                            image = ImageUtil.grayscale(image);
-                        }
+                        image = errorImg;
                     }
+                }
+            }
 
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    value.icon = errorIcon;
+            if (image == null) {
+                String hash = doc.get(IndexItem.HASH);
+                if (image == null && hash != null && !hash.isEmpty()) {
+                    image = getViewImage(docId, hash,
+                            isSupportedVideo(mediaType) || isAnimationImage(doc, mediaType));
+                }
 
-                } finally {
-                    try {
-                        if (stream != null) {
-                            stream.close();
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                if (Boolean.valueOf(doc.get(IndexItem.ISDIR))) {
+                    value.unsupportedType = true;
+                    value.icon = IconManager.getFolderIconGallery();
+
+                } else if (image == null && !isSupportedImage(mediaType) && !isSupportedVideo(mediaType)) {
+                    value.unsupportedType = true;
+                    String type = doc.get(IndexItem.TYPE);
+                    String contentType = doc.get(IndexItem.CONTENTTYPE);
+                    value.icon = IconManager.getFileIconGallery(contentType, type);
                 }
 
-                if (image != errorImg) {
-                    value.image = image;
+                if (image == null && value.icon == null && stream == null && isSupportedImage(mediaType)) {
+                    stream = App.get().appCase.getItemByLuceneID(docId).getBufferedInputStream();
                 }
 
-                synchronized (cache) {
-                    cache.put(id, value);
+                if (stream != null) {
+                    stream.mark(10000000);
                 }
 
-                SwingUtilities.invokeLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        App.get().galleryModel.fireTableCellUpdated(row, col);
+                if (image == null && stream != null && imgThumbTask.getImageThumbConfig().isExtractThumb()
+                        && mediaType.equals("image/jpeg")) { //$NON-NLS-1$
+                    image = ImageMetadataUtil.getThumb(CloseShieldInputStream.wrap(stream));
+                    stream.reset();
+                }
+
+                if (image == null && stream != null) {
+                    image = ImageUtil.getSubSampledImage(stream, getThumbSize());
+                    stream.reset();
+                }
+
+                if (image == null && stream != null) {
+                    String sizeStr = doc.get(IndexItem.LENGTH);
+                    Long size = sizeStr == null ? null : Long.parseLong(sizeStr);
+                    image = externalImageConverter.getImage(stream, getThumbSize(), false, size);
+                }
+            }
+
+            if (image == null || image == errorImg) {
+                if (value.icon == null)
+                    value.icon = errorIcon;
+            } else {
+                if (!cached) {
+                    // Resize image only if it is too large (> 2x the desired thumbSize)
+                    if (image.getWidth() > getThumbSize() * 2 || image.getHeight() > getThumbSize() * 2) {
+                        image = ImageUtil.resizeImage(image, getThumbSize(), getThumbSize());
                     }
-                });
+                    thumbnailCache.put(id, useVideoThumbs, image);
+                }
+
+                if (blurFilter) {
+                    image = ImageUtil.blur(image, getThumbSize(), blurIntensity);
+                }
+                if (grayFilter) {
+                    image = ImageUtil.grayscale(image);
+                }
             }
-        });
 
-        return new GalleryValue("...", null, id);
+        } catch (Exception e) {
+            e.printStackTrace();
+            value.icon = errorIcon;
+
+        } finally {
+            try {
+                if (stream != null) {
+                    stream.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (image != errorImg) {
+            value.image = image;
+        }
+        return value;
     }
 
     public void clearVideoThumbsInCache() {
@@ -232,8 +232,8 @@ public Object getValueAt(int row, int col) {
 
         String value = ""; //$NON-NLS-1$
 
-        IItemId item = App.get().ipedResult.getItem(row);
-        int docId = App.get().appCase.getLuceneId(item);
+        IMultiSearchResult result = app.ipedResult;
+        int docId = app.appCase.getLuceneId(result.getSourceId(row), result.getId(row));
 
         if (docId != lastDocRead) {
             try {
@@ -250,11 +250,13 @@ public Object getValueAt(int row, int col) {
             String field = fields[fCol];
 
             if (field.equals(SCORE_COL)) {
-                return app.ipedResult.getScore(row);
+                return result.getScore(row);
             }
 
+            IItemId item = result.getItem(row);
+
             if (field.equals(BOOKMARK_COL)) {
-                return Util.concatStrings(app.appCase.getMultiBookmarks().getBookmarkList(app.ipedResult.getItem(row)), true);
+                return Util.concatStrings(app.appCase.getMultiBookmarks().getBookmarkList(item), true);
             }
 
             if (item instanceof TimeItemId) {
@@ -21,28 +21,29 @@
 import java.io.IOException;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
+import java.util.stream.IntStream;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.LeafReader;
-import org.apache.lucene.index.NumericDocValues;
-import org.apache.lucene.index.SortedDocValues;
-import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import iped.app.ui.FieldOrdsCache.FieldOrds;
+import iped.app.ui.parallelsorter.SortKeyComparator;
 import iped.data.IItemId;
+import iped.data.IMultiBookmarks;
 import iped.engine.localization.CategoryLocalization;
 import iped.engine.search.TimelineResults.TimeItemId;
 import iped.engine.task.index.IndexItem;
 import iped.engine.util.Util;
 import iped.properties.BasicProps;
-import iped.properties.ExtraProperties;
+import iped.search.IMultiSearchResult;
 
-public class RowComparator implements Comparator<Integer> {
+public class RowComparator implements SortKeyComparator<Integer> {
 
     private static Logger LOGGER = LoggerFactory.getLogger(RowComparator.class);
 
@@ -70,6 +71,9 @@ public class RowComparator implements Comparator<Integer> {
     private int[][] ssdvOrds;
     private long[][] sndvOrds;
 
+    private IMultiSearchResult sortKeysResult;
+    private long[] sortKeys;
+
     public static void setLoadDocValues(boolean load) {
         loadDocValues = load;
     }
@@ -118,92 +122,29 @@ private void loadDocValues(String indexedField) {
         try {
             atomicReader = App.get().appCase.getLeafReader();
 
-            SortedDocValues sdv = null;
-            SortedSetDocValues ssdv = null;
-            NumericDocValues ndv = null;
-            SortedNumericDocValues sndv = null;
-
+            FieldOrds ords = FieldOrdsCache.get(indexedField);
+            if (ords == null) {
+                return;
+            }
             if (IndexItem.getMetadataTypes().get(indexedField) == null || !IndexItem.getMetadataTypes().get(indexedField).equals(String.class)) {
-                ndv = atomicReader.getNumericDocValues(indexedField);
-                if (ndv == null) {
-                    sndv = atomicReader.getSortedNumericDocValues(indexedField);
-                }
+                ndvOrds = ords.ndvOrds;
+                sndvOrds = ords.sndvOrds;
             }
-            if (ndv == null && sndv == null) {
-                String prefix = ExtraProperties.LOCATIONS.equals(field) ? IndexItem.GEO_SSDV_PREFIX : "";
-                ssdv = atomicReader.getSortedSetDocValues(prefix + indexedField);
-                if (isCategory) {
-                    localizedCategoryOrds = getLocalizedCategoryOrd(ssdv);
+            if (ndvOrds == null && sndvOrds == null) {
+                ssdvOrds = ords.ssdvOrds;
+                if (ssdvOrds != null && isCategory) {
+                    localizedCategoryOrds = getLocalizedCategoryOrd(atomicReader.getSortedSetDocValues(indexedField));
                 }
             }
-            if (ndv == null && sndv == null && ssdv == null) {
-                sdv = atomicReader.getSortedDocValues(indexedField);
+            if (ndvOrds == null && sndvOrds == null && ssdvOrds == null) {
+                sdvOrds = ords.sdvOrds;
             }
 
-            loadOrds(sdv, ssdv, ndv, sndv);
-
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private void loadOrds(SortedDocValues sdv, SortedSetDocValues ssdv, NumericDocValues ndv, SortedNumericDocValues sndv) throws IOException {
-        int maxDoc = App.get().appCase.getLeafReader().maxDoc();
-        if (sdv != null) {
-            sdvOrds = new int[maxDoc];
-            for (int i = 0; i < maxDoc; i++) {
-                if (sdv.advanceExact(i)) {
-                    sdvOrds[i] = sdv.ordValue();
-                } else {
-                    sdvOrds[i] = -1;
-                }
-            }
-        }
-        if (ndv != null) {
-            ndvOrds = new long[maxDoc];
-            for (int i = 0; i < maxDoc; i++) {
-                if (ndv.advanceExact(i)) {
-                    ndvOrds[i] = ndv.longValue();
-                } else {
-                    ndvOrds[i] = Long.MIN_VALUE;
-                }
-            }
-        }
-        if (ssdv != null) {
-            int[] empty = new int[0];
-            ssdvOrds = new int[maxDoc][];
-            for (int i = 0; i < maxDoc; i++) {
-                if (ssdv.advanceExact(i)) {
-                    ArrayList<Integer> ords = new ArrayList<>();
-                    int ord;
-                    while ((ord = (int) ssdv.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
-                        ords.add(ord);
-                    }
-                    ssdvOrds[i] = new int[ords.size()];
-                    for (int j = 0; j < ords.size(); j++) {
-                        ssdvOrds[i][j] = ords.get(j);
-                    }
-                } else {
-                    ssdvOrds[i] = empty;
-                }
-            }
-        }
-        if (sndv != null) {
-            long[] empty = new long[0];
-            sndvOrds = new long[maxDoc][];
-            for (int i = 0; i < maxDoc; i++) {
-                if (sndv.advanceExact(i)) {
-                    sndvOrds[i] = new long[sndv.docValueCount()];
-                    for (int j = 0; j < sndv.docValueCount(); j++) {
-                        sndvOrds[i][j] = sndv.nextValue();
-                    }
-                } else {
-                    sndvOrds[i] = empty;
-                }
-            }
-        }
-    }
-
     public static int[] getLocalizedCategoryOrd(SortedSetDocValues ssdv) throws IOException {
         int[] localizedOrds = new int[(int) ssdv.getValueCount()];
         ArrayList<String> localizedVals = new ArrayList<>();
@@ -230,6 +171,108 @@ public boolean isStringComparator() {
         return sdvOrds != null || ssdvOrds != null || bookmarkCol;
     }
 
+    /**
+     * Returns a key per result row, ordered as {@link #compare(Integer, Integer)}
+     * orders the rows, computed in parallel. Keys of doc values are cached for
+     * the current result, so sorting again by this column, in any direction, does
+     * not compute them again. Bookmarks may change, so their keys are not cached.
+     * 
+     * @return null if some row has more than one value, so the comparator must
+     *         be used
+     */
+    @Override
+    public synchronized long[] getSortKeys(int rowCount) {
+        IMultiSearchResult result = app.ipedResult;
+        if (sortKeys != null && sortKeysResult == result && sortKeys.length == rowCount) {
+            return sortKeys;
+        }
+        if (rowCount != result.getLength()) {
+            return null;
+        }
+        long[] keys = new long[rowCount];
+        boolean isTimeline = rowCount > 0 && result.getItem(0) instanceof TimeItemId;
+        IntStream rows = IntStream.range(0, rowCount).parallel();
+
+        if (scoreCol) {
+            rows.forEach(i -> keys[i] = getSortableFloat(result.getScore(i)));
+
+        } else if (col == 1) {
+            IMultiBookmarks bookmarks = app.appCase.getMultiBookmarks();
+            rows.forEach(i -> keys[i] = bookmarks.isChecked(result.getItem(i)) ? 0 : 1);
+            return keys;
+
+        } else if (bookmarkCol) {
+            IMultiBookmarks bookmarks = app.appCase.getMultiBookmarks();
+            String[] values = new String[rowCount];
+            rows.forEach(i -> values[i] = Util.concatStrings(bookmarks.getBookmarkList(result.getItem(i))));
+            String[] sortedValues = Arrays.stream(values).distinct().sorted().toArray(String[]::new);
+            IntStream.range(0, rowCount).parallel().forEach(i -> keys[i] = Arrays.binarySearch(sortedValues, values[i]));
+            return keys;
+
+        } else if (isTimeStamp && isTimeline) {
+            rows.forEach(i -> keys[i] = ((TimeItemId) result.getItem(i)).getTimeStampOrd());
+
+        } else if (isTimeEvent && isTimeline) {
+            rows.forEach(i -> keys[i] = ((TimeItemId) result.getItem(i)).getTimeEventOrd());
+
+        } else if (sdvOrds != null) {
+            rows.forEach(i -> keys[i] = sdvOrds[getLuceneId(result, i)]);
+
+        } else if (ssdvOrds != null) {
+            boolean multiValued = rows.anyMatch(i -> {
+                int[] ords = ssdvOrds[getLuceneId(result, i)];
+                if (ords.length > 1) {
+                    return true;
+                }
+                int ord = ords.length == 0 ? -1 : ords[0];
+                if (isCategory && ord > -1) {
+                    ord = localizedCategoryOrds[ord];
+                }
+                keys[i] = ord;
+                return false;
+            });
+            if (multiValued) {
+                return null;
+            }
+
+        } else if (sndvOrds != null) {
+            boolean multiValued = rows.anyMatch(i -> {
+                long[] values = sndvOrds[getLuceneId(result, i)];
+                if (values.length > 1) {
+                    return true;
+                }
+                keys[i] = values.length == 0 ? Long.MIN_VALUE : values[0];
+                return false;
+            });
+            if (multiValued) {
+                return null;
+            }
+
+        } else if (ndvOrds != null) {
+            rows.forEach(i -> keys[i] = ndvOrds[getLuceneId(result, i)]);
+
+        } else {
+            return null;
+        }
+
+        if (Thread.currentThread().isInterrupted())
+            throw new RuntimeException(Messages.getString("RowComparator.SortCanceled")); //$NON-NLS-1$
+
+        sortKeysResult = result;
+        sortKeys = keys;
+        return keys;
+    }
+
+    private int getLuceneId(IMultiSearchResult result, int row) {
+        return app.appCase.getLuceneId(result.getSourceId(row), result.getId(row));
+    }
+
+    private static long getSortableFloat(float value) {
+        // same order of Float.compare()
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
     @Override
     public final int compare(Integer a, Integer b) {
 
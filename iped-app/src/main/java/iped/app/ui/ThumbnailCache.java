@@ -0,0 +1,200 @@
+package iped.app.ui;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.data.IItemId;
+import iped.engine.data.IPEDSource;
+
+/**
+ * Two tier cache of the gallery thumbnails, already scaled and decoded, before
+ * the blur and gray filters. The first tier keeps tiles off heap in direct
+ * buffers, up to a byte budget, evicting the least recently used. The second
+ * one is a {@link ThumbnailTileStore} per case, so thumbnails survive between
+ * sessions without reading them from the index or preview repository again.
+ */
+public class ThumbnailCache {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    private static final String CACHE_FOLDER = "galleryCache"; //$NON-NLS-1$
+
+    // width, height, flags
+    private static final int TILE_HEADER = 12;
+    private static final int HAS_ALPHA = 1;
+
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final int thumbSize;
+
+    private long memoryBytes = 0;
+
+    private final LinkedHashMap<Long, ByteBuffer> memoryTier = new LinkedHashMap<Long, ByteBuffer>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ByteBuffer> eldest) {
+            if (memoryBytes > maxMemoryBytes) {
+                memoryBytes -= eldest.getValue().capacity();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * disk tier by case source id, null values if disabled for the case
+     */
+    private final HashMap<Integer, ThumbnailTileStore> diskTiers = new HashMap<>();
+
+    public ThumbnailCache(long maxMemoryBytes, long maxDiskBytes, int thumbSize) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.thumbSize = thumbSize;
+    }
+
+    /**
+     * Key of the memory tier. The lower bit tells if the video thumb (and not the
+     * first frame) was used, because both may be shown by the gallery.
+     */
+    private static long getKey(IItemId id, boolean videoThumb) {
+        return (long) id.getSourceId() << 33 | (long) id.getId() << 1 | (videoThumb ? 1 : 0);
+    }
+
+    /**
+     * Key of the disk tier, which is per case.
+     */
+    private static long getCaseKey(IItemId id, boolean videoThumb) {
+        return (long) id.getId() << 1 | (videoThumb ? 1 : 0);
+    }
+
+    /**
+     * @return the cached thumbnail, or null if it is not cached
+     */
+    public BufferedImage get(IItemId id, boolean videoThumb) {
+        long key = getKey(id, videoThumb);
+        ByteBuffer tile;
+        synchronized (memoryTier) {
+            tile = memoryTier.get(key);
+        }
+        if (tile == null) {
+            ThumbnailTileStore store = getDiskTier(id.getSourceId());
+            if (store == null || (tile = store.get(getCaseKey(id, videoThumb))) == null) {
+                return null;
+            }
+            tile = putInMemory(key, tile);
+        }
+        return fromTile(tile);
+    }
+
+    public void put(IItemId id, boolean videoThumb, BufferedImage image) {
+        ByteBuffer tile = putInMemory(getKey(id, videoThumb), toTile(image));
+        ThumbnailTileStore store = getDiskTier(id.getSourceId());
+        if (store != null) {
+            store.put(getCaseKey(id, videoThumb), tile.duplicate());
+        }
+    }
+
+    public boolean contains(IItemId id, boolean videoThumb) {
+        synchronized (memoryTier) {
+            return memoryTier.containsKey(getKey(id, videoThumb));
+        }
+    }
+
+    private ByteBuffer putInMemory(long key, ByteBuffer tile) {
+        ByteBuffer direct = ByteBuffer.allocateDirect(tile.remaining());
+        direct.put(tile.duplicate()).flip();
+        synchronized (memoryTier) {
+            memoryBytes += direct.capacity();
+            ByteBuffer old = memoryTier.put(key, direct);
+            if (old != null) {
+                memoryBytes -= old.capacity();
+            }
+        }
+        return direct;
+    }
+
+    private ThumbnailTileStore getDiskTier(int sourceId) {
+        if (maxDiskBytes <= 0) {
+            return null;
+        }
+        synchronized (diskTiers) {
+            if (diskTiers.containsKey(sourceId)) {
+                return diskTiers.get(sourceId);
+            }
+            IPEDSource source = App.get().appCase.getAtomicSourceBySourceId(sourceId);
+            ThumbnailTileStore store = null;
+            String signature = getSignature(source);
+            File dir = new File(source.getModuleDir(), CACHE_FOLDER);
+            try {
+                store = ThumbnailTileStore.open(dir, maxDiskBytes, signature);
+            } catch (IOException e) {
+                // case on read only media
+                dir = new File(System.getProperty("java.io.tmpdir"), "iped-" + CACHE_FOLDER + "-" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                        + Integer.toHexString(source.getModuleDir().getAbsolutePath().hashCode()));
+                try {
+                    store = ThumbnailTileStore.open(dir, maxDiskBytes, signature);
+                } catch (IOException e1) {
+                    LOGGER.warn("Disk cache of gallery thumbnails disabled: {}", e1.toString()); //$NON-NLS-1$
+                }
+            }
+            if (store == null) {
+                LOGGER.info("Disk cache of gallery thumbnails not used for {}", source.getCaseDir()); //$NON-NLS-1$
+            }
+            diskTiers.put(sourceId, store);
+            return store;
+        }
+    }
+
+    /**
+     * Item ids are only valid for the same index, so the index version is part
+     * of the signature of cached tiles.
+     */
+    private String getSignature(IPEDSource source) {
+        IndexReader reader = source.getReader();
+        long version = reader instanceof DirectoryReader ? ((DirectoryReader) reader).getVersion() : 0;
+        return "v1 " + thumbSize + " " + version; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    public void clearMemory() {
+        synchronized (memoryTier) {
+            memoryTier.clear();
+            memoryBytes = 0;
+        }
+    }
+
+    private static ByteBuffer toTile(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, w, h, null, 0, w);
+        ByteBuffer tile = ByteBuffer.allocate(TILE_HEADER + pixels.length * 4);
+        tile.putInt(w).putInt(h).putInt(image.getColorModel().hasAlpha() ? HAS_ALPHA : 0);
+        tile.asIntBuffer().put(pixels);
+        tile.clear();
+        return tile;
+    }
+
+    private static BufferedImage fromTile(ByteBuffer tile) {
+        ByteBuffer buf = tile.duplicate();
+        int w = buf.getInt();
+        int h = buf.getInt();
+        int flags = buf.getInt();
+        BufferedImage image = new BufferedImage(w, h, (flags & HAS_ALPHA) != 0 ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        buf.asIntBuffer().get(data);
+        return image;
+    }
+
+}
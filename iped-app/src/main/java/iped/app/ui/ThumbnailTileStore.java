@@ -0,0 +1,296 @@
+package iped.app.ui;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On disk tier of the gallery thumbnail cache of a case. Stores tiles, the
+ * decoded pixels of scaled thumbnails, so reading one back is a memory copy.
+ * Tiles are appended to a ring of memory mapped segment files of fixed size,
+ * created as the previous ones get full, so disk space is used as the cache
+ * grows. When the last segment is full the oldest one is reused, so disk usage
+ * is bounded and mapped files are never deleted (not possible on Windows).
+ */
+public class ThumbnailTileStore implements Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ThumbnailTileStore.class);
+
+    private static final int NUM_SEGMENTS = 8;
+    private static final int MIN_SEGMENT_SIZE = 8 << 20;
+
+    private static final int SEGMENT_MAGIC = 0x54534547; // TSEG
+    private static final int RECORD_MAGIC = 0x54494C45; // TILE
+
+    // magic, unused, generation
+    private static final int SEGMENT_HEADER = 16;
+    // magic, key, tile length
+    private static final int RECORD_HEADER = 16;
+
+    private static final String INFO_FILE = "cache.info"; //$NON-NLS-1$
+    private static final String LOCK_FILE = "cache.lock"; //$NON-NLS-1$
+
+    private final File dir;
+    private final int segmentSize;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final FileChannel[] channels = new FileChannel[NUM_SEGMENTS];
+    private final MappedByteBuffer[] segments = new MappedByteBuffer[NUM_SEGMENTS];
+    private final long[] generations = new long[NUM_SEGMENTS];
+
+    @SuppressWarnings("unchecked")
+    private final List<Long>[] segmentKeys = new List[NUM_SEGMENTS];
+
+    /**
+     * key -> segment << 32 | record offset
+     */
+    private final HashMap<Long, Long> index = new HashMap<>();
+
+    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+
+    private int current;
+    private int position;
+
+    /**
+     * Opens the store in the directory, discarding the tiles stored with a
+     * different signature, e.g. of an older index or thumb size.
+     *
+     * @return null if the store is already in use
+     */
+    public static ThumbnailTileStore open(File dir, long maxBytes, String signature) throws IOException {
+        dir.mkdirs();
+        FileChannel lockChannel = new RandomAccessFile(new File(dir, LOCK_FILE), "rw").getChannel(); //$NON-NLS-1$
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // already opened by this process
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            return null;
+        }
+        try {
+            return new ThumbnailTileStore(dir, maxBytes, signature, lockChannel, lock);
+        } catch (IOException | RuntimeException e) {
+            lock.release();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    private ThumbnailTileStore(File dir, long maxBytes, String signature, FileChannel lockChannel, FileLock lock)
+            throws IOException {
+        this.dir = dir;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+        this.segmentSize = (int) Math.max(MIN_SEGMENT_SIZE, Math.min(Integer.MAX_VALUE, maxBytes / NUM_SEGMENTS));
+
+        File info = new File(dir, INFO_FILE);
+        String expectedInfo = signature + " " + segmentSize; //$NON-NLS-1$
+        boolean valid = info.exists() && expectedInfo.equals(new String(Files.readAllBytes(info.toPath()), StandardCharsets.UTF_8));
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < NUM_SEGMENTS; i++) {
+            segmentKeys[i] = new ArrayList<>();
+            File file = getSegmentFile(i);
+            if (!file.exists()) {
+                continue;
+            }
+            if ((!valid || file.length() != segmentSize) && file.delete()) {
+                // not mapped yet, so it could be deleted, created again when needed
+                continue;
+            }
+            openSegment(i);
+            if (!valid || segments[i].getInt(0) != SEGMENT_MAGIC) {
+                resetSegment(i, -1);
+            }
+            generations[i] = segments[i].getLong(8);
+            order.add(i);
+        }
+        if (!valid) {
+            Files.write(info.toPath(), expectedInfo.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // older segments first, so newer tiles of the same key win
+        order.sort((a, b) -> Long.compare(generations[a], generations[b]));
+        for (int i : order) {
+            int end = scanSegment(i);
+            current = i;
+            position = end;
+        }
+        if (order.isEmpty()) {
+            openSegment(0);
+            resetSegment(0, 0);
+            current = 0;
+            position = SEGMENT_HEADER;
+        }
+        if (generations[current] < 0) {
+            resetSegment(current, 0);
+        }
+        LOGGER.info("Gallery thumbnail cache {} opened with {} tiles", dir.getAbsolutePath(), index.size()); //$NON-NLS-1$
+    }
+
+    private File getSegmentFile(int segment) {
+        return new File(dir, "tiles-" + segment + ".dat"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private void openSegment(int segment) throws IOException {
+        channels[segment] = new RandomAccessFile(getSegmentFile(segment), "rw").getChannel(); //$NON-NLS-1$
+        segments[segment] = channels[segment].map(MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private void resetSegment(int segment, long generation) {
+        MappedByteBuffer buf = segments[segment];
+        buf.putInt(SEGMENT_HEADER, 0);
+        buf.putLong(8, generation);
+        buf.putInt(4, 0);
+        buf.putInt(0, SEGMENT_MAGIC);
+        generations[segment] = generation;
+    }
+
+    /**
+     * Indexes the records of the segment.
+     *
+     * @return the offset after the last record
+     */
+    private int scanSegment(int segment) {
+        MappedByteBuffer buf = segments[segment];
+        int pos = SEGMENT_HEADER;
+        while (pos + RECORD_HEADER <= segmentSize && buf.getInt(pos) == RECORD_MAGIC) {
+            long key = buf.getLong(pos + 4);
+            int len = buf.getInt(pos + 12);
+            if (len <= 0 || len > segmentSize - pos - RECORD_HEADER) {
+                break;
+            }
+            index.put(key, (long) segment << 32 | pos);
+            segmentKeys[segment].add(key);
+            pos += RECORD_HEADER + len;
+        }
+        return pos;
+    }
+
+    /**
+     * @return a copy of the tile stored with the key, or null if not found
+     */
+    public ByteBuffer get(long key) {
+        rwLock.readLock().lock();
+        try {
+            Long location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            ByteBuffer buf = segments[(int) (location >>> 32)].duplicate();
+            int pos = (int) location.longValue();
+            if (buf.getInt(pos) != RECORD_MAGIC || buf.getLong(pos + 4) != key) {
+                return null;
+            }
+            int len = buf.getInt(pos + 12);
+            buf.position(pos + RECORD_HEADER).limit(pos + RECORD_HEADER + len);
+            ByteBuffer tile = ByteBuffer.allocate(len);
+            tile.put(buf).flip();
+            return tile;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores a tile, from its position to its limit. Tiles larger than a
+     * segment are ignored.
+     */
+    public void put(long key, ByteBuffer tile) {
+        int len = tile.remaining();
+        if (RECORD_HEADER + len + 4 > segmentSize - SEGMENT_HEADER) {
+            return;
+        }
+        rwLock.writeLock().lock();
+        try {
+            if (position + RECORD_HEADER + len + 4 > segmentSize) {
+                try {
+                    nextSegment();
+                } catch (IOException e) {
+                    LOGGER.warn("Error creating gallery thumbnail cache segment: {}", e.toString()); //$NON-NLS-1$
+                    return;
+                }
+            }
+            ByteBuffer buf = segments[current].duplicate();
+            buf.putLong(position + 4, key);
+            buf.putInt(position + 12, len);
+            buf.position(position + RECORD_HEADER);
+            buf.put(tile.duplicate());
+            // end marker, then the record magic, so a partial record is not read
+            buf.putInt(position + RECORD_HEADER + len, 0);
+            buf.putInt(position, RECORD_MAGIC);
+
+            index.put(key, (long) current << 32 | position);
+            segmentKeys[current].add(key);
+            position += RECORD_HEADER + len;
+
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        int next = (current + 1) % NUM_SEGMENTS;
+        if (segments[next] == null) {
+            openSegment(next);
+        }
+        long generation = generations[current] + 1;
+        current = next;
+        for (Long key : segmentKeys[current]) {
+            Long location = index.get(key);
+            if (location != null && (int) (location >>> 32) == current) {
+                index.remove(key);
+            }
+        }
+        segmentKeys[current].clear();
+        resetSegment(current, generation);
+        position = SEGMENT_HEADER;
+    }
+
+    public int size() {
+        rwLock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        rwLock.writeLock().lock();
+        try {
+            for (int i = 0; i < NUM_SEGMENTS; i++) {
+                if (channels[i] != null) {
+                    segments[i].force();
+                    channels[i].close();
+                }
+            }
+            lock.release();
+            lockChannel.close();
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+}
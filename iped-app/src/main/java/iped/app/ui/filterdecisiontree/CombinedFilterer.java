@@ -200,32 +200,13 @@ public IMultiSearchResult getSearchResult(IMultiSearchResult input) {
             e.printStackTrace();
         }
 
-        LinkedHashSet<IItemId> ids = new LinkedHashSet<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        float[] primitiveScores;
-
+        MultiSearchResult result;
         if (resultBitSet != null) {
-            int i = 0;
-            while (i < input.getLength()) {
-                IItemId itemId = input.getItem(i);
-                if (resultBitSet[itemId.getSourceId()].contains(itemId.getId())) {
-                    ids.add(itemId);
-                    scores.add(input.getScore(i));
-                }
-                i++;
-            }
-
-            primitiveScores = new float[scores.size()];
-            i = 0;
-            for (Float f : scores) {
-                primitiveScores[i++] = f;
-            }
+            result = ((MultiSearchResult) input).filter(resultBitSet, false);
         } else {
-            primitiveScores = new float[0];
+            result = new MultiSearchResult();
         }
 
-        MultiSearchResult result = new MultiSearchResult(ids.toArray(new IItemId[0]), primitiveScores);
-
         return result;
     }
 
@@ -238,30 +219,7 @@ public OperandNode getRootNode() {
     }
 
     public MultiSearchResult resultSetIntersection(MultiSearchResult input, MultiSearchResult rs) {
-        LinkedHashSet<IItemId> ids = new LinkedHashSet<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-
-        int i = 0;
-        while (i < input.getLength()) {
-            IItemId itemId = input.getItem(i);
-            if (rs.hasDocId(input.getIPEDSource().getLuceneId(itemId))) {
-                if (!ids.contains(itemId)) {
-                    ids.add(itemId);
-                    scores.add(input.getScore(i));
-                }
-            }
-            i++;
-        }
-
-        float[] primitiveScores = new float[scores.size()];
-        i = 0;
-        for (Float f : scores) {
-            primitiveScores[i++] = f;
-        }
-
-        MultiSearchResult result = new MultiSearchResult(ids.toArray(new IItemId[0]), primitiveScores);
-
-        return result;
+        return input.intersect(rs);
     }
 
     class CombinedBitSet implements Future<RoaringBitmap[]> {
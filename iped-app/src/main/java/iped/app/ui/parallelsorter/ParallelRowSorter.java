@@ -568,7 +568,7 @@ private synchronized void sortExistingData() {
         } else {
             // sort the data
             // patch
-            Arrays.parallelSort(viewToModel, new RowComparator(this));
+            sortViewToModel();
 
             // Update the modelToView array
             setModelToViewFromViewToModel(false);
@@ -621,7 +621,7 @@ public synchronized void sort() {
 
             // sort them
             // patch
-            Arrays.parallelSort(viewToModel, new RowComparator(this));
+            sortViewToModel();
 
             // Update the modelToView array
             setModelToViewFromViewToModel(false);
@@ -631,6 +631,50 @@ public synchronized void sort() {
         sortingUpdated = true;
     }
 
+    /**
+     * Sorts viewToModel by the primitive keys of the sort comparators, if all of
+     * them give keys, or with the comparators otherwise.
+     */
+    private void sortViewToModel() {
+        long[][] keys = getPrimitiveSortKeys();
+        if (keys == null) {
+            Arrays.parallelSort(viewToModel, new RowComparator(this));
+            return;
+        }
+        boolean[] descending = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            descending[i] = cachedSortKeys[i].getSortOrder() == SortOrder.DESCENDING;
+        }
+        int[] rows = PrimitiveRowSort.sort(getViewToModelAsInts(viewToModel), keys, descending);
+        for (int i = 0; i < rows.length; i++) {
+            viewToModel[i].modelIndex = rows[i];
+        }
+    }
+
+    /**
+     * @return the primitive keys of the cached sort keys, or null if some
+     *         comparator does not provide them
+     */
+    private long[][] getPrimitiveSortKeys() {
+        List<long[]> keys = new ArrayList<>();
+        for (int counter = 0; counter < cachedSortKeys.length; counter++) {
+            int column = cachedSortKeys[counter].getColumn();
+            if (cachedSortKeys[counter].getSortOrder() == SortOrder.UNSORTED) {
+                // next keys are never compared, model order is used
+                break;
+            }
+            if (useToString[column] || !(sortComparators[counter] instanceof SortKeyComparator)) {
+                return null;
+            }
+            long[] columnKeys = ((SortKeyComparator<?>) sortComparators[counter]).getSortKeys(getModelWrapper().getRowCount());
+            if (columnKeys == null) {
+                return null;
+            }
+            keys.add(columnKeys);
+        }
+        return keys.toArray(new long[0][]);
+    }
+
     /**
      * Updates the useToString mapping before a sort.
      */
@@ -0,0 +1,73 @@
+package iped.app.ui.parallelsorter;
+
+import java.util.Arrays;
+
+/**
+ * Stable LSD radix sort of model rows by primitive sort keys, from the last
+ * sort key to the first, so ties of each key keep the order given by the next
+ * ones, and finally the model order. Only the bytes that differ between the
+ * keys of the rows are sorted, so ords and small ranges of values need few
+ * passes.
+ */
+public class PrimitiveRowSort {
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    /**
+     * @param rows
+     *            model rows to sort, in any order
+     * @param keys
+     *            for each sort key, the key of each model row
+     * @param descending
+     *            for each sort key, if its order is descending
+     * @return the sorted rows
+     */
+    public static int[] sort(int[] rows, long[][] keys, boolean[] descending) {
+        rows = rows.clone();
+        Arrays.parallelSort(rows);
+        int n = rows.length;
+        if (n < 2) {
+            return rows;
+        }
+        int[] rowsBuf = new int[n];
+        long[] ukeys = new long[n];
+        long[] ukeysBuf = new long[n];
+        for (int k = keys.length - 1; k >= 0; k--) {
+            long[] key = keys[k];
+            boolean desc = descending[k];
+            long diff = 0;
+            for (int i = 0; i < n; i++) {
+                long val = key[rows[i]];
+                // complement reverses the order, flipping the sign bit turns signed into unsigned order
+                ukeys[i] = (desc ? ~val : val) ^ Long.MIN_VALUE;
+                diff |= ukeys[i] ^ ukeys[0];
+            }
+            for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+                if (((diff >>> shift) & (RADIX - 1)) == 0) {
+                    continue;
+                }
+                int[] count = new int[RADIX + 1];
+                for (int i = 0; i < n; i++) {
+                    count[(int) ((ukeys[i] >>> shift) & (RADIX - 1)) + 1]++;
+                }
+                for (int b = 0; b < RADIX; b++) {
+                    count[b + 1] += count[b];
+                }
+                for (int i = 0; i < n; i++) {
+                    int pos = count[(int) ((ukeys[i] >>> shift) & (RADIX - 1))]++;
+                    rowsBuf[pos] = rows[i];
+                    ukeysBuf[pos] = ukeys[i];
+                }
+                int[] tmpRows = rows;
+                rows = rowsBuf;
+                rowsBuf = tmpRows;
+                long[] tmpKeys = ukeys;
+                ukeys = ukeysBuf;
+                ukeysBuf = tmpKeys;
+            }
+        }
+        return rows;
+    }
+
+}
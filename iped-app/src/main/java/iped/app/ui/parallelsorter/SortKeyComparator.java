@@ -0,0 +1,20 @@
+package iped.app.ui.parallelsorter;
+
+import java.util.Comparator;
+
+/**
+ * Comparator of model rows that is also able to give one primitive key per
+ * model row, ordered as the comparator orders the rows. This allows sorting
+ * rows with {@link PrimitiveRowSort} without calling the comparator.
+ */
+public interface SortKeyComparator<T> extends Comparator<T> {
+
+    /**
+     * @param rowCount
+     *            number of rows of the model
+     * @return the sort key of each model row, or null if rows can not be
+     *         ordered by a single primitive key, so the comparator must be used
+     */
+    long[] getSortKeys(int rowCount);
+
+}
@@ -1,22 +1,36 @@
 package iped.app.ui.viewers;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JLabel;
 
 import org.exbin.deltahex.highlight.swing.HighlightCodeAreaPainter;
 import org.exbin.deltahex.highlight.swing.HighlightCodeAreaPainter.SearchMatch;
 import org.exbin.deltahex.swing.CodeArea;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import iped.app.ui.App;
 import iped.app.ui.Messages;
+import iped.engine.task.carver.CarverAutomaton;
+import iped.io.IStreamSource;
 import iped.io.SeekableInputStream;
 import iped.viewers.HexViewerPlus.HexSearcher;
 import iped.viewers.HexViewerPlus.Hits;
@@ -30,22 +44,44 @@
 
 public class HexSearcherImpl implements HexSearcher {
 
-    // Realiza busca simples com algoritmo KMP
-    public void doSearch(CodeArea codeArea, HighlightCodeAreaPainter painter, Hits hits, SeekableInputStream data,
+    private static Logger LOGGER = LoggerFactory.getLogger(HexSearcherImpl.class);
+
+    // Data is split in ranges of this size, searched in parallel
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    // Reading is usually the bottleneck, more threads do not help
+    private static final int MAX_THREADS = 8;
+
+    // Ranges searched ahead of the last one returned, per thread
+    private static final int CHUNKS_AHEAD_PER_THREAD = 4;
+
+    private static final int MAX_CASE_VARIANTS = 256;
+
+    // Busca todos os termos juntos com automato Aho-Corasick, em paralelo
+    public void doSearch(CodeArea codeArea, HighlightCodeAreaPainter painter, Hits hits, IStreamSource data,
             Charset charset, Set<String> highlightTerms, long offset, boolean searchString, boolean ignoreCaseSearch,
             JLabel resultSearch, int max_hits) throws Exception {
 
+        // hits are shown as they are found, so clear the previous ones now
+        painter.clearMatches();
+        hits.totalHits = 0;
+        hits.currentHit = 0;
+        resultSearch.setText("");
+        codeArea.repaint();
+
         GetResultsSearch getSearch = new GetResultsSearch(codeArea, painter, hits, data, charset, highlightTerms,
                 offset, searchString, ignoreCaseSearch, resultSearch, max_hits);
         getSearch.execute();
 
     }
 
-    static class GetResultsSearch extends CancelableWorker<String, Integer> {
+    static class GetResultsSearch extends CancelableWorker<String, List<SearchMatch>> {
 
         private ProgressDialog progressMonitor;
         private int max_terms = 10000;
-        SeekableInputStream data;
+        IStreamSource data;
         Charset charset;
         Set<String> highlightTerms;
         long offset;
@@ -58,7 +94,15 @@ static class GetResultsSearch extends CancelableWorker<String, Integer> {
         JLabel resultSearch;
         private int max_hits;
 
-        GetResultsSearch(CodeArea codeArea, HighlightCodeAreaPainter painter, Hits hits, SeekableInputStream data,
+        private volatile boolean stop = false;
+
+        // one stream per search thread, reused between ranges
+        private ConcurrentLinkedQueue<SeekableInputStream> streams = new ConcurrentLinkedQueue<>();
+
+        // accessed just in the EDT
+        private List<SearchMatch> hitsEncontrados = new ArrayList<>();
+
+        GetResultsSearch(CodeArea codeArea, HighlightCodeAreaPainter painter, Hits hits, IStreamSource data,
                 Charset charset, Set<String> highlightTerms, long offset, boolean searchString,
                 boolean ignoreCaseSearch, JLabel resultSearch, int max_hits) {
 
@@ -73,7 +117,7 @@ static class GetResultsSearch extends CancelableWorker<String, Integer> {
             this.ignoreCaseSearch = ignoreCaseSearch;
             this.app = App.get();
             this.resultSearch = resultSearch;
-            this.max_hits = max_hits;
+            this.max_hits = Math.min(max_hits, max_terms);
 
         }
 
@@ -81,189 +125,307 @@ static class GetResultsSearch extends CancelableWorker<String, Integer> {
         public void done() {
             if (progressMonitor != null)
                 progressMonitor.close();
-        }
-
-        @Override
-        protected String doInBackground() throws Exception {
 
-            long dataSize = data.size();
-
-            boolean interromper = false;
+            try {
+                get();
+            } catch (CancellationException | InterruptedException e) {
+                // canceled by user
+            } catch (ExecutionException e) {
+                LOGGER.error("Error searching hex viewer data", e.getCause()); //$NON-NLS-1$
+            }
 
-            // Implementacao do ProgressDialog com duas linhas para mensagens
-            // progressMonitor = new ProgressDialog(app, this);
+            if (hitsEncontrados.isEmpty()) {
+                resultSearch.setText(Messages.getString("HexSearcherImpl.noHits"));
+            }
+            codeArea.repaint();
+        }
 
-            progressMonitor = new ProgressDialog(app, this, 2);
+        @Override
+        protected void process(List<List<SearchMatch>> chunks) {
 
-            List<SearchMatch> hitsEncontrados = new ArrayList();
+            boolean first = hitsEncontrados.isEmpty();
+            for (List<SearchMatch> matches : chunks) {
+                hitsEncontrados.addAll(matches);
+            }
+            if (hitsEncontrados.isEmpty()) {
+                return;
+            }
 
-            long posicao = offset;
+            painter.setMatches(new ArrayList<>(hitsEncontrados));
+            hits.totalHits = hitsEncontrados.size();
 
-            if (progressMonitor != null) {
-                progressMonitor.setMaximum(dataSize);
+            if (first) {
+                hits.currentHit = 0;
+                painter.setCurrentMatchIndex(hits.currentHit);
+                HighlightCodeAreaPainter.SearchMatch firstMatch = painter.getCurrentMatch();
+                codeArea.revealPosition(firstMatch.getPosition(), codeArea.getActiveSection());
+                codeArea.setCaretPosition(firstMatch.getPosition() + firstMatch.getLength());
+            } else {
+                // keep the hit the user may have navigated to meanwhile
+                painter.setCurrentMatchIndex(hits.currentHit);
             }
+            resultSearch.setText(Messages.getString("HexSearcherImpl.hit") + " " + (hits.currentHit + 1) + " "
+                    + Messages.getString("HexSearcherImpl.of") + " " + hits.totalHits);
 
-            byte[] bufferTexto = null;
-
-            int maxTermLength = -1;
-            int bufferLength = 4 * 1024;
+            codeArea.repaint();
+        }
 
-            Set<String> palavras = new HashSet<String>();
+        @Override
+        protected String doInBackground() throws Exception {
 
-            for (String texto : highlightTerms) {
-                palavras.add(texto);
+            byte[] foldTable = searchString && ignoreCaseSearch ? createFoldTable(charset) : null;
+            List<byte[]> patterns = createPatterns(foldTable);
+            if (patterns.isEmpty()) {
+                return null;
             }
+            CarverAutomaton automaton = CarverAutomaton.compile(patterns, foldTable);
 
-            for (String texto : palavras) {
-                if (maxTermLength < texto.length())
-                    maxTermLength = texto.length();
+            long dataSize;
+            try (SeekableInputStream is = data.getSeekableInputStream()) {
+                dataSize = is.size();
             }
 
-            if (maxTermLength > bufferLength) {
-                bufferLength = maxTermLength;
-            }
+            // Implementacao do ProgressDialog com duas linhas para mensagens
+            progressMonitor = new ProgressDialog(app, this, 2);
+            progressMonitor.setMaximum(dataSize);
 
-            byte[] buffer = new byte[bufferLength + maxTermLength];
-            int tempLength = 0;
+            long numChunks = (dataSize - offset + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            int numThreads = (int) Math.max(1,
+                    Math.min(numChunks, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())));
+            ExecutorService executor = Executors.newFixedThreadPool(numThreads);
 
-            List<Integer> hitsKMP = null;
+            // ranges are submitted and returned in offset order, so hits are shown
+            // sorted while the following ranges are searched
+            ArrayDeque<Future<List<SearchMatch>>> pending = new ArrayDeque<>();
+            long nextChunk = offset;
+            long posicao = offset;
+            int totalFound = 0;
 
             long start = System.currentTimeMillis();
-            long seconds = 0;
             long bytesInOneSecond = 0;
-            long timePassed = 0;
             String timeLeftString = "";
-            long timeLeft = 0;
-
-            SEARCH: while (posicao < dataSize - bufferLength) {
-
-                tempLength = bufferLength + maxTermLength;
-
-                data.seek(posicao);
-                int n = data.readNBytes(buffer, 0, tempLength);
-
-                for (String texto : palavras) {
-
-                    if (n > 0) {
-
-                        if (searchString) {
-                            bufferTexto = texto.getBytes(charset);
-                        } else {
-                            bufferTexto = hexStringToByteArray(texto);
-                        }
-
-                        hitsKMP = searchBytes(bufferTexto, buffer, bufferLength + texto.length() - 1,
-                                (searchString && ignoreCaseSearch));
-
-                        for (int off : hitsKMP) {
 
-                            HighlightCodeAreaPainter.SearchMatch match = new HighlightCodeAreaPainter.SearchMatch();
-                            match.setPosition(posicao + off);
+            try {
+                while (!stop) {
+                    while (nextChunk < dataSize && pending.size() < numThreads * CHUNKS_AHEAD_PER_THREAD) {
+                        long chunkStart = nextChunk;
+                        long chunkEnd = Math.min(dataSize, chunkStart + CHUNK_SIZE);
+                        int limit = max_hits - totalFound;
+                        pending.add(executor.submit(() -> searchRange(automaton, chunkStart, chunkEnd, dataSize, limit)));
+                        nextChunk = chunkEnd;
+                    }
+                    Future<List<SearchMatch>> future = pending.poll();
+                    if (future == null) {
+                        break;
+                    }
+                    List<SearchMatch> matches = future.get();
+                    if (totalFound + matches.size() >= max_hits) {
+                        matches = matches.subList(0, max_hits - totalFound);
+                        stop = true;
+                    }
+                    totalFound += matches.size();
+                    if (!matches.isEmpty()) {
+                        publish(new ArrayList<>(matches));
+                    }
 
-                            match.setLength((searchString) ? texto.length() : bufferTexto.length);
-                            if ((hitsEncontrados.size() != max_terms)) {
-                                hitsEncontrados.add(match);
-                            }
+                    long chunkEnd = Math.min(dataSize, posicao + CHUNK_SIZE);
+                    bytesInOneSecond += chunkEnd - posicao;
+                    posicao = chunkEnd;
 
-                            if (hitsEncontrados.size() == max_hits) {
-                                interromper = true;
-                                break SEARCH;
-                            }
+                    long millis = System.currentTimeMillis() - start;
+                    if (millis >= 1000) {
+                        long timeLeft = (long) ((dataSize - posicao) / ((double) bytesInOneSecond / millis));
+                        timeLeftString = Messages.getString("HexSearcherImpl.timeLeft") + ": " + formatTime(timeLeft);
+                        bytesInOneSecond = 0;
+                        start = System.currentTimeMillis();
+                    }
 
-                        }
-                        hitsKMP = null;
+                    progressMonitor.setProgress(posicao);
+                    progressMonitor.setNote("<html><body>" + totalFound + " "
+                            + Messages.getString("HexSearcherImpl.hits") + "<br>" + timeLeftString + "</body></html>");
+                    if (progressMonitor.isCanceled() || isCancelled()) {
+                        stop = true;
                     }
                 }
-                posicao += bufferLength;
-
-                seconds = (System.currentTimeMillis() - start);
-                bytesInOneSecond += bufferLength;
-                if (seconds >= 1000) {
-                    timePassed += seconds;
-                    timeLeft = (bytesInOneSecond != 0)
-                            ? (long) (((double) dataSize - (double) posicao)
-                                    / (((double) bytesInOneSecond / 1000) / ((double) seconds / 1000)))
-                            : 359999000;
-                    timeLeftString = Messages.getString("HexSearcherImpl.timeLeft") + ": " + formatTime(timeLeft);
-                    bytesInOneSecond = 0;
-                    start = System.currentTimeMillis();
+            } catch (InterruptedException e) {
+                // canceled
+                stop = true;
+
+            } finally {
+                // threads are not interrupted, as that could close the underlying channels
+                stop = true;
+                executor.shutdown();
+                try {
+                    executor.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    // ignore
                 }
-
-                if (progressMonitor != null) {
-                    progressMonitor.setProgress(posicao + 1);
-                    progressMonitor.setNote("<html><body>" + hitsEncontrados.size() + " "
-                            + Messages.getString("HexSearcherImpl.hits") + "<br>" + timeLeftString + "</body></html>");
-                    if (progressMonitor.isCanceled()) {
-                        interromper = true;
-                        break;
+                SeekableInputStream is;
+                while ((is = streams.poll()) != null) {
+                    try {
+                        is.close();
+                    } catch (IOException e) {
+                        // ignore
                     }
                 }
             }
 
-            // Busca no que sobrou do dos dados e passaria do buffer
-            tempLength = (int) (dataSize - posicao);
-
-            LEFT: if (!interromper && tempLength > 0) {
-
-                data.seek(posicao);
-                int n = data.readNBytes(buffer, 0, tempLength);
+            return null;
 
-                if (n > 0) {
+        }
 
-                    for (String texto : palavras) {
+        /**
+         * Returns the first limit matches starting in [start, end), sorted by
+         * position. Reading continues after end to find matches crossing it.
+         */
+        private List<SearchMatch> searchRange(CarverAutomaton automaton, long start, long end, long dataSize,
+                int limit) throws IOException {
 
-                        if (searchString) {
-                            bufferTexto = texto.getBytes(charset);
-                        } else {
-                            bufferTexto = hexStringToByteArray(texto);
+            List<SearchMatch> matches = new ArrayList<>();
+            if (stop) {
+                return matches;
+            }
+            SeekableInputStream is = streams.poll();
+            if (is == null) {
+                is = data.getSeekableInputStream();
+            }
+            try {
+                int maxLength = automaton.getMaxPatternLength();
+                long scanEnd = Math.min(dataSize, end + maxLength - 1);
+                byte[] buffer = new byte[(int) Math.min(READ_BUFFER_SIZE, scanEnd - start)];
+                CarverAutomaton.Hits hits = new CarverAutomaton.Hits();
+                int state = CarverAutomaton.ROOT;
+                long posicao = start;
+                is.seek(start);
+
+                while (posicao < scanEnd && !stop) {
+                    int n = is.readNBytes(buffer, 0, (int) Math.min(buffer.length, scanEnd - posicao));
+                    if (n <= 0) {
+                        break;
+                    }
+                    hits.clear();
+                    state = automaton.scan(buffer, 0, n, 0, state, hits);
+                    for (int h = 0; h < hits.size(); h++) {
+                        int hitState = hits.getState(h);
+                        for (int o = automaton.getOutputStart(hitState); o < automaton.getOutputEnd(hitState); o++) {
+                            int length = automaton.getPatternLength(automaton.getOutput(o));
+                            long matchStart = posicao + hits.getEnd(h) - length;
+                            if (matchStart >= start && matchStart < end) {
+                                SearchMatch match = new SearchMatch();
+                                match.setPosition(matchStart);
+                                match.setLength(length);
+                                matches.add(match);
+                            }
                         }
+                    }
+                    posicao += n;
+                    if (matches.size() >= limit) {
+                        // matches found are ordered by end position, longer ones
+                        // starting before here may still end ahead
+                        scanEnd = Math.min(scanEnd, posicao + maxLength - 1);
+                    }
+                }
+            } finally {
+                streams.add(is);
+            }
 
-                        hitsKMP = searchBytes(bufferTexto, buffer, tempLength, (searchString && ignoreCaseSearch));
-
-                        for (int off : hitsKMP) {
-
-                            HighlightCodeAreaPainter.SearchMatch match = new HighlightCodeAreaPainter.SearchMatch();
-                            match.setPosition(posicao + off);
-                            match.setLength((searchString) ? texto.length() : bufferTexto.length);
-                            if ((hitsEncontrados.size() != max_terms)) {
-                                hitsEncontrados.add(match);
-                            }
-                            if (hitsEncontrados.size() == max_hits) {
-                                interromper = true;
-                                break LEFT;
-                            }
+            matches.sort(new SearchMatchComparator());
+            if (matches.size() > limit) {
+                matches = matches.subList(0, limit);
+            }
+            return matches;
+        }
 
+        private List<byte[]> createPatterns(byte[] foldTable) {
+            Map<String, byte[]> patterns = new LinkedHashMap<>();
+            for (String texto : highlightTerms) {
+                if (!searchString) {
+                    addPattern(patterns, hexStringToByteArray(texto));
+                } else if (foldTable == null) {
+                    addPattern(patterns, texto.getBytes(charset));
+                } else {
+                    for (String variant : getCaseVariants(texto)) {
+                        byte[] bytes = variant.getBytes(charset);
+                        for (int i = 0; i < bytes.length; i++) {
+                            bytes[i] = foldTable[bytes[i] & 0xFF];
                         }
-
-                        hitsKMP = null;
+                        addPattern(patterns, bytes);
                     }
-
                 }
-
             }
+            return new ArrayList<>(patterns.values());
+        }
 
-            Collections.sort(hitsEncontrados, new SearchMatchComparator());
+        private static void addPattern(Map<String, byte[]> patterns, byte[] bytes) {
+            if (bytes.length > 0) {
+                patterns.put(new String(bytes, StandardCharsets.ISO_8859_1), bytes);
+            }
+        }
 
-            painter.clearMatches();
-            painter.setMatches(hitsEncontrados);
-            hits.totalHits = hitsEncontrados.size();
+        private static boolean isSingleByte(Charset charset) {
+            return charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1;
+        }
 
-            if (hits.totalHits > 0) {
-                hits.currentHit = 0;
-                painter.setCurrentMatchIndex(hits.currentHit);
-                HighlightCodeAreaPainter.SearchMatch firstMatch = painter.getCurrentMatch();
-                codeArea.revealPosition(firstMatch.getPosition(), codeArea.getActiveSection());
-                codeArea.setCaretPosition(firstMatch.getPosition() + firstMatch.getLength());
-                resultSearch.setText(Messages.getString("HexSearcherImpl.hit") + " " + (hits.currentHit + 1) + " "
-                        + Messages.getString("HexSearcherImpl.of") + " " + hits.totalHits);
+        /**
+         * Maps each byte to its lowercase version. Single byte charsets have all
+         * their letters folded, other charsets just the ASCII ones, as the previous
+         * byte by byte search did. Other letters of those are handled by
+         * {@link #getCaseVariants(String)}.
+         */
+        private static byte[] createFoldTable(Charset charset) {
+            byte[] fold = new byte[256];
+            for (int b = 0; b < 256; b++) {
+                fold[b] = (byte) b;
+            }
+            if (isSingleByte(charset)) {
+                for (int b = 0; b < 256; b++) {
+                    String s = new String(new byte[] { (byte) b }, charset);
+                    if (s.length() != 1 || s.charAt(0) == '\uFFFD') {
+                        continue;
+                    }
+                    String lower = String.valueOf(Character.toLowerCase(s.charAt(0)));
+                    byte[] encoded = lower.getBytes(charset);
+                    if (encoded.length == 1 && new String(encoded, charset).equals(lower)) {
+                        fold[b] = encoded[0];
+                    }
+                }
             } else {
-                resultSearch.setText(Messages.getString("HexSearcherImpl.noHits"));
+                for (int b = 'A'; b <= 'Z'; b++) {
+                    fold[b] = (byte) Character.toLowerCase(b);
+                }
             }
+            return fold;
+        }
 
-            codeArea.repaint();
-
-            return null;
-
+        /**
+         * Returns the term with non ASCII letters in lower and upper case, for
+         * multibyte charsets, where they can not be folded byte by byte.
+         */
+        private Set<String> getCaseVariants(String texto) {
+            Set<String> variants = new LinkedHashSet<>();
+            variants.add(texto);
+            if (isSingleByte(charset)) {
+                return variants;
+            }
+            for (int i = 0; i < texto.length(); i++) {
+                char c = texto.charAt(i);
+                char lower = Character.toLowerCase(c);
+                char upper = Character.toUpperCase(c);
+                if (c < 128 || lower == upper) {
+                    continue;
+                }
+                if (variants.size() * 2 > MAX_CASE_VARIANTS) {
+                    break;
+                }
+                for (String variant : new ArrayList<>(variants)) {
+                    char[] chars = variant.toCharArray();
+                    chars[i] = lower;
+                    variants.add(new String(chars));
+                    chars[i] = upper;
+                    variants.add(new String(chars));
+                }
+            }
+            return variants;
         }
 
         private String formatTime(long time) {
@@ -279,30 +441,6 @@ private String formatTime(long time) {
 
         }
 
-        public void permuteCaseText(String input, Set<String> palavras, Locale locale) {
-            int n = input.length();
-
-            // Number of permutations is 2^n
-            int max = 1 << n;
-
-            // Converting string to lower case
-            input = input.toLowerCase(locale);
-
-            // Using all subsequences and permuting them
-            for (int i = 0; i < max; i++) {
-                char combination[] = input.toCharArray();
-
-                // If j-th bit is set, we convert it to upper case
-                for (int j = 0; j < n; j++) {
-                    if (Character.isLetter(combination[j]) && ((i >> j) & 1) == 1)
-                        combination[j] = (char) (combination[j] - 32);
-                }
-
-                // Printing current combination
-                palavras.add(new String(combination));
-            }
-        }
-
         public byte[] hexStringToByteArray(String s) {
 
             s = s.replace(" ", "");
@@ -319,123 +457,6 @@ public byte[] hexStringToByteArray(String s) {
         }
     }
 
-    /**
-     * 
-     * Source https://gist.github.com/anuvrat/2382245
-     * 
-     * @author: anuvrat
-     * 
-     * @guilherme.dutra: modified sentence length and Case Sensitive option
-     * 
-     */
-
-    /**
-     * Searches for all occurances of the word in the sentence. Runs in O(n+k) where
-     * n is the word length and k is the sentence length.
-     * 
-     * @param word
-     *            The word that is being searched
-     * @param sentence
-     *            The collections of word over which the search happens.
-     * @param length
-     *            The length of the sentence.
-     * @param ignoreCaseSearch
-     *            Case sensitive search
-     * @return The list of starting indices of the matched word in the sentence.
-     *         Empty list in case of no match.
-     */
-    public static List<Integer> searchBytes(final byte[] word, final byte[] sentence, int length,
-            boolean ignoreCaseSearch) {
-        final List<Integer> matchedIndices = new ArrayList<>();
-
-        // final int sentenceLength = sentence.length;
-        final int sentenceLength = length; // buffer length is variable in function of the word
-        final int wordLength = word.length;
-        int beginMatch = 0; // the starting position in sentence from which the match started
-        int idxWord = 0; // the index of the character of the word that is being compared to a character
-                         // in string
-        final List<Integer> partialTable = createPartialMatchTable(word);
-        byte wordChar = 0;
-        byte sentenceChar = 0;
-
-        while (beginMatch + idxWord < sentenceLength) {
-            if (ignoreCaseSearch) {
-                wordChar = (byte) Character.toUpperCase((char) word[idxWord]);
-                sentenceChar = (byte) Character.toUpperCase((char) sentence[beginMatch + idxWord]);
-            } else {
-                wordChar = word[idxWord];
-                sentenceChar = sentence[beginMatch + idxWord];
-            }
-            if (wordChar == sentenceChar) {
-                // the characters have matched
-                if (idxWord == wordLength - 1) {
-                    // the word is complete. we have a match.
-                    matchedIndices.add(beginMatch);
-                    // restart the search
-                    beginMatch = beginMatch + idxWord - partialTable.get(idxWord);
-                    if (partialTable.get(idxWord) > -1)
-                        idxWord = partialTable.get(idxWord);
-                    else
-                        idxWord = 0;
-                } else
-                    idxWord++;
-            } else {
-                // mismatch. restart the search.
-                beginMatch = beginMatch + idxWord - partialTable.get(idxWord);
-                if (partialTable.get(idxWord) > -1)
-                    idxWord = partialTable.get(idxWord);
-                else
-                    idxWord = 0;
-            }
-        }
-
-        return Collections.unmodifiableList(matchedIndices);
-    }
-
-    /**
-     * Creates the Partial Match Table for the word. Runs in O(n) where n is the
-     * length of the word.
-     * 
-     * @param word
-     *            The word whose Partial Match Table is required.
-     * @return The table as a list of integers.
-     */
-    public static List<Integer> createPartialMatchTable(final byte[] word) {
-        if (isBlank(word))
-            return Collections.EMPTY_LIST;
-
-        final int length = word.length;
-        final List<Integer> partialTable = new ArrayList<>(length + 1);
-        partialTable.add(-1);
-        partialTable.add(0);
-
-        final byte firstChar = word[0];
-        for (int idx = 1; idx < word.length; idx++) {
-            final int prevVal = partialTable.get(idx);
-            if (prevVal == 0) {
-                if (word[idx] == firstChar)
-                    partialTable.add(1);
-                else
-                    partialTable.add(0);
-            } else if (word[idx] == word[prevVal])
-                partialTable.add(prevVal + 1);
-            else
-                partialTable.add(0);
-        }
-
-        return Collections.unmodifiableList(partialTable);
-    }
-
-    public static boolean isBlank(final byte[] w) {
-        boolean ret = false;
-        if (w == null) {
-            ret = true;
-        } else if (w.length == 0) {
-            ret = true;
-        }
-
-        return ret;
-    }
 }
 
 class SearchMatchComparator implements Comparator<HighlightCodeAreaPainter.SearchMatch> {
@@ -443,4 +464,4 @@ class SearchMatchComparator implements Comparator<HighlightCodeAreaPainter.Searc
     public int compare(HighlightCodeAreaPainter.SearchMatch o1, HighlightCodeAreaPainter.SearchMatch o2) {
         return Long.valueOf(o1.getPosition()).compareTo(Long.valueOf(o2.getPosition()));
     }
-}
\ No newline at end of file
+}
@@ -29,6 +29,9 @@ public class ImageThumbTaskConfig extends AbstractTaskPropertiesConfig {
     private int maxMPixelsInMemory = 32;
     private int maxViewImageSize = 2400;
     private int compression = 60;
+    private int galleryCacheMemoryMB = 256;
+    private int galleryCacheDiskMB = 256;
+    private int galleryPrefetchScreens = 2;
     private final Set<String> mimesToCreateView = new HashSet<String>();
 
     public boolean isEnableExternalConv() {
@@ -87,6 +90,18 @@ public int getCompression() {
         return compression;
     }
 
+    public int getGalleryCacheMemoryMB() {
+        return galleryCacheMemoryMB;
+    }
+
+    public int getGalleryCacheDiskMB() {
+        return galleryCacheDiskMB;
+    }
+
+    public int getGalleryPrefetchScreens() {
+        return galleryPrefetchScreens;
+    }
+
     public Set<String> getMimesToCreateView() {
         return Collections.unmodifiableSet(mimesToCreateView);
     }
@@ -148,6 +163,21 @@ public void processProperties(UTF8Properties properties) {
             logGalleryRendering = Boolean.valueOf(value.trim());
         }
 
+        value = properties.getProperty("galleryCacheMemoryMB"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            galleryCacheMemoryMB = Integer.valueOf(value.trim());
+        }
+
+        value = properties.getProperty("galleryCacheDiskMB"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            galleryCacheDiskMB = Integer.valueOf(value.trim());
+        }
+
+        value = properties.getProperty("galleryPrefetchScreens"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            galleryPrefetchScreens = Integer.valueOf(value.trim());
+        }
+
         value = properties.getProperty("lowResDensity"); //$NON-NLS-1$
         if (value != null && !value.trim().isEmpty()) {
             lowResDensity = Integer.valueOf(value.trim());
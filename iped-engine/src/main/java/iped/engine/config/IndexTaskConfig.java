@@ -26,6 +26,8 @@ public class IndexTaskConfig extends AbstractTaskPropertiesConfig {
     private int maxTokenLength = 255;
     private int[] extraCharsToIndexArray;
     private int commitIntervalSeconds = 1800;
+    private int indexingThreads = -1;
+    private int indexingQueueSize = -1;
 
     @Override
     public String getTaskEnableProperty() {
@@ -95,6 +97,16 @@ public void processProperties(UTF8Properties properties) {
             commitIntervalSeconds = Integer.parseInt(value.trim());
         }
 
+        value = properties.getProperty("indexingThreads"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty() && !value.trim().equalsIgnoreCase("default")) { //$NON-NLS-1$
+            indexingThreads = Integer.parseInt(value.trim());
+        }
+
+        value = properties.getProperty("indexingQueueSize"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty() && !value.trim().equalsIgnoreCase("default")) { //$NON-NLS-1$
+            indexingQueueSize = Integer.parseInt(value.trim());
+        }
+
     }
 
     private int[] convertExtraCharsToIndex(String chars) {
@@ -173,4 +185,19 @@ public int getCommitIntervalSeconds() {
         return commitIntervalSeconds;
     }
 
+    /**
+     * @return number of indexing threads, 0 to index in the workers, -1 for the
+     *         default.
+     */
+    public int getIndexingThreads() {
+        return indexingThreads;
+    }
+
+    /**
+     * @return max number of items waiting to be indexed, -1 for the default.
+     */
+    public int getIndexingQueueSize() {
+        return indexingQueueSize;
+    }
+
 }
@@ -27,6 +27,8 @@ public class LocalConfig extends AbstractPropertiesConfigurable {
 
     public static final String NUM_THREADS = "numThreads";
 
+    public static final String NUM_IO_THREADS = "numIOThreads";
+
     private static final String HASH_DB = "hashesDB";
 
     private static final String IPED_TEMP = "indexTemp";
@@ -35,6 +37,12 @@ public class LocalConfig extends AbstractPropertiesConfigurable {
 
     private static final String OUTPUT_ON_SSD = "outputOnSSD";
 
+    private static final String TASK_RESULTS_DB = "taskResultsDB";
+
+    private static final String METRICS_HTTP_PORT = "metricsHttpPort";
+
+    private static final String NONE_VAL = "none";
+
     private static final String DEFAULT_VAL = "default";
 
     public static final DirectoryStream.Filter<Path> filter = new Filter<Path>() {
@@ -48,7 +56,10 @@ public boolean accept(Path entry) throws IOException {
     private boolean outputOnSSD = false;
     private File ipedTemp, indexTemp;
     private int numThreads;
+    private int numIOThreads = 0;
     private File hashDbFile;
+    private String taskResultsDB = DEFAULT_VAL;
+    private int metricsHttpPort = 0;
 
     @Override
     public Filter<Path> getResourceLookupFilter() {
@@ -110,6 +121,17 @@ public void processProperties(UTF8Properties properties) {
             numThreads = Runtime.getRuntime().availableProcessors();
         }
 
+        value = properties.getProperty(NUM_IO_THREADS);
+        if (value != null) {
+            value = value.trim();
+        }
+        if (value != null && !value.isEmpty() && !value.equalsIgnoreCase(DEFAULT_VAL)) {
+            numIOThreads = Math.max(0, Integer.valueOf(value));
+        } else {
+            // extra workers are opt-in, numThreads is the total by default
+            numIOThreads = 0;
+        }
+
         value = properties.getProperty(TEMP_ON_SSD); // $NON-NLS-1$
         if (value != null) {
             value = value.trim();
@@ -134,6 +156,19 @@ public void processProperties(UTF8Properties properties) {
             setHashDbFile(new File(value.trim()));
         }
 
+        value = properties.getProperty(TASK_RESULTS_DB);
+        if (value != null && !value.trim().isEmpty()) {
+            taskResultsDB = value.trim();
+        }
+
+        value = properties.getProperty(METRICS_HTTP_PORT);
+        if (value != null) {
+            value = value.trim();
+        }
+        if (value != null && !value.isEmpty() && !value.equalsIgnoreCase(NONE_VAL)) {
+            metricsHttpPort = Integer.valueOf(value);
+        }
+
     }
 
     public void setIndexerTemp(File temp) {
@@ -161,6 +196,36 @@ public int getNumThreads() {
         return numThreads;
     }
 
+    /**
+     * @return number of extra workers, used to keep disks busy while the other
+     *         workers run CPU bound tasks. 0 disables the work scheduler.
+     */
+    public int getNumIOThreads() {
+        return numIOThreads;
+    }
+
+    /**
+     * @return local port of the live metrics endpoint, 0 if disabled
+     */
+    public int getMetricsHttpPort() {
+        return metricsHttpPort;
+    }
+
+    /**
+     * @param output
+     *            case output folder
+     * @return database file to store task results, or null if disabled.
+     */
+    public File getTaskResultsDbFile(File output, String defaultName) {
+        if (taskResultsDB.equalsIgnoreCase(NONE_VAL)) {
+            return null;
+        }
+        if (taskResultsDB.equalsIgnoreCase(DEFAULT_VAL)) {
+            return new File(output, "data/" + defaultName); //$NON-NLS-1$
+        }
+        return new File(taskResultsDB);
+    }
+
     public File getHashDbFile() {
         return hashDbFile;
     }
@@ -29,6 +29,8 @@ public class OCRConfig extends AbstractPropertiesConfigurable {
     private String maxPdfTextSize2OCR;
     private String processNonStandard;
     private String maxConvImageSize;
+    private String useTesseractWorkers;
+    private String maxImagesPerTesseractWorker;
 
     public static final DirectoryStream.Filter<Path> filter = new Filter<Path>() {
         @Override
@@ -116,6 +118,16 @@ public void processProperties(UTF8Properties properties) {
             maxConvImageSize = value.trim();
         }
 
+        value = properties.getProperty("useTesseractWorkers"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            useTesseractWorkers = value.trim();
+        }
+
+        value = properties.getProperty("maxImagesPerTesseractWorker"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            maxImagesPerTesseractWorker = value.trim();
+        }
+
     }
 
     public Boolean isOCREnabled() {
@@ -170,4 +182,12 @@ public String getMaxConvImageSize() {
         return maxConvImageSize;
     }
 
+    public String getUseTesseractWorkers() {
+        return useTesseractWorkers;
+    }
+
+    public String getMaxImagesPerTesseractWorker() {
+        return maxImagesPerTesseractWorker;
+    }
+
 }
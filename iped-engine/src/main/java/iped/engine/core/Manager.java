@@ -74,6 +74,9 @@
 import iped.engine.lucene.ConfiguredFSDirectory;
 import iped.engine.lucene.CustomIndexDeletionPolicy;
 import iped.engine.lucene.analysis.AppAnalyzer;
+import iped.engine.lucene.analysis.TimingAnalyzerWrapper;
+import iped.engine.metrics.MetricsHttpServer;
+import iped.engine.metrics.ProcessingMetrics;
 import iped.engine.preview.PreviewRepositoryManager;
 import iped.engine.search.IPEDSearcher;
 import iped.engine.search.IndexerSimilarity;
@@ -84,6 +87,7 @@
 import iped.engine.task.ExportCSVTask;
 import iped.engine.task.ExportFileTask;
 import iped.engine.task.P2PBookmarker;
+import iped.engine.task.TaskResultsStore;
 import iped.engine.task.index.ElasticSearchIndexTask;
 import iped.engine.task.index.IndexItem;
 import iped.engine.task.index.IndexTask;
@@ -136,6 +140,7 @@ public class Manager {
 
     private ItemProducer counter, producer;
     private Worker[] workers;
+    private WorkScheduler workScheduler;
     private IndexWriter writer;
 
     public Statistics stats;
@@ -234,6 +239,13 @@ public int getNumWorkers() {
         return workers.length;
     }
 
+    /**
+     * @return the scheduler of CPU and I/O bound tasks, or null if disabled
+     */
+    public WorkScheduler getWorkScheduler() {
+        return workScheduler;
+    }
+
     public IndexWriter getIndexWriter() {
         return this.writer;
     }
@@ -279,8 +291,15 @@ public void process() throws Exception {
                 return;
             }
 
+            File taskResultsDb = localConfig.getTaskResultsDbFile(output, TaskResultsStore.DB_NAME);
+            if (taskResultsDb != null) {
+                TaskResultsStore.open(taskResultsDb);
+            }
+
             initWorkers();
 
+            initMetrics();
+
             status.addProcessingEvidences(args);
             status.save();
 
@@ -302,8 +321,10 @@ public void process() throws Exception {
             throw e;
 
         } finally {
+            MetricsHttpServer.stop();
             closeItemProducers();
             PreviewRepositoryManager.close(output);
+            TaskResultsStore.close();
         }
 
         filterKeywords();
@@ -406,7 +427,7 @@ private void loadExistingData() throws IOException {
     }
 
     private IndexWriterConfig getIndexWriterConfig() {
-        IndexWriterConfig conf = new IndexWriterConfig(AppAnalyzer.get());
+        IndexWriterConfig conf = new IndexWriterConfig(new TimingAnalyzerWrapper(AppAnalyzer.get()));
         conf.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
 
         conf.setCommitOnClose(true);
@@ -551,7 +572,11 @@ private void openIndex() throws IOException {
 
     private void initWorkers() throws Exception {
 
-        workers = new Worker[localConfig.getNumThreads()];
+        int numWorkers = localConfig.getNumThreads() + localConfig.getNumIOThreads();
+        if (localConfig.getNumIOThreads() > 0) {
+            workScheduler = new WorkScheduler(localConfig.getNumThreads(), numWorkers);
+        }
+        workers = new Worker[numWorkers];
         for (int k = 0; k < workers.length; k++) {
             workers[k] = new Worker(k, caseData, writer, output, this);
         }
@@ -568,6 +593,25 @@ private void initWorkers() throws Exception {
         UIPropertyListenerProvider.getInstance().firePropertyChange("workers", 0, workers); //$NON-NLS-1$
     }
 
+    private void initMetrics() {
+        ProcessingMetrics metrics = ProcessingMetrics.get();
+        metrics.registerGauge("queueSize", () -> processingQueues.getCurrentQueueSize()); //$NON-NLS-1$
+        metrics.registerGauge("itemsBeingProcessed", () -> processingQueues.getItemsBeingProcessed()); //$NON-NLS-1$
+        metrics.registerGauge("discoveredItems", () -> caseData.getDiscoveredEvidences()); //$NON-NLS-1$
+        metrics.registerGauge("processedItems", () -> stats.getProcessed()); //$NON-NLS-1$
+        metrics.registerGauge("processedBytes", () -> stats.getVolume()); //$NON-NLS-1$
+        metrics.registerGauge("timeouts", () -> stats.getTimeouts()); //$NON-NLS-1$
+        metrics.registerGauge("ioErrors", () -> stats.getIoErrors()); //$NON-NLS-1$
+        if (workScheduler != null) {
+            metrics.registerGauge("cpuTasksLimit", () -> workScheduler.getCpuLimit()); //$NON-NLS-1$
+            metrics.registerGauge("ioTasksLimit", () -> workScheduler.getIOLimit()); //$NON-NLS-1$
+        }
+        ProcessingMetrics.registerMBean();
+        if (localConfig.getMetricsHttpPort() > 0) {
+            MetricsHttpServer.start(localConfig.getMetricsHttpPort());
+        }
+    }
+
     private void monitorProcessing() throws Exception {
 
         boolean someWorkerAlive = true;
@@ -591,6 +635,10 @@ private void monitorProcessing() throws Exception {
             }
             UIPropertyListenerProvider.getInstance().firePropertyChange("update", 0, 0);
 
+            if (workScheduler != null) {
+                workScheduler.adjust();
+            }
+
             boolean changeToNextQueue = !producer.isAlive();
             for (int k = 0; k < workers.length; k++) {
                 if (workers[k].exception != null && exception == null) {
@@ -605,6 +653,8 @@ private void monitorProcessing() throws Exception {
             }
 
             if (changeToNextQueue) {
+                // items of next queue may look up the ones already processed
+                IndexTask.flushPendingDocuments();
                 IItemSearcher searcher = (IItemSearcher) caseData.getCaseObject(IItemSearcher.class.getName());
                 if (searcher != null) {
                     searcher.close();
@@ -647,6 +697,8 @@ public void run() {
                     long start = System.currentTimeMillis() / 1000;
                     UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", Messages.getString("Manager.CommitStarted"));
                     LOGGER.info("Prepare commit started...");
+                    // documents of items already committed by other stores must be in the index commit
+                    IndexTask.flushPendingDocuments();
                     writer.prepareCommit();
 
                     // commit other control data
@@ -657,6 +709,8 @@ public void run() {
                     LOGGER.info("Commiting sqlite storages...");
                     ExportFileTask.commitStorage(output);
 
+                    TaskResultsStore.commit();
+
                     GraphTask.commit();
 
                     ExportCSVTask.commit(output);
@@ -1,45 +1,50 @@
 package iped.engine.core;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.SplittableRandom;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import iped.data.IItem;
 import iped.engine.config.ConfigurationManager;
+import iped.engine.config.LocalConfig;
 import iped.engine.config.ProcessingPriorityConfig;
 import iped.engine.data.CaseData;
 import iped.engine.util.Util;
 
 public class ProcessingQueues {
     /*
-     The LinkedList's are used for prioritized items, inserted on the top of the
-     queue. They can be used for the rest of the items if the selected behavior is
-     the same used before #2541 (FIFO). The ArrayList's are used for the rest of
-     the items, if random order is enabled (default). In such case, items are
-     selected randomly from the active queue, to "spread" items, minimizing the
-     situation of having all workers dealing with similar items, that would
-     compete for the same type of resources.
+     Each processing priority has its own WorkStealingItemQueue. Prioritized
+     items, inserted on the top of the queue, are kept in per worker deques, and
+     idle workers steal items from other workers. They can be used for the rest of
+     the items if the selected behavior is the same used before #2541 (FIFO). If
+     random order is enabled (default), the rest of the items are selected
+     randomly from the active queue, to "spread" items, minimizing the situation
+     of having all workers dealing with similar items, that would compete for the
+     same type of resources.
      */
-    private TreeMap<Integer, LinkedList<IItem>> queuesTop;
-    private TreeMap<Integer, ArrayList<IItem>> queuesRest;
+    private TreeMap<Integer, WorkStealingItemQueue> queues;
 
     private volatile Integer currentQueuePriority = 0;
+    private volatile WorkStealingItemQueue currentQueue;
 
     private CaseData caseData;
 
+    private int numWorkers;
     private int maxQueueSize;
     private boolean randomOrder;
 
     private static Logger logger = LogManager.getLogger(ProcessingQueues.class);
 
-    private int totalItemsBeingProcessed = 0;
+    private final AtomicInteger totalItemsBeingProcessed = new AtomicInteger();
 
-    private final SplittableRandom rnd = new SplittableRandom();
+    // used to block producers while the queue is full, instead of polling it
+    private final ReentrantLock fullLock = new ReentrantLock();
+    private final Condition notFull = fullLock.newCondition();
+    private final AtomicInteger blockedProducers = new AtomicInteger();
 
     public ProcessingQueues(CaseData caseData) {
         this.caseData = caseData;
@@ -47,6 +52,14 @@ public ProcessingQueues(CaseData caseData) {
         initQueues();
     }
 
+    ProcessingQueues(CaseData caseData, int numWorkers, int maxQueueSize, boolean randomOrder) {
+        this.caseData = caseData;
+        this.numWorkers = numWorkers;
+        this.maxQueueSize = maxQueueSize;
+        this.randomOrder = randomOrder;
+        initQueues();
+    }
+
     private void initConfig() {
         ProcessingPriorityConfig config = ConfigurationManager.get().findObject(ProcessingPriorityConfig.class);
         randomOrder = config.isRandomOrder();
@@ -61,19 +74,20 @@ private void initConfig() {
         // Enforce a very minimal size
         maxQueueSize = Math.max(1024, maxQueueSize);
 
+        LocalConfig localConfig = ConfigurationManager.get().findObject(LocalConfig.class);
+        numWorkers = localConfig.getNumThreads() + localConfig.getNumIOThreads();
+
         logger.info("Maximum Processing Queue Size: {}{}", maxQueueSize, auto ? " (auto)" : "");
         logger.info("Processing Queue Random Order: {}", randomOrder ? "enabled" : "disabled");
     }
 
     private void initQueues() {
-        queuesTop = new TreeMap<Integer, LinkedList<IItem>>();
-        queuesTop.put(0, new LinkedList<IItem>());
-        queuesRest = new TreeMap<Integer, ArrayList<IItem>>();
-        queuesRest.put(0, new ArrayList<IItem>());
+        queues = new TreeMap<Integer, WorkStealingItemQueue>();
+        queues.put(0, new WorkStealingItemQueue(numWorkers));
         for (Integer priority : QueuesProcessingOrder.getProcessingQueues()) {
-            queuesTop.put(priority, new LinkedList<IItem>());
-            queuesRest.put(priority, new ArrayList<IItem>());
+            queues.put(priority, new WorkStealingItemQueue(numWorkers));
         }
+        currentQueue = queues.get(currentQueuePriority);
     }
 
     public void addItem(IItem item) throws InterruptedException {
@@ -109,82 +123,115 @@ private void addItemToQueue(IItem item, int queuePriority, boolean addFirst, boo
 
         Util.calctrackIDAndUpdateID(caseData, item);
 
-        LinkedList<IItem> q1 = queuesTop.get(queuePriority);
-        ArrayList<IItem> q2 = queuesRest.get(queuePriority);
-        boolean sleep = false;
-        while (true) {
-            if (sleep) {
-                sleep = false;
-                Thread.sleep(1000);
-            }
-            synchronized (this) {
-                if (blockIfFull && queuePriority == 0 && q1.size() + q2.size() >= maxQueueSize) {
-                    sleep = true;
-                    continue;
-                } else {
-                    if (addFirst) {
-                        q1.addFirst(item);
-                    } else {
-                        if (randomOrder) {
-                            q2.add(item);
-                        } else {
-                            // If "random order" is disabled, FIFO is used, and new items are placed in the
-                            // end of the LinkedList queue.
-                            q1.addLast(item);
-                        }
-                    }
-                    break;
+        WorkStealingItemQueue queue = queues.get(queuePriority);
+        if (blockIfFull && queuePriority == 0) {
+            waitWhileFull(queue);
+        }
+        if (!item.isQueueEnd()) {
+            queue.pending.incrementAndGet();
+        }
+        if (addFirst) {
+            queue.addFirst(item, getCurrentWorkerId());
+        } else if (randomOrder) {
+            queue.addRandom(item);
+        } else {
+            // If "random order" is disabled, FIFO is used, and new items are placed in the
+            // end of the shared deque.
+            queue.addLast(item);
+        }
+    }
+
+    private void waitWhileFull(WorkStealingItemQueue queue) throws InterruptedException {
+        if (queue.size() < maxQueueSize) {
+            return;
+        }
+        fullLock.lockInterruptibly();
+        try {
+            blockedProducers.incrementAndGet();
+            try {
+                while (queue.size() >= maxQueueSize) {
+                    notFull.await();
                 }
+            } finally {
+                blockedProducers.decrementAndGet();
             }
+        } finally {
+            fullLock.unlock();
         }
     }
 
-    public synchronized int getItemsBeingProcessed() {
-        return totalItemsBeingProcessed;
+    private void signalNotFull(WorkStealingItemQueue queue) {
+        if (blockedProducers.get() > 0 && queue.size() < maxQueueSize) {
+            fullLock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                fullLock.unlock();
+            }
+        }
     }
 
-    public synchronized void incItemsBeingProcessed() {
-        totalItemsBeingProcessed++;
+    int getCurrentWorkerId() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof Worker ? ((Worker) thread).id : -1;
     }
 
-    public synchronized void decItemsBeingProcessed() {
-        totalItemsBeingProcessed--;
+    public int getItemsBeingProcessed() {
+        return totalItemsBeingProcessed.get();
     }
 
-    public synchronized boolean isNoItemInQueueOrBeingProcessed() {
-        return totalItemsBeingProcessed == 0 && getItemQueueTop().isEmpty() && getItemQueueRest().isEmpty();
+    public void incItemsBeingProcessed() {
+        currentQueue.pending.incrementAndGet();
+        totalItemsBeingProcessed.incrementAndGet();
     }
 
-    public synchronized IItem pollFromCurrentQueue() throws InterruptedException {
-        LinkedList<IItem> q1 = getItemQueueTop();
-        if (!q1.isEmpty()) {
-            return q1.pollFirst();
-        }
-        ArrayList<IItem> q2 = getItemQueueRest();
-        if (q2.size() > 2) {
-            int pos = rnd.nextInt(q2.size() - 1);
-            IItem item = q2.get(pos);
-            Collections.swap(q2, pos, q2.size() - 2);
-            q2.remove(q2.size() - 2);
-            return item;
+    public void decItemsBeingProcessed() {
+        totalItemsBeingProcessed.decrementAndGet();
+        currentQueue.pending.decrementAndGet();
+    }
+
+    public boolean isNoItemInQueueOrBeingProcessed() {
+        return currentQueue.pending.get() == 0;
+    }
+
+    /**
+     * Removes an item from the current queue. If it is not a queue end item, it is
+     * already accounted as being processed when returned, so callers must not call
+     * {@link #incItemsBeingProcessed()} for it.
+     */
+    public IItem pollFromCurrentQueue() throws InterruptedException {
+        WorkStealingItemQueue queue = currentQueue;
+        IItem item = queue.poll(getCurrentWorkerId());
+        if (item != null) {
+            if (!item.isQueueEnd()) {
+                // moved from the queue to a worker, pending counter is unchanged
+                totalItemsBeingProcessed.incrementAndGet();
+            }
+            signalNotFull(queue);
         }
-        return q2.isEmpty() ? null : q2.remove(0);
+        return item;
     }
 
-    public synchronized void addToCurrentQueue(IItem item) throws InterruptedException {
-        getItemQueueRest().add(item);
+    public void addToCurrentQueue(IItem item) throws InterruptedException {
+        if (!item.isQueueEnd()) {
+            currentQueue.pending.incrementAndGet();
+        }
+        currentQueue.addRandom(item);
     }
 
-    public synchronized IItem peekItemFromCurrentQueue() {
-        return getItemQueueTop().isEmpty() ? getItemQueueRest().get(0) : getItemQueueTop().peekFirst();
+    public IItem peekItemFromCurrentQueue() {
+        return currentQueue.peek();
     }
 
-    public synchronized int getCurrentQueueSize() {
-        return getItemQueueTop().size() + getItemQueueRest().size();
+    public int getCurrentQueueSize() {
+        return currentQueue.size();
     }
 
     public Integer changeToNextQueue() {
-        currentQueuePriority = queuesTop.ceilingKey(currentQueuePriority + 1);
+        currentQueuePriority = queues.ceilingKey(currentQueuePriority + 1);
+        if (currentQueuePriority != null) {
+            currentQueue = queues.get(currentQueuePriority);
+        }
         return currentQueuePriority;
     }
 
@@ -192,11 +239,4 @@ public Integer getCurrentQueuePriority() {
         return currentQueuePriority;
     }
 
-    private ArrayList<IItem> getItemQueueRest() {
-        return queuesRest.get(currentQueuePriority);
-    }
-
-    private LinkedList<IItem> getItemQueueTop() {
-        return queuesTop.get(currentQueuePriority);
-    }
 }
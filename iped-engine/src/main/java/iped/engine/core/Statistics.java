@@ -8,10 +8,14 @@
 import java.io.ObjectOutputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JOptionPane;
 
@@ -34,10 +38,13 @@
 import iped.engine.config.PluginConfig;
 import iped.engine.localization.Messages;
 import iped.engine.lucene.ConfiguredFSDirectory;
+import iped.engine.lucene.analysis.TimingAnalyzerWrapper;
 import iped.engine.task.ExportFileTask;
 import iped.engine.task.ParsingTask;
 import iped.engine.task.carver.BaseCarveTask;
 import iped.engine.task.index.IndexItem;
+import iped.engine.task.index.IndexingStage;
+import iped.engine.util.TextCache;
 import iped.engine.util.Util;
 import iped.exception.IPEDException;
 import iped.parsers.standard.StandardParser;
@@ -64,16 +71,17 @@ public class Statistics {
 
     // EstatÃ­sticas
     Date start = new Date();
-    int splits = 0;
-    int timeouts = 0;
-    int processed = 0;
-    int activeProcessed = 0;
-    long volumeIndexed = 0;
-    int lastId = -1;
-    int corruptCarveIgnored = 0;
-    int ignored = 0;
+    // lock free, updated by all workers
+    final AtomicInteger splits = new AtomicInteger();
+    final AtomicInteger timeouts = new AtomicInteger();
+    final AtomicInteger processed = new AtomicInteger();
+    final AtomicInteger activeProcessed = new AtomicInteger();
+    final AtomicLong volumeIndexed = new AtomicLong();
+    final AtomicInteger lastId = new AtomicInteger(-1);
+    final AtomicInteger corruptCarveIgnored = new AtomicInteger();
+    final AtomicInteger ignored = new AtomicInteger();
     int previousIndexedFiles = 0;
-    int ioerrors = 0;
+    final AtomicInteger ioerrors = new AtomicInteger();
     AtomicInteger subitensDiscovered = new AtomicInteger();
 
     public static Statistics get(ICaseData caseData, File indexDir) {
@@ -141,82 +149,80 @@ public void commit() throws IOException {
         Util.fsync(file.toPath());
     }
 
-    synchronized public int getSplits() {
-        return splits;
+    public int getSplits() {
+        return splits.get();
     }
 
-    synchronized public void incSplits() {
-        splits++;
+    public void incSplits() {
+        splits.incrementAndGet();
     }
 
-    synchronized public int getTimeouts() {
-        return timeouts;
+    public int getTimeouts() {
+        return timeouts.get();
     }
 
-    synchronized public void incTimeouts() {
-        timeouts++;
+    public void incTimeouts() {
+        timeouts.incrementAndGet();
     }
 
-    synchronized public void incProcessed() {
-        processed++;
+    public void incProcessed() {
+        processed.incrementAndGet();
     }
 
-    synchronized public int getProcessed() {
-        return processed;
+    public int getProcessed() {
+        return processed.get();
     }
 
-    synchronized public void incIoErrors() {
-        ioerrors++;
+    public void incIoErrors() {
+        ioerrors.incrementAndGet();
     }
 
-    synchronized public int getIoErrors() {
-        return ioerrors;
+    public int getIoErrors() {
+        return ioerrors.get();
     }
 
-    synchronized public void incActiveProcessed() {
-        activeProcessed++;
+    public void incActiveProcessed() {
+        activeProcessed.incrementAndGet();
     }
 
-    synchronized public int getActiveProcessed() {
-        return activeProcessed;
+    public int getActiveProcessed() {
+        return activeProcessed.get();
     }
 
-    synchronized public void addVolume(long volume) {
-        volumeIndexed += volume;
+    public void addVolume(long volume) {
+        volumeIndexed.addAndGet(volume);
     }
 
-    synchronized public long getVolume() {
-        return volumeIndexed;
+    public long getVolume() {
+        return volumeIndexed.get();
     }
 
-    synchronized public int getCorruptCarveIgnored() {
-        return corruptCarveIgnored;
+    public int getCorruptCarveIgnored() {
+        return corruptCarveIgnored.get();
     }
 
-    private synchronized void incCorruptCarveIgnored() {
-        corruptCarveIgnored++;
+    private void incCorruptCarveIgnored() {
+        corruptCarveIgnored.incrementAndGet();
     }
 
-    synchronized public int getIgnored() {
-        return ignored;
+    public int getIgnored() {
+        return ignored.get();
     }
 
-    synchronized public void incIgnored() {
-        ignored++;
+    public void incIgnored() {
+        ignored.incrementAndGet();
     }
 
-    synchronized public void updateLastId(int id) {
-        if (id > lastId) {
-            lastId = id;
-        }
+    public void updateLastId(int id) {
+        lastId.accumulateAndGet(id, Math::max);
     }
 
-    synchronized public int getLastId() {
-        return lastId;
+    public int getLastId() {
+        return lastId.get();
     }
 
-    synchronized public void setLastId(int id) {
-        lastId = id;
+    public void setLastId(int id) {
+        lastId.set(id);
     }
 
     public void incSubitemsDiscovered() {
@@ -246,8 +252,7 @@ public void logStatistics(Manager manager) throws Exception {
                 totalTime += t;
             }
         }
-        LocalConfig localConfig = ConfigurationManager.get().findObject(LocalConfig.class);
-        totalTime = totalTime / (1000000 * localConfig.getNumThreads());
+        totalTime = totalTime / (1000000 * workers.length);
         LOGGER.info("Processing Times per Task:");
         StringBuilder sb = new StringBuilder();
         sb.append(String.format("%-30s", "TASK"));
@@ -261,7 +266,7 @@ public void logStatistics(Manager manager) throws Exception {
         LOGGER.info(sb.toString());
         sb.setLength(0);
         for (int i = 0; i < taskTimes.length; i++) {
-            long sec = taskTimes[i] / (1000000 * localConfig.getNumThreads());
+            long sec = taskTimes[i] / (1000000 * workers.length);
             sb.append(String.format("%-30s", workers[0].tasks.get(i).getName()));
             sb.append(String.format(" %7d", sec));
             sb.append(String.format(" %6d", Math.round((100f * sec) / totalTime)));
@@ -269,6 +274,12 @@ public void logStatistics(Manager manager) throws Exception {
             sb.setLength(0);
         }
 
+        WorkScheduler scheduler = manager.getWorkScheduler();
+        if (scheduler != null) {
+            LOGGER.info("Final limits of workers running CPU bound tasks: {} I/O bound tasks: {}", //$NON-NLS-1$
+                    scheduler.getCpuLimit(), scheduler.getIOLimit());
+        }
+
         // Processing times per parser
         TreeMap<String, Long> timesPerParser = new TreeMap<String, Long>();
         ParsingTask.copyTimesPerParser(timesPerParser);
@@ -301,7 +312,47 @@ public void logStatistics(Manager manager) throws Exception {
                 sb.setLength(0);
             }
         }
-        
+
+        // Indexing stage and analysis times per field
+        IndexingStage indexingStage = IndexingStage.get();
+        if (indexingStage != null) {
+            LOGGER.info("Indexing stage: {} threads, {} items, {} docs, {} docs/s", //$NON-NLS-1$
+                    indexingStage.getNumThreads(), indexingStage.getIndexedItems(), indexingStage.getIndexedDocs(),
+                    Math.round(indexingStage.getDocsPerSecond()));
+            LOGGER.info("Indexing stage: max queue depth {}, indexing time {}s, workers waited {}s", //$NON-NLS-1$
+                    indexingStage.getMaxQueueDepth(), indexingStage.getIndexingMillis() / 1000,
+                    indexingStage.getBlockedMillis() / 1000);
+        }
+        List<Map.Entry<String, Long>> fieldTimes = new ArrayList<>(TimingAnalyzerWrapper.getFieldTimes().entrySet());
+        fieldTimes.sort(Map.Entry.<String, Long> comparingByValue().reversed());
+        if (!fieldTimes.isEmpty()) {
+            totalTime = 0;
+            for (Map.Entry<String, Long> entry : fieldTimes) {
+                totalTime += entry.getValue();
+            }
+            if (totalTime < 1)
+                totalTime = 1;
+            LOGGER.info("Analysis Times per Field:");
+            sb.append(String.format("%-30s", "FIELD"));
+            sb.append(String.format(" %7s", "TIME(s)"));
+            sb.append(String.format(" %6s", "PCT(%)"));
+            LOGGER.info(sb.toString());
+            sb.setLength(0);
+            sb.append(String.format("%-30s", "").replace(' ', '='));
+            sb.append(" ").append(String.format("%7s", "").replace(' ', '='));
+            sb.append(" ").append(String.format("%6s", "").replace(' ', '='));
+            LOGGER.info(sb.toString());
+            sb.setLength(0);
+            for (Map.Entry<String, Long> entry : fieldTimes.subList(0, Math.min(20, fieldTimes.size()))) {
+                long time = entry.getValue();
+                sb.append(String.format("%-30s", entry.getKey()));
+                sb.append(String.format(" %7d", time / 1000000000));
+                sb.append(String.format(" %6d", Math.round(100.0 * time / totalTime)));
+                LOGGER.info(sb.toString());
+                sb.setLength(0);
+            }
+        }
+
         int numDocs;
         try (IndexReader reader = DirectoryReader.open(ConfiguredFSDirectory.open(indexDir))) {
             numDocs = reader.numDocs();
@@ -310,6 +361,11 @@ public void logStatistics(Manager manager) throws Exception {
         LOGGER.info("Partial commits took {} seconds", manager.partialCommitsTime.get());
         LOGGER.info("Index internal docs: {}", numDocs); //$NON-NLS-1$
         LOGGER.info("Text Splits: {}", getSplits()); //$NON-NLS-1$
+        long textReads = TextCache.getMemoryReads() + TextCache.getDiskReads();
+        LOGGER.info("Text cache reads from memory: {}/{} ({}%)", TextCache.getMemoryReads(), textReads, //$NON-NLS-1$
+                textReads == 0 ? 100 : TextCache.getMemoryReads() * 100 / textReads);
+        LOGGER.info("Text cache spills: {} texts, {} chars compressed to {} bytes", TextCache.getSpilledTexts(), //$NON-NLS-1$
+                TextCache.getSpilledChars(), TextCache.getSpilledBytes());
         LOGGER.info("Timeouts: {}", getTimeouts()); //$NON-NLS-1$
         LOGGER.info("Parsing Exceptions: {}", StandardParser.parsingErrors); //$NON-NLS-1$
         LOGGER.info("I/O read errors: {}", this.getIoErrors()); //$NON-NLS-1$
@@ -372,6 +428,7 @@ public void printSystemInfo() throws Exception {
         LOGGER.info("Current Directory: {}", System.getProperty("user.dir")); //$NON-NLS-1$ //$NON-NLS-2$
         LOGGER.info("CPU Cores: {}", Runtime.getRuntime().availableProcessors()); //$NON-NLS-1$
         LOGGER.info("numThreads: {}", localConfig.getNumThreads()); //$NON-NLS-1$
+        LOGGER.info("numIOThreads: {}", localConfig.getNumIOThreads()); //$NON-NLS-1$
 
         long maxMemory = Runtime.getRuntime().maxMemory() / 1000000;
         LOGGER.info("Memory (Heap) Available: {} MB", maxMemory); //$NON-NLS-1$
@@ -0,0 +1,256 @@
+package iped.engine.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Workers still run the whole task chain for each item, so the order of tasks
+ * per item is unchanged, but tasks declare if they are CPU or I/O bound. There
+ * are more workers than CPU threads, and each kind of task must get a permit
+ * from its own pool, so while some workers wait for CPU others keep the disks
+ * busy, and vice versa. The pools work as bounded hand-offs between stages: an
+ * item leaving an I/O task waits for a CPU permit before entering the next CPU
+ * task. Pool sizes are adjusted from live metrics: the CPU pool grows while the
+ * cores are idle and workers wait for it, and the I/O pool is tuned by hill
+ * climbing on the rate of completed I/O tasks.
+ */
+public class WorkScheduler {
+
+    private static Logger logger = LoggerFactory.getLogger(WorkScheduler.class);
+
+    public enum ResourceType {
+        CPU, IO, MIXED
+    }
+
+    private static final long ADJUST_INTERVAL_MILLIS = 5000;
+
+    private static final double CPU_IDLE = 0.80;
+    private static final double CPU_SATURATED = 0.95;
+
+    // I/O throughput variation smaller than this is considered noise
+    private static final double THROUGHPUT_TOLERANCE = 0.05;
+
+    static class AdaptivePool {
+
+        private final String name;
+        private final int minLimit, maxLimit;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+
+        private int limit;
+        private int inUse = 0;
+
+        // metrics of the current sample, guarded by lock
+        private long waitNanos = 0;
+        private long completed = 0;
+
+        AdaptivePool(String name, int limit, int minLimit, int maxLimit) {
+            this.name = name;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.limit = Math.max(minLimit, Math.min(maxLimit, limit));
+        }
+
+        void acquire() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                if (inUse >= limit) {
+                    long t = System.nanoTime();
+                    try {
+                        while (inUse >= limit) {
+                            available.await();
+                        }
+                    } finally {
+                        waitNanos += System.nanoTime() - t;
+                    }
+                }
+                inUse++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                inUse--;
+                completed++;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int getLimit() {
+            lock.lock();
+            try {
+                return limit;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return true if the limit was changed
+         */
+        boolean setLimit(int newLimit) {
+            lock.lock();
+            try {
+                newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+                if (newLimit == limit) {
+                    return false;
+                }
+                limit = newLimit;
+                available.signalAll();
+                logger.debug("{} pool limit changed to {}", name, limit);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns the metrics of the current sample, {waitNanos, completed}, and
+         * starts a new one.
+         */
+        long[] takeSample() {
+            lock.lock();
+            try {
+                long[] sample = { waitNanos, completed };
+                waitNanos = 0;
+                completed = 0;
+                return sample;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final AdaptivePool cpuPool;
+    private final AdaptivePool ioPool;
+    private final int cpuThreads;
+
+    private long lastAdjustTime = System.currentTimeMillis();
+    private double lastIOThroughput = -1;
+    private int ioStep = 1;
+
+    /**
+     * @param cpuThreads
+     *            initial number of workers allowed to run CPU bound tasks, and
+     *            also I/O bound ones
+     * @param numWorkers
+     *            total number of workers
+     */
+    public WorkScheduler(int cpuThreads, int numWorkers) {
+        this.cpuThreads = cpuThreads;
+        cpuPool = new AdaptivePool("CPU", cpuThreads, Math.max(1, cpuThreads / 2), numWorkers); //$NON-NLS-1$
+        // same concurrent I/O of the previous fixed number of workers
+        ioPool = new AdaptivePool("IO", cpuThreads, 1, numWorkers); //$NON-NLS-1$
+        logger.info("Work scheduler enabled: {} workers, {} for CPU bound tasks", numWorkers, cpuThreads);
+    }
+
+    private AdaptivePool getPool(ResourceType type) {
+        switch (type) {
+            case CPU:
+                return cpuPool;
+            case IO:
+                return ioPool;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Waits for a permit to run a task of the given type. Workers already holding
+     * a permit, e.g. processing subitems inside a parser, do not take another
+     * one, otherwise they could deadlock each other.
+     *
+     * @return true if a permit was taken and must be released with
+     *         {@link #release(ResourceType, Worker)}
+     */
+    public boolean acquire(ResourceType type, Worker worker) throws InterruptedException {
+        AdaptivePool pool = getPool(type);
+        if (pool == null || worker.permitsHeld > 0) {
+            return false;
+        }
+        pool.acquire();
+        worker.permitsHeld++;
+        return true;
+    }
+
+    public void release(ResourceType type, Worker worker) {
+        worker.permitsHeld--;
+        getPool(type).release();
+    }
+
+    /**
+     * Adjusts the pool sizes. Called periodically by the thread monitoring the
+     * processing.
+     */
+    public void adjust() {
+        long now = System.currentTimeMillis();
+        if (now - lastAdjustTime < ADJUST_INTERVAL_MILLIS) {
+            return;
+        }
+        double seconds = (now - lastAdjustTime) / 1000.0;
+        lastAdjustTime = now;
+
+        long[] cpuSample = cpuPool.takeSample();
+        long[] ioSample = ioPool.takeSample();
+
+        double cpuLoad = getSystemCpuLoad();
+        if (cpuLoad >= 0) {
+            int cpuLimit = cpuPool.getLimit();
+            if (cpuSample[0] > 0 && cpuLoad < CPU_IDLE) {
+                // CPU tasks are waiting on something else, like external processes
+                cpuPool.setLimit(cpuLimit + 1);
+            } else if (cpuLoad > CPU_SATURATED && cpuLimit > cpuThreads) {
+                cpuPool.setLimit(cpuLimit - 1);
+            }
+        }
+
+        double ioThroughput = ioSample[1] / seconds;
+        if (ioSample[0] > 0) {
+            // workers are waiting for I/O permits, look for the best pool size
+            if (lastIOThroughput >= 0) {
+                if (ioThroughput < lastIOThroughput * (1 - THROUGHPUT_TOLERANCE)) {
+                    // last change made it worse
+                    ioStep = -ioStep;
+                } else if (ioThroughput < lastIOThroughput * (1 + THROUGHPUT_TOLERANCE)) {
+                    // no gain, less concurrent I/O is better for disks
+                    ioStep = -1;
+                }
+            }
+            if (!ioPool.setLimit(ioPool.getLimit() + ioStep)) {
+                ioStep = -ioStep;
+            }
+        } else {
+            // I/O is not limiting, next time start trying more permits
+            ioStep = 1;
+        }
+        lastIOThroughput = ioThroughput;
+    }
+
+    public int getCpuLimit() {
+        return cpuPool.getLimit();
+    }
+
+    public int getIOLimit() {
+        return ioPool.getLimit();
+    }
+
+    private static double getSystemCpuLoad() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getSystemCpuLoad();
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,185 @@
+package iped.engine.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import iped.data.IItem;
+
+/**
+ * Items queue of a single processing priority, safe to be used concurrently by
+ * all workers without a global lock.
+ *
+ * Prioritized items (inserted on the top of the queue) are kept in one deque
+ * per worker, so subitems found by a worker are usually processed by the same
+ * worker, while idle workers can steal them from the tail of other workers'
+ * deques. Items added by non worker threads and items added in FIFO mode go to
+ * a shared deque. The rest of the items are kept in striped lists, each one
+ * with its own lock, and are removed from random positions to "spread" items
+ * between workers, like the previous implementation did.
+ *
+ * Queue end marker items are kept apart and are just returned when no other
+ * item was found.
+ */
+class WorkStealingItemQueue {
+
+    private static final int MIN_STRIPES = 4;
+
+    private final ConcurrentLinkedDeque<IItem>[] workerDeques;
+    private final ConcurrentLinkedDeque<IItem> sharedDeque = new ConcurrentLinkedDeque<>();
+    private final ConcurrentLinkedQueue<IItem> queueEnds = new ConcurrentLinkedQueue<>();
+    private final Stripe[] stripes;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Number of (non queue end) items in this queue plus the number of items being
+     * processed, if this is the current queue. A single counter is used, so it is
+     * never zero while an item is moved from the queue to a worker.
+     */
+    final AtomicInteger pending = new AtomicInteger();
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayList<IItem> items = new ArrayList<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    WorkStealingItemQueue(int numWorkers) {
+        workerDeques = new ConcurrentLinkedDeque[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            workerDeques[i] = new ConcurrentLinkedDeque<>();
+        }
+        int numStripes = Integer.highestOneBit(Math.max(MIN_STRIPES, numWorkers) - 1) << 1;
+        stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Inserts the item on the top of the queue. If called by a worker thread, the
+     * item goes to the worker's own deque.
+     */
+    void addFirst(IItem item, int workerId) {
+        size.incrementAndGet();
+        if (item.isQueueEnd()) {
+            queueEnds.add(item);
+        } else if (workerId >= 0 && workerId < workerDeques.length) {
+            workerDeques[workerId].addFirst(item);
+        } else {
+            sharedDeque.addFirst(item);
+        }
+    }
+
+    /**
+     * Inserts the item on the end of the shared deque (FIFO order).
+     */
+    void addLast(IItem item) {
+        size.incrementAndGet();
+        if (item.isQueueEnd()) {
+            queueEnds.add(item);
+        } else {
+            sharedDeque.addLast(item);
+        }
+    }
+
+    /**
+     * Inserts the item in a random stripe, to be removed in random order.
+     */
+    void addRandom(IItem item) {
+        size.incrementAndGet();
+        if (item.isQueueEnd()) {
+            queueEnds.add(item);
+            return;
+        }
+        Stripe stripe = stripes[ThreadLocalRandom.current().nextInt(stripes.length)];
+        stripe.lock.lock();
+        try {
+            stripe.items.add(item);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    IItem poll(int workerId) {
+        IItem item = pollItem(workerId);
+        if (item == null) {
+            item = queueEnds.poll();
+        }
+        if (item != null) {
+            size.decrementAndGet();
+        }
+        return item;
+    }
+
+    private IItem pollItem(int workerId) {
+        boolean isWorker = workerId >= 0 && workerId < workerDeques.length;
+        IItem item;
+        if (isWorker && (item = workerDeques[workerId].pollFirst()) != null) {
+            return item;
+        }
+        if ((item = sharedDeque.pollFirst()) != null) {
+            return item;
+        }
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        if (workerDeques.length > 0) {
+            int start = rnd.nextInt(workerDeques.length);
+            for (int i = 0; i < workerDeques.length; i++) {
+                int victim = (start + i) % workerDeques.length;
+                if (victim != workerId && (item = workerDeques[victim].pollLast()) != null) {
+                    return item;
+                }
+            }
+        }
+        int start = rnd.nextInt(stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[(start + i) & (stripes.length - 1)];
+            stripe.lock.lock();
+            try {
+                int n = stripe.items.size();
+                if (n > 0) {
+                    int pos = rnd.nextInt(n);
+                    item = stripe.items.get(pos);
+                    stripe.items.set(pos, stripe.items.get(n - 1));
+                    stripe.items.remove(n - 1);
+                    return item;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return null;
+    }
+
+    IItem peek() {
+        IItem item;
+        for (ConcurrentLinkedDeque<IItem> deque : workerDeques) {
+            if ((item = deque.peekFirst()) != null) {
+                return item;
+            }
+        }
+        if ((item = sharedDeque.peekFirst()) != null) {
+            return item;
+        }
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                if (!stripe.items.isEmpty()) {
+                    return stripe.items.get(0);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return queueEnds.peek();
+    }
+
+}
@@ -80,6 +80,9 @@ public enum STATE {
 
     private boolean waiting = false;
 
+    // permits of the WorkScheduler held while running a task
+    int permitsHeld = 0;
+
     private void incItemsBeingProcessed() {
         itemsBeingProcessed++;
         manager.getProcessingQueues().incItemsBeingProcessed();
@@ -248,15 +251,14 @@ public void run() {
                         sleep = false;
                         Thread.sleep(100);
                     }
-                    synchronized (manager.getProcessingQueues()) {
-                        evidence = manager.getProcessingQueues().pollFromCurrentQueue();
-                        if (evidence == null) {
-                            sleep = true;
-                            continue;
-                        }
-                        if (!evidence.isQueueEnd()) {
-                            incItemsBeingProcessed();
-                        }
+                    evidence = manager.getProcessingQueues().pollFromCurrentQueue();
+                    if (evidence == null) {
+                        sleep = true;
+                        continue;
+                    }
+                    if (!evidence.isQueueEnd()) {
+                        // already accounted in ProcessingQueues when polled
+                        itemsBeingProcessed++;
                     }
                 }
 
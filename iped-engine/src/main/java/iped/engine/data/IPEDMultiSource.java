@@ -182,9 +182,34 @@ private void loadCategories() {
                 }
             }
         }
+        sumCategoryCounts();
         loadCategoryTree();
     }
 
+    /**
+     * Leaf category counts are the sum of the counts of each case, so just them
+     * are not searched again in the multicase. Parent categories are always
+     * searched, because the multicase expands them to their descendants, while
+     * the counts of each case were searched before that expansion was built.
+     */
+    private void sumCategoryCounts() {
+        if (cases.isEmpty()) {
+            return;
+        }
+        Set<String> names = new HashSet<>(cases.get(0).categoryCounts.keySet());
+        for (IPEDSource iCase : cases) {
+            names.retainAll(iCase.categoryCounts.keySet());
+        }
+        names.removeIf(name -> descendantsCategories.containsKey(name.toLowerCase()));
+        for (String name : names) {
+            int count = 0;
+            for (IPEDSource iCase : cases) {
+                count += iCase.categoryCounts.get(name);
+            }
+            categoryCounts.put(name, count);
+        }
+    }
+
     private void openIndex() throws IOException {
         int i = 0;
         IndexReader[] readers = new IndexReader[cases.size()];
@@ -300,6 +325,13 @@ final public int getLuceneId(IItemId id) {
         int baseDoc = baseDocCache.get(sourceid);
         return atomicCase.getLuceneId(id.getId()) + baseDoc;
     }
+
+    @Override
+    final public int getLuceneId(int sourceId, int id) {
+        IIPEDSource atomicCase = getAtomicSourceBySourceId(sourceId);
+        int baseDoc = baseDocCache.get(sourceId);
+        return atomicCase.getLuceneId(id) + baseDoc;
+    }
     
     @SuppressWarnings("resource")
     @Override
@@ -20,11 +20,11 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -42,6 +42,7 @@
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.LeafReader;
@@ -124,13 +125,15 @@ public class IPEDSource implements IIPEDSource {
     private IBookmarks bookmarks;
     IMultiBookmarks multiBookmarks;
 
-    private int[] ids, docs;
-    private BitSet parentDocs;
+    private IntBuffer ids, docs;
 
     protected int sourceId = -1;
 
     int totalItens = 0;
 
+    // item count of each category, by name
+    protected final Map<String, Integer> categoryCounts = new HashMap<>();
+
     private int lastId = -1;
 
     LinkedHashSet<String> keywords = new LinkedHashSet<String>();
@@ -224,17 +227,26 @@ public IPEDSource(File casePath, IndexWriter iw, boolean askImagePathIfNotFound)
             IndexSearcher.setMaxClauseCount(Integer.MAX_VALUE);
             analyzer = AppAnalyzer.get();
 
-            populateLuceneIdToIdMap();
-            invertIdToLuceneIdArray();
-            populateEvidenceUUIDs();
-            countTotalItems();
+            StartupSnapshot snapshot = loadStartupSnapshot();
+            if (snapshot == null) {
+                populateLuceneIdToIdMap();
+                invertIdToLuceneIdArray();
+                populateEvidenceUUIDs();
+                countTotalItems();
+            }
 
             migrateImagesPassword();
 
-            loadLeafCategories();
+            if (snapshot == null) {
+                loadLeafCategories();
+            }
             loadCategoryTree();
             buildDescendantsCategories(categoryTree);
 
+            if (snapshot == null || snapshot.categoryCounts.size() < categoryCounts.size()) {
+                saveStartupSnapshot();
+            }
+
             loadKeywords();
 
             IndexItem.loadMetadataTypes(new File(moduleDir, "conf")); //$NON-NLS-1$
@@ -304,7 +316,7 @@ private void migrateImagesPassword() {
     public void clearOldBookmarks() {
         ArrayList<Integer> idsToRemove = new ArrayList<>();
         for (int id = 0; id <= lastId; id++) {
-            if (docs[id] == -1) {
+            if (docs.get(id) == -1) {
                 idsToRemove.add(id);
             }
         }
@@ -323,12 +335,11 @@ public void clearOldBookmarks() {
     public void populateLuceneIdToIdMap() throws IOException {
 
         LOGGER.info("Creating LuceneId to ID mapping..."); //$NON-NLS-1$
-        ids = new int[reader.maxDoc()];
+        int[] ids = new int[reader.maxDoc()];
         for (int i = 0; i < ids.length; i++) {
             ids[i] = -1;
         }
-        
-        parentDocs = new BitSet(ids.length);
+        this.ids = IntBuffer.wrap(ids);
 
         NumericDocValues ndv = atomicReader.getNumericDocValues(IndexItem.ID);
         if (ndv == null) {
@@ -344,22 +355,92 @@ public void populateLuceneIdToIdMap() throws IOException {
                 continue;
             }
             ids[i] = (int) ndv.longValue();
-            parentDocs.set(i);
             if (ids[i] > lastId)
                 lastId = ids[i];
         }
     }
 
     protected void invertIdToLuceneIdArray() {
-        docs = new int[lastId + 1];
+        int[] docs = new int[lastId + 1];
         for (int i = 0; i < docs.length; i++) {
             docs[i] = -1;
         }
-        for (int i = 0; i < ids.length; i++) {
-            if (ids[i] > -1) {
-                docs[ids[i]] = i;
+        for (int i = 0; i < ids.limit(); i++) {
+            int id = ids.get(i);
+            if (id > -1) {
+                docs[id] = i;
             }
         }
+        this.docs = IntBuffer.wrap(docs);
+    }
+
+    /**
+     * Index commit the reader was opened from, null if the reader also sees
+     * uncommitted changes (case being processed).
+     */
+    private IndexCommit getIndexCommit() throws IOException {
+        if (iw != null || !(reader instanceof DirectoryReader)) {
+            return null;
+        }
+        return ((DirectoryReader) reader).getIndexCommit();
+    }
+
+    /**
+     * Loads the data computed by a previous open of the same index commit.
+     * 
+     * @return the loaded snapshot, or null if it does not exist or is stale
+     */
+    private StartupSnapshot loadStartupSnapshot() {
+        try {
+            IndexCommit commit = getIndexCommit();
+            if (commit == null) {
+                return null;
+            }
+            File file = new File(moduleDir, StartupSnapshot.FILE_PATH);
+            StartupSnapshot snapshot = StartupSnapshot.load(file, commit.getGeneration(),
+                    ((DirectoryReader) reader).getVersion(), reader.maxDoc(), reader.numDocs());
+            if (snapshot == null) {
+                return null;
+            }
+            ids = snapshot.ids;
+            docs = snapshot.docs;
+            lastId = snapshot.lastId;
+            totalItens = snapshot.totalItems;
+            evidenceUUIDs.addAll(snapshot.evidenceUUIDs);
+            leafCategories.addAll(snapshot.leafCategories);
+            categoryCounts.putAll(snapshot.categoryCounts);
+            LOGGER.info("Startup data loaded from " + file.getAbsolutePath()); //$NON-NLS-1$
+            return snapshot;
+
+        } catch (IOException e) {
+            LOGGER.warn("Error loading startup snapshot, computing it again: " + e.toString()); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    private void saveStartupSnapshot() {
+        File file = new File(moduleDir, StartupSnapshot.FILE_PATH);
+        try {
+            IndexCommit commit = getIndexCommit();
+            if (commit == null || !file.getParentFile().canWrite()) {
+                return;
+            }
+            StartupSnapshot snapshot = new StartupSnapshot(commit.getGeneration(),
+                    ((DirectoryReader) reader).getVersion(), reader.maxDoc(), reader.numDocs());
+            snapshot.ids = ids;
+            snapshot.docs = docs;
+            snapshot.lastId = lastId;
+            snapshot.totalItems = totalItens;
+            snapshot.evidenceUUIDs.addAll(evidenceUUIDs);
+            snapshot.leafCategories.addAll(leafCategories);
+            snapshot.categoryCounts.putAll(categoryCounts);
+            if (snapshot.write(file)) {
+                LOGGER.info("Startup data saved to " + file.getAbsolutePath()); //$NON-NLS-1$
+            }
+        } catch (IOException e) {
+            // e.g. case on read only media or file mapped by other process
+            LOGGER.warn("Error saving startup snapshot " + file.getAbsolutePath() + ": " + e.toString()); //$NON-NLS-1$ //$NON-NLS-2$
+        }
     }
 
     private void populateEvidenceUUIDs() throws IOException {
@@ -491,6 +572,12 @@ private int countNumItems(Category category) {
             countNumItems(child);
         }
 
+        Integer count = categoryCounts.get(category.getName());
+        if (count != null) {
+            category.setNumItems(count);
+            return count;
+        }
+
         String query = IndexItem.CATEGORY + ":\"" + category.getName() + "\"";
         IPEDSearcher searcher = new IPEDSearcher(this, query);
         searcher.setNoScoring(true);
@@ -507,6 +594,7 @@ private int countNumItems(Category category) {
         }
 
         category.setNumItems(num);
+        categoryCounts.put(category.getName(), num);
         return num;
     }
 
@@ -579,7 +667,7 @@ public IItem getItemByLuceneID(int docID) {
     }
 
     public IItem getItemByID(int id) {
-        return getItemByLuceneID(docs[id]);
+        return getItemByLuceneID(docs.get(id));
     }
 
     public void reopen() throws IOException {
@@ -763,19 +851,24 @@ public File getCaseDir() {
     }
 
     public int getId(int luceneId) {
-        return ids[luceneId];
+        return ids.get(luceneId);
     }
     
     public IntStream getLuceneIdStream() {
-    	return parentDocs.stream();
+        // live docs with an item id
+        return IntStream.range(0, ids.limit()).filter(luceneId -> ids.get(luceneId) != -1);
     }
 
     public int getLuceneId(IItemId itemId) {
-        return docs[itemId.getId()];
+        return docs.get(itemId.getId());
     }
 
     public int getLuceneId(int id) {
-        return docs[id];
+        return docs.get(id);
+    }
+
+    public int getLuceneId(int sourceId, int id) {
+        return docs.get(id);
     }
 
     public int getParentId(int id) {
@@ -0,0 +1,231 @@
+package iped.engine.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data computed from the index each time a case is opened (luceneId to id
+ * mappings, total items, evidence UUIDs, categories and their item counts),
+ * persisted to be reused by the next opens of the same index commit.
+ *
+ * The file starts with a header identifying the index commit it was computed
+ * from (generation, reader version, maxDoc and numDocs), followed by the small
+ * string data and by the luceneId to id and id to luceneId int arrays, which
+ * are memory mapped instead of read, so loading takes the same time whatever
+ * the case size. Any change to the index, like adding evidences or removing
+ * items, creates a new commit and makes the snapshot stale, so it is ignored
+ * and written again.
+ */
+class StartupSnapshot {
+
+    static final String FILE_PATH = IPEDSource.DATA_DIR + "/startupSnapshot.bin"; //$NON-NLS-1$
+
+    private static final long MAGIC = 0x49504544534e4150L; // IPEDSNAP
+    private static final int FORMAT_VERSION = 1;
+
+    // magic, format, generation, version, maxDoc, numDocs, lastId, totalItems,
+    // strings length
+    private static final int HEADER_SIZE = 8 + 4 + 8 + 8 + 4 + 4 + 4 + 4 + 4;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    final long generation;
+    final long version;
+    final int maxDoc;
+    final int numDocs;
+
+    IntBuffer ids;
+    IntBuffer docs;
+    int lastId;
+    int totalItems;
+    List<String> evidenceUUIDs = new ArrayList<>();
+    List<String> leafCategories = new ArrayList<>();
+    Map<String, Integer> categoryCounts = new HashMap<>();
+
+    StartupSnapshot(long generation, long version, int maxDoc, int numDocs) {
+        this.generation = generation;
+        this.version = version;
+        this.maxDoc = maxDoc;
+        this.numDocs = numDocs;
+    }
+
+    /**
+     * @return the snapshot of the given commit, or null if the file does not
+     *         exist or was computed from other commit
+     */
+    static StartupSnapshot load(File file, long generation, long version, int maxDoc, int numDocs)
+            throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getLong() != MAGIC || header.getInt() != FORMAT_VERSION || header.getLong() != generation
+                    || header.getLong() != version || header.getInt() != maxDoc || header.getInt() != numDocs) {
+                return null;
+            }
+            StartupSnapshot snapshot = new StartupSnapshot(generation, version, maxDoc, numDocs);
+            snapshot.lastId = header.getInt();
+            snapshot.totalItems = header.getInt();
+            int stringsLen = header.getInt();
+
+            long idsOffset = align(HEADER_SIZE + (long) stringsLen);
+            long docsOffset = idsOffset + 4L * maxDoc;
+            long docsLen = snapshot.lastId + 1;
+            if (stringsLen < 0 || snapshot.lastId < -1 || size != docsOffset + 4 * docsLen) {
+                throw new IOException("Corrupted startup snapshot " + file.getAbsolutePath()); //$NON-NLS-1$
+            }
+
+            ByteBuffer strings = ByteBuffer.allocate(stringsLen);
+            readFully(channel, strings, HEADER_SIZE);
+            snapshot.readStrings(strings.array());
+
+            // the mappings remain valid after the channel is closed
+            snapshot.ids = map(channel, idsOffset, maxDoc);
+            snapshot.docs = map(channel, docsOffset, docsLen);
+            return snapshot;
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file, then replaces the given one.
+     *
+     * @return false if the arrays are too large to be mapped
+     */
+    boolean write(File file) throws IOException {
+        if (4L * ids.limit() > Integer.MAX_VALUE || 4L * docs.limit() > Integer.MAX_VALUE) {
+            return false;
+        }
+        byte[] strings = writeStrings();
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile()); //$NON-NLS-1$
+        try {
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putLong(MAGIC).putInt(FORMAT_VERSION).putLong(generation).putLong(version).putInt(maxDoc)
+                        .putInt(numDocs).putInt(lastId).putInt(totalItems).putInt(strings.length);
+                buffer.flip();
+                writeFully(channel, buffer);
+                writeFully(channel, ByteBuffer.wrap(strings));
+
+                buffer.clear();
+                long padding = align(channel.position()) - channel.position();
+                for (int i = 0; i < padding; i++) {
+                    buffer.put((byte) 0);
+                }
+                writeInts(channel, ids, buffer);
+                writeInts(channel, docs, buffer);
+                channel.force(false);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+        return true;
+    }
+
+    private void readStrings(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            evidenceUUIDs.add(in.readUTF());
+        }
+        n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            leafCategories.add(in.readUTF());
+        }
+        n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            String name = in.readUTF();
+            categoryCounts.put(name, in.readInt());
+        }
+    }
+
+    private byte[] writeStrings() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(evidenceUUIDs.size());
+        for (String uuid : evidenceUUIDs) {
+            out.writeUTF(uuid);
+        }
+        out.writeInt(leafCategories.size());
+        for (String category : leafCategories) {
+            out.writeUTF(category);
+        }
+        out.writeInt(categoryCounts.size());
+        for (Map.Entry<String, Integer> entry : categoryCounts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the ints in little endian order, after the bytes already in the
+     * buffer.
+     */
+    private static void writeInts(FileChannel channel, IntBuffer ints, ByteBuffer buffer) throws IOException {
+        for (int i = 0; i < ints.limit(); i++) {
+            if (buffer.remaining() < 4) {
+                buffer.flip();
+                writeFully(channel, buffer);
+                buffer.clear();
+            }
+            buffer.putInt(ints.get(i));
+        }
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static IntBuffer map(FileChannel channel, long offset, long numInts) throws IOException {
+        if (numInts == 0) {
+            return IntBuffer.allocate(0);
+        }
+        return channel.map(MapMode.READ_ONLY, offset, 4 * numInts).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static long align(long position) {
+        return (position + 3) & ~3L;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of startup snapshot"); //$NON-NLS-1$
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,542 @@
+package iped.engine.hashdb;
+
+import static iped.engine.hashdb.HashDB.hashBytesLen;
+import static iped.engine.hashdb.HashDB.hashTypes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Bulk build of a new hashes database, used by HashDBTool ("-bulk" option).
+ *
+ * Instead of looking up each imported record in the database, records are
+ * serialized and accumulated in memory by a {@link Sorter} per input being
+ * read. When the buffer is full, it is sorted by hash and written to a binary
+ * run file in a background thread, while the input keeps being read. Each
+ * record starts with a fixed width key (hash type + hash value of the first
+ * hash present, as in {@link HashDB#hashTypes} order), followed by the other
+ * hashes and properties. After all inputs are read, the runs are merged in a
+ * single streaming k-way merge, combining properties of records with the same
+ * key, and each hash is written to the database once, in key order.
+ *
+ * Run files are kept in a work folder next to the output database. A
+ * checkpoint file listing the inputs already read, their runs and the
+ * properties ids is updated after each input, so an interrupted build can be
+ * resumed, reading only the inputs not completed yet.
+ */
+class HashDBBulkLoader {
+
+    private static final String WORK_DIR_EXT = ".bulk";
+    private static final String CHECKPOINT_FILE = "checkpoint.properties";
+    private static final String RUN_PREFIX = "run-";
+    private static final String RUN_EXT = ".bin";
+
+    private static final String PROPERTY_KEY = "property.";
+    private static final String INPUT_KEY = "input.";
+    private static final String RUNS_SUFFIX = ".runs";
+
+    private static final int MAX_BUFFER_SIZE = 128 << 20;
+    private static final int MIN_BUFFER_SIZE = 8 << 20;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    // rough memory overhead of each record kept in memory (array header and ref)
+    private static final int RECORD_OVERHEAD = 32;
+
+    /**
+     * Orders serialized records by hash type and hash value.
+     */
+    static final Comparator<byte[]> KEY_COMPARATOR = (a, b) -> {
+        if (a[0] != b[0]) {
+            return a[0] - b[0];
+        }
+        int len = hashBytesLen[a[0]] + 1;
+        return Arrays.compareUnsigned(a, 1, len, b, 1, len);
+    };
+
+    interface MergeHandler {
+        /**
+         * Receives each distinct hash, in key order, with all its properties
+         * combined.
+         */
+        boolean accept(byte[][] hashes, Map<Integer, Set<String>> properties) throws Exception;
+    }
+
+    private final File workDir;
+    private final File checkpointFile;
+    private final int bufferSize;
+    private final ExecutorService sortExecutor;
+    private final AtomicInteger nextRunId = new AtomicInteger();
+
+    // inputs completed, by key, with their run files
+    private final Map<String, List<String>> completedInputs = new HashMap<>();
+    private final Map<Integer, String> propertyNames = new ConcurrentSkipListMap<>();
+
+    private long totalRecords, distinctHashes;
+
+    HashDBBulkLoader(File output, int numThreads) {
+        workDir = getWorkDir(output);
+        checkpointFile = new File(workDir, CHECKPOINT_FILE);
+        // each reader has a buffer being filled and another one being sorted
+        long memory = Runtime.getRuntime().maxMemory() / (4L * numThreads);
+        bufferSize = (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, memory));
+        sortExecutor = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "HashDBBulkSorter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    File getWorkDir() {
+        return workDir;
+    }
+
+    static File getWorkDir(File output) {
+        return new File(output.getPath() + WORK_DIR_EXT);
+    }
+
+    /**
+     * Opens the work folder, loading the checkpoint of a previous interrupted
+     * build, if present, and deleting its incomplete runs.
+     *
+     * @return properties (id to name) used by the runs already written
+     */
+    synchronized Map<Integer, String> open() throws IOException {
+        Files.createDirectories(workDir.toPath());
+        if (checkpointFile.exists()) {
+            Properties checkpoint = new Properties();
+            try (InputStream in = new FileInputStream(checkpointFile)) {
+                checkpoint.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+            for (String key : checkpoint.stringPropertyNames()) {
+                if (key.startsWith(PROPERTY_KEY)) {
+                    propertyNames.put(Integer.parseInt(key.substring(PROPERTY_KEY.length())),
+                            checkpoint.getProperty(key));
+                } else if (key.startsWith(INPUT_KEY) && !key.endsWith(RUNS_SUFFIX)) {
+                    String runs = checkpoint.getProperty(key + RUNS_SUFFIX, "");
+                    completedInputs.put(checkpoint.getProperty(key),
+                            runs.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(runs.split(","))));
+                }
+            }
+        }
+        Set<String> usedRuns = new HashSet<>();
+        for (List<String> runs : completedInputs.values()) {
+            usedRuns.addAll(runs);
+        }
+        int maxRunId = -1;
+        for (File file : workDir.listFiles()) {
+            String name = file.getName();
+            if (!name.startsWith(RUN_PREFIX)) {
+                continue;
+            }
+            if (!usedRuns.contains(name)) {
+                file.delete();
+            } else {
+                maxRunId = Math.max(maxRunId,
+                        Integer.parseInt(name.substring(RUN_PREFIX.length(), name.length() - RUN_EXT.length())));
+            }
+        }
+        nextRunId.set(maxRunId + 1);
+        return new HashMap<>(propertyNames);
+    }
+
+    /**
+     * @return a key identifying the input files, changed if any of them is
+     *         modified
+     */
+    static String getInputKey(List<File> files) {
+        StringBuilder sb = new StringBuilder();
+        for (File file : files) {
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append(file.getAbsolutePath()).append('|').append(file.length()).append('|')
+                    .append(file.lastModified());
+        }
+        return sb.toString();
+    }
+
+    synchronized boolean isCompleted(String inputKey) {
+        return completedInputs.containsKey(inputKey);
+    }
+
+    void addProperty(int id, String name) {
+        propertyNames.put(id, name);
+    }
+
+    Sorter newSorter() {
+        return new Sorter();
+    }
+
+    /**
+     * Flushes the sorter and saves a checkpoint with the input as completed.
+     */
+    void complete(String inputKey, Sorter sorter) throws IOException {
+        List<String> runs = sorter.finish();
+        synchronized (this) {
+            completedInputs.put(inputKey, runs);
+            saveCheckpoint();
+        }
+    }
+
+    private void saveCheckpoint() throws IOException {
+        Properties checkpoint = new Properties();
+        for (Map.Entry<Integer, String> entry : propertyNames.entrySet()) {
+            checkpoint.setProperty(PROPERTY_KEY + entry.getKey(), entry.getValue());
+        }
+        int i = 0;
+        for (Map.Entry<String, List<String>> entry : completedInputs.entrySet()) {
+            checkpoint.setProperty(INPUT_KEY + i, entry.getKey());
+            checkpoint.setProperty(INPUT_KEY + i + RUNS_SUFFIX, String.join(",", entry.getValue()));
+            i++;
+        }
+        File tmp = new File(workDir, CHECKPOINT_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            checkpoint.store(new OutputStreamWriter(out, StandardCharsets.UTF_8), null);
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Merges the runs of the given inputs, calling the handler for each distinct
+     * hash.
+     */
+    void merge(Collection<String> inputKeys, MergeHandler handler, DoubleConsumer progress) throws Exception {
+        List<File> runFiles = new ArrayList<>();
+        long totalBytes = 0;
+        totalRecords = distinctHashes = 0;
+        synchronized (this) {
+            for (String key : inputKeys) {
+                for (String run : completedInputs.get(key)) {
+                    File file = new File(workDir, run);
+                    runFiles.add(file);
+                    totalBytes += file.length();
+                }
+            }
+        }
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> {
+            int cmp = KEY_COMPARATOR.compare(a.record, b.record);
+            // records of the same hash are combined in the order they were read
+            return cmp != 0 ? cmp : Integer.compare(a.order, b.order);
+        });
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for (File file : runFiles) {
+                RunReader reader = new RunReader(file, readers.size());
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            byte[][] hashes = new byte[hashTypes.length][];
+            Map<Integer, Set<String>> properties = new HashMap<>();
+            byte[] key = null;
+            long bytesRead = 0;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                byte[] record = reader.record;
+                if (key != null && KEY_COMPARATOR.compare(key, record) != 0) {
+                    if (!handler.accept(hashes, properties)) {
+                        throw new RuntimeException("Error writing hash " + HashDB.hashBytesToStr(getKey(key)));
+                    }
+                    distinctHashes++;
+                    hashes = new byte[hashTypes.length][];
+                    properties.clear();
+                }
+                key = record;
+                decode(record, hashes, properties);
+                totalRecords++;
+                bytesRead += reader.recordBytes;
+                if ((totalRecords & 65535) == 0) {
+                    progress.accept(bytesRead / (double) totalBytes);
+                }
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            if (key != null) {
+                if (!handler.accept(hashes, properties)) {
+                    throw new RuntimeException("Error writing hash " + HashDB.hashBytesToStr(getKey(key)));
+                }
+                distinctHashes++;
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * @return number of records read from the runs by the last merge
+     */
+    long getTotalRecords() {
+        return totalRecords;
+    }
+
+    /**
+     * @return number of distinct hashes written by the last merge
+     */
+    long getDistinctHashes() {
+        return distinctHashes;
+    }
+
+    void close() {
+        sortExecutor.shutdownNow();
+    }
+
+    /**
+     * Deletes the work folder, after the new database was committed.
+     */
+    void delete() {
+        File[] files = workDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        workDir.delete();
+    }
+
+    private static byte[] getKey(byte[] record) {
+        return Arrays.copyOfRange(record, 1, 1 + hashBytesLen[record[0]]);
+    }
+
+    /**
+     * Serializes a record: key hash type, key hash, bit mask of the other hashes
+     * present, other hashes, number of properties and, for each property, its id,
+     * number of values and values (length + UTF-8 bytes).
+     *
+     * @return the serialized record or null if there is no hash
+     */
+    static byte[] encode(byte[][] hashes, Map<Integer, Set<String>> properties, ByteArrayOutputStream bytes)
+            throws IOException {
+        int keyType = -1;
+        int mask = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != null) {
+                if (keyType == -1) {
+                    keyType = i;
+                } else {
+                    mask |= 1 << i;
+                }
+            }
+        }
+        if (keyType == -1) {
+            return null;
+        }
+        bytes.reset();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(keyType);
+        out.write(hashes[keyType]);
+        out.writeByte(mask);
+        for (int i = keyType + 1; i < hashes.length; i++) {
+            if (hashes[i] != null) {
+                out.write(hashes[i]);
+            }
+        }
+        out.writeInt(properties.size());
+        for (Map.Entry<Integer, Set<String>> entry : properties.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (String value : entry.getValue()) {
+                byte[] b = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Combines the serialized record into the hashes (keeping hashes already
+     * present) and properties (merging values).
+     */
+    static void decode(byte[] record, byte[][] hashes, Map<Integer, Set<String>> properties) {
+        int pos = 0;
+        int keyType = record[pos++];
+        if (hashes[keyType] == null) {
+            hashes[keyType] = Arrays.copyOfRange(record, pos, pos + hashBytesLen[keyType]);
+        }
+        pos += hashBytesLen[keyType];
+        int mask = record[pos++] & 0xFF;
+        for (int i = keyType + 1; i < hashTypes.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                if (hashes[i] == null) {
+                    hashes[i] = Arrays.copyOfRange(record, pos, pos + hashBytesLen[i]);
+                }
+                pos += hashBytesLen[i];
+            }
+        }
+        int numProps = getInt(record, pos);
+        pos += 4;
+        for (int i = 0; i < numProps; i++) {
+            int id = getInt(record, pos);
+            int numValues = getInt(record, pos + 4);
+            pos += 8;
+            Set<String> values = properties.get(id);
+            if (values == null) {
+                properties.put(id, values = new HashSet<String>());
+            }
+            for (int j = 0; j < numValues; j++) {
+                int len = getInt(record, pos);
+                pos += 4;
+                values.add(new String(record, pos, len, StandardCharsets.UTF_8));
+                pos += len;
+            }
+        }
+    }
+
+    private static int getInt(byte[] b, int pos) {
+        return ((b[pos] & 0xFF) << 24) | ((b[pos + 1] & 0xFF) << 16) | ((b[pos + 2] & 0xFF) << 8) | (b[pos + 3] & 0xFF);
+    }
+
+    /**
+     * Accumulates the records of one input and writes them in sorted runs. Not
+     * thread safe, each reader thread must use its own sorter.
+     */
+    class Sorter {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<String> runs = new ArrayList<>();
+        private List<byte[]> buffer = new ArrayList<>();
+        private long bufferBytes = 0;
+        private Future<?> pending;
+
+        void add(byte[][] hashes, Map<Integer, Set<String>> properties) throws IOException {
+            byte[] record = encode(hashes, properties, bytes);
+            if (record == null) {
+                return;
+            }
+            buffer.add(record);
+            bufferBytes += record.length + RECORD_OVERHEAD;
+            if (bufferBytes >= bufferSize) {
+                spill();
+            }
+        }
+
+        private void spill() throws IOException {
+            waitPending();
+            List<byte[]> records = buffer;
+            String run = RUN_PREFIX + nextRunId.getAndIncrement() + RUN_EXT;
+            runs.add(run);
+            pending = sortExecutor.submit(() -> {
+                records.sort(KEY_COMPARATOR);
+                writeRun(new File(workDir, run), records);
+                return null;
+            });
+            buffer = new ArrayList<>();
+            bufferBytes = 0;
+        }
+
+        private void waitPending() throws IOException {
+            if (pending != null) {
+                try {
+                    pending.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                } finally {
+                    pending = null;
+                }
+            }
+        }
+
+        /**
+         * @return the names of the run files written
+         */
+        List<String> finish() throws IOException {
+            if (!buffer.isEmpty()) {
+                spill();
+            }
+            waitPending();
+            return runs;
+        }
+    }
+
+    /**
+     * Writes the run and syncs it to disk, before a checkpoint can list it as
+     * complete.
+     */
+    private static void writeRun(File file, List<byte[]> records) throws IOException {
+        try (FileOutputStream os = new FileOutputStream(file);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 20))) {
+            for (byte[] record : records) {
+                out.writeInt(record.length);
+                out.write(record);
+            }
+            out.flush();
+            os.getFD().sync();
+        }
+    }
+
+    private static class RunReader {
+
+        private final DataInputStream in;
+        private final int order;
+        private byte[] record;
+        private int recordBytes;
+
+        RunReader(File file, int order) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), READ_BUFFER_SIZE));
+            this.order = order;
+        }
+
+        boolean next() throws IOException {
+            int len;
+            try {
+                len = in.readInt();
+            } catch (EOFException e) {
+                record = null;
+                return false;
+            }
+            record = new byte[len];
+            in.readFully(record);
+            recordBytes = len + 4;
+            return true;
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+}
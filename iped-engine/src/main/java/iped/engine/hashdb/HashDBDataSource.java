@@ -32,6 +32,7 @@ public class HashDBDataSource {
     private PreparedStatement stmtSelectMD5;
     private boolean[] presentHashes;
     private final Map<Integer, String> propertyIdToName = new HashMap<Integer, String>();
+    private volatile HashDBIndex index;
 
     private static final String ledFileLength = "fileLength";
     private static final String ledFileExt = "fileExt";
@@ -46,12 +47,37 @@ public class HashDBDataSource {
     private static final String pedoStatus = "pedo";
 
     public HashDBDataSource(File dbFile) throws Exception {
+        this(dbFile, true);
+    }
+
+    /**
+     * @param useCompiledIndex
+     *            if the compiled index built by HashDBTool should be used for
+     *            lookups, when present and up to date.
+     */
+    public HashDBDataSource(File dbFile, boolean useCompiledIndex) throws Exception {
         connect(dbFile);
         prepare();
         loadProperties();
+        if (useCompiledIndex) {
+            index = HashDBIndex.open(dbFile);
+        }
+    }
+
+    public boolean isUsingCompiledIndex() {
+        return index != null;
+    }
+
+    public String getMD5(int hashId) {
+        HashDBIndex idx = index;
+        if (idx != null) {
+            byte[] md5Bytes = idx.getMD5(hashId);
+            return md5Bytes == null ? null : HashDB.hashBytesToStr(md5Bytes);
+        }
+        return getMD5FromDB(hashId);
     }
 
-    public synchronized String getMD5(int hashId) {
+    private synchronized String getMD5FromDB(int hashId) {
         String md5 = null;
         try {
             stmtSelectMD5.setInt(1, hashId);
@@ -67,7 +93,21 @@ public synchronized String getMD5(int hashId) {
         return md5;
     }
 
-    public synchronized Map<String, List<String>> getProperties(int hashId) {
+    public Map<String, List<String>> getProperties(int hashId) {
+        HashDBIndex idx = index;
+        if (idx != null) {
+            Map<String, String> values = new HashMap<String, String>();
+            idx.readProperties(hashId, values, false);
+            Map<String, List<String>> properties = new HashMap<String, List<String>>();
+            for (Map.Entry<String, String> e : values.entrySet()) {
+                properties.put(e.getKey(), HashDB.toList(e.getValue()));
+            }
+            return properties;
+        }
+        return getPropertiesFromDB(hashId);
+    }
+
+    private synchronized Map<String, List<String>> getPropertiesFromDB(int hashId) {
         Map<String, List<String>> properties = new HashMap<String, List<String>>();
         try {
             stmtSelectHashProperties.setInt(1, hashId);
@@ -87,7 +127,31 @@ public synchronized Map<String, List<String>> getProperties(int hashId) {
         return properties;
     }
 
-    public synchronized LedItem getLedItem(int hashId) {
+    public LedItem getLedItem(int hashId) {
+        HashDBIndex idx = index;
+        if (idx != null) {
+            String md5 = getMD5(hashId);
+            if (md5 == null)
+                return null;
+            Map<String, String> values = new HashMap<String, String>();
+            idx.readProperties(hashId, values, false);
+            long length = -1;
+            String ext = null;
+            for (Map.Entry<String, String> e : values.entrySet()) {
+                if (e.getKey().equalsIgnoreCase(ledFileLength)) {
+                    length = Long.parseLong(e.getValue());
+                } else if (e.getKey().equalsIgnoreCase(ledFileExt)) {
+                    ext = e.getValue();
+                }
+            }
+            if (length == -1)
+                return null;
+            return new LedItem(length, md5, ext);
+        }
+        return getLedItemFromDB(hashId);
+    }
+
+    private synchronized LedItem getLedItemFromDB(int hashId) {
         try {
             String md5 = null;
             stmtSelectMD5.setInt(1, hashId);
@@ -294,7 +358,7 @@ public synchronized LedHashDB readLedHashDB() throws Exception {
         return ledHashDB;
     }
 
-    public synchronized List<String> lookupSets(String algorithm, String hash) throws Exception {
+    public List<String> lookupSets(String algorithm, String hash) throws Exception {
         int idx = HashDB.hashType(algorithm);
         if (idx < 0)
             return null;
@@ -321,7 +385,16 @@ public synchronized List<String> lookupSets(String algorithm, String hash) throw
         return pedo ? hashSets : null;
     }
 
-    public synchronized void lookup(byte[][] hashes, Map<String, String> properties) throws Exception {
+    public void lookup(byte[][] hashes, Map<String, String> properties) throws Exception {
+        HashDBIndex idx = index;
+        if (idx != null) {
+            idx.lookup(hashes, properties);
+        } else {
+            lookupInDB(hashes, properties);
+        }
+    }
+
+    private synchronized void lookupInDB(byte[][] hashes, Map<String, String> properties) throws Exception {
         int mask = 0;
         for (int i = 0; i < hashes.length; i++) {
             if (hashes[i] != null && presentHashes[i]) {
@@ -360,6 +433,7 @@ public synchronized void lookup(byte[][] hashes, Map<String, String> properties)
     }
 
     public synchronized void close() {
+        index = null;
         if (stmtSelectMD5 != null) {
             try {
                 stmtSelectMD5.close();
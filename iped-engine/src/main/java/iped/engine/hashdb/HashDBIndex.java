@@ -0,0 +1,577 @@
+package iped.engine.hashdb;
+
+import static iped.engine.hashdb.HashDB.hashBytesLen;
+import static iped.engine.hashdb.HashDB.hashTypes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.Encoding;
+
+/**
+ * Read only compiled version of a hashes database, built by HashDBTool
+ * ("-compile" option) and stored next to the database file, with the
+ * {@link #EXT} extension.
+ *
+ * For each hash type there is a sorted array of fixed width records (hash value
+ * + hash id), with a Bloom filter in front of it. Properties are stored in a
+ * table addressed by hash id. All sections are memory mapped, so lookups are
+ * binary searches that do not need locks nor allocate memory, and scale with
+ * the number of workers.
+ *
+ * File layout: hash records and Bloom filters of each hash type, hash id to
+ * properties offsets, properties entries, directory, directory offset and magic
+ * number.
+ */
+public class HashDBIndex {
+
+    public static final String EXT = ".idx";
+
+    private static final long MAGIC = 0x4950454448494458L; // IPEDHIDX
+    private static final int VERSION = 1;
+
+    private static final int BLOOM_BITS_PER_HASH = 10;
+    private static final int BLOOM_NUM_HASHES = 7;
+
+    private static final int MAX_CHUNK_SIZE = 1 << 30;
+
+    private final String[] propertyIdToName;
+
+    private final long[] counts = new long[hashTypes.length];
+    private final MappedSection[] records = new MappedSection[hashTypes.length];
+    private final MappedSection[] blooms = new MappedSection[hashTypes.length];
+    private final long[] bloomBits = new long[hashTypes.length];
+    private final boolean[] presentHashes = new boolean[hashTypes.length];
+
+    private final long maxHashId;
+    private final MappedSection offsets;
+    private final MappedSection entries;
+
+    public static File getIndexFile(File dbFile) {
+        return new File(dbFile.getPath() + EXT);
+    }
+
+    /**
+     * Opens the compiled index of the database, if it exists and was built from
+     * the current database file.
+     *
+     * @return the index or null if it does not exist or is outdated.
+     */
+    public static HashDBIndex open(File dbFile) throws IOException {
+        File indexFile = getIndexFile(dbFile);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
+            if (raf.length() < 16) {
+                return null;
+            }
+            raf.seek(raf.length() - 16);
+            long dirOffset = raf.readLong();
+            if (raf.readLong() != MAGIC) {
+                return null;
+            }
+            raf.seek(dirOffset);
+            if (raf.readInt() != VERSION || raf.readLong() != dbFile.length()
+                    || raf.readLong() != dbFile.lastModified()) {
+                return null;
+            }
+            return new HashDBIndex(raf);
+        }
+    }
+
+    private HashDBIndex(RandomAccessFile raf) throws IOException {
+        FileChannel fc = raf.getChannel();
+        int numProps = raf.readInt();
+        int maxPropId = raf.readInt();
+        propertyIdToName = new String[maxPropId + 1];
+        for (int i = 0; i < numProps; i++) {
+            int id = raf.readInt();
+            propertyIdToName[id] = raf.readUTF();
+        }
+        int numTypes = raf.readInt();
+        if (numTypes != hashTypes.length) {
+            throw new IOException("Incompatible hash types in compiled hashes database.");
+        }
+        for (int i = 0; i < numTypes; i++) {
+            counts[i] = raf.readLong();
+            long recordsOffset = raf.readLong();
+            long bloomOffset = raf.readLong();
+            bloomBits[i] = raf.readLong();
+            presentHashes[i] = counts[i] > 0;
+            if (presentHashes[i]) {
+                records[i] = new MappedSection(fc, recordsOffset, counts[i] * recordLen(i), recordLen(i));
+                blooms[i] = new MappedSection(fc, bloomOffset, bloomBits[i] >>> 3, Long.BYTES);
+            }
+        }
+        maxHashId = raf.readLong();
+        long offsetsOffset = raf.readLong();
+        long entriesOffset = raf.readLong();
+        long entriesLength = raf.readLong();
+        offsets = new MappedSection(fc, offsetsOffset, (maxHashId + 2) * Long.BYTES, Long.BYTES);
+        entries = new MappedSection(fc, entriesOffset, entriesLength, 1);
+    }
+
+    private static int recordLen(int hashType) {
+        return hashBytesLen[hashType] + Integer.BYTES;
+    }
+
+    public boolean isPresent(int hashType) {
+        return presentHashes[hashType];
+    }
+
+    public long getCount(int hashType) {
+        return counts[hashType];
+    }
+
+    /**
+     * @return the hash id of the hash value or -1 if not found.
+     */
+    public int findHashId(int hashType, byte[] hash) {
+        if (!presentHashes[hashType] || hash == null || hash.length != hashBytesLen[hashType]) {
+            return -1;
+        }
+        if (!mightContain(hashType, hash)) {
+            return -1;
+        }
+        MappedSection section = records[hashType];
+        int len = recordLen(hashType);
+        long lo = 0, hi = counts[hashType] - 1;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            long pos = mid * len;
+            int cmp = compare(section, pos, hash);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return section.getInt(pos + hash.length);
+            }
+        }
+        return -1;
+    }
+
+    private static int compare(MappedSection section, long pos, byte[] hash) {
+        int i = 0;
+        for (; i + Long.BYTES <= hash.length; i += Long.BYTES) {
+            int cmp = Long.compareUnsigned(section.getLong(pos + i), getLong(hash, i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        for (; i < hash.length; i++) {
+            int cmp = Integer.compare(section.get(pos + i) & 0xFF, hash[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static long getLong(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            v = (v << 8) | (b[off + i] & 0xFF);
+        }
+        return v;
+    }
+
+    /**
+     * Hash values are already uniformly distributed, so Bloom filter hashes are
+     * derived from their bytes, using double hashing.
+     */
+    private boolean mightContain(int hashType, byte[] hash) {
+        long m = bloomBits[hashType];
+        long h1 = getLong(hash, 0);
+        long h2 = getLong(hash, hash.length - Long.BYTES) | 1;
+        MappedSection bloom = blooms[hashType];
+        for (int i = 0; i < BLOOM_NUM_HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, m);
+            if ((bloom.getLong((bit >>> 6) << 3) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void setBloomBit(long[] bloom, byte[] hash) {
+        long m = (long) bloom.length << 6;
+        long h1 = getLong(hash, 0);
+        long h2 = getLong(hash, hash.length - Long.BYTES) | 1;
+        for (int i = 0; i < BLOOM_NUM_HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, m);
+            bloom[(int) (bit >>> 6)] |= 1L << (bit & 63);
+        }
+    }
+
+    /**
+     * Same as {@link HashDBDataSource#lookup(byte[][], Map)}, properties of all
+     * hash ids found are merged.
+     */
+    public void lookup(byte[][] hashes, Map<String, String> properties) {
+        int found0 = -1, found1 = -1;
+        for (int i = 0; i < hashes.length; i++) {
+            int hashId = findHashId(i, hashes[i]);
+            if (hashId < 0 || hashId == found0 || hashId == found1) {
+                continue;
+            }
+            // usually all hashes point to the same id, just remember the first ones
+            if (found0 < 0) {
+                found0 = hashId;
+            } else if (found1 < 0) {
+                found1 = hashId;
+            }
+            readProperties(hashId, properties, true);
+        }
+    }
+
+    /**
+     * Reads the properties of a hash id.
+     *
+     * @param merge
+     *            if values of existing properties should be merged with the read
+     *            ones, or replaced.
+     */
+    public void readProperties(int hashId, Map<String, String> properties, boolean merge) {
+        long pos = getEntryOffset(hashId);
+        if (pos < 0) {
+            return;
+        }
+        if (entries.get(pos) != 0) {
+            pos += hashBytesLen[0];
+        }
+        pos++;
+        int numProps = entries.getShort(pos);
+        pos += Short.BYTES;
+        for (int i = 0; i < numProps; i++) {
+            int propId = entries.getInt(pos);
+            int len = entries.getInt(pos + Integer.BYTES);
+            pos += 2 * Integer.BYTES;
+            String name = propId < propertyIdToName.length ? propertyIdToName[propId] : null;
+            if (name != null) {
+                byte[] bytes = new byte[len];
+                for (int j = 0; j < len; j++) {
+                    bytes[j] = entries.get(pos + j);
+                }
+                String value = new String(bytes, StandardCharsets.UTF_8);
+                String prev = merge ? properties.get(name) : null;
+                if (prev != null) {
+                    value = HashDB.mergeProperties(value, prev);
+                }
+                properties.put(name, value);
+            }
+            pos += len;
+        }
+    }
+
+    /**
+     * @return MD5 of the hash id, or null if not present.
+     */
+    public byte[] getMD5(int hashId) {
+        long pos = getEntryOffset(hashId);
+        if (pos < 0 || entries.get(pos) == 0) {
+            return null;
+        }
+        byte[] md5 = new byte[hashBytesLen[0]];
+        for (int i = 0; i < md5.length; i++) {
+            md5[i] = entries.get(pos + 1 + i);
+        }
+        return md5;
+    }
+
+    private long getEntryOffset(int hashId) {
+        if (hashId < 0 || hashId > maxHashId) {
+            return -1;
+        }
+        long start = offsets.getLong((long) hashId * Long.BYTES);
+        long end = offsets.getLong((long) (hashId + 1) * Long.BYTES);
+        return start == end ? -1 : start;
+    }
+
+    /**
+     * Builds the compiled index of the database. It is written to a temporary file
+     * and then moved over the previous index, if any.
+     */
+    public static void build(File dbFile) throws Exception {
+        File indexFile = getIndexFile(dbFile);
+        File tmpIndex = new File(indexFile.getPath() + ".tmp");
+        File tmpEntries = new File(indexFile.getPath() + ".entries.tmp");
+        File tmpOffsets = new File(indexFile.getPath() + ".offsets.tmp");
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setEncoding(Encoding.UTF8);
+        config.setReadOnly(true);
+        long dbLength = dbFile.length();
+        long dbLastModified = dbFile.lastModified();
+
+        try (Connection conn = config.createConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(tmpIndex), 1 << 20))) {
+
+            long position = 0;
+            long[] counts = new long[hashTypes.length];
+            long[] recordsOffsets = new long[hashTypes.length];
+            long[] bloomOffsets = new long[hashTypes.length];
+            long[] bloomBits = new long[hashTypes.length];
+
+            for (int i = 0; i < hashTypes.length; i++) {
+                counts[i] = querySingleLong(conn,
+                        "select count(*) from HASHES where " + hashTypes[i] + " is not null");
+                if (counts[i] == 0) {
+                    continue;
+                }
+                long bloomLongs = Math.max(1, (counts[i] * BLOOM_BITS_PER_HASH + 63) >>> 6);
+                if (bloomLongs > Integer.MAX_VALUE - 8) {
+                    throw new IOException("Too many hashes to build the Bloom filter: " + counts[i]);
+                }
+                long[] bloom = new long[(int) bloomLongs];
+                bloomBits[i] = bloomLongs << 6;
+
+                int recordLen = recordLen(i);
+                recordsOffsets[i] = position;
+                long written = 0;
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.setFetchSize(4096);
+                    ResultSet rs = stmt.executeQuery("select HASH_ID, " + hashTypes[i] + " from HASHES where "
+                            + hashTypes[i] + " is not null order by " + hashTypes[i]);
+                    while (rs.next()) {
+                        byte[] hash = rs.getBytes(2);
+                        if (hash.length != hashBytesLen[i]) {
+                            throw new IOException("Invalid " + hashTypes[i] + " length in hash id " + rs.getInt(1));
+                        }
+                        out.write(hash);
+                        out.writeInt(rs.getInt(1));
+                        setBloomBit(bloom, hash);
+                        written++;
+                    }
+                    rs.close();
+                }
+                if (written != counts[i]) {
+                    throw new IOException("Unexpected number of " + hashTypes[i] + " hashes: " + written);
+                }
+                position += written * recordLen;
+
+                bloomOffsets[i] = position;
+                for (long l : bloom) {
+                    out.writeLong(l);
+                }
+                position += bloomLongs * Long.BYTES;
+            }
+
+            long maxHashId = querySingleLong(conn, "select max(HASH_ID) from HASHES");
+            long entriesLength = writeEntries(conn, maxHashId, tmpEntries, tmpOffsets);
+
+            long offsetsOffset = position;
+            position += copy(tmpOffsets, out);
+            long entriesOffset = position;
+            position += copy(tmpEntries, out);
+
+            // directory
+            long dirOffset = position;
+            out.writeInt(VERSION);
+            out.writeLong(dbLength);
+            out.writeLong(dbLastModified);
+            Map<Integer, String> props = new HashMap<>();
+            try (Statement stmt = conn.createStatement()) {
+                ResultSet rs = stmt.executeQuery("select PROPERTY_ID, PROPERTY_NAME from PROPERTIES");
+                while (rs.next()) {
+                    props.put(rs.getInt(1), rs.getString(2));
+                }
+                rs.close();
+            }
+            out.writeInt(props.size());
+            out.writeInt(props.keySet().stream().mapToInt(Integer::intValue).max().orElse(0));
+            for (Map.Entry<Integer, String> e : props.entrySet()) {
+                out.writeInt(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+            out.writeInt(hashTypes.length);
+            for (int i = 0; i < hashTypes.length; i++) {
+                out.writeLong(counts[i]);
+                out.writeLong(recordsOffsets[i]);
+                out.writeLong(bloomOffsets[i]);
+                out.writeLong(bloomBits[i]);
+            }
+            out.writeLong(maxHashId);
+            out.writeLong(offsetsOffset);
+            out.writeLong(entriesOffset);
+            out.writeLong(entriesLength);
+            out.writeLong(dirOffset);
+            out.writeLong(MAGIC);
+
+        } finally {
+            tmpEntries.delete();
+            tmpOffsets.delete();
+        }
+        Files.move(tmpIndex.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes properties entries of each hash id, in hash id order, and their
+     * offsets. Each entry has a byte flag indicating if MD5 is present, the MD5,
+     * the number of properties and, for each property, its id, value length and
+     * UTF-8 value.
+     */
+    private static long writeEntries(Connection conn, long maxHashId, File entriesFile, File offsetsFile)
+            throws Exception {
+        try (Statement stmtMd5 = conn.createStatement();
+                Statement stmtProps = conn.createStatement();
+                DataOutputStream entriesOut = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(entriesFile), 1 << 20));
+                DataOutputStream offsetsOut = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(offsetsFile), 1 << 20))) {
+
+            stmtMd5.setFetchSize(4096);
+            stmtProps.setFetchSize(4096);
+            ResultSet rsMd5 = stmtMd5.executeQuery("select HASH_ID, MD5 from HASHES order by HASH_ID");
+            ResultSet rsProps = stmtProps.executeQuery(
+                    "select HASH_ID, PROPERTY_ID, VALUE from HASHES_PROPERTIES order by HASH_ID, PROPERTY_ID");
+            boolean hasMd5 = rsMd5.next();
+            boolean hasProps = rsProps.next();
+
+            ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+            DataOutputStream entry = new DataOutputStream(entryBytes);
+            ByteArrayOutputStream propBytes = new ByteArrayOutputStream();
+            DataOutputStream prop = new DataOutputStream(propBytes);
+
+            long pos = 0;
+            for (long hashId = 0; hashId <= maxHashId; hashId++) {
+                byte[] md5 = null;
+                while (hasMd5 && rsMd5.getLong(1) < hashId) {
+                    hasMd5 = rsMd5.next();
+                }
+                if (hasMd5 && rsMd5.getLong(1) == hashId) {
+                    md5 = rsMd5.getBytes(2);
+                    if (md5 != null && md5.length != hashBytesLen[0]) {
+                        md5 = null;
+                    }
+                }
+                int numProps = 0;
+                propBytes.reset();
+                while (hasProps && rsProps.getLong(1) < hashId) {
+                    hasProps = rsProps.next();
+                }
+                while (hasProps && rsProps.getLong(1) == hashId) {
+                    byte[] value = rsProps.getString(3).getBytes(StandardCharsets.UTF_8);
+                    prop.writeInt(rsProps.getInt(2));
+                    prop.writeInt(value.length);
+                    prop.write(value);
+                    numProps++;
+                    hasProps = rsProps.next();
+                }
+                if (md5 == null && numProps == 0) {
+                    // empty entry, start offset == end offset
+                    offsetsOut.writeLong(pos);
+                    continue;
+                }
+                entryBytes.reset();
+                entry.writeByte(md5 != null ? 1 : 0);
+                if (md5 != null) {
+                    entry.write(md5);
+                }
+                entry.writeShort(numProps);
+                prop.flush();
+                propBytes.writeTo(entry);
+                entry.flush();
+
+                int len = entryBytes.size();
+                if (len > MAX_CHUNK_SIZE) {
+                    throw new IOException("Properties too large for hash id " + hashId);
+                }
+                // entries must not cross mapped chunks boundaries, pad with zeros if needed,
+                // which are decoded as an entry without md5 and properties
+                if (pos / MAX_CHUNK_SIZE != (pos + len - 1) / MAX_CHUNK_SIZE) {
+                    long padding = MAX_CHUNK_SIZE - pos % MAX_CHUNK_SIZE;
+                    for (long i = 0; i < padding; i++) {
+                        entriesOut.write(0);
+                    }
+                    pos += padding;
+                }
+                offsetsOut.writeLong(pos);
+                entryBytes.writeTo(entriesOut);
+                pos += len;
+            }
+            // end offset of the last hash id
+            offsetsOut.writeLong(pos);
+            rsMd5.close();
+            rsProps.close();
+            return pos;
+        }
+    }
+
+    private static long querySingleLong(Connection conn, String sql) throws Exception {
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery(sql);
+            long ret = rs.next() ? rs.getLong(1) : 0;
+            rs.close();
+            return ret;
+        }
+    }
+
+    private static long copy(File file, OutputStream out) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 20)) {
+            return in.transferTo(out);
+        }
+    }
+
+    /**
+     * A file region mapped in chunks smaller than 2 GB. Chunk sizes are multiples
+     * of the record size, so records never cross chunks boundaries. Just absolute
+     * get methods are used, so it is safe for concurrent readers.
+     */
+    private static class MappedSection {
+
+        private final MappedByteBuffer[] chunks;
+        private final long chunkSize;
+
+        private MappedSection(FileChannel fc, long offset, long length, int recordLen) throws IOException {
+            chunkSize = (MAX_CHUNK_SIZE / recordLen) * (long) recordLen;
+            int numChunks = (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+            chunks = new MappedByteBuffer[numChunks];
+            for (int i = 0; i < numChunks; i++) {
+                long start = i * chunkSize;
+                long size = Math.min(chunkSize, length - start);
+                chunks[i] = fc.map(MapMode.READ_ONLY, offset + start, Math.max(0, size));
+            }
+        }
+
+        private byte get(long pos) {
+            return chunks[(int) (pos / chunkSize)].get((int) (pos % chunkSize));
+        }
+
+        private short getShort(long pos) {
+            return chunks[(int) (pos / chunkSize)].getShort((int) (pos % chunkSize));
+        }
+
+        private int getInt(long pos) {
+            return chunks[(int) (pos / chunkSize)].getInt((int) (pos % chunkSize));
+        }
+
+        private long getLong(long pos) {
+            return chunks[(int) (pos / chunkSize)].getLong((int) (pos % chunkSize));
+        }
+    }
+
+}
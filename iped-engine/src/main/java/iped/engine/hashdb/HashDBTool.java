@@ -31,6 +31,9 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -113,12 +116,17 @@ public class HashDBTool {
     private Map<Integer, String> nsrlProdCodeToName;
     private ProcessMode mode = ProcessMode.UNDEFINED;
     private int totIns, totRem, totUpd, totSkip, totComb, totIgn, totNoProd, totInvHash;
-    private boolean dbExists = true, skipOpt, inputFolderUsed;
+    private boolean dbExists = true, skipOpt, inputFolderUsed, compileIndex, bulk, quiet;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private HashDBBulkLoader bulkLoader;
+    private HashDBBulkLoader.Sorter sorter;
+    private HashDBTool parent;
     private String delimiter;
     private final Set<String> skipCols = new HashSet<String>();
     private final Map<String, String> renameCols = new HashMap<String, String>();
     private final Map<String, String> addCols = new HashMap<String, String>();
     private final Map<String, Map<String, String>> mapColValues = new HashMap<String, Map<String, String>>();
+    private final List<String> bulkInputKeys = new ArrayList<String>();
 
     public static void main(String[] args) {
         HashDBTool tool = new HashDBTool();
@@ -130,13 +138,35 @@ public HashDBTool() {
         renameCols.put(photoDnaPropertyName.toLowerCase(), photoDnaPropertyName);
     }
 
+    /**
+     * Creates a reader of one input, in bulk mode, that adds the records read to
+     * its own sorter and uses the properties of the parent tool.
+     */
+    private HashDBTool(HashDBTool parent) {
+        this.parent = parent;
+        this.mode = parent.mode;
+        this.delimiter = parent.delimiter;
+        this.inputFolderUsed = parent.inputFolderUsed;
+        this.quiet = parent.numThreads > 1;
+        this.skipCols.addAll(parent.skipCols);
+        this.renameCols.putAll(parent.renameCols);
+        this.addCols.putAll(parent.addCols);
+        this.mapColValues.putAll(parent.mapColValues);
+        this.sorter = parent.bulkLoader.newSorter();
+    }
+
     public boolean run(String[] args) {
         if (!parseParameters(args))
             return false;
         if (!checkInputFiles())
             return false;
-        if (inputs.isEmpty())
+        if (inputs.isEmpty()) {
+            if (compileIndex && output.isFile()) {
+                // just compile the existing database
+                return true;
+            }
             System.exit(0);
+        }
         dbExists = output.exists();
         if (!connect())
             return false;
@@ -148,6 +178,16 @@ public boolean run(String[] args) {
             return false;
         if (!loadProperties())
             return false;
+        if (bulk) {
+            bulkLoader = new HashDBBulkLoader(output, numThreads);
+            if (!restoreProperties())
+                return false;
+            if (!readFilesBulk())
+                return false;
+            if (!writeBulk())
+                return false;
+            return true;
+        }
         if (!readFiles())
             return false;
         return true;
@@ -211,6 +251,11 @@ private boolean process(byte[][] newHashes, Map<Integer, Set<String>> newPropert
         }
         if (mask == 0)
             return true;
+        if (sorter != null) {
+            // bulk mode, records are combined and written after all inputs are read
+            sorter.add(newHashes, newProperties);
+            return true;
+        }
         PreparedStatement stmtSelect = stmtSelectHash[mask];
         int k = 0;
         for (byte[] h : newHashes) {
@@ -532,14 +577,11 @@ private boolean createDatabase() {
             sb.append(")");
             statement.executeUpdate(sb.toString());
 
-            for (String s : hashTypes) {
-                sb.delete(0, sb.length());
-                sb.append("create unique index IDX_");
-                sb.append(s);
-                sb.append(" on HASHES (");
-                sb.append(s);
-                sb.append(")");
-                statement.executeUpdate(sb.toString());
+            // in bulk mode, indexes are created after hashes are inserted
+            if (!bulk) {
+                for (int i = 0; i < hashTypes.length; i++) {
+                    createIndex(statement, i);
+                }
             }
 
             sb.delete(0, sb.length());
@@ -567,6 +609,11 @@ private boolean createDatabase() {
         return false;
     }
 
+    private void createIndex(Statement statement, int hashType) throws SQLException {
+        statement.executeUpdate("create unique index IDX_" + hashTypes[hashType] + " on HASHES ("
+                + hashTypes[hashType] + ")");
+    }
+
     private boolean connect() {
         try {
             SQLiteConfig config = new SQLiteConfig();
@@ -603,6 +650,191 @@ private boolean readFiles() {
         return true;
     }
 
+    private boolean restoreProperties() {
+        try {
+            Map<Integer, String> properties = bulkLoader.open();
+            if (!properties.isEmpty()) {
+                System.out.println("Resuming bulk build from " + bulkLoader.getWorkDir().getPath());
+            }
+            for (int id : properties.keySet()) {
+                String name = properties.get(id);
+                propertyNameToId.put(name.toLowerCase(), id);
+                lastPropertyId = Math.max(lastPropertyId, id);
+                stmtInsertProperty.setInt(1, id);
+                stmtInsertProperty.setString(2, name);
+                stmtInsertProperty.executeUpdate();
+            }
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    private boolean readFilesBulk() {
+        // NSRL product files are read by the same reader of the main file that uses them
+        List<List<File>> groups = new ArrayList<List<File>>();
+        List<File> group = new ArrayList<File>();
+        for (File file : inputs) {
+            group.add(file);
+            if (getFileType(file) != FileType.NSRL_PROD) {
+                groups.add(group);
+                group = new ArrayList<File>();
+            }
+        }
+        long t = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (List<File> files : groups) {
+                String key = HashDBBulkLoader.getInputKey(files);
+                bulkInputKeys.add(key);
+                if (bulkLoader.isCompleted(key)) {
+                    System.out.println("\nFile " + files.get(files.size() - 1).getPath() + " already read, skipped.");
+                    continue;
+                }
+                results.add(executor.submit(() -> {
+                    HashDBTool reader = new HashDBTool(this);
+                    for (File file : files) {
+                        if (!reader.readFile(file))
+                            return false;
+                    }
+                    bulkLoader.complete(key, reader.sorter);
+                    return true;
+                }));
+            }
+            boolean ok = true;
+            for (Future<Boolean> result : results) {
+                if (!result.get())
+                    ok = false;
+            }
+            if (ok)
+                System.out.println("\nInput files read in " + endTime(t));
+            return ok;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            executor.shutdown();
+        }
+        return false;
+    }
+
+    private boolean writeBulk() {
+        try {
+            long t = System.currentTimeMillis();
+            System.out.println("\nMerging sorted hashes...");
+            totIns = totRem = totUpd = totSkip = totComb = totIgn = totNoProd = totInvHash = 0;
+            bulkLoader.merge(bulkInputKeys, (hashes, properties) -> {
+                int hashId = ++lastHashId;
+                return insertHash(hashId, hashes) && insertHashProperties(hashId, properties);
+            }, this::updatePercentage);
+            updatePercentage(-1);
+            totIns = (int) bulkLoader.getDistinctHashes();
+            totComb = (int) (bulkLoader.getTotalRecords() - bulkLoader.getDistinctHashes());
+            System.out.println("\r" + bulkLoader.getTotalRecords() + " records merged in " + endTime(t));
+
+            t = System.currentTimeMillis();
+            System.out.println("\nCreating indexes...");
+            Statement stmt = connection.createStatement();
+            for (int i = 0; i < hashTypes.length; i++) {
+                try {
+                    createIndex(stmt, i);
+                } catch (SQLException e) {
+                    // the same hash is present in records keyed by different hash types
+                    if (!resolveDuplicates(i))
+                        return false;
+                    createIndex(stmt, i);
+                }
+            }
+            stmt.close();
+            System.out.println("Indexes created in " + endTime(t));
+            printTotals();
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Combines hashes written in bulk mode with the same value of the given hash
+     * type, so its unique index can be created. That happens only if records of
+     * the same file were keyed by different hash types, e.g. one with MD5 and
+     * SHA1 and other with just the SHA1.
+     */
+    private boolean resolveDuplicates(int hashType) {
+        String col = hashTypes[hashType];
+        List<List<Integer>> groups = new ArrayList<List<Integer>>();
+        try {
+            Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery("select HASH_ID, " + col + " from HASHES where " + col + " in (select "
+                    + col + " from HASHES where " + col + " is not null group by " + col
+                    + " having count(*) > 1) order by " + col + ", HASH_ID");
+            byte[] prev = null;
+            List<Integer> group = null;
+            while (rs.next()) {
+                byte[] h = rs.getBytes(2);
+                if (prev == null || !Arrays.equals(prev, h)) {
+                    groups.add(group = new ArrayList<Integer>());
+                    prev = h;
+                }
+                group.add(rs.getInt(1));
+            }
+            rs.close();
+            stmt.close();
+
+            PreparedStatement stmtSelectHashes = connection
+                    .prepareStatement("select " + String.join(", ", hashTypes) + " from HASHES where HASH_ID=?");
+            for (List<Integer> ids : groups) {
+                int hashId = ids.get(0);
+                byte[][] hashes = selectHashes(stmtSelectHashes, hashId);
+                Map<Integer, Set<String>> properties = getProperties(hashId);
+                if (properties == null)
+                    properties = new HashMap<Integer, Set<String>>();
+                for (int i = 1; i < ids.size(); i++) {
+                    int otherId = ids.get(i);
+                    mergeHashes(hashes, selectHashes(stmtSelectHashes, otherId));
+                    Map<Integer, Set<String>> otherProperties = getProperties(otherId);
+                    if (otherProperties != null) {
+                        for (int propId : otherProperties.keySet()) {
+                            Set<String> st = properties.get(propId);
+                            if (st == null)
+                                properties.put(propId, st = new HashSet<String>());
+                            st.addAll(otherProperties.get(propId));
+                        }
+                    }
+                    // removed before updating the combined hashes, that may include its hashes
+                    if (!removeHash(otherId))
+                        return false;
+                    totIns--;
+                    totComb++;
+                }
+                stmtRemoveAllHashProperties.setInt(1, hashId);
+                stmtRemoveAllHashProperties.executeUpdate();
+                if (!insertHashProperties(hashId, properties) || !updateHashes(hashId, hashes))
+                    return false;
+            }
+            stmtSelectHashes.close();
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    private byte[][] selectHashes(PreparedStatement stmt, int hashId) throws SQLException {
+        stmt.setInt(1, hashId);
+        ResultSet rs = stmt.executeQuery();
+        byte[][] hashes = new byte[hashTypes.length][];
+        if (rs.next()) {
+            for (int i = 0; i < hashTypes.length; i++) {
+                hashes[i] = rs.getBytes(i + 1);
+            }
+        }
+        rs.close();
+        return hashes;
+    }
+
     private boolean readFile(File file) {
         FileType type = getFileType(file);
         totIns = totRem = totUpd = totSkip = totComb = totIgn = totNoProd = totInvHash = 0;
@@ -915,7 +1147,8 @@ private boolean readNsrlDb(File file) {
             // Sort by MD5, so records related to the same hashes are treated sequentially
             // to speed up importing, specially for "full" versions of RDS hash sets.
             // See issue #2160.
-            stmt.execute(nsrlDBSelectHashes + " order by md5");
+            // In bulk mode, records are sorted by the bulk loader.
+            stmt.execute(nsrlDBSelectHashes + (sorter == null ? " order by md5" : ""));
             stmt.setFetchSize(65536);
             rs = stmt.getResultSet();
             int cnt = 0;
@@ -1401,7 +1634,9 @@ private void printTotals() {
                     + " with invalid hash length ignored.");
     }
 
-    private static void updatePercentage(double pct) {
+    private void updatePercentage(double pct) {
+        if (quiet)
+            return;
         char[] bar = new char[60];
         Arrays.fill(bar, ' ');
         if (pct >= 0) {
@@ -1423,13 +1658,17 @@ private static void updatePercentage(double pct) {
         System.out.print(new String(bar));
     }
 
-    private int getPropertyId(String name) throws Exception {
+    private synchronized int getPropertyId(String name) throws Exception {
+        if (parent != null)
+            return parent.getPropertyId(name);
         Integer id = propertyNameToId.get(name.toLowerCase());
         if (id == null) {
             propertyNameToId.put(name.toLowerCase(), id = ++lastPropertyId);
             stmtInsertProperty.setInt(1, id);
             stmtInsertProperty.setString(2, name);
             stmtInsertProperty.executeUpdate();
+            if (bulkLoader != null)
+                bulkLoader.addProperty(id, name);
         }
         return id;
     }
@@ -1853,12 +2092,19 @@ private String endTime(long start) {
     }
 
     void finish(boolean success) {
+        if (bulkLoader != null) {
+            bulkLoader.close();
+        }
         try {
-            if (success) {
+            if (success && connection != null) {
                 long t = System.currentTimeMillis();
                 System.out.println("\nCommiting changes...");
                 connection.commit();
                 System.out.println("Commit completed in " + endTime(t));
+                if (bulkLoader != null) {
+                    // sorted runs are not needed to resume anymore
+                    bulkLoader.delete();
+                }
 
                 if (!skipOpt) {
                     t = System.currentTimeMillis();
@@ -1923,6 +2169,16 @@ void finish(boolean success) {
             }
         } catch (Exception e) {
         }
+        if (success && compileIndex) {
+            try {
+                long t = System.currentTimeMillis();
+                System.out.println("\nCompiling the database index...");
+                HashDBIndex.build(output);
+                System.out.println("Index " + HashDBIndex.getIndexFile(output).getPath() + " compiled in " + endTime(t));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     private boolean prepare() {
@@ -2117,12 +2373,31 @@ private boolean parseParameters(String[] args) {
                 mode = ProcessMode.REMOVE_ALL;
             } else if (arg.equalsIgnoreCase("-noOpt")) {
                 skipOpt = true;
+            } else if (arg.equalsIgnoreCase("-compile")) {
+                compileIndex = true;
+            } else if (arg.equalsIgnoreCase("-bulk")) {
+                bulk = true;
+            } else if (arg.equalsIgnoreCase("-threads")) {
+                if (value1 == null) {
+                    System.out.println("ERROR: -threads must be followed by the number of threads.");
+                    return false;
+                }
+                try {
+                    numThreads = Integer.parseInt(value1);
+                } catch (NumberFormatException e) {
+                    numThreads = 0;
+                }
+                if (numThreads < 1) {
+                    System.out.println("ERROR: Invalid number of threads '" + value1 + "'.");
+                    return false;
+                }
+                i++;
             } else {
                 System.out.println("ERROR: unknown parameter '" + arg + "'.");
                 return false;
             }
         }
-        if (inputs.isEmpty()) {
+        if (inputs.isEmpty() && !compileIndex) {
             System.out.println("ERROR: No input file/folder defined (-d <input file or folder>).");
             return false;
         }
@@ -2132,6 +2407,22 @@ private boolean parseParameters(String[] args) {
         }
         if (mode == ProcessMode.UNDEFINED)
             mode = ProcessMode.MERGE;
+        if (bulk) {
+            if (mode != ProcessMode.MERGE) {
+                System.out.println("ERROR: -bulk can not be combined with other process mode option.");
+                return false;
+            }
+            if (output.exists() && HashDBBulkLoader.getWorkDir(output).exists()) {
+                // left by a bulk build killed before finishing, that will be resumed
+                System.out.println("Deleting incomplete database " + output.getPath());
+                new File(output.getPath() + "-journal").delete();
+                output.delete();
+            }
+            if (output.exists()) {
+                System.out.println("ERROR: -bulk can only be used to create a new database.");
+                return false;
+            }
+        }
         return true;
     }
 
@@ -2146,7 +2437,8 @@ private void usage() {
         System.out.println("    imported directly.");
         System.out.println();
         System.out.println("Usage: java -jar iped-hashdb.jar -d <input file or folder> -o <output DB file>");
-        System.out.println("            [-replace | -replaceAll | -remove | -removeAll] [-noOpt]");
+        System.out.println("            [-replace | -replaceAll | -remove | -removeAll] [-noOpt] [-compile]");
+        System.out.println("            [-bulk [-threads <number of threads>]]");
         System.out.println("            [-delimiter <char>] [-addCol <column name> <fixed value>]");
         System.out.println("            [-renameCol <current name> <new name>] [-skipCol <column name>]");
         System.out.println("            [-mapValue <column name> <current value> <new value>]");
@@ -2181,6 +2473,21 @@ private void usage() {
         System.out.println("  -noOpt");
         System.out.println("    Skip optimizations (reclaim empty space and database analisys) executed");
         System.out.println("    after processing input file(s).");
+        System.out.println("  -compile");
+        System.out.println("    Build (or rebuild) a compiled index of the database, used by the processing");
+        System.out.println("    for faster, memory mapped lookups. It is saved next to the database, with");
+        System.out.println("    '" + HashDBIndex.EXT + "' extension, and ignored if the database is modified");
+        System.out.println("    later. Can be used without -d to just compile an existing database.");
+        System.out.println("  -bulk");
+        System.out.println("    Faster build of a new database from large inputs, like full NSRL releases.");
+        System.out.println("    Input files are read in parallel and their records are sorted in temporary");
+        System.out.println("    files, in a '.bulk' folder next to the output, then merged and");
+        System.out.println("    written sequentially. If interrupted, running it again with the same");
+        System.out.println("    parameters resumes the build, skipping input files already read.");
+        System.out.println("    The output database must not exist and only the default merge mode is used.");
+        System.out.println("  -threads <number of threads>");
+        System.out.println("    Number of input files read in parallel with -bulk. Default is the number of");
+        System.out.println("    processors.");
         System.out.println("  -delimiter <char>");
         System.out.println("    Specify the column delimiter used in the CSV files to be imported. Default");
         System.out.println("    delimiter is comma (,).");
@@ -0,0 +1,978 @@
+package iped.engine.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.utils.HashValue;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Content addressed, append only store of exported subitems content, keyed by
+ * the MD5 hash. Contents are split in stripes by the hash prefix, each one with
+ * its own lock, data file and memory mapped hash index, so concurrent writers
+ * of different stripes do not wait for each other.
+ *
+ * Each content is appended as a record with the hash, the length and its
+ * chunks compressed with LZ4, so readers can seek to any position decompressing
+ * just the chunk containing it. The index is an open addressing table of hashes
+ * and record offsets, rebuilt with twice the size when it gets 60% full.
+ * Removing contents rewrites the affected stripes in a new generation of
+ * files. The new data file is written with a temporary name and just renamed
+ * when complete, so a crash leaves either the old or the new generation.
+ */
+public class BlobStore implements Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(BlobStore.class);
+
+    public static final String DIR_NAME = "blobs"; //$NON-NLS-1$
+
+    private static final int STRIPE_BITS = 4;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int HASH_LEN = 16;
+
+    // hash, length, chunk size and number of chunks, followed by the chunk lengths
+    private static final int RECORD_HEADER = HASH_LEN + 16;
+
+    private static final int INDEX_MAGIC = 0x49424C42;
+    // magic, table bits and number of entries
+    private static final int INDEX_HEADER = 16;
+    // hash and record offset + 1, 0 means an empty slot
+    private static final int SLOT_SIZE = HASH_LEN + 8;
+    private static final int MIN_INDEX_BITS = 12;
+    private static final int MAX_INDEX_BITS = 26;
+    private static final double MAX_LOAD = 0.6;
+
+    private static final Pattern DATA_FILE = Pattern.compile("(\\d+)\\.(\\d+)\\.dat"); //$NON-NLS-1$
+    private static final Pattern INDEX_FILE = Pattern.compile("(\\d+)\\.(\\d+)\\.(\\d+)\\.idx"); //$NON-NLS-1$
+    private static final Pattern TEMP_FILE = Pattern.compile("(\\d+)\\.(\\d+)\\.dat\\.tmp"); //$NON-NLS-1$
+
+    private static final LZ4Factory lz4 = LZ4Factory.fastestInstance();
+    private static final LZ4Compressor compressor = lz4.fastCompressor();
+    private static final LZ4FastDecompressor decompressor = lz4.fastDecompressor();
+
+    private static final Map<File, BlobStore> stores = new HashMap<>();
+
+    private final File dir;
+    private final boolean readOnly;
+    private final Stripe[] stripes;
+    private volatile boolean closed = false;
+
+    /**
+     * Returns the store in the directory, opening it if needed.
+     *
+     * @param create
+     *            if the store should be created if it does not exist
+     */
+    public static BlobStore open(File dir, boolean create) throws IOException {
+        return open(dir, create, false);
+    }
+
+    /**
+     * Returns the store in the directory, opening it if needed.
+     *
+     * @param create
+     *            if the store should be created if it does not exist
+     * @param readOnly
+     *            if the store should be opened read only even if the directory is
+     *            writable, so incomplete records or indexes are not fixed
+     */
+    public static BlobStore open(File dir, boolean create, boolean readOnly) throws IOException {
+        File key = dir.getAbsoluteFile();
+        synchronized (stores) {
+            BlobStore store = stores.get(key);
+            if (store == null) {
+                if (!key.isDirectory()) {
+                    if (!create) {
+                        throw new FileNotFoundException(key.getAbsolutePath());
+                    }
+                    Files.createDirectories(key.toPath());
+                }
+                store = new BlobStore(key, readOnly || !Files.isWritable(key.toPath()));
+                stores.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * @return the store in the directory, if already opened.
+     */
+    public static BlobStore get(File dir) {
+        synchronized (stores) {
+            return stores.get(dir.getAbsoluteFile());
+        }
+    }
+
+    public static boolean exists(File dir) {
+        return dir.isDirectory();
+    }
+
+    private BlobStore(File dir, boolean readOnly) throws IOException {
+        this.dir = dir;
+        this.readOnly = readOnly;
+        this.stripes = new Stripe[1 << STRIPE_BITS];
+        try {
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new Stripe(i);
+            }
+        } catch (IOException e) {
+            for (Stripe stripe : stripes) {
+                if (stripe != null) {
+                    stripe.close();
+                }
+            }
+            throw e;
+        }
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    private Stripe getStripe(byte[] hash) {
+        return stripes[(hash[0] & 0xFF) >> (8 - STRIPE_BITS)];
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    public boolean contains(byte[] hash) throws IOException {
+        checkOpen();
+        Stripe stripe = getStripe(hash);
+        synchronized (stripe) {
+            return stripe.find(hash) != -1;
+        }
+    }
+
+    /**
+     * Stores the content, if not stored yet.
+     *
+     * @return true if the content was stored, false if it was already there.
+     */
+    public boolean put(byte[] hash, byte[] buf, int len) throws IOException {
+        checkOpen();
+        if (readOnly) {
+            throw new IOException("Read only blob store " + dir.getAbsolutePath()); //$NON-NLS-1$
+        }
+        if (hash.length != HASH_LEN) {
+            throw new IllegalArgumentException("Invalid MD5 hash length " + hash.length); //$NON-NLS-1$
+        }
+        Stripe stripe = getStripe(hash);
+        synchronized (stripe) {
+            if (stripe.find(hash) != -1) {
+                return false;
+            }
+        }
+        // compresses out of the lock
+        ByteBuffer record = encode(hash, buf, len);
+        synchronized (stripe) {
+            if (stripe.find(hash) != -1) {
+                return false;
+            }
+            stripe.append(hash, record);
+        }
+        return true;
+    }
+
+    private static ByteBuffer encode(byte[] hash, byte[] buf, int len) {
+        int chunks = (len + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int headerLen = RECORD_HEADER + 4 * chunks;
+        byte[] out = new byte[headerLen + chunks * compressor.maxCompressedLength(CHUNK_SIZE)];
+        ByteBuffer header = ByteBuffer.wrap(out);
+        header.put(hash);
+        header.putLong(len);
+        header.putInt(CHUNK_SIZE);
+        header.putInt(chunks);
+        int pos = headerLen;
+        for (int i = 0; i < chunks; i++) {
+            int off = i * CHUNK_SIZE;
+            int rawLen = Math.min(CHUNK_SIZE, len - off);
+            int compLen = compressor.compress(buf, off, rawLen, out, pos, out.length - pos);
+            if (compLen >= rawLen) {
+                // not compressible, stored as is
+                System.arraycopy(buf, off, out, pos, rawLen);
+                header.putInt(-rawLen);
+                pos += rawLen;
+            } else {
+                header.putInt(compLen);
+                pos += compLen;
+            }
+        }
+        return ByteBuffer.wrap(out, 0, pos);
+    }
+
+    /**
+     * Opens the content for reading, with random access.
+     */
+    public SeekableByteChannel openChannel(byte[] hash) throws IOException {
+        checkOpen();
+        Stripe stripe = getStripe(hash);
+        long pos;
+        synchronized (stripe) {
+            pos = stripe.find(hash);
+        }
+        if (pos == -1) {
+            throw new FileNotFoundException("Content not found in blob store: " + new HashValue(hash)); //$NON-NLS-1$
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        stripe.readFully(header, pos);
+        header.flip();
+        byte[] recordHash = new byte[HASH_LEN];
+        header.get(recordHash);
+        if (!Arrays.equals(hash, recordHash)) {
+            throw new IOException("Corrupted blob store record of " + new HashValue(hash)); //$NON-NLS-1$
+        }
+        long length = header.getLong();
+        int chunkSize = header.getInt();
+        int chunks = header.getInt();
+
+        ByteBuffer lens = ByteBuffer.allocate(4 * chunks);
+        stripe.readFully(lens, pos + RECORD_HEADER);
+        lens.flip();
+        int[] chunkLens = new int[chunks];
+        long[] chunkPos = new long[chunks];
+        long p = pos + RECORD_HEADER + 4 * chunks;
+        for (int i = 0; i < chunks; i++) {
+            chunkLens[i] = lens.getInt();
+            chunkPos[i] = p;
+            p += Math.abs(chunkLens[i]);
+        }
+        return new BlobChannel(stripe, length, chunkSize, chunkPos, chunkLens);
+    }
+
+    /**
+     * Removes the contents matching the filter, rewriting the stripes containing
+     * them. Must not run concurrently with writes or reads.
+     *
+     * @return number of removed contents
+     */
+    public int removeIf(Predicate<byte[]> filter) throws IOException {
+        checkOpen();
+        int removed = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                removed += stripe.removeIf(filter);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Persists written contents and index entries.
+     */
+    public void commit() throws IOException {
+        if (closed || readOnly) {
+            return;
+        }
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.force();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (stores) {
+            if (closed) {
+                return;
+            }
+            try {
+                commit();
+            } finally {
+                closed = true;
+                for (Stripe stripe : stripes) {
+                    synchronized (stripe) {
+                        stripe.close();
+                    }
+                }
+                stores.remove(dir);
+            }
+        }
+    }
+
+    private class Stripe {
+
+        private final int id;
+        private int generation = 0;
+        private volatile FileChannel data;
+        private long dataSize;
+        private Index index;
+
+        private Stripe(int id) throws IOException {
+            this.id = id;
+            File[] files = dir.listFiles();
+            if (files == null) {
+                files = new File[0];
+            }
+            boolean hasData = false;
+            for (File file : files) {
+                Matcher m = DATA_FILE.matcher(file.getName());
+                if (m.matches() && Integer.parseInt(m.group(1)) == id) {
+                    generation = Math.max(generation, Integer.parseInt(m.group(2)));
+                    hasData = true;
+                }
+            }
+            if (!hasData && readOnly) {
+                return;
+            }
+            data = openData(generation);
+            dataSize = data.size();
+
+            int maxBits = -1;
+            for (File file : files) {
+                Matcher m = INDEX_FILE.matcher(file.getName());
+                if (m.matches() && Integer.parseInt(m.group(1)) == id && Integer.parseInt(m.group(2)) == generation) {
+                    int bits = Integer.parseInt(m.group(3));
+                    if (bits > maxBits) {
+                        Index idx = Index.open(file, readOnly);
+                        if (idx != null) {
+                            if (index != null) {
+                                index.close();
+                            }
+                            index = idx;
+                            maxBits = bits;
+                        }
+                    }
+                }
+            }
+            if (index != null) {
+                // after a crash, index pages may have reached the disk before the data
+                long end = getIndexedDataEnd(index);
+                if (end == -1) {
+                    LOGGER.warn("Index of blob store stripe {} in {} does not match the data", id, dir); //$NON-NLS-1$
+                    index.close();
+                    index = null;
+                } else if (end < dataSize) {
+                    if (readOnly) {
+                        dataSize = end;
+                    } else {
+                        index = indexRecords(index, end);
+                    }
+                }
+            }
+            if (index == null) {
+                if (dataSize > 0) {
+                    LOGGER.warn("Rebuilding index of blob store stripe {} in {}", id, dir); //$NON-NLS-1$
+                }
+                index = rebuildIndex();
+            }
+            if (!readOnly) {
+                // deletes files of previous generations, replaced indexes or interrupted
+                // removals
+                for (File file : files) {
+                    Matcher m = DATA_FILE.matcher(file.getName());
+                    Matcher m2 = INDEX_FILE.matcher(file.getName());
+                    Matcher m3 = TEMP_FILE.matcher(file.getName());
+                    if ((m.matches() && Integer.parseInt(m.group(1)) == id && !file.equals(getDataFile(generation)))
+                            || (m2.matches() && Integer.parseInt(m2.group(1)) == id && !file.equals(index.file))
+                            || (m3.matches() && Integer.parseInt(m3.group(1)) == id)) {
+                        file.delete();
+                    }
+                }
+            }
+        }
+
+        private File getDataFile(int gen) {
+            return new File(dir, id + "." + gen + ".dat"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        private File getTempDataFile(int gen) {
+            return new File(dir, id + "." + gen + ".dat.tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        private File getIndexFile(int gen, int bits) {
+            return new File(dir, id + "." + gen + "." + bits + ".idx"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+
+        private FileChannel openData(int gen) throws IOException {
+            if (readOnly) {
+                return FileChannel.open(getDataFile(gen).toPath(), StandardOpenOption.READ);
+            }
+            return FileChannel.open(getDataFile(gen).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE);
+        }
+
+        /**
+         * Scans the data records to rebuild a lost or incomplete index. Data after
+         * the last complete record is discarded.
+         */
+        private Index rebuildIndex() throws IOException {
+            int bits = MIN_INDEX_BITS;
+            Index idx = readOnly ? Index.createInMemory(bits) : Index.create(getIndexFile(generation, bits), bits);
+            return indexRecords(idx, 0);
+        }
+
+        /**
+         * Adds to the index the records from pos to the end of the data. Data after
+         * the last complete record is discarded.
+         */
+        private Index indexRecords(Index idx, long pos) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            byte[] hash = new byte[HASH_LEN];
+            while (pos < dataSize) {
+                long len = getRecordLength(pos, header, hash);
+                if (len == -1 || pos + len > dataSize) {
+                    break;
+                }
+                if (idx.isFull()) {
+                    idx = grow(idx, readOnly);
+                }
+                if (idx.find(hash) == -1) {
+                    idx.insert(hash, pos);
+                }
+                pos += len;
+            }
+            if (pos < dataSize && !readOnly) {
+                LOGGER.warn("Discarding {} bytes of incomplete record in blob store stripe {}", dataSize - pos, id); //$NON-NLS-1$
+                data.truncate(pos);
+            }
+            dataSize = pos;
+            idx.seal();
+            return idx;
+        }
+
+        /**
+         * Checks every index entry against the data file.
+         *
+         * @return end of the last indexed record, or -1 if some entry does not point
+         *         to a complete record with the same hash.
+         */
+        private long getIndexedDataEnd(Index idx) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            byte[] recordHash = new byte[HASH_LEN];
+            long[] end = { 0 };
+            IOException[] error = { null };
+            idx.forEach((hash, pos) -> {
+                if (end[0] == -1) {
+                    return;
+                }
+                try {
+                    long len = pos < 0 ? -1 : getRecordLength(pos, header, recordHash);
+                    if (len == -1 || pos + len > dataSize || !Arrays.equals(hash, recordHash)) {
+                        end[0] = -1;
+                    } else {
+                        end[0] = Math.max(end[0], pos + len);
+                    }
+                } catch (IOException e) {
+                    error[0] = e;
+                    end[0] = -1;
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+            return end[0];
+        }
+
+        /**
+         * @return length of the record at pos, or -1 if it is not valid.
+         */
+        private long getRecordLength(long pos, ByteBuffer header, byte[] hash) throws IOException {
+            header.clear();
+            if (pos + RECORD_HEADER > dataSize) {
+                return -1;
+            }
+            readFully(header, pos);
+            header.flip();
+            header.get(hash);
+            long length = header.getLong();
+            int chunkSize = header.getInt();
+            int chunks = header.getInt();
+            if (length < 0 || chunkSize <= 0 || chunks < 0 || chunks != (length + chunkSize - 1) / chunkSize
+                    || pos + RECORD_HEADER + 4L * chunks > dataSize) {
+                return -1;
+            }
+            ByteBuffer lens = ByteBuffer.allocate(4 * chunks);
+            readFully(lens, pos + RECORD_HEADER);
+            lens.flip();
+            long len = RECORD_HEADER + 4L * chunks;
+            for (int i = 0; i < chunks; i++) {
+                len += Math.abs(lens.getInt());
+            }
+            return len;
+        }
+
+        private Index grow(Index idx, boolean inMemory) throws IOException {
+            if (idx.bits == MAX_INDEX_BITS) {
+                if (idx.count >= (1L << MAX_INDEX_BITS) - 1) {
+                    throw new IOException("Blob store index is full: " + idx.file); //$NON-NLS-1$
+                }
+                return idx;
+            }
+            int bits = idx.bits + 1;
+            Index newIdx = inMemory ? Index.createInMemory(bits) : Index.create(getIndexFile(generation, bits), bits);
+            idx.copyTo(newIdx);
+            newIdx.seal();
+            idx.close();
+            if (idx.file != null) {
+                // may fail on Windows while mapped, it is deleted when opening next time
+                idx.file.delete();
+            }
+            return newIdx;
+        }
+
+        private long find(byte[] hash) {
+            if (index == null) {
+                return -1;
+            }
+            long pos = index.find(hash);
+            return pos < dataSize ? pos : -1;
+        }
+
+        private void append(byte[] hash, ByteBuffer record) throws IOException {
+            long pos = dataSize;
+            int len = record.remaining();
+            FileChannel channel = data;
+            try {
+                long p = pos;
+                while (record.hasRemaining()) {
+                    p += channel.write(record, p);
+                }
+            } catch (ClosedChannelException e) {
+                // an interrupted writer closes the channel, reopens it for the next ones
+                reopen(channel);
+                throw e;
+            }
+            dataSize = pos + len;
+            if (index.isFull()) {
+                index = grow(index, false);
+            }
+            index.insert(hash, pos);
+        }
+
+        private FileChannel reopen(FileChannel old) throws IOException {
+            synchronized (this) {
+                if (data == old && !closed) {
+                    data = openData(generation);
+                }
+                return data;
+            }
+        }
+
+        private void readFully(ByteBuffer bb, long pos) throws IOException {
+            FileChannel channel = data;
+            while (true) {
+                try {
+                    while (bb.hasRemaining()) {
+                        int n = channel.read(bb, pos);
+                        if (n == -1) {
+                            throw new EOFException();
+                        }
+                        pos += n;
+                    }
+                    return;
+
+                } catch (ClosedChannelException e) {
+                    if (closed) {
+                        throw e;
+                    }
+                    // the channel was closed by an interrupted thread, maybe this one
+                    FileChannel newChannel = reopen(channel);
+                    if (e instanceof ClosedByInterruptException) {
+                        throw e;
+                    }
+                    channel = newChannel;
+                }
+            }
+        }
+
+        private int removeIf(Predicate<byte[]> filter) throws IOException {
+            if (index == null || index.count == 0) {
+                return 0;
+            }
+            List<long[]> kept = new ArrayList<>();
+            List<byte[]> keptHashes = new ArrayList<>();
+            int[] removed = { 0 };
+            index.forEach((hash, pos) -> {
+                if (filter.test(hash)) {
+                    removed[0]++;
+                } else {
+                    kept.add(new long[] { pos, keptHashes.size() });
+                    keptHashes.add(hash);
+                }
+            });
+            if (removed[0] == 0) {
+                return 0;
+            }
+            // copies the kept records in file order
+            kept.sort((a, b) -> Long.compare(a[0], b[0]));
+            int newGen = generation + 1;
+            int bits = MIN_INDEX_BITS;
+            while (bits < MAX_INDEX_BITS && kept.size() > MAX_LOAD * (1 << bits)) {
+                bits++;
+            }
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            byte[] hash = new byte[HASH_LEN];
+            // the new generation exists just after the complete data file is renamed,
+            // until then reopening the store uses the current one and deletes these
+            File tempData = getTempDataFile(newGen);
+            Index newIdx = Index.create(getIndexFile(newGen, bits), bits);
+            try {
+                try (FileChannel newData = FileChannel.open(tempData.toPath(), StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long newPos = 0;
+                    for (long[] entry : kept) {
+                        long len = getRecordLength(entry[0], header, hash);
+                        long copied = 0;
+                        while (copied < len) {
+                            copied += data.transferTo(entry[0] + copied, len - copied, newData);
+                        }
+                        newIdx.insert(keptHashes.get((int) entry[1]), newPos);
+                        newPos += len;
+                    }
+                    newData.force(false);
+                }
+                newIdx.seal();
+                newIdx.force();
+                Files.move(tempData.toPath(), getDataFile(newGen).toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            } catch (IOException | RuntimeException e) {
+                newIdx.close();
+                newIdx.file.delete();
+                tempData.delete();
+                throw e;
+            }
+
+            File oldData = getDataFile(generation);
+            File oldIndex = index.file;
+            close();
+            generation = newGen;
+            data = openData(generation);
+            dataSize = data.size();
+            index = newIdx;
+            oldData.delete();
+            oldIndex.delete();
+            return removed[0];
+        }
+
+        private void force() throws IOException {
+            if (data != null) {
+                data.force(false);
+            }
+            if (index != null) {
+                index.force();
+            }
+        }
+
+        private void close() {
+            try {
+                if (data != null) {
+                    data.close();
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Error closing blob store data: {}", e.toString()); //$NON-NLS-1$
+            }
+            if (index != null) {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Open addressing hash table of hashes and record offsets, memory mapped from
+     * a file, or in memory when the store is read only and the index must be
+     * rebuilt.
+     */
+    private static class Index {
+
+        private final File file;
+        private final FileChannel channel;
+        private final ByteBuffer map;
+        private final int bits;
+        private final int mask;
+        private long count;
+
+        private Index(File file, FileChannel channel, ByteBuffer map, int bits, long count) {
+            this.file = file;
+            this.channel = channel;
+            this.map = map;
+            this.bits = bits;
+            this.mask = (1 << bits) - 1;
+            this.count = count;
+        }
+
+        private static long getSize(int bits) {
+            return INDEX_HEADER + ((long) SLOT_SIZE << bits);
+        }
+
+        private static Index create(File file, int bits) throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            MappedByteBuffer map = channel.map(MapMode.READ_WRITE, 0, getSize(bits));
+            map.putInt(4, bits);
+            return new Index(file, channel, map, bits, 0);
+        }
+
+        private static Index createInMemory(int bits) {
+            ByteBuffer map = ByteBuffer.allocate((int) getSize(bits));
+            map.putInt(4, bits);
+            return new Index(null, null, map, bits, 0);
+        }
+
+        /**
+         * @return the index or null if it is not complete.
+         */
+        private static Index open(File file, boolean readOnly) throws IOException {
+            FileChannel channel = readOnly ? FileChannel.open(file.toPath(), StandardOpenOption.READ)
+                    : FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size >= INDEX_HEADER) {
+                ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER);
+                channel.read(header, 0);
+                header.flip();
+                int magic = header.getInt();
+                int bits = header.getInt();
+                long count = header.getLong();
+                if (magic == INDEX_MAGIC && bits >= MIN_INDEX_BITS && bits <= MAX_INDEX_BITS
+                        && size == getSize(bits)) {
+                    MappedByteBuffer map = channel.map(readOnly ? MapMode.READ_ONLY : MapMode.READ_WRITE, 0, size);
+                    return new Index(file, channel, map, bits, count);
+                }
+            }
+            channel.close();
+            return null;
+        }
+
+        /**
+         * Marks the index as complete.
+         */
+        private void seal() {
+            map.putLong(8, count);
+            map.putInt(0, INDEX_MAGIC);
+        }
+
+        private int slot(byte[] hash) {
+            long h = 0;
+            for (int i = HASH_LEN - 8; i < HASH_LEN; i++) {
+                h = (h << 8) | (hash[i] & 0xFF);
+            }
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        private static int getSlotPos(int slot) {
+            return INDEX_HEADER + slot * SLOT_SIZE;
+        }
+
+        private boolean equals(byte[] hash, int pos) {
+            for (int i = 0; i < HASH_LEN; i++) {
+                if (map.get(pos + i) != hash[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long find(byte[] hash) {
+            int slot = slot(hash);
+            while (true) {
+                int pos = getSlotPos(slot);
+                long offset = map.getLong(pos + HASH_LEN);
+                if (offset == 0) {
+                    return -1;
+                }
+                if (equals(hash, pos)) {
+                    return offset - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private void insert(byte[] hash, long offset) {
+            int slot = slot(hash);
+            int pos;
+            while (map.getLong((pos = getSlotPos(slot)) + HASH_LEN) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            for (int i = 0; i < HASH_LEN; i++) {
+                map.put(pos + i, hash[i]);
+            }
+            map.putLong(pos + HASH_LEN, offset + 1);
+            count++;
+            map.putLong(8, count);
+        }
+
+        private boolean isFull() {
+            return count + 1 > MAX_LOAD * (1 << bits);
+        }
+
+        private interface EntryConsumer {
+            void accept(byte[] hash, long offset);
+        }
+
+        private void forEach(EntryConsumer consumer) {
+            for (int slot = 0; slot <= mask; slot++) {
+                int pos = getSlotPos(slot);
+                long offset = map.getLong(pos + HASH_LEN);
+                if (offset != 0) {
+                    byte[] hash = new byte[HASH_LEN];
+                    for (int i = 0; i < HASH_LEN; i++) {
+                        hash[i] = map.get(pos + i);
+                    }
+                    consumer.accept(hash, offset - 1);
+                }
+            }
+        }
+
+        private void copyTo(Index other) {
+            forEach(other::insert);
+        }
+
+        private void force() {
+            if (map instanceof MappedByteBuffer && !map.isReadOnly()) {
+                ((MappedByteBuffer) map).force();
+            }
+        }
+
+        private void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Error closing blob store index: {}", e.toString()); //$NON-NLS-1$
+                }
+            }
+        }
+    }
+
+    /**
+     * Read only channel of a content, keeping the last decompressed chunk.
+     */
+    private static class BlobChannel implements SeekableByteChannel {
+
+        private final Stripe stripe;
+        private final long length;
+        private final int chunkSize;
+        private final long[] chunkPos;
+        private final int[] chunkLens;
+
+        private long position = 0;
+        private int currentChunk = -1;
+        private byte[] chunk;
+        private byte[] compressed;
+        private boolean open = true;
+
+        private BlobChannel(Stripe stripe, long length, int chunkSize, long[] chunkPos, int[] chunkLens) {
+            this.stripe = stripe;
+            this.length = length;
+            this.chunkSize = chunkSize;
+            this.chunkPos = chunkPos;
+            this.chunkLens = chunkLens;
+        }
+
+        private void loadChunk(int i) throws IOException {
+            if (i == currentChunk) {
+                return;
+            }
+            int rawLen = (int) Math.min(chunkSize, length - (long) i * chunkSize);
+            if (chunk == null) {
+                chunk = new byte[(int) Math.min(chunkSize, length)];
+            }
+            currentChunk = -1;
+            if (chunkLens[i] < 0) {
+                stripe.readFully(ByteBuffer.wrap(chunk, 0, rawLen), chunkPos[i]);
+            } else {
+                if (compressed == null || compressed.length < chunkLens[i]) {
+                    compressed = new byte[chunkLens[i]];
+                }
+                stripe.readFully(ByteBuffer.wrap(compressed, 0, chunkLens[i]), chunkPos[i]);
+                decompressor.decompress(compressed, 0, chunk, 0, rawLen);
+            }
+            currentChunk = i;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            if (position >= length) {
+                return -1;
+            }
+            int total = 0;
+            while (dst.hasRemaining() && position < length) {
+                int i = (int) (position / chunkSize);
+                loadChunk(i);
+                int off = (int) (position - (long) i * chunkSize);
+                int rawLen = (int) Math.min(chunkSize, length - (long) i * chunkSize);
+                int len = Math.min(dst.remaining(), rawLen - off);
+                dst.put(chunk, off, len);
+                position += len;
+                total += len;
+            }
+            return total;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            if (newPosition < 0) {
+                throw new IllegalArgumentException("Negative position " + newPosition); //$NON-NLS-1$
+            }
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return length;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+            chunk = null;
+            compressed = null;
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package iped.engine.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import iped.engine.core.Manager;
+import iped.io.SeekableInputStream;
+import iped.utils.HashValue;
+import iped.utils.SeekableFileInputStream;
+import iped.utils.SeekableInputStreamFactory;
+
+/**
+ * Reads exported subitems from the {@link BlobStore} of the case, identified by
+ * their MD5 hash. Streams decompress just the chunks being read, so seeking into
+ * large contents does not load them in memory.
+ */
+public class BlobStoreInputStreamFactory extends SeekableInputStreamFactory {
+
+    public BlobStoreInputStreamFactory(Path datasource) {
+        super(datasource.toUri());
+    }
+
+    @Override
+    public boolean checkIfDataSourceExists() {
+        // do nothing, it will always be into case folder
+        return false;
+    }
+
+    @Override
+    public SeekableInputStream getSeekableInputStream(String identifier) throws IOException {
+        File dir = Paths.get(getDataSourceURI()).toFile();
+        // the analysis UI must not change the case store, even if it is writable
+        BlobStore store = BlobStore.open(dir, false, Manager.getInstance() == null);
+        return new SeekableFileInputStream(store.openChannel(new HashValue(identifier).getBytes()));
+    }
+
+}
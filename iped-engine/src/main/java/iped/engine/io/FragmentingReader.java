@@ -36,6 +36,13 @@ public FragmentingReader(Reader reader, long textSplitSize, int textOverlapSize)
             this.reader = new BufferedReader(reader);
     }
 
+    /**
+     * @return if a text of the given size is split in more than one fragment.
+     */
+    public static boolean isSplitted(long textSize, long textSplitSize, int textOverlapSize) {
+        return textSize >= textSplitSize + textOverlapSize;
+    }
+
     public int estimateNumberOfFrags() {
         if (knownSize > -1) {
             long size = knownSize;
@@ -6,13 +6,19 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -27,6 +33,7 @@
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.archivers.zip.ZipMethod;
 import org.apache.commons.compress.archivers.zip.ZipSplitReadOnlySeekableByteChannel;
 import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
 import org.apache.commons.lang3.tuple.Pair;
@@ -48,10 +55,33 @@ public class ZIPInputStreamFactory extends SeekableInputStreamFactory implements
 
     private static final int UFDR_BUF_SIZE = 1 << 16;
 
+    private static final int MAX_OFFSETS_CACHED = 1 << 16;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int LOCAL_HEADER_LEN = 30;
+
     private volatile ZipFile zip;
 
     private SeekableByteChannel sbc;
 
+    // true if the archive is not split, so entries offsets are offsets in the file
+    private boolean singleFile;
+
+    // used to read STORED entries directly, with positional reads without locks
+    private volatile FileChannel dataChannel;
+
+    private volatile boolean closed = false;
+
+    private Map<String, Long> dataOffsets = new LinkedHashMap<String, Long>(128, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return this.size() > MAX_OFFSETS_CACHED;
+        }
+    };
+
     private int bytesCached = 0;
 
     private Map<String, byte[]> bytesCache = new LinkedHashMap<String, byte[]>(128, 0.75f, true);
@@ -118,6 +148,7 @@ private synchronized void init() throws IOException {
 
             if (channels.size() == 1) {
                 sbc = channels.get(0);
+                singleFile = true;
             } else {
                 sbc = ZipSplitReadOnlySeekableByteChannel.forOrderedSeekableByteChannels(channels.toArray(new SeekableByteChannel[0]));
             }
@@ -155,6 +186,25 @@ public long getEntrySize(String path) {
 
     @Override
     public SeekableInputStream getSeekableInputStream(String path) throws IOException {
+        ZipArchiveEntry zae;
+        try {
+            if (zip == null) {
+                init();
+            }
+            zae = zip.getEntry(path);
+        } catch (IOException e1) {
+            throw e1;
+        }
+        if (zae == null) {
+            return new SeekableFileInputStream(new SeekableInMemoryByteChannel(new byte[0]));
+        }
+        if (isStoredEntry(zae)) {
+            long dataOffset = getDataOffset(path, zae);
+            if (dataOffset >= 0) {
+                return new SeekableFileInputStream(new EntryDataChannel(dataOffset, zae.getSize()));
+            }
+        }
+
         Path tmp = null;
         byte[] bytes = null;
         synchronized (bytesCache) {
@@ -175,18 +225,6 @@ public SeekableInputStream getSeekableInputStream(String path) throws IOExceptio
             }
         }
 
-        ZipArchiveEntry zae;
-        try {
-            if (zip == null) {
-                init();
-            }
-            zae = zip.getEntry(path);
-        } catch (IOException e1) {
-            throw e1;
-        }
-        if (zae == null) {
-            return new SeekableFileInputStream(new SeekableInMemoryByteChannel(new byte[0]));
-        }
         AtomicBoolean canceled = new AtomicBoolean(false);
         // see #1199: call in background to avoid closing the channel if interrupted
         Future<Pair<Path, byte[]>> future = executor.submit(new Callable<Pair<Path, byte[]>>() {
@@ -280,8 +318,172 @@ public Pair<Path, byte[]> call() throws Exception {
         return new SeekableFileInputStream(tmp.toFile());
     }
 
+    /**
+     * Entries not compressed (most of UFDR contents) nor encrypted are read
+     * directly from the archive file, without copies to memory or temp files.
+     */
+    private boolean isStoredEntry(ZipArchiveEntry zae) {
+        return singleFile && zae.getMethod() == ZipMethod.STORED.getCode()
+                && !zae.getGeneralPurposeBit().usesEncryption() && zae.getSize() >= 0
+                && zae.getCompressedSize() == zae.getSize();
+    }
+
+    /**
+     * Returns the offset of the entry data in the archive file, read from its
+     * local file header, or -1 if the header is not valid.
+     */
+    private long getDataOffset(String path, ZipArchiveEntry zae) throws IOException {
+        Long offset;
+        synchronized (dataOffsets) {
+            offset = dataOffsets.get(path);
+        }
+        if (offset != null) {
+            return offset;
+        }
+        long headerOffset = zae.getLocalHeaderOffset();
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_LEN).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (readData(header, headerOffset + header.position()) < 0) {
+                break;
+            }
+        }
+        if (header.hasRemaining() || header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            logger.warn("Invalid local file header of {}, offset {}", zae.getName(), headerOffset);
+            return -1;
+        }
+        int nameLen = header.getShort(26) & 0xFFFF;
+        int extraLen = header.getShort(28) & 0xFFFF;
+        offset = headerOffset + LOCAL_HEADER_LEN + nameLen + extraLen;
+        if (offset + zae.getSize() > getDataChannel().size()) {
+            logger.warn("Data of {} beyond the end of the archive, offset {}", zae.getName(), offset);
+            return -1;
+        }
+        synchronized (dataOffsets) {
+            dataOffsets.put(path, offset);
+        }
+        return offset;
+    }
+
+    private FileChannel getDataChannel() throws IOException {
+        FileChannel channel = dataChannel;
+        if (channel == null) {
+            channel = reopenDataChannel(null);
+        }
+        return channel;
+    }
+
+    private synchronized FileChannel reopenDataChannel(FileChannel closedChannel) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (dataChannel == closedChannel) {
+            dataChannel = FileChannel.open(Paths.get(this.dataSource), StandardOpenOption.READ);
+        }
+        return dataChannel;
+    }
+
+    private int readData(ByteBuffer dst, long position) throws IOException {
+        FileChannel channel = getDataChannel();
+        try {
+            return channel.read(dst, position);
+        } catch (ClosedByInterruptException e) {
+            // this thread was interrupted, e.g. by a parsing timeout
+            throw e;
+        } catch (ClosedChannelException e) {
+            // closed because other thread was interrupted while reading
+            return reopenDataChannel(channel).read(dst, position);
+        }
+    }
+
+    /**
+     * Read only view of the data of a STORED entry. Reads go straight to the
+     * archive file with positional reads, so streams of different entries are
+     * read concurrently.
+     */
+    private class EntryDataChannel implements SeekableByteChannel {
+
+        private final long offset, size;
+        private long position = 0;
+        private boolean open = true;
+
+        private EntryDataChannel(long offset, long size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            if (position >= size) {
+                return -1;
+            }
+            int len = (int) Math.min(dst.remaining(), size - position);
+            int limit = dst.limit();
+            dst.limit(dst.position() + len);
+            int read;
+            try {
+                read = readData(dst, offset + position);
+            } finally {
+                dst.limit(limit);
+            }
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            if (newPosition < 0) {
+                throw new IllegalArgumentException("Negative position: " + newPosition);
+            }
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return size;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the archive file channel is shared and closed with the factory
+            open = false;
+        }
+    }
+
     @Override
     public void close() throws IOException {
+        closed = true;
+        synchronized (this) {
+            if (dataChannel != null) {
+                dataChannel.close();
+                dataChannel = null;
+            }
+        }
         // Closing the ZipFile will close the channel, all sub channels and RAFs
         if (zip != null) {
             zip.close();
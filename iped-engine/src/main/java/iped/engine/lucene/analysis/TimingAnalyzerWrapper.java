@@ -0,0 +1,80 @@
+package iped.engine.lucene.analysis;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * Wraps the indexing analyzer to measure the time spent analyzing each field.
+ * It is measured from the token stream reset to its end, so it includes reading
+ * the field value and inverting its tokens, but costs just two clock reads per
+ * field value.
+ */
+public class TimingAnalyzerWrapper extends AnalyzerWrapper {
+
+    private static final Map<String, LongAdder> fieldTimes = new ConcurrentHashMap<>();
+
+    private final Analyzer delegate;
+
+    public TimingAnalyzerWrapper(Analyzer delegate) {
+        super(PER_FIELD_REUSE_STRATEGY);
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return analysis time in nanoseconds per field name
+     */
+    public static Map<String, Long> getFieldTimes() {
+        Map<String, Long> result = new TreeMap<>();
+        fieldTimes.forEach((field, time) -> result.put(field, time.sum()));
+        return result;
+    }
+
+    @Override
+    protected Analyzer getWrappedAnalyzer(String fieldName) {
+        return delegate;
+    }
+
+    @Override
+    protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+        LongAdder time = fieldTimes.computeIfAbsent(fieldName, f -> new LongAdder());
+        return new TokenStreamComponents(components.getSource(),
+                new TimingFilter(components.getTokenStream(), time));
+    }
+
+    private static class TimingFilter extends TokenFilter {
+
+        private final LongAdder time;
+        private long start;
+
+        private TimingFilter(TokenStream input, LongAdder time) {
+            super(input);
+            this.time = time;
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            return input.incrementToken();
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            start = System.nanoTime();
+        }
+
+        @Override
+        public void end() throws IOException {
+            super.end();
+            time.add(System.nanoTime() - start);
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package iped.engine.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of latencies in microseconds, with log-linear buckets
+ * like HdrHistogram: each power of two range is split in 32 linear sub buckets,
+ * so recorded values are kept with a relative error smaller than ~3%, up to
+ * 2^42 us (~50 days), with a fixed footprint of ~10KB.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 42;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int NUM_BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 2) * (SUB_BUCKETS / 2);
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        int sub = (int) (value >>> exp) - SUB_BUCKETS / 2;
+        return exp * (SUB_BUCKETS / 2) + SUB_BUCKETS / 2 + sub;
+    }
+
+    /**
+     * @return the highest value that falls in the bucket
+     */
+    static long getBucketMaxValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exp = (bucket - SUB_BUCKETS / 2) / (SUB_BUCKETS / 2);
+        long sub = (bucket - SUB_BUCKETS / 2) % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+        return ((sub + 1) << exp) - 1;
+    }
+
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        } else if (micros > MAX_VALUE) {
+            micros = MAX_VALUE;
+        }
+        counts.incrementAndGet(getBucket(micros));
+        totalCount.increment();
+        totalTime.add(micros);
+        if (micros > max.get()) {
+            max.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * @return sum of recorded values, in microseconds
+     */
+    public long getTotalTime() {
+        return totalTime.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : getTotalTime() / count;
+    }
+
+    /**
+     * @param percentile
+     *            from 0 to 100
+     * @return an upper bound of the percentile, in microseconds
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[NUM_BUCKETS];
+        long count = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(getBucketMaxValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+}
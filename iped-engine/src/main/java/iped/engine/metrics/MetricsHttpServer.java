@@ -0,0 +1,73 @@
+package iped.engine.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the {@link ProcessingMetrics} in Prometheus text format at
+ * http://localhost:port/metrics. It only listens on the loopback interface.
+ */
+public class MetricsHttpServer {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(MetricsHttpServer.class);
+
+    private static final String PATH = "/metrics"; //$NON-NLS-1$
+
+    private static HttpServer server;
+
+    public static synchronized void start(int port) {
+        if (server != null) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext(PATH, MetricsHttpServer::handle);
+            server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "MetricsHttpServer"); //$NON-NLS-1$
+                t.setDaemon(true);
+                return t;
+            }));
+            server.start();
+            LOGGER.info("Processing metrics available at http://localhost:{}{}", port, PATH); //$NON-NLS-1$
+
+        } catch (IOException e) {
+            LOGGER.warn("Could not start metrics endpoint on port {}: {}", port, e.toString()); //$NON-NLS-1$
+            server = null;
+        }
+    }
+
+    public static synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) { //$NON-NLS-1$
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = ProcessingMetrics.get().getReport().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8"); //$NON-NLS-1$ //$NON-NLS-2$
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package iped.engine.metrics;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of processing metrics: lock free counters, gauges read when
+ * reported and latency histograms, grouped by task, parser, media type, etc.
+ * Recording is cheap enough to be done for every item, so metrics are always
+ * collected and can be inspected while a case is being processed, through JMX,
+ * the local HTTP endpoint of {@link MetricsHttpServer} or the progress window.
+ */
+public class ProcessingMetrics implements ProcessingMetricsMXBean {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ProcessingMetrics.class);
+
+    public static final String TASK = "task"; //$NON-NLS-1$
+    public static final String PARSER = "parser"; //$NON-NLS-1$
+    public static final String MEDIA_TYPE = "mediaType"; //$NON-NLS-1$
+
+    private static final String PREFIX = "iped_"; //$NON-NLS-1$
+    private static final String OBJECT_NAME = "iped:type=ProcessingMetrics"; //$NON-NLS-1$
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+    private static final ProcessingMetrics instance = new ProcessingMetrics();
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    public static ProcessingMetrics get() {
+        return instance;
+    }
+
+    private ProcessingMetrics() {
+        registerMemoryGauges();
+    }
+
+    public LatencyHistogram getHistogram(String group, String name) {
+        return histograms.computeIfAbsent(group, g -> new ConcurrentHashMap<>()).computeIfAbsent(name,
+                n -> new LatencyHistogram());
+    }
+
+    public void record(String group, String name, long micros) {
+        getHistogram(group, name).record(micros);
+    }
+
+    /**
+     * @return a live view of the histograms of the group, by name
+     */
+    public Map<String, LatencyHistogram> getHistograms(String group) {
+        Map<String, LatencyHistogram> map = histograms.get(group);
+        return map == null ? Collections.emptyMap() : Collections.unmodifiableMap(map);
+    }
+
+    public void incCounter(String name, long delta) {
+        counters.computeIfAbsent(name, n -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Registers a value read each time metrics are reported, replacing any
+     * previous gauge with the same name.
+     */
+    public void registerGauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    private void registerMemoryGauges() {
+        registerGauge("heapUsedBytes", () -> getHeapUsage().getUsed()); //$NON-NLS-1$
+        registerGauge("heapCommittedBytes", () -> getHeapUsage().getCommitted()); //$NON-NLS-1$
+        registerGauge("heapMaxBytes", () -> getHeapUsage().getMax()); //$NON-NLS-1$
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            // direct and mapped buffers
+            registerGauge(pool.getName() + "BufferBytes", pool::getMemoryUsed); //$NON-NLS-1$
+        }
+    }
+
+    private static MemoryUsage getHeapUsage() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    }
+
+    /**
+     * Exposes the metrics through the platform MBean server.
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(instance, name);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Error registering metrics MBean: {}", e.toString()); //$NON-NLS-1$
+        }
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> result = new TreeMap<>();
+        gauges.forEach((name, supplier) -> result.put(name, supplier.getAsLong()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> result = new TreeMap<>();
+        counters.forEach((name, adder) -> result.put(name, adder.sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, String> getLatencies() {
+        Map<String, String> result = new TreeMap<>();
+        histograms.forEach((group, map) -> map.forEach((name, h) -> {
+            result.put(group + "/" + name, String.format("count=%d mean=%dus p50=%dus p90=%dus p99=%dus max=%dus", //$NON-NLS-1$ //$NON-NLS-2$
+                    h.getCount(), h.getMean(), h.getPercentile(50), h.getPercentile(90), h.getPercentile(99),
+                    h.getMax()));
+        }));
+        return result;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        gauges.forEach((name, supplier) -> {
+            String metric = PREFIX + sanitize(name);
+            sb.append("# TYPE ").append(metric).append(" gauge\n"); //$NON-NLS-1$ //$NON-NLS-2$
+            sb.append(metric).append(' ').append(supplier.getAsLong()).append('\n');
+        });
+        counters.forEach((name, adder) -> {
+            String metric = PREFIX + sanitize(name) + "_total"; //$NON-NLS-1$
+            sb.append("# TYPE ").append(metric).append(" counter\n"); //$NON-NLS-1$ //$NON-NLS-2$
+            sb.append(metric).append(' ').append(adder.sum()).append('\n');
+        });
+        for (String group : new TreeMap<>(histograms).keySet()) {
+            String metric = PREFIX + sanitize(group) + "_latency_microseconds"; //$NON-NLS-1$
+            String label = sanitize(group);
+            sb.append("# TYPE ").append(metric).append(" summary\n"); //$NON-NLS-1$ //$NON-NLS-2$
+            for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms.get(group)).entrySet()) {
+                String labels = label + "=\"" + escape(entry.getKey()) + "\""; //$NON-NLS-1$ //$NON-NLS-2$
+                LatencyHistogram h = entry.getValue();
+                for (double q : QUANTILES) {
+                    sb.append(metric).append('{').append(labels).append(",quantile=\"").append(q).append("\"} ") //$NON-NLS-1$ //$NON-NLS-2$
+                            .append(h.getPercentile(q * 100)).append('\n');
+                }
+                sb.append(metric).append("_sum{").append(labels).append("} ").append(h.getTotalTime()).append('\n'); //$NON-NLS-1$ //$NON-NLS-2$
+                sb.append(metric).append("_count{").append(labels).append("} ").append(h.getCount()).append('\n'); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^a-zA-Z0-9_]", "_"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+    }
+
+}
@@ -0,0 +1,25 @@
+package iped.engine.metrics;
+
+import java.util.Map;
+
+/**
+ * Live processing metrics exposed through JMX, e.g. to be inspected with
+ * jconsole or VisualVM.
+ */
+public interface ProcessingMetricsMXBean {
+
+    Map<String, Long> getGauges();
+
+    Map<String, Long> getCounters();
+
+    /**
+     * @return a summary of each latency histogram, by group/name
+     */
+    Map<String, String> getLatencies();
+
+    /**
+     * @return all metrics in Prometheus text format
+     */
+    String getReport();
+
+}
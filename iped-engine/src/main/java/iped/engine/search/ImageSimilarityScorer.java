@@ -13,6 +13,7 @@
 import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.util.BytesRef;
+import org.roaringbitmap.RoaringBitmap;
 
 import iped.data.IItem;
 import iped.data.IItemId;
@@ -84,6 +85,7 @@ public void score() throws IOException {
         int numThreads = Runtime.getRuntime().availableProcessors();
         Thread[] threads = new Thread[numThreads];
         int evalCut = (int) (100 * refSimilarityFeatures.length / distToScoreMult);
+        RoaringBitmap candidates = findCandidates(evalCut);
         int itemsPerThread = (len + numThreads - 1) / numThreads;
         for (int k = 0; k < numThreads; k++) {
             int threadIdx = k;
@@ -100,8 +102,11 @@ public void run() {
                     int i0 = Math.min(len, itemsPerThread * threadIdx);
                     int i1 = Math.min(len, i0 + itemsPerThread);
                     for (int i = i0; i < i1; i++) {
-                        IItemId itemId = result.getItem(i);
-                        int luceneId = ipedCase.getLuceneId(itemId);
+                        int luceneId = ipedCase.getLuceneId(result.getSourceId(i), result.getId(i));
+                        if (candidates != null && !candidates.contains(luceneId)) {
+                            result.setScore(i, 0);
+                            continue;
+                        }
                         BytesRef bytesRef = DocValuesUtil.getBytesRef(similarityFeaturesValues, luceneId);
                         if (bytesRef == null || bytesRef.length == 0) {
                             result.setScore(i, 0);
@@ -143,6 +148,29 @@ public void run() {
         organizeTopResults();
     }
 
+    /**
+     * Uses the HNSW graph of image vectors to find the images that may be closer
+     * than evalCut to the reference image, which are scored exactly later.
+     * 
+     * @return candidates lucene ids, or null if all items must be scanned
+     */
+    private RoaringBitmap findCandidates(int evalCut) throws IOException {
+        if (len < KnnCandidates.MIN_ITEMS_TO_USE) {
+            return null;
+        }
+        List<String> fields = KnnCandidates.getVectorFields(ipedCase.getReader(), ImageSimilarityTask.IMAGE_FEATURES,
+                ImageSimilarityTask.IMAGE_FEATURES_VECTOR);
+        if (fields.isEmpty()) {
+            return null;
+        }
+        RoaringBitmap candidates = new RoaringBitmap();
+        float[] refVector = ImageSimilarity.toVector(refSimilarityFeatures);
+        if (!KnnCandidates.search(ipedCase.getSearcher(), fields, refVector, evalCut, candidates)) {
+            return null;
+        }
+        return candidates;
+    }
+
     private void organizeTopResults() {
         for (int i = 0; i < len; i++) {
             if (result.getScore(i) > cut) {
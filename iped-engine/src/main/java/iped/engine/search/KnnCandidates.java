@@ -0,0 +1,95 @@
+package iped.engine.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnVectorQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Finds candidate documents for similarity searches using the HNSW graphs built
+ * by Lucene for KnnVectorFields (euclidean similarity), so just the candidates
+ * need to be scored exactly, instead of scanning all documents.
+ *
+ * The number of neighbours requested is increased while the farthest one
+ * returned is still within the distance limit, so all documents within it are
+ * returned, apart from the approximation of the graph search.
+ */
+class KnnCandidates {
+
+    /**
+     * Results smaller than this are just scanned.
+     */
+    static final int MIN_ITEMS_TO_USE = 50_000;
+
+    private static final int INITIAL_K = 1000;
+    private static final int MAX_K = 256_000;
+
+    /**
+     * @return fields with vector values whose names start with vectorPrefix, or
+     *         an empty list if some index segment has values of featuresField
+     *         but not their vectors (e.g. processed by older versions).
+     */
+    static List<String> getVectorFields(IndexReader reader, String featuresField, String vectorPrefix) {
+        TreeSet<String> fields = new TreeSet<>();
+        for (LeafReaderContext ctx : reader.leaves()) {
+            FieldInfos infos = ctx.reader().getFieldInfos();
+            if (infos.fieldInfo(featuresField) != null) {
+                FieldInfo vectorInfo = infos.fieldInfo(vectorPrefix);
+                if (vectorInfo == null || vectorInfo.getVectorDimension() == 0) {
+                    return Collections.emptyList();
+                }
+            }
+            for (FieldInfo info : infos) {
+                if (info.getVectorDimension() > 0 && info.name.startsWith(vectorPrefix)) {
+                    fields.add(info.name);
+                }
+            }
+        }
+        return new ArrayList<>(fields);
+    }
+
+    /**
+     * Adds to candidates the lucene ids of documents with a vector in some of the
+     * fields within maxSquaredDist from the target.
+     *
+     * @return false if there are too many candidates, so a full scan should be
+     *         used.
+     */
+    static boolean search(IndexSearcher searcher, List<String> fields, float[] target, float maxSquaredDist,
+            RoaringBitmap candidates) throws IOException {
+        // euclidean score is 1 / (1 + squaredDist)
+        float minScore = 1 / (1 + maxSquaredDist * 1.0001f);
+        for (String field : fields) {
+            int k = INITIAL_K;
+            while (true) {
+                TopDocs topDocs = searcher.search(new KnnVectorQuery(field, target, k), k);
+                ScoreDoc[] hits = topDocs.scoreDocs;
+                for (ScoreDoc hit : hits) {
+                    if (hit.score >= minScore) {
+                        candidates.add(hit.doc);
+                    }
+                }
+                if (hits.length < k || hits[hits.length - 1].score < minScore) {
+                    break;
+                }
+                if (k >= MAX_K) {
+                    return false;
+                }
+                k <<= 2;
+            }
+        }
+        return true;
+    }
+
+}
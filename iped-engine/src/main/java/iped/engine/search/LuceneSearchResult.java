@@ -19,7 +19,6 @@
 package iped.engine.search;
 
 import java.util.Arrays;
-import java.util.Comparator;
 
 import org.apache.lucene.search.ScoreDoc;
 
@@ -156,16 +155,21 @@ private LuceneSearchResult intersect2(LuceneSearchResult items) {
         int[] docs2 = items.docs.clone();
         Arrays.sort(docs2);
 
-        Integer[] index = new Integer[result.length];
+        // (doc, position) pairs packed in longs, sorting them orders by doc without
+        // boxing
+        long[] index = new long[result.length];
         for (int i = 0; i < index.length; i++)
-            index[i] = i;
-        Arrays.sort(index, new IndexComparator(result.docs));
+            index[i] = ((long) result.docs[i] << 32) | i;
+        Arrays.sort(index);
 
         int i = 0, j = 0;
         while (i < result.length) {
-            if (j == docs2.length || result.docs[index[i]] < docs2[j])
-                result.docs[index[i++]] = -1;
-            else if (result.docs[index[i]] > docs2[j])
+            int doc = (int) (index[i] >>> 32);
+            int pos = (int) index[i];
+            if (j == docs2.length || doc < docs2[j]) {
+                result.docs[pos] = -1;
+                i++;
+            } else if (doc > docs2[j])
                 j++;
             else {
                 i++;
@@ -195,19 +199,4 @@ public LuceneSearchResult clone() {
         return result;
     }
 
-    class IndexComparator implements Comparator<Integer> {
-
-        int[] values;
-
-        IndexComparator(int[] values) {
-            this.values = values;
-        }
-
-        @Override
-        public int compare(Integer o1, Integer o2) {
-            return values[o1] - values[o2];
-        }
-
-    }
-
 }
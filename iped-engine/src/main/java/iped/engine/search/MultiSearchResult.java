@@ -1,5 +1,6 @@
 package iped.engine.search;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -12,28 +13,52 @@
 import iped.engine.data.ItemId;
 import iped.search.IMultiSearchResult;
 
+/**
+ * Search results of a multicase. Item ids are stored packed in primitive
+ * arrays (sourceId, id), IItemId objects are created just when requested, so
+ * huge results do not allocate one object per hit.
+ *
+ * Specialized item ids (like timeline ones) carry more data than (sourceId,
+ * id), so if they are used to build the result, they are also kept.
+ */
 public class MultiSearchResult implements IMultiSearchResult {
 
-    private IItemId[] ids;
+    private int[] sourceIds;
+    private int[] ids;
     private float[] scores;
+    private IItemId[] views;
     IPEDSearcher ipedSearcher;
     IIPEDSource ipedSource;
     RoaringBitmap docids;
     RoaringBitmap[] casesBitSet = null;
 
     public MultiSearchResult() {
-        this.ids = new ItemId[0];
-        this.scores = new float[0];
+        this(new int[0], new int[0], new float[0]);
     }
 
-    public MultiSearchResult(IItemId[] ids, float[] scores) {
+    public MultiSearchResult(int[] sourceIds, int[] ids, float[] scores) {
+        this.sourceIds = sourceIds;
         this.ids = ids;
         this.scores = scores;
     }
 
-    public MultiSearchResult(IIPEDSource ipedSource, IItemId[] ids, float[] scores) {
-        this.ids = ids;
+    public MultiSearchResult(IItemId[] ids, float[] scores) {
+        this.sourceIds = new int[ids.length];
+        this.ids = new int[ids.length];
         this.scores = scores;
+        boolean specialized = false;
+        for (int i = 0; i < ids.length; i++) {
+            this.sourceIds[i] = ids[i].getSourceId();
+            this.ids[i] = ids[i].getId();
+            specialized |= ids[i].getClass() != ItemId.class;
+        }
+        if (specialized) {
+            this.views = ids;
+        }
+    }
+
+    public MultiSearchResult(IIPEDSource ipedSource, IItemId[] ids, float[] scores) {
+        this(ids, scores);
     }
 
     public final int getLength() {
@@ -41,6 +66,19 @@ public final int getLength() {
     }
 
     public final IItemId getItem(int i) {
+        if (views != null) {
+            return views[i];
+        }
+        return new ItemId(sourceIds[i], ids[i]);
+    }
+
+    @Override
+    public final int getSourceId(int i) {
+        return sourceIds[i];
+    }
+
+    @Override
+    public final int getId(int i) {
         return ids[i];
     }
 
@@ -53,7 +91,16 @@ public final void setScore(int i, float score) {
     }
 
     public final void setItem(int i, IItemId itemId) {
-        ids[i] = itemId;
+        sourceIds[i] = itemId.getSourceId();
+        ids[i] = itemId.getId();
+        if (views != null) {
+            views[i] = itemId;
+        } else if (itemId.getClass() != ItemId.class) {
+            views = new IItemId[ids.length];
+            for (int j = 0; j < views.length; j++) {
+                views[j] = j == i ? itemId : new ItemId(sourceIds[j], ids[j]);
+            }
+        }
     }
 
     public Iterable<IItemId> getIterator() {
@@ -76,7 +123,7 @@ public final boolean hasNext() {
 
         @Override
         public final IItemId next() {
-            return ids[pos++];
+            return getItem(pos++);
         }
 
         @Override
@@ -93,37 +140,216 @@ public void setPos(int pos) {
         }
     }
 
+    private static long key(int sourceId, int id) {
+        return ((long) sourceId << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static long[] sortedKeys(IMultiSearchResult result) {
+        long[] keys = new long[result.getLength()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key(result.getSourceId(i), result.getId(i));
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Creates a new result with the positions of this one where keep is true.
+     */
+    private MultiSearchResult select(boolean[] keep, int count) {
+        MultiSearchResult result = new MultiSearchResult(new int[count], new int[count], new float[count]);
+        if (views != null) {
+            result.views = new IItemId[count];
+        }
+        int j = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                result.sourceIds[j] = sourceIds[i];
+                result.ids[j] = ids[i];
+                result.scores[j] = scores[i];
+                if (views != null) {
+                    result.views[j] = views[i];
+                }
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the items of this result, in the same order and with the same
+     *         scores, whose ids are also in the other result.
+     */
+    public MultiSearchResult intersect(IMultiSearchResult other) {
+        long[] otherKeys = sortedKeys(other);
+        boolean[] keep = new boolean[ids.length];
+        int count = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (Arrays.binarySearch(otherKeys, key(sourceIds[i], ids[i])) >= 0) {
+                keep[i] = true;
+                count++;
+            }
+        }
+        return select(keep, count);
+    }
+
+    /**
+     * @return the items of this result, in the same order and with the same
+     *         scores, which are set (or not set, if exclude is true) in the
+     *         bitsets indexed by sourceId.
+     */
+    public MultiSearchResult filter(RoaringBitmap[] casesBitSets, boolean exclude) {
+        boolean[] keep = new boolean[ids.length];
+        int count = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (casesBitSets[sourceIds[i]].contains(ids[i]) != exclude) {
+                keep[i] = true;
+                count++;
+            }
+        }
+        return select(keep, count);
+    }
+
+    /**
+     * @return the items of this result followed by the items of the other result
+     *         not present in this one.
+     */
+    public MultiSearchResult union(IMultiSearchResult other) {
+        long[] keys = sortedKeys(this);
+        boolean[] add = new boolean[other.getLength()];
+        int count = 0;
+        for (int i = 0; i < add.length; i++) {
+            if (Arrays.binarySearch(keys, key(other.getSourceId(i), other.getId(i))) < 0) {
+                add[i] = true;
+                count++;
+            }
+        }
+        int len = ids.length + count;
+        MultiSearchResult result = new MultiSearchResult(Arrays.copyOf(sourceIds, len), Arrays.copyOf(ids, len),
+                Arrays.copyOf(scores, len));
+        boolean otherViews = other instanceof MultiSearchResult && ((MultiSearchResult) other).views != null;
+        if (views != null || otherViews) {
+            result.views = new IItemId[len];
+            for (int i = 0; i < ids.length; i++) {
+                result.views[i] = getItem(i);
+            }
+        }
+        int j = ids.length;
+        for (int i = 0; i < add.length; i++) {
+            if (add[i]) {
+                result.sourceIds[j] = other.getSourceId(i);
+                result.ids[j] = other.getId(i);
+                result.scores[j] = other.getScore(i);
+                if (result.views != null) {
+                    result.views[j] = other.getItem(i);
+                }
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sorts the items of this result by (sourceId, id), keeping their scores.
+     */
+    public void sortByItemId() {
+        int[] order = new int[ids.length];
+        long[] keys = new long[ids.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            keys[i] = key(sourceIds[i], ids[i]);
+        }
+        sort(keys, order, 0, order.length - 1);
+        int[] newSourceIds = new int[ids.length];
+        int[] newIds = new int[ids.length];
+        float[] newScores = new float[ids.length];
+        IItemId[] newViews = views != null ? new IItemId[ids.length] : null;
+        for (int i = 0; i < order.length; i++) {
+            newSourceIds[i] = sourceIds[order[i]];
+            newIds[i] = ids[order[i]];
+            newScores[i] = scores[order[i]];
+            if (newViews != null) {
+                newViews[i] = views[order[i]];
+            }
+        }
+        sourceIds = newSourceIds;
+        ids = newIds;
+        scores = newScores;
+        views = newViews;
+    }
+
+    /**
+     * Quicksort of keys, applying the same swaps to the positions array.
+     */
+    private static void sort(long[] keys, int[] order, int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < keys[lo])
+                swap(keys, order, mid, lo);
+            if (keys[hi] < keys[lo])
+                swap(keys, order, hi, lo);
+            if (keys[hi] < keys[mid])
+                swap(keys, order, hi, mid);
+            long pivot = keys[mid];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot)
+                    i++;
+                while (keys[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    swap(keys, order, i++, j--);
+                }
+            }
+            // recurse into the smaller part, loop on the bigger one
+            if (j - lo < hi - i) {
+                sort(keys, order, lo, j);
+                lo = i;
+            } else {
+                sort(keys, order, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && keys[j] < keys[j - 1]; j--) {
+                swap(keys, order, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(long[] keys, int[] order, int i, int j) {
+        long k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+        int o = order[i];
+        order[i] = order[j];
+        order[j] = o;
+    }
+
     public static MultiSearchResult get(IPEDMultiSource iSource, LuceneSearchResult luceneResult) {
 
         // System.out.println("multi Result");
 
-        MultiSearchResult result = new MultiSearchResult();
-        result.scores = luceneResult.getScores();
-        result.ids = new ItemId[luceneResult.getLength()];
-
-        if (luceneResult.getLength() <= IPEDSearcher.MAX_SIZE_TO_SCORE) {
-            int[] docs = luceneResult.getLuceneIds();
-            for (int i = 0; i < docs.length; i++) {
-                result.ids[i] = iSource.getItemId(docs[i]);
-            }
-
-            // Otimização: considera que itens estão em ordem crescente do LuceneId (qdo não
-            // usa scores)
-        } else {
-            IIPEDSource atomicSource = null;
-            int baseDoc = 0;
-            int sourceId = 0;
-            int maxdoc = 0;
-            int[] docs = luceneResult.getLuceneIds();
-            for (int i = 0; i < docs.length; i++) {
-                if (atomicSource == null || docs[i] >= baseDoc + maxdoc) {
-                    atomicSource = iSource.getAtomicSource(docs[i]);
-                    sourceId = atomicSource.getSourceId();
-                    baseDoc = iSource.getBaseLuceneId(atomicSource);
-                    maxdoc = atomicSource.getReader().maxDoc();
-                }
-                result.ids[i] = new ItemId(sourceId, atomicSource.getId(docs[i] - baseDoc));
+        int length = luceneResult.getLength();
+        MultiSearchResult result = new MultiSearchResult(new int[length], new int[length],
+                luceneResult.getScores());
+
+        // Otimização: quando não usa scores, itens estão em ordem crescente do
+        // LuceneId, então o caso atômico raramente muda
+        IIPEDSource atomicSource = null;
+        int baseDoc = 0;
+        int sourceId = 0;
+        int maxdoc = 0;
+        int[] docs = luceneResult.getLuceneIds();
+        for (int i = 0; i < length; i++) {
+            if (atomicSource == null || docs[i] < baseDoc || docs[i] >= baseDoc + maxdoc) {
+                atomicSource = iSource.getAtomicSource(docs[i]);
+                sourceId = atomicSource.getSourceId();
+                baseDoc = iSource.getBaseLuceneId(atomicSource);
+                maxdoc = atomicSource.getReader().maxDoc();
             }
+            result.sourceIds[i] = sourceId;
+            result.ids[i] = atomicSource.getId(docs[i] - baseDoc);
         }
 
         return result;
@@ -134,30 +360,17 @@ public static LuceneSearchResult get(IMultiSearchResult ipedResult, IPEDMultiSou
         float[] scores = lResult.getScores();
         int[] docs = lResult.getLuceneIds();
 
-        int i = 0;
-        if (ipedResult.getLength() <= IPEDSearcher.MAX_SIZE_TO_SCORE) {
-            for (IItemId item : ipedResult.getIterator()) {
-                scores[i] = ipedResult.getScore(i);
-                docs[i] = iSource.getLuceneId(item);
-                i++;
-            }
-
-            // Otimização: considera que itens estão em ordem crescente do LuceneId (qdo não
-            // usa scores)
-        } else {
-            IIPEDSource atomicSource = null;
-            int baseDoc = 0;
-            int sourceId = 0;
-            for (IItemId item : ipedResult.getIterator()) {
-                if (atomicSource == null || item.getSourceId() != sourceId) {
-                    sourceId = item.getSourceId();
-                    atomicSource = iSource.getAtomicSourceBySourceId(sourceId);
-                    baseDoc = iSource.getBaseLuceneId(atomicSource);
-                }
-                docs[i] = atomicSource.getLuceneId(item.getId()) + baseDoc;
-                scores[i] = ipedResult.getScore(i);
-                i++;
+        IIPEDSource atomicSource = null;
+        int baseDoc = 0;
+        int sourceId = 0;
+        for (int i = 0; i < docs.length; i++) {
+            if (atomicSource == null || ipedResult.getSourceId(i) != sourceId) {
+                sourceId = ipedResult.getSourceId(i);
+                atomicSource = iSource.getAtomicSourceBySourceId(sourceId);
+                baseDoc = iSource.getBaseLuceneId(atomicSource);
             }
+            docs[i] = atomicSource.getLuceneId(ipedResult.getId(i)) + baseDoc;
+            scores[i] = ipedResult.getScore(i);
         }
 
         return lResult;
@@ -165,9 +378,10 @@ public static LuceneSearchResult get(IMultiSearchResult ipedResult, IPEDMultiSou
 
     @Override
     public MultiSearchResult clone() {
-        MultiSearchResult result = new MultiSearchResult();
-        result.ids = this.ids.clone();
-        result.scores = this.scores.clone();
+        MultiSearchResult result = new MultiSearchResult(sourceIds.clone(), ids.clone(), scores.clone());
+        if (views != null) {
+            result.views = views.clone();
+        }
         return result;
     }
 
@@ -196,16 +410,22 @@ public void setIPEDSource(IIPEDSource ipedSource) {
         if (this.ipedSource == null || this.docids == null) {
             this.ipedSource = ipedSource;
             this.docids = new RoaringBitmap();
-            for (int i = 0; i < ids.length; i++) {
-                int lucId = ipedSource.getLuceneId(ids[i]);
-                docids.add(lucId);
+            if (ipedSource instanceof IPEDSource) {
+                IPEDSource source = (IPEDSource) ipedSource;
+                for (int i = 0; i < ids.length; i++) {
+                    docids.add(source.getLuceneId(sourceIds[i], ids[i]));
+                }
+            } else {
+                for (int i = 0; i < ids.length; i++) {
+                    docids.add(ipedSource.getLuceneId(getItem(i)));
+                }
             }
         }
     }
 
     public RoaringBitmap[] getCasesBitSets(IPEDMultiSource multiSource) {
         if (casesBitSet == null) {
-            Integer lastSourceId = -1;
+            int lastSourceId = -1;
             RoaringBitmap bitset = null;
             int maxSrcId = 0;
 
@@ -225,12 +445,12 @@ public RoaringBitmap[] getCasesBitSets(IPEDMultiSource multiSource) {
             }
 
             for (int i = 0; i < ids.length; i++) {
-                int sourceId = ids[i].getSourceId();
+                int sourceId = sourceIds[i];
                 if (sourceId != lastSourceId) {
-                    bitset = casesBitSet[ids[i].getSourceId()];
+                    bitset = casesBitSet[sourceId];
                     lastSourceId = sourceId;
                 }
-                bitset.add(ids[i].getId());
+                bitset.add(ids[i]);
             }
 
         }
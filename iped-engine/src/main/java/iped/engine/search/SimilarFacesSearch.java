@@ -13,9 +13,9 @@
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.util.BytesRef;
+import org.roaringbitmap.RoaringBitmap;
 
 import iped.data.IItem;
-import iped.data.IItemId;
 import iped.engine.data.IPEDMultiSource;
 import iped.engine.data.IPEDSource;
 
@@ -73,6 +73,7 @@ private static final float squaredDistToScore(float squaredDist) {
 
     private void score(MultiSearchResult result) throws IOException {
 
+        RoaringBitmap candidates = findCandidates(result.getLength());
         LeafReader leafReader = ipedCase.getLeafReader();
         int numThreads = Runtime.getRuntime().availableProcessors();
         Thread[] threads = new Thread[numThreads];
@@ -97,8 +98,11 @@ public void run() {
                         if (i % 1000 == 0 && this.isInterrupted()) {
                             return;
                         }
-                        IItemId itemId = result.getItem(i);
-                        int luceneId = ipedCase.getLuceneId(itemId);
+                        int luceneId = ipedCase.getLuceneId(result.getSourceId(i), result.getId(i));
+                        if (candidates != null && !candidates.contains(luceneId)) {
+                            result.setScore(i, 0);
+                            continue;
+                        }
                         long ordinal;
                         float score = 0;
                         Arrays.fill(distsPerFace, minDistSquared + 1);
@@ -177,6 +181,29 @@ public void run() {
 
     }
 
+    /**
+     * Uses the HNSW graphs of face vectors to find the items with faces close to
+     * the reference ones, which are scored exactly later.
+     * 
+     * @return candidates lucene ids, or null if all items must be scanned
+     */
+    private RoaringBitmap findCandidates(int numItems) throws IOException {
+        if (numItems < KnnCandidates.MIN_ITEMS_TO_USE || refSimilarityFeatures.length == 0) {
+            return null;
+        }
+        List<String> fields = KnnCandidates.getVectorFields(ipedCase.getReader(), FACE_FEATURES, FACE_FEATURES);
+        if (fields.isEmpty()) {
+            return null;
+        }
+        RoaringBitmap candidates = new RoaringBitmap();
+        for (float[] refFeatures : refSimilarityFeatures) {
+            if (!KnnCandidates.search(ipedCase.getSearcher(), fields, refFeatures, minDistSquared, candidates)) {
+                return null;
+            }
+        }
+        return candidates;
+    }
+
     private static float[] convToFloatVec(byte[] bytes) {
         float[] result = new float[bytes.length / 4];
         ByteBuffer bb = ByteBuffer.wrap(bytes);
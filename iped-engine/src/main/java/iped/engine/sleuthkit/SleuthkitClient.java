@@ -3,6 +3,7 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.MappedByteBuffer;
@@ -17,9 +18,13 @@
 import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.tika.utils.SystemUtils;
 import org.slf4j.Logger;
@@ -40,6 +45,7 @@ public class SleuthkitClient implements Comparable<SleuthkitClient> {
 
     private static final int MAX_STREAMS = 10000;
     private static final int TIMEOUT_SECONDS = 3600;
+    private static final int PING_TIMEOUT_MILLIS = 60000;
 
     private static PriorityQueue<SleuthkitClient> clientPriorityQueue = new PriorityQueue<>();
     private static Object lock = new Object();
@@ -68,18 +74,30 @@ public class SleuthkitClient implements Comparable<SleuthkitClient> {
 
     int id = idStart.getAndIncrement();;
     Process process;
-    InputStream is;
+    volatile InputStream is;
     FileChannel fc;
     File pipe;
-    MappedByteBuffer mbb;
-    OutputStream os;
+    volatile MappedByteBuffer mbb;
+    volatile OutputStream os;
     Random rand = new Random();
 
-    private boolean serverError = false;
+    private volatile boolean serverError = false;
     private int openedStreams = 0;
     private Set<SleuthkitClientInputStream> currentStreams = new HashSet<>();
     private int priority = 0;
-    private long requestTime = 0;
+
+    // slots of the mapped file used by concurrent requests
+    private final ConcurrentLinkedQueue<Integer> freeSlots = new ConcurrentLinkedQueue<>();
+    private final Semaphore slotPermits = new Semaphore(SleuthkitServer.NUM_SLOTS, true);
+    private final AtomicLongArray slotRequestTime = new AtomicLongArray(SleuthkitServer.NUM_SLOTS);
+
+    // requests hold the read lock, server restarts the write lock
+    private final ReentrantReadWriteLock serverLock = new ReentrantReadWriteLock();
+
+    // notified by the pipe reader thread when the server responds
+    private final Object responseLock = new Object();
+    private volatile boolean pipeClosed = false;
+    private int pingResponse = -1;
 
     static class TimeoutMonitor extends Thread {
         public void run() {
@@ -95,34 +113,123 @@ public void run() {
         }
     }
 
-    synchronized boolean isServerError() {
+    boolean isServerError() {
         return serverError;
     }
 
-    synchronized void setServerError(boolean error) {
+    void setServerError(boolean error) {
         serverError = error;
     }
 
     private synchronized void checkTimeout() {
-        if (requestTime == 0)
-            return;
-        if (SleuthkitServer.getByte(mbb, 0) != FLAGS.SQLITE_READ) {
-            logger.info("Waiting SleuthkitServer {} database read...", id); //$NON-NLS-1$
+        MappedByteBuffer mbb = this.mbb;
+        if (mbb == null)
             return;
+        for (int slot = 0; slot < SleuthkitServer.NUM_SLOTS; slot++) {
+            long requestTime = slotRequestTime.get(slot);
+            if (requestTime == 0)
+                continue;
+            if (SleuthkitServer.getByte(mbb, SleuthkitServer.slotBase(slot)) != FLAGS.SQLITE_READ) {
+                logger.info("Waiting SleuthkitServer {} database read...", id); //$NON-NLS-1$
+                continue;
+            }
+            if (System.currentTimeMillis() / 1000 - requestTime >= TIMEOUT_SECONDS) {
+                logger.error("Timeout waiting SleuthkitServer " + id + " response! Restarting...");
+                serverError = true;
+                finishProcess(false);
+                return;
+            }
         }
-        if (System.currentTimeMillis() / 1000 - requestTime >= TIMEOUT_SECONDS) {
-            logger.error("Timeout waiting SleuthkitServer " + id + " response! Restarting...");
+    }
+
+    /**
+     * Takes a free slot of the mapped file to send a request. Must be released by
+     * {@link #releaseSlot(int)}.
+     */
+    int acquireSlot() throws InterruptedIOException {
+        try {
+            slotPermits.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(e.toString());
+        }
+        serverLock.readLock().lock();
+        return freeSlots.poll();
+    }
+
+    void releaseSlot(int slot) {
+        freeSlots.add(slot);
+        serverLock.readLock().unlock();
+        slotPermits.release();
+    }
+
+    /**
+     * Sends the command written in the slot and waits the server response.
+     */
+    byte sendCommand(MappedByteBuffer mbb, int slot, byte cmd) throws IOException {
+        int base = SleuthkitServer.slotBase(slot);
+        SleuthkitServer.commitByte(mbb, base, cmd);
+        try {
+            SleuthkitServer.notify(os);
+        } catch (IOException e) {
             serverError = true;
-            requestTime = 0;
-            finishProcess(false);
+            throw e;
+        }
+        slotRequestTime.set(slot, System.currentTimeMillis() / 1000);
+        boolean interrupted = false;
+        try {
+            synchronized (responseLock) {
+                while (FLAGS.isPending(cmd = SleuthkitServer.getByte(mbb, base))) {
+                    if (pipeClosed) {
+                        serverError = true;
+                        throw new IOException("SleuthkitServer " + id + " pipe closed!"); //$NON-NLS-1$
+                    }
+                    try {
+                        // the server may be still writing to the slot, so do not give up
+                        responseLock.wait(1000);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        } finally {
+            slotRequestTime.set(slot, 0);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
+        return cmd;
     }
 
-    synchronized void enableTimeoutCheck(boolean enable) {
-        if (enable)
-            requestTime = System.currentTimeMillis() / 1000;
-        else
-            requestTime = 0;
+    /**
+     * Reads server notifications: 0 means some slot was answered, other values
+     * are ping responses.
+     */
+    private void startPipeReader(InputStream is) {
+        Thread reader = new Thread("SleuthkitServer-" + id + "-PipeReader") { //$NON-NLS-1$ //$NON-NLS-2$
+            public void run() {
+                try {
+                    int b;
+                    while ((b = is.read()) != -1) {
+                        synchronized (responseLock) {
+                            if (b != 0) {
+                                pingResponse = b;
+                            }
+                            responseLock.notifyAll();
+                        }
+                    }
+                } catch (IOException e) {
+                    // process finished
+                }
+                synchronized (responseLock) {
+                    if (SleuthkitClient.this.is == is) {
+                        pipeClosed = true;
+                    }
+                    responseLock.notifyAll();
+                }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
     }
 
     public static SleuthkitClient get() {
@@ -240,6 +347,15 @@ private synchronized void start() {
                 throw new Exception("Error starting SleuthkitServer " + id); //$NON-NLS-1$
             }
 
+            freeSlots.clear();
+            for (int slot = 0; slot < SleuthkitServer.NUM_SLOTS; slot++) {
+                freeSlots.add(slot);
+            }
+            synchronized (responseLock) {
+                pipeClosed = false;
+            }
+            startPipeReader(is);
+
             logger.info("Starting SleuthkitServer {} started.", id);
 
         } catch (Exception e) {
@@ -267,17 +383,26 @@ public void run() {
         }.start();
     }
 
-    private synchronized boolean ping() {
+    private boolean ping() {
         int i = rand.nextInt(255) + 1;
         try {
-            os.write(i);
-            os.flush();
-            int r = is.read();
-            if (r == i)
-                return true;
+            synchronized (responseLock) {
+                pingResponse = -1;
+                synchronized (os) {
+                    os.write(i);
+                    os.flush();
+                }
+                long start = System.currentTimeMillis();
+                while (pingResponse != i && !pipeClosed && System.currentTimeMillis() - start < PING_TIMEOUT_MILLIS) {
+                    responseLock.wait(100);
+                }
+                return pingResponse == i;
+            }
 
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         return false;
     }
@@ -297,19 +422,45 @@ private synchronized boolean isFineToUse() {
         return true;
     }
 
-    public synchronized SeekableInputStream getInputStream(int id, String path) throws IOException {
+    public SeekableInputStream getInputStream(int id, String path) throws IOException {
 
         if (!isFineToUse()) {
             restartServer();
         }
 
         SleuthkitClientInputStream stream = new SleuthkitClientInputStream(id, path, this);
-        currentStreams.add(stream);
-        openedStreams++;
+        synchronized (this) {
+            currentStreams.add(stream);
+            openedStreams++;
+        }
         return stream;
     }
 
-    synchronized void restartServer() throws IOException {
+    void restartServerIfError() throws IOException {
+        if (serverError) {
+            serverLock.writeLock().lock();
+            try {
+                // other request could have restarted it
+                if (serverError) {
+                    restartServer0();
+                }
+            } finally {
+                serverLock.writeLock().unlock();
+            }
+        }
+    }
+
+    void restartServer() throws IOException {
+        // waits running requests, they finish or fail if the server died
+        serverLock.writeLock().lock();
+        try {
+            restartServer0();
+        } finally {
+            serverLock.writeLock().unlock();
+        }
+    }
+
+    private synchronized void restartServer0() throws IOException {
 
         finishProcess(false);
 
@@ -1,8 +1,9 @@
 package iped.engine.sleuthkit;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -17,7 +18,7 @@ public class SleuthkitClientInputStream extends SeekableInputStream {
 
     private static AtomicLong next = new AtomicLong();
 
-    private static int TIMEOUT = 10000;
+    private static final int MIN_READ_AHEAD = 64 * 1024;
 
     int sleuthId;
     String path;
@@ -28,7 +29,8 @@ public class SleuthkitClientInputStream extends SeekableInputStream {
     boolean closed = false, empty = true;
     long position = 0;
     Long size;
-    boolean seekAfterRestart = false;
+    volatile boolean seekAfterRestart = false;
+    int readAhead = MIN_READ_AHEAD;
 
     public SleuthkitClientInputStream(int id, String path, SleuthkitClient client) {
         this.sleuthId = id;
@@ -55,24 +57,36 @@ public int read(byte b[], int off, int len) throws IOException {
     private int readIn(byte b[], int off, int len) throws IOException {
 
         if (empty) {
-            synchronized (client) {
-                if (client.isServerError()) {
-                    client.restartServer();
-                }
-                if (seekAfterRestart) {
-                    seek(position);
-                    seekAfterRestart = false;
-                }
-                byte cmd = sendRead(len);
+            client.restartServerIfError();
+            if (seekAfterRestart) {
+                seek(position);
+                seekAfterRestart = false;
+            }
+            int slot = client.acquireSlot();
+            try {
+                MappedByteBuffer mbb = getMappedBuffer();
+                int base = SleuthkitServer.slotBase(slot);
+                // reads ahead more data if reading sequentially
+                int toRead = Math.min(SleuthkitServer.SLOT_BUF_SIZE, Math.max(len, readAhead));
+                mbb.putInt(base + 1, sleuthId);
+                mbb.putLong(base + 5, streamId);
+                mbb.putInt(base + 13, toRead);
+                byte cmd = sendCommand(mbb, slot, FLAGS.READ);
                 if (cmd == FLAGS.EOF) {
                     return -1;
                 }
-                int size = client.mbb.getInt(13);
-                buf = new byte[size];
-                client.mbb.position(17);
-                client.mbb.get(buf, 0, size);
+                int size = mbb.getInt(base + 13);
+                if (buf == null || buf.length != size) {
+                    buf = new byte[size];
+                }
+                ByteBuffer data = mbb.duplicate();
+                data.position(base + SleuthkitServer.SLOT_HEADER_SIZE);
+                data.get(buf, 0, size);
                 bufPos = 0;
                 empty = false;
+                readAhead = Math.min(SleuthkitServer.SLOT_BUF_SIZE, readAhead << 1);
+            } finally {
+                client.releaseSlot(slot);
             }
         }
 
@@ -88,58 +102,34 @@ private int readIn(byte b[], int off, int len) throws IOException {
         return copyLen;
     }
 
-    private byte sendRead(int len) throws IOException {
-        client.mbb.putInt(1, sleuthId);
-        client.mbb.putLong(5, streamId);
-        client.mbb.putInt(13, len);
-        SleuthkitServer.commitByte(client.mbb, 0, FLAGS.READ);
-        notifyServer();
-        return waitServerResponse();
+    private MappedByteBuffer getMappedBuffer() throws IOException {
+        MappedByteBuffer mbb = client.mbb;
+        if (mbb == null) {
+            client.setServerError(true);
+            throw new IOException(getServerId() + " not running: " + path); //$NON-NLS-1$
+        }
+        return mbb;
     }
 
-    private byte waitServerResponse() throws IOException {
-
-        client.enableTimeoutCheck(true);
+    /**
+     * Sends a command with the slot parameters already written and waits the
+     * response.
+     */
+    private byte sendCommand(MappedByteBuffer mbb, int slot, byte cmd) throws IOException {
         try {
-            int b = client.is.read();
-            if (b == -1)
-                throw new IOException(getServerId() + " pipe closed!"); //$NON-NLS-1$
-
+            cmd = client.sendCommand(mbb, slot, cmd);
         } catch (IOException e) {
-            client.setServerError(true);
             LOGGER.error("Wait response error: " + getCrashMsg());
             throw e;
-
-        } finally {
-            client.enableTimeoutCheck(false);
-        }
-
-        byte cmd;
-        long time = 0;
-        while (FLAGS.isClientCmd(cmd = SleuthkitServer.getByte(client.mbb, 0)) || cmd == FLAGS.SQLITE_READ) {
-            try {
-                if (time == 0) {
-                    time = System.currentTimeMillis();
-                }
-                Thread.sleep(1);
-                LOGGER.warn("Waiting " + getServerId() + " memory write..."); //$NON-NLS-1$
-
-                if (System.currentTimeMillis() - time >= TIMEOUT) {
-                    client.setServerError(true);
-                    LOGGER.error("MemoryReadTimeout waiting " + getServerId() + ": " + path); //$NON-NLS-1$
-                    throw new IOException("MemoryReadTimeout waiting " + getServerId() + ": " + path); //$NON-NLS-1$
-                }
-
-            } catch (InterruptedException e) {
-                throw new InterruptedIOException(e.toString());
-            }
         }
 
         if (cmd == FLAGS.EXCEPTION) {
-            int len = client.mbb.getInt(13);
+            int base = SleuthkitServer.slotBase(slot);
+            int len = mbb.getInt(base + 13);
             byte[] b = new byte[len];
-            client.mbb.position(17);
-            client.mbb.get(b);
+            ByteBuffer data = mbb.duplicate();
+            data.position(base + SleuthkitServer.SLOT_HEADER_SIZE);
+            data.get(b);
             try {
                 throw new IOException(getServerId() + " error: " + new String(b, "UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
             } catch (UnsupportedEncodingException e) {
@@ -149,16 +139,6 @@ private byte waitServerResponse() throws IOException {
         return cmd;
     }
 
-    private void notifyServer() throws IOException {
-        try {
-            SleuthkitServer.notify(client.os);
-        } catch (IOException e) {
-            client.setServerError(true);
-            LOGGER.error("Notify error: " + getCrashMsg());
-            throw e;
-        }
-    }
-
     private String getCrashMsg() {
         return "Possible " + getServerId() + " crash reading " + path; //$NON-NLS-1$
     }
@@ -175,19 +155,21 @@ public void seek(long pos) throws IOException {
             bufPos += dif;
 
         } else {
-            synchronized (client) {
-                if (client.isServerError()) {
-                    client.restartServer();
-                }
-                client.mbb.putInt(1, sleuthId);
-                client.mbb.putLong(5, streamId);
-                client.mbb.putLong(13, pos);
-                SleuthkitServer.commitByte(client.mbb, 0, FLAGS.SEEK);
-                notifyServer();
-                waitServerResponse();
+            client.restartServerIfError();
+            int slot = client.acquireSlot();
+            try {
+                MappedByteBuffer mbb = getMappedBuffer();
+                int base = SleuthkitServer.slotBase(slot);
+                mbb.putInt(base + 1, sleuthId);
+                mbb.putLong(base + 5, streamId);
+                mbb.putLong(base + 13, pos);
+                sendCommand(mbb, slot, FLAGS.SEEK);
                 empty = true;
                 bufPos = 0;
                 seekAfterRestart = false;
+                readAhead = MIN_READ_AHEAD;
+            } finally {
+                client.releaseSlot(slot);
             }
         }
         position = pos;
@@ -209,17 +191,18 @@ public long size() throws IOException {
             throw new IOException("Stream is closed!"); //$NON-NLS-1$
         }
 
-        synchronized (client) {
-            if (client.isServerError()) {
-                client.restartServer();
-            }
-            client.mbb.putInt(1, sleuthId);
-            client.mbb.putLong(5, streamId);
-            SleuthkitServer.commitByte(client.mbb, 0, FLAGS.SIZE);
-            notifyServer();
-            waitServerResponse();
-            size = client.mbb.getLong(13);
+        client.restartServerIfError();
+        int slot = client.acquireSlot();
+        try {
+            MappedByteBuffer mbb = getMappedBuffer();
+            int base = SleuthkitServer.slotBase(slot);
+            mbb.putInt(base + 1, sleuthId);
+            mbb.putLong(base + 5, streamId);
+            sendCommand(mbb, slot, FLAGS.SIZE);
+            size = mbb.getLong(base + 13);
             return size;
+        } finally {
+            client.releaseSlot(slot);
         }
 
     }
@@ -250,14 +233,19 @@ public void close() throws IOException {
         if (closed) {
             return;
         }
-        synchronized (client) {
-            if (!client.isServerError()) {
-                client.mbb.putInt(1, sleuthId);
-                client.mbb.putLong(5, streamId);
-                SleuthkitServer.commitByte(client.mbb, 0, FLAGS.CLOSE);
-                notifyServer();
-                waitServerResponse();
+        if (!client.isServerError()) {
+            int slot = client.acquireSlot();
+            try {
+                MappedByteBuffer mbb = getMappedBuffer();
+                int base = SleuthkitServer.slotBase(slot);
+                mbb.putInt(base + 1, sleuthId);
+                mbb.putLong(base + 5, streamId);
+                sendCommand(mbb, slot, FLAGS.CLOSE);
+            } finally {
+                client.releaseSlot(slot);
+                client.removeStream(this);
             }
+        } else {
             client.removeStream(this);
         }
         empty = true;
@@ -6,12 +6,15 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.SleuthkitCase;
@@ -23,8 +26,17 @@
 
 public class SleuthkitServer {
 
-    public static final int MMAP_FILE_SIZE = 10 * 1024 * 1024;
-    private static final int MAX_BUF_SIZE = 8 * 1024 * 1024; // must be less than MMAP_FILE_SIZE
+    /**
+     * The mapped file is divided in slots, each one with its own header and
+     * buffer, so concurrent requests from different client streams can be served
+     * at the same time. Slot layout: flag (1 byte), sleuthId (4 bytes), streamId
+     * (8 bytes), argument/length (8 bytes), data.
+     */
+    public static final int NUM_SLOTS = 16;
+    static final int SLOT_HEADER_SIZE = 17;
+    static final int SLOT_BUF_SIZE = 1024 * 1024;
+    static final int SLOT_SIZE = SLOT_HEADER_SIZE + SLOT_BUF_SIZE;
+    public static final int MMAP_FILE_SIZE = NUM_SLOTS * SLOT_SIZE;
 
     static class FLAGS {
 
@@ -41,15 +53,28 @@ static class FLAGS {
         static byte EXCEPTION = 10;
         // temp state
         static byte SQLITE_READ = 11;
+        static byte PROCESSING = 12;
 
         final static boolean isClientCmd(int cmd) {
             return cmd != FLAGS.DONE && cmd != FLAGS.ERROR && cmd != FLAGS.EOF && cmd != FLAGS.EXCEPTION
-                    && cmd != FLAGS.SQLITE_READ;
+                    && cmd != FLAGS.SQLITE_READ && cmd != FLAGS.PROCESSING;
+        }
+
+        final static boolean isPending(int cmd) {
+            return isClientCmd(cmd) || cmd == FLAGS.SQLITE_READ || cmd == FLAGS.PROCESSING;
         }
     }
 
     static boolean useUnsafe = true;
 
+    static final int slotBase(int slot) {
+        return slot * SLOT_SIZE;
+    }
+
+    private static SleuthkitCase sleuthCase;
+    private static final ConcurrentHashMap<Long, SleuthkitInputStream> sisMap = new ConcurrentHashMap<>();
+    private static final Set<Long> warmedDataSources = ConcurrentHashMap.newKeySet();
+
     public static void main(String args[]) {
 
         String dbPath = args[0];
@@ -77,72 +102,53 @@ public static void main(String args[]) {
             cm.loadConfigs();
             Configuration.getInstance().loadNativeLibs();
 
-            SleuthkitCase sleuthCase = SleuthkitInputStreamFactory.openSleuthkitCase(Paths.get(dbPath));
-            HashMap<Long, SleuthkitInputStream> sisMap = new HashMap<>();
+            sleuthCase = SleuthkitInputStreamFactory.openSleuthkitCase(Paths.get(dbPath));
 
             java.util.logging.Logger.getLogger("org.sleuthkit").setLevel(java.util.logging.Level.SEVERE); //$NON-NLS-1$
 
-            commitByte(out, 0, FLAGS.DONE);
+            // discard commands left by a previous server process
+            for (int slot = NUM_SLOTS - 1; slot >= 0; slot--) {
+                commitByte(out, slotBase(slot), FLAGS.DONE);
+            }
             notify(os);
 
-            byte[] buf = new byte[MAX_BUF_SIZE];
-            int minToRead = 64 * 1024;
-            SleuthkitInputStream sis = null;
+            ExecutorService executor = Executors.newFixedThreadPool(NUM_SLOTS);
+            byte[][] bufs = new byte[NUM_SLOTS][];
 
             while (true) {
-                try {
-                    int read = in.read();
-                    if (read == -1)
-                        break;
-                    if (read > 0) {
-                        // ping response
+                int read = in.read();
+                if (read == -1)
+                    break;
+                if (read > 0) {
+                    // ping response
+                    synchronized (os) {
                         os.write(read);
                         os.flush();
-                        continue;
                     }
-                    byte cmd = waitCmd(out, in);
-                    sis = getSis(out, sleuthCase, sisMap);
-                    commitByte(out, 0, FLAGS.SQLITE_READ);
-
-                    if (cmd == FLAGS.SEEK) {
-                        sis.seek(out.getLong(13));
-                    } else if (cmd == FLAGS.CLOSE) {
-                        sis = sisMap.remove(out.getLong(5));
-                        sis.close();
-                    } else if (cmd == FLAGS.READ) {
-                        int len = out.getInt(13);
-                        len = Math.max(minToRead, Math.min(len, buf.length));
-                        len = readIn(sis, buf, len);
-                        if (len == -1) {
-                            commitByte(out, 0, FLAGS.EOF);
-                            notify(os);
-                            continue;
-                        } else {
-                            writeOut(out, buf, len);
+                    continue;
+                }
+                // some slot has a new command
+                for (int slot = 0; slot < NUM_SLOTS; slot++) {
+                    int base = slotBase(slot);
+                    byte cmd = getByte(out, base);
+                    if (FLAGS.isClientCmd(cmd)) {
+                        commitByte(out, base, FLAGS.PROCESSING);
+                        if (bufs[slot] == null) {
+                            bufs[slot] = new byte[SLOT_BUF_SIZE];
                         }
-                    } else if (cmd == FLAGS.SIZE) {
-                        out.putLong(13, sis.size());
-                    } else if (cmd == FLAGS.POSITION) {
-                        out.putLong(13, sis.position());
+                        MappedByteBuffer mbb = out;
+                        byte[] buf = bufs[slot];
+                        executor.execute(() -> processCmd(mbb, base, cmd, buf, os));
                     }
-
-                    commitByte(out, 0, FLAGS.DONE);
-                    notify(os);
-
-                } catch (Throwable e) {
-                    // e.printStackTrace(System.err);
-                    byte[] msgBytes = e.getMessage().getBytes("UTF-8"); //$NON-NLS-1$
-                    out.putInt(13, msgBytes.length);
-                    out.position(17);
-                    out.put(msgBytes);
-                    commitByte(out, 0, FLAGS.EXCEPTION);
-                    notify(os);
                 }
             }
+            executor.shutdownNow();
 
         } catch (Throwable e) {
             e.printStackTrace();
-            commitByte(out, 0, FLAGS.ERROR);
+            if (out != null) {
+                commitByte(out, 0, FLAGS.ERROR);
+            }
             try {
                 if (os != null)
                     notify(os);
@@ -152,14 +158,60 @@ public static void main(String args[]) {
         }
     }
 
-    private static HashSet<Long> warmedDataSources = new HashSet<>();
+    private static void processCmd(MappedByteBuffer out, int base, byte cmd, byte[] buf, OutputStream os) {
+        int minToRead = 64 * 1024;
+        try {
+            try {
+                SleuthkitInputStream sis = getSis(out, base);
+                commitByte(out, base, FLAGS.SQLITE_READ);
+
+                if (cmd == FLAGS.SEEK) {
+                    sis.seek(out.getLong(base + 13));
+                } else if (cmd == FLAGS.CLOSE) {
+                    sis = sisMap.remove(out.getLong(base + 5));
+                    sis.close();
+                } else if (cmd == FLAGS.READ) {
+                    int len = out.getInt(base + 13);
+                    len = Math.max(minToRead, Math.min(len, buf.length));
+                    len = readIn(sis, buf, len);
+                    if (len == -1) {
+                        commitByte(out, base, FLAGS.EOF);
+                        notify(os);
+                        return;
+                    } else {
+                        writeOut(out, base, buf, len);
+                    }
+                } else if (cmd == FLAGS.SIZE) {
+                    out.putLong(base + 13, sis.size());
+                } else if (cmd == FLAGS.POSITION) {
+                    out.putLong(base + 13, sis.position());
+                }
+
+                commitByte(out, base, FLAGS.DONE);
+                notify(os);
 
-    private static SleuthkitInputStream getSis(MappedByteBuffer out, SleuthkitCase sleuthCase,
-            HashMap<Long, SleuthkitInputStream> sisMap) throws Exception {
-        long streamId = out.getLong(5);
+            } catch (Throwable e) {
+                // e.printStackTrace(System.err);
+                byte[] msgBytes = String.valueOf(e.getMessage()).getBytes("UTF-8"); //$NON-NLS-1$
+                int len = Math.min(msgBytes.length, SLOT_BUF_SIZE);
+                out.putInt(base + 13, len);
+                ByteBuffer data = out.duplicate();
+                data.position(base + SLOT_HEADER_SIZE);
+                data.put(msgBytes, 0, len);
+                commitByte(out, base, FLAGS.EXCEPTION);
+                notify(os);
+            }
+        } catch (IOException e) {
+            // client pipe closed
+            e.printStackTrace();
+        }
+    }
+
+    private static SleuthkitInputStream getSis(MappedByteBuffer out, int base) throws Exception {
+        long streamId = out.getLong(base + 5);
         SleuthkitInputStream sis = sisMap.get(streamId);
         if (sis == null) {
-            int id = out.getInt(1);
+            int id = out.getInt(base + 1);
             Content content = sleuthCase.getAbstractFileById(id);
             if (content == null) {
                 content = sleuthCase.getContentById(id);
@@ -179,33 +231,22 @@ private static SleuthkitInputStream getSis(MappedByteBuffer out, SleuthkitCase s
         return sis;
     }
 
-    private static byte waitCmd(MappedByteBuffer out, InputStream in) throws Exception {
-        byte cmd;
-        long t = 0;
-        while (!FLAGS.isClientCmd(cmd = getByte(out, 0))) {
-            if (t == 0)
-                t = System.currentTimeMillis();
-            long time = (System.currentTimeMillis() - t) / 1000;
-            if (time >= 10)
-                throw new IOException("MemoryReadTimeout waiting SleuthkitClient!"); //$NON-NLS-1$
-            Thread.sleep(1);
-        }
-        return cmd;
-    }
-
     private static int readIn(SleuthkitInputStream sis, byte[] buf, int len) throws IOException {
         return sis.read(buf, 0, len);
     }
 
-    private static void writeOut(MappedByteBuffer out, byte[] buf, int len) throws Exception {
-        out.position(17);
-        out.put(buf, 0, len);
-        out.putInt(13, len);
+    private static void writeOut(MappedByteBuffer out, int base, byte[] buf, int len) throws Exception {
+        ByteBuffer data = out.duplicate();
+        data.position(base + SLOT_HEADER_SIZE);
+        data.put(buf, 0, len);
+        out.putInt(base + 13, len);
     }
 
     static void notify(OutputStream os) throws IOException {
-        os.write(0);
-        os.flush();
+        synchronized (os) {
+            os.write(0);
+            os.flush();
+        }
     }
 
     static final void commitByte(MappedByteBuffer mbb, int pos, byte val) {
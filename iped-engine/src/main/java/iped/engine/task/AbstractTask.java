@@ -1,6 +1,7 @@
 package iped.engine.task;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -14,10 +15,13 @@
 import iped.engine.core.Manager;
 import iped.engine.core.QueuesProcessingOrder;
 import iped.engine.core.Statistics;
+import iped.engine.core.WorkScheduler;
+import iped.engine.core.WorkScheduler.ResourceType;
 import iped.engine.core.Worker;
 import iped.engine.core.Worker.STATE;
 import iped.engine.data.CaseData;
 import iped.engine.io.TimeoutException;
+import iped.engine.metrics.ProcessingMetrics;
 import iped.exception.IPEDException;
 import iped.parsers.util.CorruptedCarvedException;
 
@@ -66,6 +70,9 @@ public abstract class AbstractTask {
 
     private long taskTime;
 
+    // time spent by all tasks on the item, without its subitems
+    private static final String PROCESSING_TIME_ATTR = "processingTime"; //$NON-NLS-1$
+
     private HashMap<Integer, Long> subitemProcessingTime = new HashMap<Integer, Long>();
 
     public long getTaskTime() {
@@ -146,6 +153,34 @@ public boolean hasIpedDatasource() {
      */
     abstract public void finish() throws Exception;
 
+    /**
+     * Tasks whose results are just extra attributes computed from the item
+     * content and their own configuration can return true, so those results are
+     * stored in {@link TaskResultsStore} and replayed when the same item is
+     * processed again with the same configuration.
+     */
+    protected boolean isResultReplayable() {
+        return false;
+    }
+
+    /**
+     * Configurables of other tasks the results of a replayable task also depend
+     * on, e.g. the ones changing the text extracted from items. They are part of
+     * the configuration fingerprint checked before replaying results.
+     */
+    protected List<Configurable<?>> getResultDependencies() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Tasks mostly bound by disk access or by processing power should return the
+     * corresponding type, so the {@link WorkScheduler} can limit how many workers
+     * run each kind of task at the same time.
+     */
+    protected ResourceType getResourceType() {
+        return ResourceType.MIXED;
+    }
+
     /**
      * Realiza o processamento do item pela tarefa.
      *
@@ -192,18 +227,38 @@ public final void processAndSendToNextTask(IItem evidence) throws Exception {
         boolean sendToNextTask = true;
 
         if (this.isEnabled() && (!evidence.isToIgnore() || processIgnoredItem())) {
+            WorkScheduler scheduler = worker.manager.getWorkScheduler();
+            boolean hasPermit = scheduler != null && !evidence.isQueueEnd()
+                    && scheduler.acquire(getResourceType(), worker);
             long t = System.nanoTime() / 1000;
+            TaskResultsStore resultsStore = isResultReplayable() ? TaskResultsStore.get() : null;
             try {
-                processMonitorTimeout(evidence);
+                if (resultsStore == null || !resultsStore.replay(this, evidence)) {
+                    TaskResultsStore.Results before = resultsStore != null ? resultsStore.snapshot(evidence) : null;
+                    processMonitorTimeout(evidence);
+                    if (before != null) {
+                        resultsStore.store(this, evidence, before);
+                    }
+                }
 
             } catch (ItemReEnqueuedException e) {
                 sendToNextTask = false;
+            } finally {
+                if (hasPermit) {
+                    scheduler.release(getResourceType(), worker);
+                }
             }
             Long subitensTime = subitemProcessingTime.remove(evidence.getId());
             if (subitensTime == null) {
                 subitensTime = 0L;
             }
-            taskTime += System.nanoTime() / 1000 - t - subitensTime;
+            long time = System.nanoTime() / 1000 - t - subitensTime;
+            taskTime += time;
+            if (!evidence.isQueueEnd()) {
+                ProcessingMetrics.get().record(ProcessingMetrics.TASK, getName(), time);
+                Long itemTime = (Long) evidence.getTempAttribute(PROCESSING_TIME_ATTR);
+                evidence.setTempAttribute(PROCESSING_TIME_ATTR, itemTime == null ? time : itemTime + time);
+            }
         }
 
         if (sendToNextTask) {
@@ -235,6 +290,12 @@ protected void sendToNextTask(IItem evidence) throws Exception {
             // dec items being processed counter if this is last task
             worker.decItemsBeingProcessed();
 
+            Long itemTime = (Long) evidence.getTempAttribute(PROCESSING_TIME_ATTR);
+            if (itemTime != null) {
+                String mediaType = evidence.getMediaType() != null ? evidence.getMediaType().toString() : "unknown"; //$NON-NLS-1$
+                ProcessingMetrics.get().record(ProcessingMetrics.MEDIA_TYPE, mediaType, itemTime);
+            }
+
             // clear resources
             evidence.dispose();
 
@@ -0,0 +1,189 @@
+package iped.engine.task;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends blocks of encoded lines to a file from a single thread. Producers fill
+ * their own blocks, taken from {@link #getFreeBlock()}, and hand them off with
+ * {@link #submit(ByteBuffer)}, so they never contend on the file. All blocks
+ * queued when the writer wakes up are written with one gather write.
+ *
+ * Blocks must contain just whole lines, so the size returned by
+ * {@link #sync()} is always a line boundary.
+ */
+class CSVBlockWriter implements Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(CSVBlockWriter.class);
+
+    static final int BLOCK_SIZE = 1 << 20;
+
+    // bounds memory used if the disk is slower than the producers
+    private static final int MAX_QUEUED_BLOCKS = 64;
+
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+
+    private final BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>(MAX_QUEUED_BLOCKS);
+    private final ConcurrentLinkedQueue<ByteBuffer> freeBlocks = new ConcurrentLinkedQueue<>();
+    private final AtomicLong submittedBytes = new AtomicLong();
+
+    private final FileChannel channel;
+    private final Thread thread;
+
+    // guarded by this
+    private long writtenBytes = 0;
+    private long fileSize;
+    private IOException exception;
+
+    /**
+     * Opens the file for appending, writing the header if the file is empty.
+     */
+    CSVBlockWriter(Path path, byte[] header) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        long size = channel.size();
+        channel.position(size);
+        if (size == 0) {
+            ByteBuffer bb = ByteBuffer.wrap(header);
+            while (bb.hasRemaining()) {
+                channel.write(bb);
+            }
+            size = header.length;
+        }
+        fileSize = size;
+
+        thread = new Thread(this::run, "CSVBlockWriter"); //$NON-NLS-1$
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    ByteBuffer getFreeBlock() {
+        ByteBuffer block = freeBlocks.poll();
+        return block != null ? block : ByteBuffer.allocate(BLOCK_SIZE);
+    }
+
+    /**
+     * Queues the block, from position 0 to its current position, to be written.
+     * It must not be used by the caller anymore.
+     */
+    void submit(ByteBuffer block) throws IOException {
+        checkException();
+        block.flip();
+        submittedBytes.addAndGet(block.remaining());
+        try {
+            queue.put(block);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.toString());
+        }
+    }
+
+    /**
+     * Waits until all blocks submitted before this call are written.
+     *
+     * @return the file size after those blocks, at a line boundary
+     */
+    synchronized long sync() throws IOException {
+        long target = submittedBytes.get();
+        while (writtenBytes < target) {
+            checkException();
+            try {
+                wait(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.toString());
+            }
+        }
+        channel.force(true);
+        return fileSize;
+    }
+
+    private synchronized void checkException() throws IOException {
+        if (exception != null) {
+            throw new IOException("Error writing CSV file", exception); //$NON-NLS-1$
+        }
+    }
+
+    private void run() {
+        List<ByteBuffer> blocks = new ArrayList<>();
+        boolean close = false;
+        try {
+            while (true) {
+                blocks.add(queue.take());
+                queue.drainTo(blocks);
+                // ByteBuffer.equals() compares contents
+                close = blocks.removeIf(bb -> bb == CLOSE);
+
+                ByteBuffer[] array = blocks.toArray(new ByteBuffer[blocks.size()]);
+                long total = 0;
+                for (ByteBuffer bb : array) {
+                    total += bb.remaining();
+                }
+                long written = 0;
+                while (written < total) {
+                    written += channel.write(array);
+                }
+                for (ByteBuffer bb : array) {
+                    // blocks enlarged for huge lines are not reused
+                    if (bb.capacity() == BLOCK_SIZE) {
+                        bb.clear();
+                        freeBlocks.add(bb);
+                    }
+                }
+                blocks.clear();
+                synchronized (this) {
+                    writtenBytes += total;
+                    fileSize += total;
+                    notifyAll();
+                }
+                if (close) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error writing CSV file", e); //$NON-NLS-1$
+            synchronized (this) {
+                exception = e;
+                notifyAll();
+            }
+            // do not block producers until closed
+            try {
+                while (!close) {
+                    close = queue.take() == CLOSE;
+                }
+            } catch (InterruptedException e1) {
+                // exit
+            }
+        } catch (InterruptedException e) {
+            // exit
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(CLOSE);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.toString());
+        } finally {
+            channel.close();
+        }
+        checkException();
+    }
+
+}
@@ -42,6 +42,11 @@ public boolean isEnabled() {
         return enableOption;
     }
 
+    @Override
+    protected boolean isResultReplayable() {
+        return true;
+    }
+
     @Override
     protected void process(IItem evidence) throws Exception {
 
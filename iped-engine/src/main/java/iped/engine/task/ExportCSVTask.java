@@ -22,10 +22,12 @@
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
@@ -33,6 +35,8 @@
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import iped.configuration.Configurable;
 import iped.data.IItem;
@@ -58,15 +62,20 @@ public class ExportCSVTask extends AbstractTask {
     private static final String SEPARATOR = Messages.getString("ExportCSVTask.CsvSeparator"); //$NON-NLS-1$
     private static final String LINK_FUNCTION = Messages.getString("ExportCSVTask.LinkFunction"); //$NON-NLS-1$
     private static final String LINK_NAME = Messages.getString("ExportCSVTask.LinkName"); //$NON-NLS-1$
-    private static final int MIN_FLUSH_SIZE = 1 << 23;
 
     private static boolean exportFileProps = false;
-    private static StringBuilder staticList = new StringBuilder();
+    private static CSVBlockWriter csvWriter;
+    private static Set<ExportCSVTask> instances = ConcurrentHashMap.newKeySet();
     private static Long initialCsvSize;
 
     private CmdLineArgs args;
     private File csvFile, commitFile, tmp;
 
+    // lines encoded by this worker not handed off to the writer yet, guarded by this
+    private ByteBuffer block;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
     /**
      * Indica que itens ignorados, como duplicados ou conhecidos (hash), devem ser
      * listados no arquivo CSV.
@@ -205,11 +214,46 @@ protected void process(IItem evidence) throws IOException {
 
         list.append("\r\n"); //$NON-NLS-1$
 
-        synchronized (this.getClass()) {
-            staticList.append(list);
-            if (staticList.length() >= MIN_FLUSH_SIZE) {
-                flush(csvFile);
+        append(list);
+    }
+
+    /**
+     * Encodes the line into this worker block. Blocks keep just whole lines, so
+     * the commit point is always at a line boundary.
+     */
+    private synchronized void append(CharSequence line) throws IOException {
+        if (block == null) {
+            block = csvWriter.getFreeBlock();
+        }
+        CharBuffer chars = CharBuffer.wrap(line);
+        while (true) {
+            int lineStart = block.position();
+            encoder.reset();
+            CoderResult result = encoder.encode(chars, block, true);
+            if (result.isUnderflow()) {
+                result = encoder.flush(block);
             }
+            if (result.isUnderflow()) {
+                break;
+            }
+            // line does not fit, encode it again in a new block
+            block.position(lineStart);
+            chars.rewind();
+            if (lineStart > 0) {
+                handOff();
+            } else {
+                block = ByteBuffer.allocate(block.capacity() * 2);
+            }
+        }
+        if (!block.hasRemaining()) {
+            handOff();
+        }
+    }
+
+    private synchronized void handOff() throws IOException {
+        if (block != null && block.position() > 0) {
+            csvWriter.submit(block);
+            block = csvWriter.getFreeBlock();
         }
     }
 
@@ -222,32 +266,26 @@ private String escape(String value) {
         return str.toString().replace("\"", "\"\""); //$NON-NLS-1$ //$NON-NLS-2$
     }
 
-    private static synchronized void flush(File output) throws IOException {
-        if (!output.exists() || output.length() == 0) {
-            writeHeader(output);
-        }
-        try (OutputStream os = Files.newOutputStream(output.toPath(), StandardOpenOption.APPEND)) {
-            os.write(staticList.toString().getBytes(StandardCharsets.UTF_8));
-        }
-        staticList = new StringBuilder();
-    }
-
-    private static void writeHeader(File file) throws IOException {
-        try (OutputStream os = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE);
-                Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
-            byte[] utf8bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
-            os.write(utf8bom);
-            writer.write(HEADER);
-        }
+    private static byte[] getHeader() {
+        byte[] utf8bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+        byte[] header = HEADER.getBytes(StandardCharsets.UTF_8);
+        byte[] result = Arrays.copyOf(utf8bom, utf8bom.length + header.length);
+        System.arraycopy(header, 0, result, utf8bom.length, header.length);
+        return result;
     }
 
     public static synchronized void commit(File moduleDir) throws IOException {
-        if (!exportFileProps)
+        if (!exportFileProps || csvWriter == null)
             return;
         File csv = new File(moduleDir.getParentFile(), CSV_NAME);
-        flush(csv);
-        Util.fsync(csv.toPath());
-        long csvSize = csv.length();
+        // lines still in workers blocks belong to items possibly committed in the
+        // index, so they must be written too
+        for (ExportCSVTask task : instances) {
+            task.handOff();
+        }
+        // waits for the blocks submitted up to now and fsyncs, returning the size
+        // after them, so the commit point is exact even if workers keep appending
+        long csvSize = csvWriter.sync();
         // We are going to write a 16 bytes commit log file. It's very unlikely (if not
         // impossible) to happen a non atomic operation when writing that data to the
         // physical disk, since physical sectors are at least 512 bytes. If that is not
@@ -277,9 +315,11 @@ private static long bytesToLong(byte[] bytes, int offset) {
     }
 
     public void finish() throws IOException {
-        if (exportFileProps && staticList != null) {
+        if (exportFileProps && csvWriter != null) {
             commit(output);
-            staticList = null;
+            csvWriter.close();
+            csvWriter = null;
+            instances.clear();
 
             if (!args.isContinue() && !args.isRestart())
                 return;
@@ -339,6 +379,9 @@ public void init(ConfigurationManager configurationManager) throws Exception {
         Files.deleteIfExists(tmp.toPath());
 
         exportFileProps = configurationManager.getEnableTaskProperty(ENABLE_PARAM);
+        if (exportFileProps) {
+            instances.add(this);
+        }
 
         if (initialCsvSize != null) {
             return;
@@ -360,6 +403,10 @@ public void init(ConfigurationManager configurationManager) throws Exception {
             initialCsvSize = args.isAppendIndex() && csvFile.exists() ? csvFile.length() : 0;
         }
 
+        if (exportFileProps) {
+            csvWriter = new CSVBlockWriter(csvFile.toPath(), getHeader());
+        }
+
     }
 
 }
@@ -25,7 +25,7 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -49,13 +49,9 @@
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.zip.Deflater;
 
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipParameters;
 import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -84,8 +80,11 @@
 import iped.engine.config.ExportByKeywordsConfig;
 import iped.engine.config.HashTaskConfig;
 import iped.engine.config.HtmlReportTaskConfig;
+import iped.engine.core.WorkScheduler.ResourceType;
 import iped.engine.data.Category;
 import iped.engine.data.IPEDSource;
+import iped.engine.io.BlobStore;
+import iped.engine.io.BlobStoreInputStreamFactory;
 import iped.engine.localization.Messages;
 import iped.engine.preview.PreviewConstants;
 import iped.engine.preview.PreviewRepository;
@@ -130,10 +129,6 @@ public class ExportFileTask extends AbstractTask {
     private static final String CREATE_TABLE1 = "CREATE TABLE IF NOT EXISTS thumbs(id TEXT PRIMARY KEY, thumb BLOB);";
     private static final String CREATE_TABLE2 = "CREATE TABLE IF NOT EXISTS t1(id TEXT PRIMARY KEY, data BLOB);";
 
-    private static final String INSERT_DATA = "INSERT INTO t1(id, data) VALUES(?,?) ON CONFLICT(id) DO UPDATE SET data=? WHERE data IS NULL;";
-
-    private static final String CHECK_HASH = "SELECT id FROM t1 WHERE id=? AND data IS NOT NULL;";
-
     private static final String SELECT_IDS_WITH_DATA = "SELECT id FROM t1 WHERE data IS NOT NULL;";
 
     private static final String CLEAR_DATA = "DELETE FROM t1 WHERE id=?;";
@@ -141,6 +136,7 @@ public class ExportFileTask extends AbstractTask {
     // maps below are used to track different storages/connections in multicases
     private static HashMap<File, HashMap<Integer, File>> storage = new HashMap<>();
     private static HashMap<File, HashMap<Integer, Connection>> storageCon = new HashMap<>();
+    private static HashMap<File, BlobStoreInputStreamFactory> blobStoreFactories = new HashMap<>();
 
     private static AtomicInteger counter = new AtomicInteger();
 
@@ -233,6 +229,17 @@ private static Connection getSQLiteStorageCon(File db) {
         return storageCon.get(output).get(dbSuffix);
     }
 
+    private static File getBlobStoreDir(File output) {
+        return new File(output, STORAGE_PREFIX + File.separator + BlobStore.DIR_NAME);
+    }
+
+    private static BlobStoreInputStreamFactory getBlobStoreFactory(File output) {
+        synchronized (blobStoreFactories) {
+            return blobStoreFactories.computeIfAbsent(output,
+                    o -> new BlobStoreInputStreamFactory(getBlobStoreDir(o).toPath()));
+        }
+    }
+
     private static synchronized void configureSQLiteStorage(File output) {
         if (storageCon.get(output) != null) {
             return;
@@ -739,7 +746,7 @@ public void extractFile(InputStream inputStream, IItem evidence, Long parentSize
     }
 
     public void insertIntoStorage(IItem evidence, byte[] buf, int len)
-            throws InterruptedException, IOException, SQLException, CompressorException {
+            throws InterruptedException, IOException {
         byte[] hash = null;
         String hashString = (String) evidence.getExtraAttribute(HashTask.HASH.MD5.toString());
         if (hashString != null) {
@@ -747,47 +754,19 @@ public void insertIntoStorage(IItem evidence, byte[] buf, int len)
         } else {
             hash = DigestUtils.md5(new ByteArrayInputStream(buf, 0, len));
         }
-        int k = getStorageSuffix(hash);
-        boolean alreadyInDB = false;
         String id = hashString != null ? hashString : new HashValue(hash).toString();
-        if (storageCon.get(output) == null) {
-            configureSQLiteStorage(output);
-        }
-        try (PreparedStatement ps = storageCon.get(output).get(k).prepareStatement(CHECK_HASH)) {
-            ps.setString(1, id);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                alreadyInDB = true;
-            }
-        }
-        if (!alreadyInDB) {
-            try (PreparedStatement ps = storageCon.get(output).get(k).prepareStatement(INSERT_DATA)) {
-                ps.setString(1, id);
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                OutputStream gzippedOut = new GzipCompressorOutputStream(baos, getGzipParams());
-                // OutputStream gzippedOut = new LZ4BlockOutputStream(baos);
-                gzippedOut.write(buf, 0, len);
-                gzippedOut.close();
-                byte[] bytes = baos.toByteArray();
-                baos = null;
-                ps.setBytes(2, bytes);
-                ps.setBytes(3, bytes);
-                ps.executeUpdate();
-            }
-        }
+        BlobStore.open(getBlobStoreDir(output), true).put(hash, buf, len);
+
         evidence.setIdInDataSource(id);
-        evidence.setInputStreamFactory(
-                new SQLiteInputStreamFactory(storage.get(output).get(k).toPath(), storageCon.get(output).get(k)));
+        evidence.setInputStreamFactory(getBlobStoreFactory(output));
         evidence.setFileOffset(-1);
         evidence.setLength((long) len);
     }
 
-    private GzipParameters getGzipParams() {
-        GzipParameters compression = new GzipParameters();
-        compression.setCompressionLevel(Deflater.BEST_SPEED);
-        return compression;
-    }
-
+    /**
+     * Reads subitems stored in the SQLite storages by previous versions, new ones
+     * are stored in the {@link BlobStore}.
+     */
     public static class SQLiteInputStreamFactory extends SeekableInputStreamFactory {
 
         private static final String SELECT_DATA = "SELECT data FROM t1 WHERE id=?;";
@@ -846,6 +825,11 @@ public List<Configurable<?>> getConfigurables() {
                 new ExportByKeywordsConfig());
     }
 
+    @Override
+    protected ResourceType getResourceType() {
+        return ResourceType.IO;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public void init(ConfigurationManager configurationManager) throws Exception {
@@ -893,9 +877,14 @@ public void finish() throws Exception {
             }
             storageCon.remove(output);
         }
+        BlobStore blobStore = BlobStore.get(getBlobStoreDir(output));
+        if (blobStore != null) {
+            blobStore.close();
+            LOGGER.info("Closed blob storage"); //$NON-NLS-1$
+        }
     }
 
-    public static void commitStorage(File output) throws SQLException {
+    public static void commitStorage(File output) throws SQLException, IOException {
         if (storageCon.get(output) != null) {
             for (Connection con : storageCon.get(output).values()) {
                 if (con != null && !con.isClosed() && !con.getAutoCommit()) {
@@ -903,6 +892,10 @@ public static void commitStorage(File output) throws SQLException {
                 }
             }
         }
+        BlobStore blobStore = BlobStore.get(getBlobStoreDir(output));
+        if (blobStore != null) {
+            blobStore.commit();
+        }
     }
 
     public static void deleteIgnoredItemData(ICaseData caseData, File output) throws Exception {
@@ -926,7 +919,8 @@ public static void deleteIgnoredItemData(ICaseData caseData, File output, boolea
                 UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "",
                         Messages.getString("ExportFileTask.DeletedData1").replace("{}", deleted.toString()));
             }
-            if (storage.get(output) != null && !storage.get(output).isEmpty()) {
+            if ((storage.get(output) != null && !storage.get(output).isEmpty())
+                    || BlobStore.exists(getBlobStoreDir(output))) {
                 UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "",
                         Messages.getString("ExportFileTask.DeletingData2"));
                 Integer deleted = deleteIgnoredSubitemsFromStorage(ipedCase, output);
@@ -954,7 +948,8 @@ private static int deleteIgnoredSubitemsFromFS(SortedDocValues sdv, Path root, F
         return deleted;
     }
 
-    private static int deleteIgnoredSubitemsFromStorage(IPEDSource ipedCase, File output) throws SQLException {
+    private static int deleteIgnoredSubitemsFromStorage(IPEDSource ipedCase, File output)
+            throws SQLException, IOException {
         final AtomicInteger deleted = new AtomicInteger();
         ArrayList<Future<?>> futures = new ArrayList<>();
         ExecutorService executor = Executors.newFixedThreadPool(4);
@@ -1001,6 +996,28 @@ public void run() {
                 LOGGER.error("Error deleting data from storage.", e);
             }
         }
+        executor.shutdown();
+
+        File blobStoreDir = getBlobStoreDir(output);
+        if (BlobStore.exists(blobStoreDir)) {
+            LOGGER.info("Deleting data from blob storage"); //$NON-NLS-1$
+            SortedDocValues sdv = ipedCase.getAtomicReader().getSortedDocValues(IndexItem.ID_IN_SOURCE);
+            // shared instance, not closed here
+            BlobStore blobStore = BlobStore.open(blobStoreDir, false);
+            try {
+                deleted.addAndGet(blobStore.removeIf(hash -> {
+                    HashValue hashValue = new HashValue(hash);
+                    try {
+                        return sdv == null || sdv.lookupTerm(new BytesRef(hashValue.toString())) < 0
+                                || Collections.binarySearch(noContentHashes, hashValue) >= 0;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
         return deleted.intValue();
     }
 
@@ -111,6 +111,8 @@ public void init(ConfigurationManager configurationManager) throws Exception {
                                     }
                                 }
                                 logger.info("HashDB: {}", hashDBFile.getAbsolutePath());
+                                logger.info("HashDB compiled index: {}",
+                                        hashDBDataSource.isUsingCompiledIndex() ? "enabled" : "not found or outdated");
                                 logger.info("Exclude Known: {}", excludeKnown);
                             }
                         }
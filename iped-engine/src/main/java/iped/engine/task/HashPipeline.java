@@ -0,0 +1,400 @@
+package iped.engine.task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import iped.engine.task.HashTask.HASH;
+
+/**
+ * Computes all configured digests of a stream in a single pass. The calling
+ * thread reads the data into a ring of buffers, which is drained concurrently
+ * by long-lived consumer threads, one per algorithm, without creating tasks or
+ * latches per chunk. Small streams, fitting in one buffer, are hashed by the
+ * calling thread itself, avoiding thread hand-offs.
+ *
+ * MD5 of the first 512 bytes and of the first 64 KB, used by LED hashes, are
+ * also computed, by taking snapshots of the MD5 digest state.
+ *
+ * Instances are not thread safe, each worker must use its own pipeline.
+ */
+public class HashPipeline implements Closeable {
+
+    public static final int PARTIAL_512 = 512;
+    public static final int PARTIAL_64K = 65536;
+
+    private static final int RING_SIZE = 4;
+    private static final int SPIN_TRIES = 256;
+    private static final int END_OF_ITEM = -1;
+
+    private final int bufferLen;
+    private final byte[][] ring = new byte[RING_SIZE][];
+    private final int[] lengths = new int[RING_SIZE];
+
+    private final Consumer[] consumers;
+    private final String[] algorithms;
+    private final Consumer md5Consumer;
+
+    /** number of slots published by the reader */
+    private volatile long published = 0;
+    private volatile boolean readerWaiting = false;
+    private volatile boolean closed = false;
+    private volatile Thread reader;
+
+    private final byte[][] results;
+    private byte[] md5Of512, md5Of64K;
+
+    public HashPipeline(List<String> algorithms, int bufferLen, String threadNamePrefix)
+            throws NoSuchAlgorithmException {
+        this.bufferLen = bufferLen;
+        for (int i = 0; i < RING_SIZE; i++) {
+            ring[i] = new byte[bufferLen];
+        }
+        this.algorithms = algorithms.toArray(new String[algorithms.size()]);
+        this.results = new byte[this.algorithms.length][];
+
+        boolean hasMd5 = false;
+        for (String algorithm : this.algorithms) {
+            hasMd5 |= HASH.MD5.toString().equalsIgnoreCase(algorithm);
+        }
+        // if md5 is not enabled, an additional md5 consumer computes just the partial
+        // hashes and ignores the rest of the data
+        consumers = new Consumer[this.algorithms.length + (hasMd5 ? 0 : 1)];
+        Consumer md5 = null;
+        for (int i = 0; i < consumers.length; i++) {
+            String algorithm = i < this.algorithms.length ? this.algorithms[i] : HASH.MD5.toString();
+            DigestUpdater updater;
+            if (HASH.EDONKEY.toString().equalsIgnoreCase(algorithm)) {
+                updater = new Ed2kUpdater();
+            } else {
+                updater = new DigestUpdater(MessageDigest.getInstance(algorithm.toUpperCase()));
+            }
+            consumers[i] = new Consumer(updater);
+            if (HASH.MD5.toString().equalsIgnoreCase(algorithm) && md5 == null) {
+                md5 = consumers[i];
+                md5.partialOnly = i >= this.algorithms.length;
+            }
+        }
+        md5Consumer = md5;
+
+        for (int i = 0; i < consumers.length; i++) {
+            String name = threadNamePrefix + "-" + (i < this.algorithms.length ? this.algorithms[i] : "partial-md5");
+            Thread thread = new Thread(consumers[i], name);
+            thread.setDaemon(true);
+            consumers[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Hashes all data of the stream. Results can be retrieved by
+     * {@link #getDigest(int)}, {@link #getMd5Of512()} and {@link #getMd5Of64K()}.
+     */
+    public void hash(InputStream in) throws IOException, InterruptedException {
+        for (Consumer c : consumers) {
+            c.reset();
+        }
+        md5Of512 = md5Of64K = null;
+
+        long slot = published;
+        int len = in.readNBytes(ring[(int) (slot % RING_SIZE)], 0, bufferLen);
+        if (len < bufferLen) {
+            // small item, consumers are idle, so just use their digests in this thread
+            for (Consumer c : consumers) {
+                c.update(ring[(int) (slot % RING_SIZE)], len);
+                c.finish();
+            }
+        } else {
+            reader = Thread.currentThread();
+            boolean interrupted = false;
+            try {
+                while (len > 0) {
+                    lengths[(int) (slot % RING_SIZE)] = len;
+                    publish(++slot);
+                    if (Thread.currentThread().isInterrupted()) {
+                        interrupted = true;
+                        break;
+                    }
+                    awaitFreeSlot(slot);
+                    len = in.readNBytes(ring[(int) (slot % RING_SIZE)], 0, bufferLen);
+                }
+            } finally {
+                // always send the end of item marker, to keep consumers in sync
+                awaitFreeSlot(slot);
+                lengths[(int) (slot % RING_SIZE)] = END_OF_ITEM;
+                publish(++slot);
+                awaitConsumed(slot);
+                reader = null;
+            }
+            if (interrupted) {
+                throw new InterruptedException();
+            }
+        }
+
+        for (int i = 0; i < algorithms.length; i++) {
+            if (consumers[i].error != null) {
+                throw new RuntimeException("Error computing " + algorithms[i], consumers[i].error);
+            }
+            results[i] = consumers[i].result;
+        }
+        if (md5Consumer != null) {
+            md5Of512 = md5Consumer.partial512;
+            md5Of64K = md5Consumer.partial64K;
+        }
+    }
+
+    /**
+     * @return the digest of the algorithm at position i of the configured
+     *         algorithms list
+     */
+    public byte[] getDigest(int i) {
+        return results[i];
+    }
+
+    /**
+     * @return MD5 of the first 512 bytes, or null if the data was smaller
+     */
+    public byte[] getMd5Of512() {
+        return md5Of512;
+    }
+
+    /**
+     * @return MD5 of the first 64 KB, or null if the data was smaller
+     */
+    public byte[] getMd5Of64K() {
+        return md5Of64K;
+    }
+
+    private void publish(long slot) {
+        published = slot;
+        for (Consumer c : consumers) {
+            if (c.waiting) {
+                LockSupport.unpark(c.thread);
+            }
+        }
+    }
+
+    private long minConsumed() {
+        long min = Long.MAX_VALUE;
+        for (Consumer c : consumers) {
+            min = Math.min(min, c.consumed);
+        }
+        return min;
+    }
+
+    /**
+     * Waits until the slot with the given sequence number can be overwritten.
+     */
+    private void awaitFreeSlot(long slot) {
+        awaitMinConsumed(slot - RING_SIZE + 1);
+    }
+
+    private void awaitConsumed(long slot) {
+        awaitMinConsumed(slot);
+    }
+
+    private void awaitMinConsumed(long target) {
+        int spins = 0;
+        while (minConsumed() < target) {
+            if (spins++ < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                readerWaiting = true;
+                if (minConsumed() < target) {
+                    LockSupport.park(this);
+                }
+                readerWaiting = false;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Consumer c : consumers) {
+            LockSupport.unpark(c.thread);
+        }
+    }
+
+    private class Consumer implements Runnable {
+
+        private final DigestUpdater updater;
+        private Thread thread;
+        private boolean partialOnly;
+
+        private volatile long consumed = 0;
+        private volatile boolean waiting = false;
+
+        private long total;
+        private byte[] result, partial512, partial64K;
+        private Exception error;
+
+        private Consumer(DigestUpdater updater) {
+            this.updater = updater;
+        }
+
+        private void reset() {
+            total = 0;
+            result = partial512 = partial64K = null;
+            error = null;
+        }
+
+        @Override
+        public void run() {
+            long next = 0;
+            while (!closed) {
+                int spins = 0;
+                while (published <= next && !closed) {
+                    if (spins++ < SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else {
+                        waiting = true;
+                        if (published <= next && !closed) {
+                            LockSupport.park(this);
+                        }
+                        waiting = false;
+                    }
+                }
+                if (closed) {
+                    break;
+                }
+                int slot = (int) (next % RING_SIZE);
+                int len = lengths[slot];
+                if (len != END_OF_ITEM) {
+                    update(ring[slot], len);
+                } else {
+                    finish();
+                }
+                consumed = ++next;
+                Thread r = reader;
+                if (readerWaiting && r != null) {
+                    LockSupport.unpark(r);
+                }
+            }
+        }
+
+        private void update(byte[] buf, int len) {
+            if (error != null) {
+                return;
+            }
+            try {
+                int off = 0;
+                if (md5Consumer == this && total < PARTIAL_64K) {
+                    off = updatePartial(buf, off, len, PARTIAL_512);
+                    off = updatePartial(buf, off, len, PARTIAL_64K);
+                }
+                if (off < len && (!partialOnly || total < PARTIAL_64K)) {
+                    updater.update(buf, off, len - off);
+                }
+                total += len - off;
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+
+        private int updatePartial(byte[] buf, int off, int len, int mark) throws CloneNotSupportedException {
+            if (total < mark && total + len - off >= mark) {
+                int n = (int) (mark - total);
+                updater.update(buf, off, n);
+                total += n;
+                byte[] partial = ((MessageDigest) updater.digest.clone()).digest();
+                if (mark == PARTIAL_512) {
+                    partial512 = partial;
+                } else {
+                    partial64K = partial;
+                }
+                return off + n;
+            }
+            return off;
+        }
+
+        private void finish() {
+            try {
+                if (error == null && !partialOnly) {
+                    result = updater.finish();
+                }
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                updater.reset();
+            }
+        }
+    }
+
+    private static class DigestUpdater {
+
+        protected final MessageDigest digest;
+
+        private DigestUpdater(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        protected void update(byte[] buf, int off, int len) throws IOException {
+            digest.update(buf, off, len);
+        }
+
+        protected byte[] finish() throws IOException {
+            return digest.digest();
+        }
+
+        protected void reset() {
+            digest.reset();
+        }
+    }
+
+    private static class Ed2kUpdater extends DigestUpdater {
+
+        private static final int CHUNK_SIZE = 9500 * 1024;
+
+        private int chunk = 0;
+        private long total = 0;
+        private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        private Ed2kUpdater() throws NoSuchAlgorithmException {
+            super(MessageDigest.getInstance("MD4")); //$NON-NLS-1$
+        }
+
+        @Override
+        protected void update(byte[] buffer, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, CHUNK_SIZE - chunk);
+                digest.update(buffer, off, n);
+                chunk += n;
+                total += n;
+                off += n;
+                len -= n;
+                if (chunk == CHUNK_SIZE) {
+                    out.write(digest.digest());
+                    chunk = 0;
+                }
+            }
+        }
+
+        @Override
+        protected byte[] finish() throws IOException {
+            if (total == 0 || total % CHUNK_SIZE != 0) {
+                out.write(digest.digest());
+            }
+            if (out.size() > digest.getDigestLength()) {
+                digest.update(out.toByteArray());
+                out.reset();
+                out.write(digest.digest());
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        protected void reset() {
+            super.reset();
+            chunk = 0;
+            total = 0;
+            out.reset();
+        }
+    }
+
+}
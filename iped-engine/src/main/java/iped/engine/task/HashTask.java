@@ -18,18 +18,10 @@
  */
 package iped.engine.task;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.MessageDigest;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +30,7 @@
 import iped.data.IItem;
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.HashTaskConfig;
+import iped.engine.core.WorkScheduler.ResourceType;
 import iped.parsers.whatsapp.WhatsAppParser;
 
 /**
@@ -49,8 +42,6 @@ public class HashTask extends AbstractTask {
 
     private static final int HASH_BUFFER_LEN = 1024 * 1024;
 
-    private static final ExecutorService executorService = Executors.newCachedThreadPool();
-
     public enum HASH {
         MD5("md5"), //$NON-NLS-1$
         SHA1("sha-1"), //$NON-NLS-1$
@@ -70,7 +61,16 @@ public String toString() {
         }
     }
 
-    private HashMap<String, MessageDigest> digestMap = new LinkedHashMap<String, MessageDigest>();
+    /**
+     * Temporary attributes with MD5 of the first 512 bytes and of the first 64 KB
+     * of the item, used by LED hashes.
+     */
+    public static final String MD5_512_TEMP_ATTR = "md5_512";
+    public static final String MD5_64K_TEMP_ATTR = "md5_64k";
+
+    private List<String> algorithms;
+
+    private HashPipeline hashPipeline;
 
     private HashTaskConfig hashConfig;
 
@@ -79,6 +79,11 @@ public boolean isEnabled() {
         return hashConfig.isEnabled();
     }
 
+    @Override
+    protected ResourceType getResourceType() {
+        return ResourceType.IO;
+    }
+
     @Override
     public List<Configurable<?>> getConfigurables() {
         return Arrays.asList(new HashTaskConfig());
@@ -87,28 +92,26 @@ public List<Configurable<?>> getConfigurables() {
     @Override
     public void init(ConfigurationManager configurationManager) throws Exception {
         hashConfig = configurationManager.findObject(HashTaskConfig.class);
+        algorithms = hashConfig.getAlgorithms();
 
-        for (String algorithm : hashConfig.getAlgorithms()) {
-            MessageDigest digest = null;
-            if (!algorithm.equalsIgnoreCase(HASH.EDONKEY.toString())) {
-                digest = MessageDigest.getInstance(algorithm.toUpperCase());
-            } else {
-                digest = MessageDigest.getInstance("MD4"); //$NON-NLS-1$
-            }
-            digestMap.put(algorithm, digest);
+        for (String algorithm : algorithms) {
             if (HASH.SHA256.toString().equals(algorithm)) {
                 System.setProperty(WhatsAppParser.SHA256_ENABLED_SYSPROP, Boolean.TRUE.toString());
             }
         }
         if (isEnabled()) {
             System.setProperty(WhatsAppParser.HASH_TASK_ENABLED_SYSPROP, Boolean.TRUE.toString());
+            if (!algorithms.isEmpty()) {
+                String threadPrefix = (worker != null ? worker.getName() : "") + "-Hash"; //$NON-NLS-1$
+                hashPipeline = new HashPipeline(algorithms, HASH_BUFFER_LEN, threadPrefix);
+            }
         }
     }
 
     @Override
     public void finish() throws Exception {
-        if (!executorService.isShutdown()) {
-            executorService.shutdown();
+        if (hashPipeline != null) {
+            hashPipeline.close();
         }
     }
 
@@ -118,7 +121,7 @@ public void process(IItem evidence) {
             return;
         }
 
-        if (evidence.getHash() != null || digestMap.isEmpty()
+        if (evidence.getHash() != null || hashPipeline == null
                 || evidence.getExtraAttribute(IgnoreHardLinkTask.IGNORE_HARDLINK_ATTR) != null) {
             return;
         }
@@ -128,72 +131,22 @@ public void process(IItem evidence) {
             return;
         }
 
-        try (InputStream in = evidence.getBufferedInputStream()) {
-
-            byte[] readBuf = new byte[HASH_BUFFER_LEN];
-            byte[] hashBuf = new byte[HASH_BUFFER_LEN];
-            byte[] tempBuf = null;
-            int len;
+        try (InputStream in = evidence.getSeekableInputStream()) {
 
-            AtomicReference<CountDownLatch> countDown = new AtomicReference<>(null);
-            AtomicReference<Exception> ex = new AtomicReference<Exception>(null);
+            hashPipeline.hash(in);
 
-            while ((len = in.read(readBuf)) >= 0 && !Thread.currentThread().isInterrupted()) {
-
-                if (countDown.get() != null) {
-                    countDown.get().await();
-                }
-
-                countDown.set(new CountDownLatch(digestMap.size()));
-
-                // swap hashBuf <-> readBuf
-                tempBuf = hashBuf;
-                hashBuf = readBuf;
-                readBuf = tempBuf;
-
-                final int currLen = len;
-                final byte[] currHashBuf = hashBuf;
-                for (String algo : digestMap.keySet()) {
-                    executorService.execute(() -> {
-                        try {
-                            if (!algo.equals(HASH.EDONKEY.toString())) {
-                                digestMap.get(algo).update(currHashBuf, 0, currLen);
-                            } else {
-                                updateEd2k(currHashBuf, currLen);
-                            }
-                        } catch (Exception e) {
-                            ex.set(e);
-                        } finally {
-                            countDown.get().countDown();
-                        }
-                    });
-                }
-
-                if (ex.get() != null) {
-                    throw ex.get();
+            for (int i = 0; i < algorithms.size(); i++) {
+                String hashString = getHashString(hashPipeline.getDigest(i));
+                evidence.setExtraAttribute(algorithms.get(i), hashString);
+                if (i == 0) {
+                    evidence.setHash(hashString);
                 }
             }
-
-            if (countDown.get() != null) {
-                countDown.get().await();
+            if (hashPipeline.getMd5Of512() != null) {
+                evidence.setTempAttribute(MD5_512_TEMP_ATTR, hashPipeline.getMd5Of512());
             }
-
-            boolean defaultHash = true;
-            for (String algo : digestMap.keySet()) {
-                byte[] hash;
-                if (!algo.equals(HASH.EDONKEY.toString())) {
-                    hash = digestMap.get(algo).digest();
-                } else {
-                    hash = digestEd2k();
-                }
-
-                String hashString = getHashString(hash);
-                evidence.setExtraAttribute(algo, hashString);
-
-                if (defaultHash) {
-                    evidence.setHash(hashString);
-                }
-                defaultHash = false;
+            if (hashPipeline.getMd5Of64K() != null) {
+                evidence.setTempAttribute(MD5_64K_TEMP_ATTR, hashPipeline.getMd5Of64K());
             }
 
         } catch (Exception e) {
@@ -209,48 +162,6 @@ public void process(IItem evidence) {
 
     }
 
-    private static int CHUNK_SIZE = 9500 * 1024;
-    private int chunk = 0, total = 0;
-    private ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-    private void updateEd2k(byte[] buffer, int len) throws IOException {
-
-        MessageDigest md4 = digestMap.get(HASH.EDONKEY.toString());
-        if (chunk + len >= CHUNK_SIZE) {
-            int offset = CHUNK_SIZE - chunk;
-            md4.update(buffer, 0, offset);
-            out.write(md4.digest());
-            chunk = len - offset;
-            md4.update(buffer, offset, chunk);
-        } else {
-            md4.update(buffer, 0, len);
-            chunk += len;
-        }
-        total += len;
-    }
-
-    private byte[] digestEd2k() throws IOException {
-
-        MessageDigest md4 = digestMap.get(HASH.EDONKEY.toString());
-        if (total == 0 || total % CHUNK_SIZE != 0) {
-            out.write(md4.digest());
-        }
-
-        if (out.size() > md4.getDigestLength()) {
-            md4.update(out.toByteArray());
-            out.reset();
-            out.write(md4.digest());
-        }
-
-        byte[] ed2k = out.toByteArray();
-
-        chunk = 0;
-        total = 0;
-        out = new ByteArrayOutputStream();
-
-        return ed2k;
-    }
-
     public static String getHashString(byte[] hash) {
         StringBuilder result = new StringBuilder();
         for (byte b : hash) {
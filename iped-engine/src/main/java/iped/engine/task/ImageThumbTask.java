@@ -12,12 +12,14 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import javax.imageio.ImageIO;
 
@@ -29,6 +31,8 @@
 import iped.engine.config.Configuration;
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.ImageThumbTaskConfig;
+import iped.engine.core.WorkScheduler.ResourceType;
+import iped.engine.metrics.ProcessingMetrics;
 import iped.engine.preview.PreviewConstants;
 import iped.engine.preview.PreviewRepository;
 import iped.engine.preview.PreviewRepositoryManager;
@@ -54,7 +58,13 @@ public class ImageThumbTask extends ThumbTask {
 
     private static final Logger logger = LoggerFactory.getLogger(ImageThumbTask.class);
 
-    private static final Map<String, long[]> performanceStatsPerType = new HashMap<String, long[]>();
+    private static final String METRICS_GROUP = "imageThumb"; //$NON-NLS-1$
+
+    private static final String[] statsNames = { "ReuseThumb", "ReuseThumbFail", "InternalRead", "InternalReadFail", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+            "ExternalRead", "ExternalReadFail", "Resize", "Opaque", "Rotate", "Write", "Store" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+
+    // counts and times in microseconds, by pairs
+    private static final Map<String, AtomicLongArray> performanceStatsPerType = new ConcurrentHashMap<>();
     private static final AtomicBoolean logInit = new AtomicBoolean(false);
     private static final AtomicBoolean finished = new AtomicBoolean(false);
 
@@ -168,6 +178,11 @@ public boolean isEnabled() {
         return imgThumbConfig.isEnabled();
     }
 
+    @Override
+    protected ResourceType getResourceType() {
+        return ResourceType.CPU;
+    }
+
     @Override
     public void finish() throws Exception {
         if (!executor.isShutdown())
@@ -178,22 +193,31 @@ public void finish() throws Exception {
             if (isEnabled() && !finished.get()) {
                 finished.set(true);
                 if (!performanceStatsPerType.isEmpty()) {
-                    List<String> types = new ArrayList<String>(performanceStatsPerType.keySet());
+                    Map<String, long[]> statsPerType = new HashMap<>();
+                    performanceStatsPerType.forEach((type, array) -> {
+                        long[] s = new long[numStats];
+                        for (int i = 0; i < numStats; i++) {
+                            // times in milliseconds
+                            s[i] = i % 2 == 0 ? array.get(i) : array.get(i) / 1000;
+                        }
+                        statsPerType.put(type, s);
+                    });
+                    List<String> types = new ArrayList<String>(statsPerType.keySet());
                     Collections.sort(types);
                     long[] totals = new long[numStats];
                     for (String type : types) {
-                        long[] s = performanceStatsPerType.get(type);
+                        long[] s = statsPerType.get(type);
                         for (int i = 0; i < s.length; i++) {
                             totals[i] += s[i];
                         }
                     }
                     types.add("TOTAL");
-                    performanceStatsPerType.put("TOTAL", totals);
+                    statsPerType.put("TOTAL", totals);
                     int maxType = 9;
                     long[] maxCol = new long[numStats];
                     for (String type : types) {
                         maxType = Math.max(maxType, type.length());
-                        long[] s = performanceStatsPerType.get(type);
+                        long[] s = statsPerType.get(type);
                         for (int i = 0; i < s.length; i++) {
                             maxCol[i] = Math.max(maxCol[i], s[i]);
                             if (i % 2 == 0 && s[i] > 0)
@@ -230,7 +254,7 @@ public void finish() throws Exception {
                     sb.append("\n");
                     for (String type : types) {
                         sb.append(String.format("%" + maxType + "s", type));
-                        long[] s = performanceStatsPerType.get(type);
+                        long[] s = statsPerType.get(type);
                         for (int i = 0; i < s.length; i++) {
                             sb.append(String.format(" %" + w[i] + "s", s[i]));
                         }
@@ -307,15 +331,15 @@ private void createImageThumb(IItem evidence, File thumbFile) {
             long[] performanceStats = new long[numStats];
             BufferedImage img = null;
             if (imgThumbConfig.isExtractThumb() && isJpeg(evidence)) { // $NON-NLS-1$
-                long t = System.currentTimeMillis();
+                long t = System.nanoTime() / 1000;
                 try (BufferedInputStream stream = evidence.getBufferedInputStream()) {
                     img = ImageMetadataUtil.getThumb(stream);
                 }
                 performanceStats[img == null ? 2 : 0]++;
-                performanceStats[img == null ? 3 : 1] += System.currentTimeMillis() - t;
+                performanceStats[img == null ? 3 : 1] += System.nanoTime() / 1000 - t;
             }
             if (img == null) {
-                long t = System.currentTimeMillis();
+                long t = System.nanoTime() / 1000;
                 BooleanWrapper renderException = new BooleanWrapper();
                 img = ImageUtil.getSubSampledImage(evidence, getThumbSize() * samplingRatio, renderException,
                         MediaTypes.getMimeTypeString(evidence));
@@ -323,13 +347,13 @@ private void createImageThumb(IItem evidence, File thumbFile) {
                     evidence.setExtraAttribute("thumbException", "true");
                 }
                 performanceStats[img == null ? 6 : 4]++;
-                performanceStats[img == null ? 7 : 5] += System.currentTimeMillis() - t;
+                performanceStats[img == null ? 7 : 5] += System.nanoTime() / 1000 - t;
             }
             
             boolean isView = false;
             if (img == null) {
                 // External Conversion
-                long t = System.currentTimeMillis();
+                long t = System.nanoTime() / 1000;
 
                 // Create a high resolution view
                 String mime = MediaTypes.getMimeTypeString(evidence);
@@ -371,56 +395,55 @@ private void createImageThumb(IItem evidence, File thumbFile) {
                     evidence.setExtraAttribute("externalThumb", "true");
                 }
                 performanceStats[img == null ? 10 : 8]++;
-                performanceStats[img == null ? 11 : 9] += System.currentTimeMillis() - t;
+                performanceStats[img == null ? 11 : 9] += System.nanoTime() / 1000 - t;
             }
 
             if (img != null) {
                 if (img.getWidth() > getThumbSize() || img.getHeight() > getThumbSize()) {
-                    long t = System.currentTimeMillis();
+                    long t = System.nanoTime() / 1000;
                     img = ImageUtil.resizeImage(img, getThumbSize(), getThumbSize());
                     performanceStats[12]++;
-                    performanceStats[13] += System.currentTimeMillis() - t;
+                    performanceStats[13] += System.nanoTime() / 1000 - t;
                 }
-                long t = System.currentTimeMillis();
+                long t = System.nanoTime() / 1000;
                 img = ImageUtil.getOpaqueImage(img);
                 performanceStats[14]++;
-                performanceStats[15] += System.currentTimeMillis() - t;
+                performanceStats[15] += System.nanoTime() / 1000 - t;
 
                 if (!isView) {
                     // Adjust thumb orientation based on "tiff:orientation" metadata.
                     try (BufferedInputStream stream = evidence.getBufferedInputStream()) {
                         int orientation = ImageMetadataUtil.getOrientation(stream);
                         if (orientation > 0) {
-                            t = System.currentTimeMillis();
+                            t = System.nanoTime() / 1000;
                             img = ImageUtil.applyOrientation(img, orientation);
                             performanceStats[16]++;
-                            performanceStats[17] += System.currentTimeMillis() - t;
+                            performanceStats[17] += System.nanoTime() / 1000 - t;
                         }
                     }
                 }
 
-                t = System.currentTimeMillis();
+                t = System.nanoTime() / 1000;
                 performanceStats[18]++;
                 ByteArrayOutputStream baos = new ByteArrayOutputStream();
                 ImageUtil.writeCompressedJPG(img, baos, compression);
                 evidence.setThumb(baos.toByteArray());
-                performanceStats[19] += System.currentTimeMillis() - t;
+                performanceStats[19] += System.nanoTime() / 1000 - t;
             }
 
-            long t = System.currentTimeMillis();
+            long t = System.nanoTime() / 1000;
             saveThumb(evidence, thumbFile);
             performanceStats[20]++;
-            performanceStats[21] += System.currentTimeMillis() - t;
+            performanceStats[21] += System.nanoTime() / 1000 - t;
 
             String type = evidence.getMediaType().toString();
-            synchronized (performanceStatsPerType) {
-                long[] s = performanceStatsPerType.get(type);
-                if (s == null) {
-                    performanceStatsPerType.put(type, performanceStats);
-                } else {
-                    for (int i = 0; i < s.length; i++) {
-                        s[i] += performanceStats[i];
-                    }
+            AtomicLongArray s = performanceStatsPerType.computeIfAbsent(type, k -> new AtomicLongArray(numStats));
+            ProcessingMetrics metrics = ProcessingMetrics.get();
+            for (int i = 0; i < numStats; i += 2) {
+                if (performanceStats[i] > 0) {
+                    s.addAndGet(i, performanceStats[i]);
+                    s.addAndGet(i + 1, performanceStats[i + 1]);
+                    metrics.record(METRICS_GROUP, statsNames[i / 2], performanceStats[i + 1]);
                 }
             }
 
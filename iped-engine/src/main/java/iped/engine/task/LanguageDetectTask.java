@@ -49,6 +49,17 @@ public boolean isEnabled() {
         return isEnabled;
     }
 
+    @Override
+    protected boolean isResultReplayable() {
+        return true;
+    }
+
+    @Override
+    protected List<Configurable<?>> getResultDependencies() {
+        // results depend on the extracted text
+        return ParsingTask.getTextConfigurables();
+    }
+
     @Override
     public List<Configurable<?>> getConfigurables() {
         return Arrays.asList(new EnableTaskProperty(ENABLE_PARAM));
@@ -62,6 +62,7 @@
 import iped.engine.config.Configuration;
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.ExternalParsersConfig;
+import iped.engine.config.IndexTaskConfig;
 import iped.engine.config.LocalConfig;
 import iped.engine.config.OCRConfig;
 import iped.engine.config.ParsersConfig;
@@ -70,12 +71,14 @@
 import iped.engine.config.SplitLargeBinaryConfig;
 import iped.engine.core.Manager;
 import iped.engine.core.Statistics;
+import iped.engine.core.WorkScheduler.ResourceType;
 import iped.engine.core.Worker;
 import iped.engine.data.CaseData;
 import iped.engine.data.IPEDSource;
 import iped.engine.data.Item;
 import iped.engine.io.MetadataInputStreamFactory;
 import iped.engine.io.ParsingReader;
+import iped.engine.metrics.ProcessingMetrics;
 import iped.engine.search.ItemSearcher;
 import iped.engine.task.carver.CarverTask;
 import iped.engine.task.index.IndexItem;
@@ -157,7 +160,6 @@ public class ParsingTask extends ThumbTask implements EmbeddedDocumentExtractor
     private static int max_expanding_containers;
 
     public static AtomicLong totalText = new AtomicLong();
-    private static final Map<String, Long> timesPerParser = new HashMap<String, Long>();
 
     private static Map<Integer, ZipBombStats> zipBombStatsMap = new ConcurrentHashMap<>();
     private static final Set<MediaType> typesToCheckZipBomb = getTypesToCheckZipbomb();
@@ -216,6 +218,11 @@ public boolean isEnabled() {
         return parsingConfig.isEnabled();
     }
 
+    @Override
+    protected ResourceType getResourceType() {
+        return ResourceType.CPU;
+    }
+
     public ParseContext getTikaContext() {
         return getTikaContext(this.output, null);
     }
@@ -333,9 +340,7 @@ public void process(IItem evidence) throws Exception {
                     LOGGER.warn("{} Negative Parsing Time: {} {} Diff={} SubItemsTime={}",
                             Thread.currentThread().getName(), evidence.getPath(), parserName, diff, st);
                 }
-                synchronized (timesPerParser) {
-                    timesPerParser.merge(parserName, diff - st, Long::sum);
-                }
+                ProcessingMetrics.get().record(ProcessingMetrics.PARSER, parserName, diff - st);
             }
         }
     }
@@ -767,6 +772,15 @@ public List<Configurable<?>> getConfigurables() {
                 new ParsersConfig(), new ExternalParsersConfig());
     }
 
+    /**
+     * @return configurables changing the text extracted from items, which tasks
+     *         working on that text depend on
+     */
+    public static List<Configurable<?>> getTextConfigurables() {
+        return Arrays.asList(new ParsingTaskConfig(), new OCRConfig(), new ParsersConfig(),
+                new ExternalParsersConfig(), new SplitLargeBinaryConfig(), new IndexTaskConfig());
+    }
+
     @Override
     public void init(ConfigurationManager configurationManager) {
 
@@ -867,6 +881,12 @@ private static void setupOCROptions(OCRConfig ocrConfig) {
             System.setProperty(PDFTextParser.MAX_CHARS_TO_OCR, ocrConfig.getMaxPdfTextSize2OCR());
             System.setProperty(OCRParser.PROCESS_NON_STANDARD_FORMATS_PROP, ocrConfig.getProcessNonStandard());
             System.setProperty(OCRParser.MAX_CONV_IMAGE_SIZE_PROP, ocrConfig.getMaxConvImageSize());
+            if (ocrConfig.getUseTesseractWorkers() != null) {
+                System.setProperty(OCRParser.USE_WORKERS_PROP, ocrConfig.getUseTesseractWorkers());
+            }
+            if (ocrConfig.getMaxImagesPerTesseractWorker() != null) {
+                System.setProperty(OCRParser.MAX_IMAGES_PER_WORKER_PROP, ocrConfig.getMaxImagesPerTesseractWorker());
+            }
         }
     }
 
@@ -881,8 +901,7 @@ public void finish() throws Exception {
 
     public static void copyTimesPerParser(Map<String,Long> dest) {
         dest.clear();
-        synchronized (timesPerParser) {
-            dest.putAll(timesPerParser);
-        }
+        ProcessingMetrics.get().getHistograms(ProcessingMetrics.PARSER)
+                .forEach((parserName, histogram) -> dest.put(parserName, histogram.getTotalTime()));
     }
 }
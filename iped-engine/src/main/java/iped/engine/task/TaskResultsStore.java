@@ -0,0 +1,283 @@
+package iped.engine.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.Pragma;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+
+import iped.configuration.Configurable;
+import iped.data.IItem;
+import iped.engine.Version;
+import iped.engine.config.ConfigurationManager;
+import iped.engine.config.EnableTaskProperty;
+import iped.engine.util.Util;
+
+/**
+ * Persistent store of the results of replayable tasks (see
+ * {@link AbstractTask#isResultReplayable()}), keyed by item trackID and task
+ * name. Each entry records the item hash and a fingerprint of the task
+ * configuration, so when processing runs again over the same case (--continue,
+ * --restart), tasks whose configuration did not change just replay the
+ * attributes they produced for unchanged items, instead of processing them
+ * again.
+ */
+public class TaskResultsStore {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(TaskResultsStore.class);
+
+    public static final String DB_NAME = "taskResults.db"; //$NON-NLS-1$
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS results(trackId TEXT, task TEXT, hash TEXT, config TEXT, data BLOB, PRIMARY KEY(trackId, task));"; //$NON-NLS-1$
+
+    private static final String SELECT_RESULT = "SELECT hash, config, data FROM results WHERE trackId=? AND task=?;"; //$NON-NLS-1$
+
+    private static final String INSERT_RESULT = "INSERT OR REPLACE INTO results(trackId, task, hash, config, data) VALUES(?,?,?,?,?);"; //$NON-NLS-1$
+
+    private static volatile TaskResultsStore instance;
+
+    private final Connection conn;
+    private final PreparedStatement select;
+    private final PreparedStatement insert;
+    private final Map<Class<?>, String> fingerprints = new ConcurrentHashMap<>();
+
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+
+    /**
+     * Attributes produced by a task for an item.
+     */
+    static class Results implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private HashMap<String, Object> attributes = new HashMap<>();
+        private boolean toExtract;
+
+        void apply(IItem item) {
+            for (Entry<String, Object> entry : attributes.entrySet()) {
+                item.setExtraAttribute(entry.getKey(), entry.getValue());
+            }
+            if (toExtract) {
+                item.setToExtract(true);
+            }
+        }
+    }
+
+    private TaskResultsStore(File db) throws SQLException {
+        db.getParentFile().mkdirs();
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSynchronous(SynchronousMode.NORMAL);
+        config.setPragma(Pragma.JOURNAL_MODE, "TRUNCATE"); //$NON-NLS-1$
+        config.setBusyTimeout(3600000);
+        conn = config.createConnection("jdbc:sqlite:" + db.getAbsolutePath()); //$NON-NLS-1$
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(CREATE_TABLE);
+        }
+        conn.setAutoCommit(false);
+        select = conn.prepareStatement(SELECT_RESULT);
+        insert = conn.prepareStatement(INSERT_RESULT);
+    }
+
+    public static synchronized void open(File db) throws SQLException {
+        if (instance == null) {
+            instance = new TaskResultsStore(db);
+            LOGGER.info("Task results store: {}", db.getAbsolutePath()); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return the opened store, or null if not enabled.
+     */
+    public static TaskResultsStore get() {
+        return instance;
+    }
+
+    public static synchronized void commit() throws SQLException {
+        if (instance != null) {
+            synchronized (instance) {
+                instance.conn.commit();
+            }
+        }
+    }
+
+    public static synchronized void close() throws SQLException {
+        if (instance != null) {
+            synchronized (instance) {
+                instance.conn.commit();
+                instance.conn.close();
+            }
+            LOGGER.info("Task results replayed: {} stored: {}", instance.replayed.get(), instance.stored.get()); //$NON-NLS-1$
+            instance = null;
+        }
+    }
+
+    /**
+     * @return fingerprint of the task configuration, of the configuration its
+     *         results depend on and of the application version, or an empty
+     *         string if it could not be computed.
+     */
+    String getConfigFingerprint(AbstractTask task) {
+        return fingerprints.computeIfAbsent(task.getClass(), c -> {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                    oos.writeUTF(Version.APP_VERSION);
+                    oos.writeUTF(c.getName());
+                    List<Configurable<?>> configurables = new ArrayList<>(task.getConfigurables());
+                    configurables.addAll(task.getResultDependencies());
+                    for (Configurable<?> configurable : configurables) {
+                        if (configurable instanceof EnableTaskProperty) {
+                            // disabled tasks do not run
+                            continue;
+                        }
+                        Configurable<?> loaded = ConfigurationManager.get().findObject(configurable.getClass());
+                        oos.writeObject(loaded != null ? loaded : configurable);
+                    }
+                }
+                return Hex.encodeHexString(digest.digest(baos.toByteArray()));
+
+            } catch (Exception e) {
+                LOGGER.warn("Results of {} will not be replayed, error computing its configuration fingerprint: {}", //$NON-NLS-1$
+                        task.getName(), e.toString());
+                return ""; //$NON-NLS-1$
+            }
+        });
+    }
+
+    private static boolean isEligible(IItem item) {
+        return !item.isQueueEnd() && item.getHash() != null && !item.getHash().isEmpty();
+    }
+
+    /**
+     * Replays the results stored for the item by the task, if the item content
+     * and the task configuration did not change.
+     *
+     * @return true if the results were replayed and the task can skip the item.
+     */
+    boolean replay(AbstractTask task, IItem item) {
+        if (!isEligible(item)) {
+            return false;
+        }
+        String config = getConfigFingerprint(task);
+        if (config.isEmpty()) {
+            return false;
+        }
+        byte[] data = null;
+        synchronized (this) {
+            try {
+                select.setString(1, Util.getTrackID(item));
+                select.setString(2, task.getName());
+                try (ResultSet rs = select.executeQuery()) {
+                    if (rs.next() && item.getHash().equals(rs.getString(1)) && config.equals(rs.getString(2))) {
+                        data = rs.getBytes(3);
+                    }
+                }
+            } catch (SQLException e) {
+                LOGGER.warn("Error looking up results of {} for {}: {}", task.getName(), item.getPath(), e.toString()); //$NON-NLS-1$
+                return false;
+            }
+        }
+        if (data == null) {
+            return false;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            ((Results) ois.readObject()).apply(item);
+            replayed.incrementAndGet();
+            return true;
+
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            LOGGER.warn("Error replaying results of {} for {}: {}", task.getName(), item.getPath(), e.toString()); //$NON-NLS-1$
+            return false;
+        }
+    }
+
+    /**
+     * @return a snapshot of the item state, to be passed to
+     *         {@link #store(AbstractTask, IItem, Results)} after the task
+     *         processes it.
+     */
+    Results snapshot(IItem item) {
+        if (!isEligible(item)) {
+            return null;
+        }
+        Results before = new Results();
+        before.attributes.putAll(item.getExtraAttributeMap());
+        before.toExtract = item.isToExtract();
+        return before;
+    }
+
+    /**
+     * Stores the attributes added or changed by the task since the snapshot.
+     */
+    void store(AbstractTask task, IItem item, Results before) {
+        String config = getConfigFingerprint(task);
+        if (before == null || config.isEmpty()) {
+            return;
+        }
+        Results results = new Results();
+        for (Entry<String, Object> entry : item.getExtraAttributeMap().entrySet()) {
+            Object prev = before.attributes.get(entry.getKey());
+            Object value = entry.getValue();
+            if (prev != value && (prev == null || !prev.equals(value))) {
+                if (value instanceof Collection && !(value instanceof Serializable)) {
+                    // e.g. map values views
+                    value = new ArrayList<>((Collection<?>) value);
+                }
+                results.attributes.put(entry.getKey(), value);
+            }
+        }
+        results.toExtract = item.isToExtract() && !before.toExtract;
+
+        byte[] data;
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                oos.writeObject(results);
+            }
+            data = baos.toByteArray();
+        } catch (IOException e) {
+            LOGGER.debug("Results of {} for {} are not serializable: {}", task.getName(), item.getPath(), e.toString()); //$NON-NLS-1$
+            return;
+        }
+        synchronized (this) {
+            try {
+                insert.setString(1, Util.getTrackID(item));
+                insert.setString(2, task.getName());
+                insert.setString(3, item.getHash());
+                insert.setString(4, config);
+                insert.setBytes(5, data);
+                insert.executeUpdate();
+                stored.incrementAndGet();
+
+            } catch (SQLException e) {
+                LOGGER.warn("Error storing results of {} for {}: {}", task.getName(), item.getPath(), e.toString()); //$NON-NLS-1$
+            }
+        }
+    }
+
+}
@@ -13,6 +13,7 @@
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.LocalConfig;
 import iped.engine.config.TempFileTaskConfig;
+import iped.engine.core.WorkScheduler.ResourceType;
 import iped.engine.data.Item;
 import iped.utils.IOUtil;
 
@@ -38,6 +39,11 @@ public boolean isEnabled() {
         return isEnabled;
     }
 
+    @Override
+    protected ResourceType getResourceType() {
+        return ResourceType.IO;
+    }
+
     @Override
     public List<Configurable<?>> getConfigurables() {
         return Arrays.asList(new TempFileTaskConfig());
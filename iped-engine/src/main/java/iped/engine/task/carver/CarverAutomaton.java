@@ -0,0 +1,306 @@
+package iped.engine.task.carver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import iped.carvers.api.CarverType;
+import iped.carvers.api.Signature;
+
+/**
+ * Aho-Corasick automaton of byte patterns compiled to a flat DFA table, with
+ * the fail transitions already resolved. Scanning costs one array read per
+ * byte, without allocating objects or following pointers. The patterns ending
+ * at each state are kept in a flat output list.
+ *
+ * Used for the carver signatures, where each sequence of a signature
+ * (signatures are split at the ? wildcards) is a pattern, and for any list of
+ * patterns, like the hex viewer search terms.
+ *
+ * States are opaque ints, so a scan can continue from the state where the
+ * previous one stopped. Instances are immutable and can be shared by many
+ * threads, each one keeping its own state and hits.
+ */
+public class CarverAutomaton {
+
+    public static final int ROOT = 0;
+
+    private static final int ALPHABET = 256;
+
+    /**
+     * next state of each state and byte. States are stored multiplied by 256,
+     * so each one is also the offset of its row in the table.
+     */
+    private final int[] delta;
+
+    private final boolean[] accepting;
+
+    /**
+     * patterns ending at state s are outputs[outStart[s]] to
+     * outputs[outStart[s + 1] - 1]
+     */
+    private final int[] outStart;
+    private final int[] outputs;
+
+    private final int[] patternLength;
+
+    // carver data of each pattern, null if compiled from a list of patterns
+    private final Signature[] patternSig;
+    private final int[] patternSeq;
+    private final int[] patternCarverType;
+
+    private final CarverType[] carverTypes;
+    private final int maxPatternLength;
+
+    /**
+     * Hits found by a scan: end position (exclusive) in the scanned buffer and
+     * state reached there, in scan order.
+     */
+    public static class Hits {
+
+        private int[] ends = new int[64];
+        private int[] states = new int[64];
+        private int size = 0;
+
+        private void add(int end, int state) {
+            if (size == ends.length) {
+                ends = Arrays.copyOf(ends, size * 2);
+                states = Arrays.copyOf(states, size * 2);
+            }
+            ends[size] = end;
+            states[size++] = state;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int getEnd(int i) {
+            return ends[i];
+        }
+
+        public int getState(int i) {
+            return states[i];
+        }
+
+        public void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Compiles the signatures of the carver types. Patterns are numbered in the
+     * order of the types, of their signatures and of the signature sequences.
+     */
+    public static CarverAutomaton compile(CarverType[] carverTypes) {
+        List<byte[]> patterns = new ArrayList<>();
+        List<Signature> sigs = new ArrayList<>();
+        List<Integer> seqs = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        for (int t = 0; t < carverTypes.length; t++) {
+            for (Signature sig : carverTypes[t].getSignatures()) {
+                if (sig.seqs == null) {
+                    continue;
+                }
+                for (int k = 0; k < sig.seqs.length; k++) {
+                    patterns.add(sig.seqs[k]);
+                    sigs.add(sig);
+                    seqs.add(k);
+                    types.add(t);
+                }
+            }
+        }
+        int[] patternSeq = new int[patterns.size()];
+        int[] patternCarverType = new int[patterns.size()];
+        for (int p = 0; p < patterns.size(); p++) {
+            patternSeq[p] = seqs.get(p);
+            patternCarverType[p] = types.get(p);
+        }
+        return new CarverAutomaton(patterns, null, carverTypes.clone(), sigs.toArray(new Signature[0]), patternSeq,
+                patternCarverType);
+    }
+
+    /**
+     * Compiles a list of patterns, numbered in the list order. If fold is not
+     * null, each data byte b is read as fold[b & 0xFF] (e.g. to lower case), so
+     * case insensitive matching needs no copy of the data. The patterns must
+     * already be folded.
+     */
+    public static CarverAutomaton compile(List<byte[]> patterns, byte[] fold) {
+        return new CarverAutomaton(patterns, fold, new CarverType[0], null, null, null);
+    }
+
+    private CarverAutomaton(List<byte[]> patterns, byte[] fold, CarverType[] carverTypes, Signature[] patternSig,
+            int[] patternSeq, int[] patternCarverType) {
+        this.carverTypes = carverTypes;
+        this.patternSig = patternSig;
+        this.patternSeq = patternSeq;
+        this.patternCarverType = patternCarverType;
+
+        int numPatterns = patterns.size();
+        patternLength = new int[numPatterns];
+        int totalLen = 0, maxLen = 0;
+        for (int p = 0; p < numPatterns; p++) {
+            patternLength[p] = patterns.get(p).length;
+            totalLen += patternLength[p];
+            maxLen = Math.max(maxLen, patternLength[p]);
+        }
+        maxPatternLength = maxLen;
+
+        // builds the trie, -1 means no edge
+        int maxStates = totalLen + 1;
+        int[] trie = new int[maxStates * ALPHABET];
+        Arrays.fill(trie, -1);
+        List<List<Integer>> stateOutputs = new ArrayList<>();
+        stateOutputs.add(new ArrayList<>());
+        int numStates = 1;
+        for (int p = 0; p < numPatterns; p++) {
+            int s = ROOT;
+            for (byte b : patterns.get(p)) {
+                int i = s * ALPHABET + (b & 0xFF);
+                if (trie[i] == -1) {
+                    trie[i] = numStates++;
+                    stateOutputs.add(new ArrayList<>());
+                }
+                s = trie[i];
+            }
+            stateOutputs.get(s).add(p);
+        }
+
+        // resolves the fail transitions in breadth first order, so the outputs
+        // of the fail state are already complete when inherited
+        delta = new int[numStates * ALPHABET];
+        int[] fail = new int[numStates];
+        int[] queue = new int[numStates];
+        int head = 0, tail = 0;
+        for (int c = 0; c < ALPHABET; c++) {
+            int t = trie[c];
+            if (t == -1) {
+                delta[c] = ROOT;
+            } else {
+                fail[t] = ROOT;
+                delta[c] = t * ALPHABET;
+                queue[tail++] = t;
+            }
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            stateOutputs.get(s).addAll(stateOutputs.get(fail[s]));
+            for (int c = 0; c < ALPHABET; c++) {
+                int t = trie[s * ALPHABET + c];
+                if (t == -1) {
+                    delta[s * ALPHABET + c] = delta[fail[s] * ALPHABET + c];
+                } else {
+                    fail[t] = delta[fail[s] * ALPHABET + c] / ALPHABET;
+                    delta[s * ALPHABET + c] = t * ALPHABET;
+                    queue[tail++] = t;
+                }
+            }
+        }
+
+        // applies the fold to the data side of the resolved transitions
+        if (fold != null) {
+            int[] row = new int[ALPHABET];
+            for (int s = 0; s < numStates; s++) {
+                System.arraycopy(delta, s * ALPHABET, row, 0, ALPHABET);
+                for (int c = 0; c < ALPHABET; c++) {
+                    delta[s * ALPHABET + c] = row[fold[c] & 0xFF];
+                }
+            }
+        }
+
+        accepting = new boolean[numStates];
+        outStart = new int[numStates + 1];
+        int numOutputs = 0;
+        for (List<Integer> out : stateOutputs) {
+            numOutputs += out.size();
+        }
+        outputs = new int[numOutputs];
+        int o = 0;
+        for (int s = 0; s < numStates; s++) {
+            outStart[s] = o;
+            for (int p : stateOutputs.get(s)) {
+                outputs[o++] = p;
+            }
+            accepting[s] = o > outStart[s];
+        }
+        outStart[numStates] = o;
+    }
+
+    /**
+     * Scans buf from index from (inclusive) to index to (exclusive), starting
+     * at the given state, adding to hits the accepting states reached at
+     * positions ending after reportFrom.
+     *
+     * @return the state reached at the end, to continue scanning the next bytes.
+     */
+    public int scan(byte[] buf, int from, int to, int reportFrom, int state, Hits hits) {
+        final int[] delta = this.delta;
+        final boolean[] accepting = this.accepting;
+        int s = state * ALPHABET;
+        for (int i = from; i < to; i++) {
+            s = delta[s + (buf[i] & 0xFF)];
+            if (accepting[s >>> 8] && i >= reportFrom) {
+                hits.add(i + 1, s >>> 8);
+            }
+        }
+        return s >>> 8;
+    }
+
+    public int getOutputStart(int state) {
+        return outStart[state];
+    }
+
+    public int getOutputEnd(int state) {
+        return outStart[state + 1];
+    }
+
+    /**
+     * @return the pattern of the output at index i of the flat output list.
+     */
+    public int getOutput(int i) {
+        return outputs[i];
+    }
+
+    public int getPatternLength(int pattern) {
+        return patternLength[pattern];
+    }
+
+    /**
+     * @return the signature of the pattern, only if compiled from carver types.
+     */
+    public Signature getSignature(int pattern) {
+        return patternSig[pattern];
+    }
+
+    /**
+     * @return the index of the pattern in the signature sequences.
+     */
+    public int getSequence(int pattern) {
+        return patternSeq[pattern];
+    }
+
+    /**
+     * @return the index of the carver type of the pattern.
+     */
+    public int getCarverTypeIndex(int pattern) {
+        return patternCarverType[pattern];
+    }
+
+    public CarverType[] getCarverTypes() {
+        return carverTypes.clone();
+    }
+
+    public int getNumStates() {
+        return accepting.length;
+    }
+
+    public int getNumPatterns() {
+        return patternLength.length;
+    }
+
+    public int getMaxPatternLength() {
+        return maxPatternLength;
+    }
+
+}
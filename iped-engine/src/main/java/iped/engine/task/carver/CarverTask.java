@@ -3,16 +3,15 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.tika.mime.MediaType;
-import org.arabidopsis.ahocorasick.AhoCorasick;
-import org.arabidopsis.ahocorasick.SearchResult;
-import org.arabidopsis.ahocorasick.Searcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,24 +35,37 @@
  * Assim, o algoritmo é independente do número de assinaturas pesquisadas, sendo
  * proporcional ao volume de dados de entrada e ao número de padrões
  * descobertos.
+ * 
+ * The automaton is compiled to a flat table (see {@link CarverAutomaton}) and
+ * scans the reused read buffer in place. Large unallocated and pagefile items
+ * are read in windows split into segments scanned in parallel, whose hits are
+ * notified to the carvers in the same order of a sequential scan.
  */
 public class CarverTask extends BaseCarveTask {
 
     public static boolean enableCarving = false;
     public static boolean ignoreCorrupted = true;
 
+    private static final int BUF_SIZE = 1024 * 1024;
+
     private static CarverType[] carverTypes;
+    private static CarverAutomaton automaton;
     private static Logger LOGGER = LoggerFactory.getLogger(CarverTask.class);
     private static int largestPatternLen = 100;
 
+    private static int parallelScanThreads = 1;
+    private static ExecutorService scanExecutor;
+
     protected HashMap<CarverType, Carver> registeredCarvers = new HashMap<CarverType, Carver>();
     private CarvedItemListener carvedItemListener = null;
     IItem evidence;
 
     long prevLen = 0;
     int len = 0, k = 0;
-    byte[] buf = new byte[1024 * 1024];
-    byte[] cBuf;
+
+    // reused by the instances created by this one for each item
+    private byte[] buf;
+    private CarverAutomaton.Hits hits;
 
     public static void setEnabled(boolean enabled) {
         enableCarving = enabled;
@@ -72,7 +84,10 @@ public void process(IItem evidence) {
         // Nova instancia pois o mesmo objeto é reusado e nao é imutável
         CarverTask carver = new CarverTask();
         carver.setWorker(worker);
+        carver.buf = getBuf();
+        carver.hits = hits;
         carver.safeProcess(evidence);
+        hits = carver.hits;
 
         // Ao terminar o tratamento do item, caso haja referência ao mesmo no mapa de
         // itens carveados através do LedCarving, esta pode ser removida.
@@ -130,83 +145,192 @@ private void safeProcess(IItem evidence) {
 
     }
 
-    private void fillBuf(InputStream in) throws IOException {
+    private byte[] getBuf() {
+        if (buf == null) {
+            buf = new byte[BUF_SIZE];
+        }
+        return buf;
+    }
+
+    private void fillBuf(InputStream in, byte[] buf) throws IOException {
         prevLen += len;
         len = 0;
         k = 0;
         while (k != -1 && (len += k) < buf.length) {
             k = in.read(buf, len, buf.length - len);
         }
+    }
 
-        cBuf = new byte[len];
-        System.arraycopy(buf, 0, cBuf, 0, len);
-
+    /**
+     * Large unallocated and pagefile items are scanned in parallel segments.
+     */
+    private boolean isToScanInParallel() {
+        if (scanExecutor == null || evidence.getLength() == null
+                || evidence.getLength() < 2L * parallelScanThreads * BUF_SIZE) {
+            return false;
+        }
+        MediaType type = evidence.getMediaType().getBaseType();
+        return UNALLOCATED_MIMETYPE.equals(type) || mtPageFile.equals(type);
     }
 
-    private Hit findSig(InputStream in) throws Exception {
-        HashMap<CarverType, TreeMap<Long, Integer>> map = new HashMap<>();
-        for (int i = 0; i < carverTypes.length; i++) {
-            map.put(carverTypes[i], new TreeMap<Long, Integer>());
+    private void findSig(InputStream in) throws Exception {
+        SplitHits[] splitHits = new SplitHits[carverTypes.length];
+        if (hits == null) {
+            hits = new CarverAutomaton.Hits();
+        }
+        byte[] buffer;
+        CarverAutomaton.Hits[] segmentHits;
+        int segments;
+        if (isToScanInParallel()) {
+            // allocated just while scanning the item, as few items are scanned in
+            // parallel and the window is much larger than the usual buffer
+            segments = parallelScanThreads;
+            buffer = new byte[segments * BUF_SIZE];
+            segmentHits = new CarverAutomaton.Hits[segments];
+            segmentHits[0] = hits;
+            for (int i = 1; i < segments; i++) {
+                segmentHits[i] = new CarverAutomaton.Hits();
+            }
+        } else {
+            segments = 1;
+            buffer = buf;
+            segmentHits = new CarverAutomaton.Hits[] { hits };
         }
 
-        AhoCorasick tree = carverConfig.getPopulatedTree();
-        SearchResult lastResult = new SearchResult(tree.root, null, 0);
+        int state = CarverAutomaton.ROOT;
         do {
-            fillBuf(in);
-            lastResult = new SearchResult(lastResult.lastMatchedState, cBuf, 0);
-            Iterator<SearchResult> searcher = new Searcher(tree, tree.continueSearch(lastResult));
-
-            while (searcher.hasNext()) {
-                lastResult = searcher.next();
-
-                for (Object out : lastResult.getOutputs()) {
-                    Object[] oarray = (Object[]) out;
-                    Signature sig = (Signature) oarray[0];
-                    int seq = (int) oarray[1];
-                    int i = lastResult.getLastIndex() - sig.seqEndPos[seq];
-
-                    // tratamento para assinaturas com ? (divididas)
-                    if (sig.seqs.length > 1) {
-                        Integer hits = (Integer) map.get(sig.getCarverType()).get(prevLen + i);
-                        if (hits == null) {
-                            hits = 0;
-                        }
-                        if (hits != seq) {
-                            continue;
-                        }
-                        map.get(sig.getCarverType()).put(prevLen + i, ++hits);
-                        if (map.get(sig.getCarverType()).size() > largestPatternLen) {
-                            map.get(sig.getCarverType()).remove(map.get(sig.getCarverType()).firstKey());
-                        }
-
-                        if (hits < sig.seqs.length) {
-                            continue;
-                        }
-                    }
+            fillBuf(in, buffer);
+            if (segments == 1 || len < segments * BUF_SIZE) {
+                segmentHits[0].clear();
+                state = automaton.scan(buffer, 0, len, 0, state, segmentHits[0]);
+                notifyHits(segmentHits[0], splitHits);
+            } else {
+                state = scanInParallel(buffer, segmentHits, state);
+                for (int i = 0; i < segments; i++) {
+                    notifyHits(segmentHits[i], splitHits);
+                }
+            }
+
+        } while (k != -1);
 
-                    Hit hit = null;
-                    hit = new Hit(sig, prevLen + i);
+        for (Carver carver : registeredCarvers.values()) {
+            carver.notifyEnd(this.evidence);
+        }
+    }
+
+    /**
+     * Scans the window split in segments, the first one in this thread. The
+     * other ones start from the root state some bytes before, so the state
+     * reached at their start is the same of a sequential scan, but only report
+     * hits ending inside them.
+     * 
+     * @return the state reached at the end of the window
+     */
+    private int scanInParallel(byte[] buffer, CarverAutomaton.Hits[] segmentHits, int state) throws Exception {
+        int segments = segmentHits.length;
+        int segmentLen = len / segments;
+        int overlap = automaton.getMaxPatternLength();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 1; i < segments; i++) {
+            CarverAutomaton.Hits hits = segmentHits[i];
+            int start = i * segmentLen;
+            int end = i == segments - 1 ? len : start + segmentLen;
+            futures.add(scanExecutor.submit(() -> {
+                hits.clear();
+                return automaton.scan(buffer, Math.max(0, start - overlap), end, start, CarverAutomaton.ROOT, hits);
+            }));
+        }
+        segmentHits[0].clear();
+        automaton.scan(buffer, 0, segmentLen, 0, state, segmentHits[0]);
+        for (Future<Integer> future : futures) {
+            state = future.get();
+        }
+        return state;
+    }
 
-                    Carver carver = getCarver(sig.getCarverType());
+    private void notifyHits(CarverAutomaton.Hits hits, SplitHits[] splitHits) {
+        for (int h = 0; h < hits.size(); h++) {
+            int state = hits.getState(h);
+            for (int o = automaton.getOutputStart(state); o < automaton.getOutputEnd(state); o++) {
+                int pattern = automaton.getOutput(o);
+                Signature sig = automaton.getSignature(pattern);
+                int seq = automaton.getSequence(pattern);
+                long offset = prevLen + hits.getEnd(h) - sig.seqEndPos[seq];
+
+                // tratamento para assinaturas com ? (divididas)
+                if (sig.seqs.length > 1) {
+                    int type = automaton.getCarverTypeIndex(pattern);
+                    if (splitHits[type] == null) {
+                        splitHits[type] = new SplitHits();
+                    }
+                    int found = splitHits[type].get(offset);
+                    if (found != seq) {
+                        continue;
+                    }
+                    splitHits[type].put(offset, ++found);
 
-                    try {
-                        carver.notifyHit(this.evidence, hit);
-                    } catch (Exception e) {
-                        LOGGER.warn("{} Skipping unexpected error carving on hit {} {} - CarverClass {}", //$NON-NLS-1$
-                                Thread.currentThread().getName(), evidence.getPath(), hit.getOffset(),
-                                carver.getClass().getName());
-                        e.printStackTrace();
+                    if (found < sig.seqs.length) {
+                        continue;
                     }
                 }
+
+                Hit hit = new Hit(sig, offset);
+
+                Carver carver = getCarver(sig.getCarverType());
+
+                try {
+                    carver.notifyHit(this.evidence, hit);
+                } catch (Exception e) {
+                    LOGGER.warn("{} Skipping unexpected error carving on hit {} {} - CarverClass {}", //$NON-NLS-1$
+                            Thread.currentThread().getName(), evidence.getPath(), hit.getOffset(),
+                            carver.getClass().getName());
+                    e.printStackTrace();
+                }
             }
+        }
+    }
 
-        } while (k != -1);
+    /**
+     * Offsets of split signatures (with ?) whose first sequences were found, with
+     * the number of sequences found, keeping the last largestPatternLen offsets.
+     */
+    private static class SplitHits {
 
-        for (Carver carver : registeredCarvers.values()) {
-            carver.notifyEnd(this.evidence);
+        private final long[] offsets = new long[largestPatternLen + 1];
+        private final int[] found = new int[largestPatternLen + 1];
+        private int size = 0;
+
+        private int get(long offset) {
+            for (int i = 0; i < size; i++) {
+                if (offsets[i] == offset) {
+                    return found[i];
+                }
+            }
+            return 0;
         }
 
-        return null;
+        private void put(long offset, int num) {
+            for (int i = 0; i < size; i++) {
+                if (offsets[i] == offset) {
+                    found[i] = num;
+                    return;
+                }
+            }
+            offsets[size] = offset;
+            found[size++] = num;
+            if (size > largestPatternLen) {
+                // removes the lowest offset
+                int min = 0;
+                for (int i = 1; i < size; i++) {
+                    if (offsets[i] < offsets[min]) {
+                        min = i;
+                    }
+                }
+                size--;
+                offsets[min] = offsets[size];
+                found[min] = found[size];
+            }
+        }
     }
 
     @Override
@@ -232,6 +356,18 @@ public void init(ConfigurationManager configurationManager) throws Exception {
             carverConfig.configListener(carvedItemListener);
             carverTypes = carverConfig.getCarverTypes();
             ignoreCorrupted = carverConfig.isToIgnoreCorrupted();
+            automaton = ctConfig.getConfiguration().getAutomaton();
+
+            // each worker scanning a large item uses a window of 1MB per thread
+            parallelScanThreads = Math.max(1, Math.min(ctConfig.getConfiguration().getParallelScanThreads(),
+                    Runtime.getRuntime().availableProcessors()));
+            if (parallelScanThreads > 1 && enableCarving) {
+                scanExecutor = Executors.newFixedThreadPool(parallelScanThreads - 1, r -> {
+                    Thread t = new Thread(r, "CarverScanThread"); //$NON-NLS-1$
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
         }
     }
 
@@ -30,6 +30,7 @@
 import iped.engine.hashdb.HashDBDataSource;
 import iped.engine.hashdb.LedHashDB;
 import iped.engine.hashdb.LedItem;
+import iped.engine.task.HashTask;
 import iped.properties.MediaTypes;
 import iped.utils.IOUtil;
 
@@ -197,19 +198,26 @@ protected void process(IItem evidence) throws Exception {
                     }
                 }
                 if (!empty) {
-                    digest.update(buf512, 0, read512);
-                    cntBytesHashed += read512;
-                    byte[] hash512 = digest.digest();
+                    // reuse partial hashes already computed by HashTask for the item start
+                    byte[] hash512 = offset == 0 ? (byte[]) evidence.getTempAttribute(HashTask.MD5_512_TEMP_ATTR) : null;
+                    if (hash512 == null) {
+                        digest.update(buf512, 0, read512);
+                        cntBytesHashed += read512;
+                        hash512 = digest.digest();
+                    }
                     if (ledHashDB.containsMD5_512(hash512)) {
                         cnt512hit++;
                         is.mark(65536);
                         int read64K = is.readNBytes(buf64K, 0, buf64K.length);
                         is.reset();
                         if (read64K == buf64K.length) {
-                            cntBytesHashed += read512 + read64K;
-                            digest.update(buf512, 0, read512);
-                            digest.update(buf64K, 0, read64K);
-                            byte[] hash64K = digest.digest();
+                            byte[] hash64K = offset == 0 ? (byte[]) evidence.getTempAttribute(HashTask.MD5_64K_TEMP_ATTR) : null;
+                            if (hash64K == null) {
+                                cntBytesHashed += read512 + read64K;
+                                digest.update(buf512, 0, read512);
+                                digest.update(buf64K, 0, read64K);
+                                hash64K = digest.digest();
+                            }
                             int hashId = ledHashDB.hashIdFromMD5_64K(hash64K);
                             if (hashId >= 0) {
                                 LedItem ledItem = hashDBDataSource.getLedItem(hashId);
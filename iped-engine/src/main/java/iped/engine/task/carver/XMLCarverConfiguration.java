@@ -35,10 +35,12 @@ public class XMLCarverConfiguration implements CarverConfiguration, Serializable
     private static final long serialVersionUID = 1L;
 
     private static AhoCorasick tree = null;
+    private static CarverAutomaton automaton = null;
     private static String CARVE_DIR_INDIVIDUAIS = "carvers";
 
     private ArrayList<String> originalXmls = new ArrayList<>();
     private boolean ignoreCorrupted = true;
+    private int parallelScanThreads = 4;
     protected HashSet<MediaType> TYPES_TO_PROCESS;
     protected HashSet<String> TYPES_TO_NOT_PROCESS = new HashSet<String>();
     protected HashSet<MediaType> TYPES_TO_CARVE = new HashSet<MediaType>();
@@ -87,6 +89,11 @@ public void loadXMLConfigFile(File confFile) throws IOException {
             NodeList ignoreCorruptedEls = root.getElementsByTagName("ignoreCorrupted");
             ignoreCorrupted = Boolean.valueOf(ignoreCorruptedEls.item(0).getTextContent().trim());
 
+            NodeList parallelScanThreadsEls = root.getElementsByTagName("parallelScanThreads");
+            if (parallelScanThreadsEls.getLength() > 0) {
+                parallelScanThreads = Integer.parseInt(parallelScanThreadsEls.item(0).getTextContent().trim());
+            }
+
             NodeList carversEls = root.getElementsByTagName("carverTypes");
             for (int i = 0; i < carversEls.getLength(); i++) {
                 Element carverEls = (Element) carversEls.item(i);
@@ -249,26 +256,8 @@ public CarverType[] getCarverTypes() {
     synchronized public void configListener(CarvedItemListener carvedItemListener)
             throws CarverConfigurationException {
         try {
-            CarverType[] carverTypes = carverTypesArray.toArray(new CarverType[0]);
-
-            if (tree == null) {
-                tree = new AhoCorasick();
-                for (int i = 0; i < carverTypes.length; i++) {
-                    CarverType ct = carverTypes[i];
-                    ArrayList<Signature> sigs = ct.getSignatures();
-                    for (int j = 0; j < sigs.size(); j++) {
-                        Signature sig = sigs.get(j);
-                        if (sig.seqs != null) {
-                            for (int k = 0; k < sig.seqs.length; k++) {
-                                Object[] out = new Object[2];
-                                out[0] = sig;
-                                out[1] = k;
-                                tree.add(sig.seqs[k], out);
-                            }
-                        }
-                    }
-                }
-                tree.prepare();
+            if (automaton == null) {
+                automaton = CarverAutomaton.compile(carverTypesArray.toArray(new CarverType[0]));
             }
 
         } catch (Exception e) {
@@ -276,10 +265,51 @@ synchronized public void configListener(CarvedItemListener carvedItemListener)
         }
     }
 
-    public AhoCorasick getPopulatedTree() {
+    /**
+     * Signatures compiled to a flat automaton, used by CarverTask.
+     */
+    public CarverAutomaton getAutomaton() {
+        return automaton;
+    }
+
+    /**
+     * Pointer based automaton of the signatures, built on first use. CarverTask
+     * uses the compiled one, see {@link #getAutomaton()}.
+     */
+    @Override
+    synchronized public AhoCorasick getPopulatedTree() {
+        if (tree == null) {
+            AhoCorasick tree = new AhoCorasick();
+            CarverType[] carverTypes = carverTypesArray.toArray(new CarverType[0]);
+            for (int i = 0; i < carverTypes.length; i++) {
+                CarverType ct = carverTypes[i];
+                ArrayList<Signature> sigs = ct.getSignatures();
+                for (int j = 0; j < sigs.size(); j++) {
+                    Signature sig = sigs.get(j);
+                    if (sig.seqs != null) {
+                        for (int k = 0; k < sig.seqs.length; k++) {
+                            Object[] out = new Object[2];
+                            out[0] = sig;
+                            out[1] = k;
+                            tree.add(sig.seqs[k], out);
+                        }
+                    }
+                }
+            }
+            tree.prepare();
+            XMLCarverConfiguration.tree = tree;
+        }
         return tree;
     }
 
+    /**
+     * @return number of threads scanning segments of large unallocated and
+     *         pagefile items in parallel, 0 means the number of processors.
+     */
+    public int getParallelScanThreads() {
+        return parallelScanThreads;
+    }
+
     @Override
     public Carver createCarverFromJSName(File file) {
         try {
@@ -36,6 +36,7 @@
 import iped.engine.task.ParsingTask;
 import iped.engine.task.SkipCommitedTask;
 import iped.engine.task.carver.BaseCarveTask;
+import iped.engine.util.TextCache;
 import iped.engine.util.Util;
 import iped.exception.IPEDException;
 import iped.parsers.standard.StandardParser;
@@ -82,6 +83,8 @@ private static final FieldType getContentFieldType() {
 
     private IndexTaskConfig indexConfig;
 
+    private IndexingStage stage;
+
     public static boolean isTreeNodeOnly(IItem item) {
         return (!item.isToAddToCase() && (item.isDir() || item.isRoot() || item.hasChildren()))
                 || item.getExtraAttribute(IndexItem.TREENODE) != null;
@@ -97,7 +100,18 @@ public static void configureTreeNodeAttributes(IItem item) {
         item.getCategorySet().clear();
     }
 
-    public void process(IItem evidence) throws IOException {
+    /**
+     * Waits until the documents enqueued to the indexing stage are added to the
+     * index, so they are visible to new index readers.
+     */
+    public static void flushPendingDocuments() throws InterruptedException {
+        IndexingStage stage = IndexingStage.get();
+        if (stage != null) {
+            stage.flush();
+        }
+    }
+
+    public void process(IItem evidence) throws Exception {
         if (evidence.isQueueEnd()) {
             return;
         }
@@ -108,6 +122,7 @@ public void process(IItem evidence) throws IOException {
         }
 
         Reader textReader = null;
+        TextCache textCache = null;
 
         if (!evidence.isToAddToCase()) {
             if (isTreeNodeOnly(evidence)) {
@@ -122,8 +137,13 @@ public void process(IItem evidence) throws IOException {
         if (textReader == null) {
             if (indexConfig.isIndexFileContents() && (indexConfig.isIndexUnallocated()
                     || !BaseCarveTask.UNALLOCATED_MIMETYPE.equals(evidence.getMediaType()))) {
-                textReader = evidence.getTextReader();
-                if (textReader == null) {
+                if (stage != null && evidence instanceof Item && ((Item) evidence).getTextCache() != null) {
+                    // the indexing stage reads the text later, after the item is disposed
+                    textCache = ((Item) evidence).getTextCache().clone();
+                } else {
+                    textReader = evidence.getTextReader();
+                }
+                if (textCache == null && textReader == null) {
                     LOGGER.warn("Null Text reader, creating a new one for {}", evidence.getPath()); //$NON-NLS-1$
                     try {
                         TikaInputStream tis = evidence.getTikaStream();
@@ -140,6 +160,12 @@ public void process(IItem evidence) throws IOException {
             }
         }
 
+        // items with cached or empty text are indexed by the indexing stage
+        if (stage != null && (textCache != null || textReader == null || textReader instanceof StringReader)) {
+            stage.add(new DocumentsIterable(evidence, textCache));
+            return;
+        }
+
         if (textReader == null)
             textReader = new StringReader(""); //$NON-NLS-1$
 
@@ -160,18 +186,62 @@ public void process(IItem evidence) throws IOException {
 
     }
 
-    private class DocumentsIterable implements Iterable<Document> {
+    private class DocumentsIterable implements Iterable<Document>, IndexingStage.Job {
 
+        // null if the parent document was built before the text is read
         private IItem item;
+        private int id;
+        private String path;
+        private Document parentDoc;
+        private TextCache textCache;
         private FragmentingReader fragReader;
         private boolean hasMoreContentFrags, parentIndexed = false;
         private int numFrags = 0;
 
         private DocumentsIterable(IItem item, FragmentingReader fragReader) {
             this.item = item;
+            this.id = item.getId();
+            this.path = item.getPath();
             this.fragReader = fragReader;
         }
 
+        /**
+         * Used by the indexing stage. The parent document is built now, because the
+         * item may change after the worker moves on, the text is read later. The
+         * text size is already known, so it is set to the item before.
+         */
+        private DocumentsIterable(IItem item, TextCache textCache) {
+            this.id = item.getId();
+            this.path = item.getPath();
+            this.textCache = textCache;
+            long textSize = textCache == null ? 0 : textCache.getSize();
+            if (FragmentingReader.isSplitted(textSize, indexConfig.getTextSplitSize(),
+                    indexConfig.getTextOverlapSize())) {
+                item.setExtraAttribute(TEXT_SPLITTED, Boolean.TRUE.toString());
+            }
+            item.setExtraAttribute(TEXT_SIZE, textSize);
+            this.parentDoc = IndexItem.Document(item, output);
+        }
+
+        @Override
+        public Iterable<Document> open() throws IOException {
+            Reader textReader = textCache != null ? textCache.getTextReader() : new StringReader(""); //$NON-NLS-1$
+            fragReader = new FragmentingReader(textReader, indexConfig.getTextSplitSize(),
+                    indexConfig.getTextOverlapSize());
+            return this;
+        }
+
+        @Override
+        public int getNumDocs() {
+            return parentIndexed ? numFrags + 1 : numFrags;
+        }
+
+        @Override
+        public void close() {
+            IOUtil.closeQuietly(fragReader);
+            IOUtil.closeQuietly(textCache);
+        }
+
         public Iterator<Document> iterator() {
             return new Iterator<Document>() {
 
@@ -195,15 +265,15 @@ public Document next() {
                     if (hasMoreContentFrags) {
                         if (++numFrags > 1) {
                             stats.incSplits();
-                            LOGGER.info("{} Splitting text of {}", Thread.currentThread().getName(), item.getPath()); //$NON-NLS-1$
+                            LOGGER.info("{} Splitting text of {}", Thread.currentThread().getName(), path); //$NON-NLS-1$
                         }
                         // child (content) document
                         Document doc = new Document();
                         doc.add(new IntPoint(FRAG_NUM, numFrags));
-                        doc.add(new IntPoint(FRAG_PARENT_ID, item.getId()));
+                        doc.add(new IntPoint(FRAG_PARENT_ID, id));
                         doc.add(new Field(IndexItem.CONTENT, new CloseFilterReader(fragReader), getContentFieldType()));
                         return doc;
-                    } else {
+                    } else if (item != null) {
                         if (numFrags > 1) {
                             item.setExtraAttribute(TEXT_SPLITTED, Boolean.TRUE.toString());
                         }
@@ -212,6 +282,9 @@ public Document next() {
                         Document doc = IndexItem.Document(item, output);
                         parentIndexed = true;
                         return doc;
+                    } else {
+                        parentIndexed = true;
+                        return parentDoc;
                     }
                 }
                 
@@ -260,12 +333,27 @@ public void init(ConfigurationManager configurationManager) throws Exception {
 
         this.autoParser = new StandardParser();
 
+        int indexingThreads = indexConfig.getIndexingThreads();
+        if (indexingThreads < 0) {
+            indexingThreads = Math.max(1, worker.manager.getNumWorkers() / 2);
+        }
+        if (indexingThreads > 0) {
+            int queueSize = indexConfig.getIndexingQueueSize();
+            if (queueSize <= 0) {
+                queueSize = 2 * indexingThreads;
+            }
+            stage = IndexingStage.start(worker.writer, indexingThreads, queueSize);
+        }
+
     }
 
     @Override
     public void finish() throws Exception {
 
         if (!finished.getAndSet(true)) {
+            if (stage != null) {
+                stage.close();
+            }
             saveExtraAttributes(output);
             IndexItem.saveMetadataTypes(new File(output, "conf")); //$NON-NLS-1$
         }
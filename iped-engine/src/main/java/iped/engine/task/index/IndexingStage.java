@@ -0,0 +1,265 @@
+package iped.engine.task.index;
+
+import java.io.IOException;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.exception.IPEDException;
+import iped.utils.IOUtil;
+
+/**
+ * Indexing stage decoupled from the processing workers. Workers just enqueue
+ * the documents of each item, whose text is read lazily, and the indexing
+ * threads analyze and add them to the index, each item in its own
+ * addDocuments call, so the parent and its text fragments are a block apart
+ * from other items. When the queue is full, workers wait for it, so parsing
+ * and indexing overlap without holding unbounded items in memory.
+ */
+public class IndexingStage {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(IndexingStage.class);
+
+    private static volatile IndexingStage instance;
+
+    /**
+     * Documents of an item to be indexed.
+     */
+    interface Job {
+
+        /**
+         * Called by the indexing thread, just before adding the documents.
+         */
+        Iterable<Document> open() throws IOException;
+
+        /**
+         * @return number of documents returned after open().
+         */
+        int getNumDocs();
+
+        void close();
+    }
+
+    /**
+     * Job and its enqueuing order.
+     */
+    private static class Entry {
+
+        private final Job job;
+        private final long seq;
+
+        private Entry(Job job, long seq) {
+            this.job = job;
+            this.seq = seq;
+        }
+    }
+
+    private final IndexWriter writer;
+    private final ArrayBlockingQueue<Entry> queue;
+    private final Thread[] threads;
+
+    private volatile Exception exception;
+    private volatile boolean closed = false;
+    private final Object pendingLock = new Object();
+    // sequence numbers of the enqueued jobs not indexed yet
+    private final TreeSet<Long> pending = new TreeSet<>();
+    private long lastSeq = 0;
+
+    private final long startTime = System.nanoTime();
+    private final AtomicLong indexedDocs = new AtomicLong();
+    private final AtomicLong indexedItems = new AtomicLong();
+    private final AtomicLong indexingNanos = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private IndexingStage(IndexWriter writer, int numThreads, int queueSize) {
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread(this::run, "IndexingThread-" + i); //$NON-NLS-1$
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        LOGGER.info("Indexing stage started with {} threads and queue size {}", numThreads, queueSize); //$NON-NLS-1$
+    }
+
+    static synchronized IndexingStage start(IndexWriter writer, int numThreads, int queueSize) {
+        if (instance == null || instance.closed) {
+            instance = new IndexingStage(writer, numThreads, queueSize);
+        }
+        return instance;
+    }
+
+    /**
+     * @return the last started indexing stage, or null if documents are indexed by
+     *         the workers.
+     */
+    public static IndexingStage get() {
+        return instance;
+    }
+
+    /**
+     * Enqueues the job, waiting if the queue is full.
+     */
+    void add(Job job) throws InterruptedException {
+        checkException();
+        Entry entry;
+        synchronized (pendingLock) {
+            entry = new Entry(job, ++lastSeq);
+            pending.add(entry.seq);
+        }
+        if (!queue.offer(entry)) {
+            long t = System.nanoTime();
+            try {
+                queue.put(entry);
+            } catch (InterruptedException e) {
+                done(entry.seq);
+                job.close();
+                throw e;
+            }
+            blockedNanos.addAndGet(System.nanoTime() - t);
+        }
+        int depth = queue.size();
+        if (depth > maxQueueDepth.get()) {
+            maxQueueDepth.accumulateAndGet(depth, Math::max);
+        }
+    }
+
+    /**
+     * Waits until the documents enqueued before this call are added to the index.
+     * Documents enqueued meanwhile by other workers are not waited for, so it
+     * returns even if the queue never gets empty.
+     */
+    public void flush() throws InterruptedException {
+        synchronized (pendingLock) {
+            long seq = lastSeq;
+            while (!pending.isEmpty() && pending.first() <= seq && exception == null) {
+                pendingLock.wait(1000);
+            }
+        }
+        checkException();
+    }
+
+    /**
+     * Flushes enqueued documents and stops the indexing threads.
+     */
+    void close() throws InterruptedException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+        } finally {
+            for (Thread t : threads) {
+                t.interrupt();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+        }
+    }
+
+    private void checkException() {
+        if (exception != null) {
+            throw new IPEDException("Error indexing documents", exception); //$NON-NLS-1$
+        }
+    }
+
+    private void done(long seq) {
+        synchronized (pendingLock) {
+            pending.remove(seq);
+            pendingLock.notifyAll();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Entry entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                if (exception == null) {
+                    index(entry.job);
+                }
+            } catch (Exception e) {
+                if (e instanceof IOException && IOUtil.isDiskFull((IOException) e)) {
+                    e = new IPEDException("Not enough space for the index", e); //$NON-NLS-1$
+                }
+                LOGGER.error("Error indexing documents", e); //$NON-NLS-1$
+                if (exception == null) {
+                    exception = e;
+                }
+            } finally {
+                entry.job.close();
+                done(entry.seq);
+            }
+        }
+    }
+
+    private void index(Job job) throws IOException {
+        long t = System.nanoTime();
+        try {
+            writer.addDocuments(job.open());
+        } catch (RuntimeException e) {
+            // I/O errors reading the text are thrown as unchecked by the iterator
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        indexingNanos.addAndGet(System.nanoTime() - t);
+        indexedDocs.addAndGet(job.getNumDocs());
+        indexedItems.incrementAndGet();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public int getNumThreads() {
+        return threads.length;
+    }
+
+    public long getIndexedDocs() {
+        return indexedDocs.get();
+    }
+
+    public long getIndexedItems() {
+        return indexedItems.get();
+    }
+
+    public double getDocsPerSecond() {
+        double secs = (System.nanoTime() - startTime) / 1e9;
+        return secs == 0 ? 0 : indexedDocs.get() / secs;
+    }
+
+    /**
+     * @return total time spent by indexing threads adding documents, in millis.
+     */
+    public long getIndexingMillis() {
+        return indexingNanos.get() / 1_000_000;
+    }
+
+    /**
+     * @return total time workers waited for room in the queue, in millis.
+     */
+    public long getBlockedMillis() {
+        return blockedNanos.get() / 1_000_000;
+    }
+
+}
@@ -1,11 +1,14 @@
 package iped.engine.task.regex;
 
 import java.io.IOException;
+import java.io.Serializable;
 
 import org.opensearch.common.xcontent.ToXContentFragment;
 import org.opensearch.common.xcontent.XContentBuilder;
 
-public class RegexHits implements ToXContentFragment {
+public class RegexHits implements ToXContentFragment, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String hit;
     private long[] offsets = new long[1];
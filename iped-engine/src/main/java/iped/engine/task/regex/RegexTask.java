@@ -45,6 +45,7 @@
 import iped.engine.task.AbstractTask;
 import iped.engine.task.HashDBLookupTask;
 import iped.engine.task.HashTask;
+import iped.engine.task.ParsingTask;
 import iped.engine.task.PhotoDNALookup;
 import iped.engine.task.index.IndexItem;
 import iped.properties.ExtraProperties;
@@ -57,6 +58,14 @@ public class RegexTask extends AbstractTask {
 
     private static final int MAX_RESULTS = 50000; // OOME protection for files with tons of hits
 
+    // max chars kept from a chunk to continue a possible hit in the next one
+    private static final int MAX_CARRY = 1 << 16;
+
+    // max number of transitions of the tagged automaton, 64M ints = 256 MB
+    private static final int MAX_TAGGED_TABLE_SIZE = 1 << 26;
+
+    private static final int CACHE_VERSION = 2;
+
     private static Logger logger = LoggerFactory.getLogger(RegexTask.class);
 
     private static final File cacheFile = new File(System.getProperty("user.home"), ".iped/regexAutomata.cache");
@@ -65,6 +74,8 @@ public class RegexTask extends AbstractTask {
 
     private static Regex regexFull;
 
+    private static TaggedRunAutomaton regexTagged;
+
     private static FSTConfiguration fastSerializer = FSTConfiguration.createDefaultConfiguration();
 
     private static final Set<String> ignoredKeys = new HashSet<String>();
@@ -167,6 +178,20 @@ public boolean isEnabled() {
         return regexConfig.isEnabled();
     }
 
+    @Override
+    protected boolean isResultReplayable() {
+        return true;
+    }
+
+    @Override
+    protected List<Configurable<?>> getResultDependencies() {
+        // results depend on the extracted text and on the keywords whose hits are
+        // exported
+        List<Configurable<?>> dependencies = new ArrayList<>(ParsingTask.getTextConfigurables());
+        dependencies.add(new ExportByKeywordsConfig());
+        return dependencies;
+    }
+
     public List<Configurable<?>> getConfigurables() {
         return Arrays.asList(new RegexTaskConfig());
     }
@@ -208,6 +233,18 @@ public void init(ConfigurationManager configurationManager) throws Exception {
                 regexFull = new Regex("FULL", automata); //$NON-NLS-1$
                 logger.info("Created the unique automaton for all regexes.");
 
+                List<RunAutomaton> patterns = new ArrayList<RunAutomaton>();
+                for (Regex regex : regexList) {
+                    patterns.add(regex.pattern);
+                }
+                regexTagged = TaggedRunAutomaton.build(patterns, MAX_TAGGED_TABLE_SIZE);
+                if (regexTagged != null) {
+                    logger.info("Created the tagged automaton for all regexes with {} states.",
+                            regexTagged.getNumStates());
+                } else {
+                    logger.warn("Tagged automaton too large, each regex will be run again on each hit.");
+                }
+
                 writeCache(regexConfig, exportConfig);
                 logger.info("Regex cache saved to {}", cacheFile.getAbsolutePath());
             }
@@ -229,6 +266,12 @@ private void writeCache(RegexTaskConfig regexConfig, ExportByKeywordsConfig expo
             dos.write(list);
             dos.writeInt(full.length);
             dos.write(full);
+            dos.writeBoolean(regexTagged != null);
+            if (regexTagged != null) {
+                byte[] tagged = fastSerializer.asByteArray(regexTagged);
+                dos.writeInt(tagged.length);
+                dos.write(tagged);
+            }
         }
     }
 
@@ -253,6 +296,11 @@ private boolean loadCache(RegexTaskConfig regexConfig, ExportByKeywordsConfig ex
             byte[] full = new byte[fullLen];
             dis.readFully(full);
             regexFull = (Regex) fastSerializer.asObject(full);
+            if (dis.readBoolean()) {
+                byte[] tagged = new byte[dis.readInt()];
+                dis.readFully(tagged);
+                regexTagged = (TaggedRunAutomaton) fastSerializer.asObject(tagged);
+            }
             return true;
         }
     }
@@ -261,6 +309,7 @@ private byte[] getMd5FromConfigs(RegexTaskConfig regexConfig, ExportByKeywordsCo
             throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeInt(CACHE_VERSION);
             oos.writeObject(regexConfig);
             oos.writeObject(exportConfig);
         }
@@ -277,6 +326,7 @@ private synchronized void initValidators(File confDir) {
     @Override
     public void finish() throws Exception {
         regexFull = null;
+        regexTagged = null;
         regexList = null;
     }
 
@@ -307,79 +357,166 @@ private Reader getExtraAttributeReader(IItem item) {
         return new StringReader(sb.toString());
     }
 
-    @SuppressWarnings("unchecked")
     private void processRegex(IItem evidence, Reader reader) throws IOException {
 
-        int k = 0;
-        long totalOffset = 0;
-        while (k != -1) {
-            int off = 0;
-            k = 0;
-            while (k != -1 && (off += k) < cbuf.length)
-                k = reader.read(cbuf, off, cbuf.length - off);
+        List<Map<String, RegexHits>> hitList = new ArrayList<Map<String, RegexHits>>(regexList.size());
+        for (int i = 0; i < regexList.size(); i++) {
+            hitList.add(new HashMap<>());
+        }
+        boolean[] maxHitsReached = new boolean[regexList.size()];
+
+        // text offset of cbuf[0]
+        long bufOffset = 0;
+        int len = 0;
+        boolean eof = false;
+        while (!eof) {
+            int k = 0;
+            while (len < cbuf.length && (k = reader.read(cbuf, len, cbuf.length - len)) != -1) {
+                len += k;
+            }
+            eof = k == -1;
+
+            int consumed;
+            if (regexTagged != null) {
+                consumed = findHits(len, eof, bufOffset, hitList, maxHitsReached);
+            } else {
+                findHitsRerunningRegexes(len, bufOffset, hitList, maxHitsReached);
+                consumed = len;
+            }
+
+            // keep the chars not consumed, a hit could cross the chunk boundary
+            System.arraycopy(cbuf, consumed, cbuf, 0, len - consumed);
+            bufOffset += consumed;
+            len -= consumed;
+        }
 
-            String text = new String(cbuf, 0, off);
+        storeHits(evidence, hitList, maxHitsReached);
+    }
+
+    /**
+     * Finds hits of all regexes in a single pass with the tagged automaton, using
+     * the same leftmost-longest semantics of {@link AutomatonMatcher}.
+     *
+     * @return number of chars consumed, the rest must be scanned again with the
+     *         next chunk, because a hit could be still running at the end of the
+     *         buffer.
+     */
+    private int findHits(int len, boolean eof, long bufOffset, List<Map<String, RegexHits>> hitList,
+            boolean[] maxHitsReached) {
+        TaggedRunAutomaton automaton = regexTagged;
+        char[] buf = cbuf;
+        int begin = 0;
+        while (begin < len) {
+            int state = automaton.getInitialState();
+            int matchEnd = -1;
+            int[] matchTags = null;
+            int i = begin;
+            for (; i < len; i++) {
+                state = automaton.step(state, buf[i]);
+                if (state == TaggedRunAutomaton.DEAD) {
+                    break;
+                }
+                int[] tags = automaton.getTags(state);
+                if (tags != null) {
+                    matchEnd = i + 1;
+                    matchTags = tags;
+                }
+            }
+            if (i == len && state != TaggedRunAutomaton.DEAD && !eof && len - begin <= MAX_CARRY) {
+                return begin;
+            }
+            if (matchEnd != -1) {
+                for (int r : matchTags) {
+                    addHit(r, begin, matchEnd, bufOffset, hitList, maxHitsReached);
+                }
+                begin = matchEnd;
+            } else {
+                begin++;
+            }
+        }
+        return len;
+    }
 
-            List<Map<String, RegexHits>> hitList = new ArrayList<Map<String, RegexHits>>();
+    /**
+     * Previous approach, used if the tagged automaton is too large: finds hits of
+     * the union automaton and runs each regex again on them.
+     */
+    private void findHitsRerunningRegexes(int len, long bufOffset, List<Map<String, RegexHits>> hitList,
+            boolean[] maxHitsReached) {
+        String text = new String(cbuf, 0, len);
+        AutomatonMatcher fullMatcher = regexFull.pattern.newMatcher(text);
+        while (fullMatcher.find()) {
+            int start = fullMatcher.start();
+            int end = fullMatcher.end();
+            String fullHit = text.substring(start, end);
             for (int i = 0; i < regexList.size(); i++) {
-                hitList.add(new HashMap<>());
+                if (regexList.get(i).pattern.run(fullHit)) {
+                    addHit(i, start, end, bufOffset, hitList, maxHitsReached);
+                }
             }
+        }
+    }
 
-            AutomatonMatcher fullMatcher = regexFull.pattern.newMatcher(text);
-            while (fullMatcher.find()) {
-                int start = fullMatcher.start();
-                int end = fullMatcher.end();
-                String fullHit = text.substring(start, end);
-                int i = 0;
-                for (Regex regex : regexList) {
-                    if (regex.pattern.run(fullHit)) {
-                        String hit = fullHit.substring(regex.prefix, fullHit.length() - regex.sufix);
-                        if (regex.ignoreCases)
-                            hit = hit.toLowerCase();
-                        if (regexValidator.validate(regex, hit)) {
-                            if (regexConfig.isFormatRegexMatches()) {
-                                hit = regexValidator.format(regex, hit);
-                            }
-                            Map<String, RegexHits> hitMap = hitList.get(i);
-                            RegexHits hits = hitMap.get(hit);
-                            if (hits == null) {
-                                hits = new RegexHits(hit);
-                                hitMap.put(hit, hits);
-                            }
-                            hits.addOffset(totalOffset + start + regex.prefix);
-                        }
-                    }
-                    i++;
+    private void addHit(int regexIdx, int start, int end, long bufOffset, List<Map<String, RegexHits>> hitList,
+            boolean[] maxHitsReached) {
+        Regex regex = regexList.get(regexIdx);
+        int hitStart = start + regex.prefix;
+        int hitEnd = end - regex.sufix;
+        if (hitEnd < hitStart) {
+            return;
+        }
+        String hit = new String(cbuf, hitStart, hitEnd - hitStart);
+        if (regex.ignoreCases)
+            hit = hit.toLowerCase();
+        if (regexValidator.validate(regex, hit)) {
+            if (regexConfig.isFormatRegexMatches()) {
+                hit = regexValidator.format(regex, hit);
+            }
+            Map<String, RegexHits> hitMap = hitList.get(regexIdx);
+            RegexHits hits = hitMap.get(hit);
+            if (hits == null) {
+                if (hitMap.size() >= MAX_RESULTS) {
+                    maxHitsReached[regexIdx] = true;
+                    return;
                 }
+                hits = new RegexHits(hit);
+                hitMap.put(hit, hits);
             }
-            for (int i = 0; i < regexList.size(); i++) {
-                if (hitList.get(i).size() > 0) {
-                    String key = REGEX_PREFIX + regexList.get(i).name;
-                    Collection<RegexHits> prevHits = (Collection<RegexHits>) evidence.getExtraAttribute(key);
-                    Map<String, RegexHits> hitsMap = hitList.get(i);
-                    if (prevHits == null || prevHits.isEmpty() || !(prevHits.iterator().next() instanceof RegexHits)) {
-                        evidence.setExtraAttribute(key, hitsMap.values());
+            hits.addOffset(bufOffset + hitStart);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void storeHits(IItem evidence, List<Map<String, RegexHits>> hitList, boolean[] maxHitsReached) {
+        for (int i = 0; i < regexList.size(); i++) {
+            String key = REGEX_PREFIX + regexList.get(i).name;
+            if (maxHitsReached[i]) {
+                evidence.setExtraAttribute("maxHitsReached" + key, "true");
+            }
+            if (hitList.get(i).size() > 0) {
+                Collection<RegexHits> prevHits = (Collection<RegexHits>) evidence.getExtraAttribute(key);
+                Map<String, RegexHits> hitsMap = hitList.get(i);
+                if (prevHits == null || prevHits.isEmpty() || !(prevHits.iterator().next() instanceof RegexHits)) {
+                    evidence.setExtraAttribute(key, hitsMap.values());
+                } else {
+                    if (prevHits.size() >= MAX_RESULTS) {
+                        evidence.setExtraAttribute("maxHitsReached" + key, "true");
                     } else {
-                        if (prevHits.size() >= MAX_RESULTS) {
-                            evidence.setExtraAttribute("maxHitsReached" + key, "true");
-                        } else {
-                            for (RegexHits hits : prevHits) {
-                                RegexHits prev = hitsMap.get(hits.getHit());
-                                if (prev != null) {
-                                    prev.addAll(hits.getOffsets());
-                                } else {
-                                    hitsMap.put(hits.getHit(), hits);
-                                }
+                        for (RegexHits hits : prevHits) {
+                            RegexHits prev = hitsMap.get(hits.getHit());
+                            if (prev != null) {
+                                prev.addAll(hits.getOffsets());
+                            } else {
+                                hitsMap.put(hits.getHit(), hits);
                             }
-                            evidence.setExtraAttribute(key, hitsMap.values());
                         }
+                        evidence.setExtraAttribute(key, hitsMap.values());
                     }
-
-                    if (regexList.get(i).name.equals(KEYWORDS_NAME))
-                        evidence.setToExtract(true);
                 }
+
+                if (regexList.get(i).name.equals(KEYWORDS_NAME))
+                    evidence.setToExtract(true);
             }
-            totalOffset += off;
         }
     }
 
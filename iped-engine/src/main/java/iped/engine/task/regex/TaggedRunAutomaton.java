@@ -0,0 +1,179 @@
+package iped.engine.task.regex;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import dk.brics.automaton.RunAutomaton;
+
+/**
+ * Deterministic automaton equivalent to the union of several regexes, where
+ * each accepting state is tagged with the indexes of the regexes that accept
+ * the input read so far. So a single pass finds all hits and which regexes
+ * matched them, without running each regex again on every hit.
+ *
+ * It is built as the product of the deterministic automata of each regex,
+ * exploring just the reachable states. It is not minimized, because merging
+ * states would mix up tags of different regexes.
+ */
+class TaggedRunAutomaton implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int DEAD = -1;
+
+    private final char[] classmap;
+    private final int numClasses;
+    private final int[] transitions;
+    private final int[][] tags;
+
+    private TaggedRunAutomaton(char[] classmap, int numClasses, int[] transitions, int[][] tags) {
+        this.classmap = classmap;
+        this.numClasses = numClasses;
+        this.transitions = transitions;
+        this.tags = tags;
+    }
+
+    int getInitialState() {
+        return 0;
+    }
+
+    int step(int state, char c) {
+        return transitions[state * numClasses + classmap[c]];
+    }
+
+    /**
+     * @return indexes of the regexes accepting in this state, or null if it is
+     *         not an accepting state.
+     */
+    int[] getTags(int state) {
+        return tags[state];
+    }
+
+    int getNumStates() {
+        return tags.length;
+    }
+
+    private static class StateKey {
+
+        private final int[] states;
+        private final int hash;
+
+        private StateKey(int[] states) {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateKey && Arrays.equals(states, ((StateKey) o).states);
+        }
+    }
+
+    /**
+     * Builds the tagged automaton.
+     *
+     * @param maxTableSize
+     *            maximum number of transitions (states x char classes)
+     * @return the automaton, or null if maxTableSize would be exceeded.
+     */
+    static TaggedRunAutomaton build(List<RunAutomaton> automata, int maxTableSize) {
+        // char classes are defined by the union of all automata interval points
+        TreeSet<Character> pointSet = new TreeSet<>();
+        pointSet.add((char) 0);
+        for (RunAutomaton a : automata) {
+            for (char c : a.getCharIntervals()) {
+                pointSet.add(c);
+            }
+        }
+        char[] points = new char[pointSet.size()];
+        int p = 0;
+        for (Character c : pointSet) {
+            points[p++] = c;
+        }
+        int numClasses = points.length;
+        char[] classmap = new char[Character.MAX_VALUE + 1];
+        for (int cls = 0, c = 0; c <= Character.MAX_VALUE; c++) {
+            if (cls + 1 < numClasses && c == points[cls + 1]) {
+                cls++;
+            }
+            classmap[c] = (char) cls;
+        }
+
+        int n = automata.size();
+        Map<StateKey, Integer> ids = new HashMap<>();
+        List<int[]> states = new ArrayList<>();
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+
+        int[] initial = new int[n];
+        for (int i = 0; i < n; i++) {
+            initial[i] = automata.get(i).getInitialState();
+        }
+        ids.put(new StateKey(initial), 0);
+        states.add(initial);
+        pending.add(0);
+
+        int[] transitions = new int[numClasses * 16];
+        while (!pending.isEmpty()) {
+            int id = pending.poll();
+            int[] current = states.get(id);
+            for (int cls = 0; cls < numClasses; cls++) {
+                int[] next = new int[n];
+                boolean dead = true;
+                for (int i = 0; i < n; i++) {
+                    next[i] = current[i] == -1 ? -1 : automata.get(i).step(current[i], points[cls]);
+                    dead &= next[i] == -1;
+                }
+                int nextId = DEAD;
+                if (!dead) {
+                    StateKey key = new StateKey(next);
+                    Integer existing = ids.get(key);
+                    if (existing == null) {
+                        nextId = states.size();
+                        if ((long) (nextId + 1) * numClasses > maxTableSize) {
+                            return null;
+                        }
+                        ids.put(key, nextId);
+                        states.add(next);
+                        pending.add(nextId);
+                    } else {
+                        nextId = existing;
+                    }
+                }
+                int pos = id * numClasses + cls;
+                if (pos >= transitions.length) {
+                    transitions = Arrays.copyOf(transitions, Math.max(pos + 1, transitions.length * 2));
+                }
+                transitions[pos] = nextId;
+            }
+        }
+        transitions = Arrays.copyOf(transitions, states.size() * numClasses);
+
+        int[][] tags = new int[states.size()][];
+        int[] buf = new int[n];
+        for (int id = 0; id < tags.length; id++) {
+            int[] s = states.get(id);
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                if (s[i] != -1 && automata.get(i).isAccept(s[i])) {
+                    buf[k++] = i;
+                }
+            }
+            if (k > 0) {
+                tags[id] = Arrays.copyOf(buf, k);
+            }
+        }
+        return new TaggedRunAutomaton(classmap, numClasses, transitions, tags);
+    }
+
+}
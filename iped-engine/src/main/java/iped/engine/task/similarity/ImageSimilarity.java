@@ -293,6 +293,25 @@ private void calcEdges() {
         }
     }
 
+    /**
+     * Max dimension of Lucene vectors.
+     */
+    public static final int vectorDim = 1024;
+
+    /**
+     * Converts features to a vector indexed in the HNSW graph used to find
+     * similar images candidates. Features used just by distance() are kept, but
+     * truncated to the max vector dimension, so vector distances are never
+     * greater than the real ones.
+     */
+    public static float[] toVector(byte[] features) {
+        float[] vector = new float[Math.min(vectorDim, features.length - 4)];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = features[i + 4];
+        }
+        return vector;
+    }
+
     public static int distance(byte[] a, byte[] b) {
         int distance = 0;
         for (int i = 4; i < a.length; i++) {
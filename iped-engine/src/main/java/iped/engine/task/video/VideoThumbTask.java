@@ -59,6 +59,7 @@
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.VideoThumbsConfig;
 import iped.engine.core.Statistics;
+import iped.engine.core.WorkScheduler.ResourceType;
 import iped.engine.core.Worker.ProcessTime;
 import iped.engine.data.Item;
 import iped.engine.preview.PreviewRepository;
@@ -280,6 +281,11 @@ public boolean isEnabled() {
         return videoConfig.isEnabled();
     }
 
+    @Override
+    protected ResourceType getResourceType() {
+        return ResourceType.CPU;
+    }
+
     /**
      * Finalização da tarefa. Apenas grava algumas informações sobre o processamento
      * no Log.
@@ -1,45 +1,271 @@
 package iped.engine.util;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.StringReader;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystemException;
-import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.io.input.BoundedReader;
-import org.apache.commons.io.input.RandomAccessFileInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import iped.data.IItem;
 import iped.utils.IOUtil;
-
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Cache of the text extracted from an item, shared by the tasks that consume
+ * it. Text is kept in fixed size char[] segments, so it is never copied again
+ * to be read. While the item text and the memory used by all caches are below
+ * their limits, segments stay in memory. Otherwise full segments are compressed
+ * with LZ4 and appended as blocks to a temp file, whose index allows readers
+ * with text bounds to decompress just the blocks they need.
+ */
 public class TextCache implements Closeable, Cloneable {
 
     private static Logger logger = LoggerFactory.getLogger(TextCache.class);
 
     private static int MAX_MEMORY_CHARS = 10000000;
 
+    /**
+     * Memory budget shared by all caches, 1/8 of the heap.
+     */
+    private static final long MAX_TOTAL_MEMORY_CHARS = Math.max(MAX_MEMORY_CHARS,
+            Runtime.getRuntime().maxMemory() / 16);
+
+    private static final int SEGMENT_CHARS = 1 << 16;
+    private static final int MIN_SEGMENT_CHARS = 1 << 8;
+
+    private static final AtomicLong usedMemoryChars = new AtomicLong();
+    private static final AtomicLong memoryReads = new AtomicLong();
+    private static final AtomicLong diskReads = new AtomicLong();
+    private static final AtomicLong spilledTexts = new AtomicLong();
+    private static final AtomicLong spilledChars = new AtomicLong();
+    private static final AtomicLong spilledBytes = new AtomicLong();
+
+    private static final LZ4Factory lz4 = LZ4Factory.fastestInstance();
+
     private IItem sourceItem;
-    private StringBuilder sb = new StringBuilder();
-    private File tmp;
-    private Writer writer;
+    private Store store = new Store();
     private long size = 0;
     private boolean diskCacheEnabled = true;
-    private long offset = -1;
-    private AtomicInteger refCount = new AtomicInteger(1);
+    private long offset = 0;
+
+    /**
+     * Text data, shared by the clones.
+     */
+    private static class Store {
+
+        private AtomicInteger refCount = new AtomicInteger(1);
+
+        /**
+         * in memory segments, all full except the last one. If spilled, just the
+         * last segment, after the blocks on disk, is kept here.
+         */
+        private List<char[]> segments = new ArrayList<>();
+        private int lastSegmentLen = 0;
+        private long memoryChars = 0;
+        private long totalChars = 0;
+
+        private File tmp;
+        private FileChannel channel;
+        private int numBlocks = 0;
+        private long[] blockPos = new long[16];
+        private int[] blockLen = new int[16];
+        private long fileSize = 0;
+        private LZ4Compressor compressor;
+        private byte[] compressBuf;
+        private byte[] rawBuf;
+
+        private boolean isSpilled() {
+            return tmp != null;
+        }
+
+        private long getDiskChars() {
+            return (long) numBlocks * SEGMENT_CHARS;
+        }
+
+        private void allocate(char[] segment) {
+            memoryChars += segment.length;
+            usedMemoryChars.addAndGet(segment.length);
+        }
+
+        private void release(char[] segment) {
+            memoryChars -= segment.length;
+            usedMemoryChars.addAndGet(-segment.length);
+        }
+
+        private synchronized void releaseAll() {
+            usedMemoryChars.addAndGet(-memoryChars);
+            memoryChars = 0;
+            segments.clear();
+            lastSegmentLen = 0;
+            IOUtil.closeQuietly(channel);
+            channel = null;
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+
+        private void spill() throws IOException {
+            tmp = File.createTempFile("text", null);
+            channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE);
+            compressor = lz4.fastCompressor();
+            rawBuf = new byte[SEGMENT_CHARS * 2];
+            compressBuf = new byte[compressor.maxCompressedLength(rawBuf.length)];
+            spilledTexts.incrementAndGet();
+            // all segments but the last are full, so they become blocks
+            while (segments.size() > 1) {
+                char[] segment = segments.get(0);
+                writeBlock(segment);
+                segments.remove(0);
+                release(segment);
+            }
+        }
+
+        private void writeBlock(char[] segment) throws IOException {
+            for (int i = 0, j = 0; i < SEGMENT_CHARS; i++) {
+                char c = segment[i];
+                rawBuf[j++] = (byte) (c >>> 8);
+                rawBuf[j++] = (byte) c;
+            }
+            int len = compressor.compress(rawBuf, 0, rawBuf.length, compressBuf, 0, compressBuf.length);
+            ByteBuffer bb = ByteBuffer.wrap(compressBuf, 0, len);
+            while (bb.hasRemaining()) {
+                channel.write(bb, fileSize + bb.position());
+            }
+            if (numBlocks == blockPos.length) {
+                blockPos = Arrays.copyOf(blockPos, numBlocks * 2);
+                blockLen = Arrays.copyOf(blockLen, numBlocks * 2);
+            }
+            blockPos[numBlocks] = fileSize;
+            blockLen[numBlocks] = len;
+            numBlocks++;
+            fileSize += len;
+            spilledChars.addAndGet(SEGMENT_CHARS);
+            spilledBytes.addAndGet(len);
+        }
+
+        private void write(char[] buf, int off, int len, boolean diskCacheEnabled) throws IOException {
+            while (len > 0) {
+                char[] last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+                if (last == null || lastSegmentLen == SEGMENT_CHARS) {
+                    if (last != null && !newSegment(last, diskCacheEnabled)) {
+                        return;
+                    }
+                    last = new char[Math.min(SEGMENT_CHARS, Math.max(MIN_SEGMENT_CHARS, len))];
+                    allocate(last);
+                    segments.add(last);
+                    lastSegmentLen = 0;
+
+                } else if (lastSegmentLen == last.length) {
+                    char[] grown = Arrays.copyOf(last, Math.min(SEGMENT_CHARS, Math.max(last.length * 2, len)));
+                    allocate(grown);
+                    release(last);
+                    segments.set(segments.size() - 1, grown);
+                    last = grown;
+                }
+                int n = Math.min(len, last.length - lastSegmentLen);
+                System.arraycopy(buf, off, last, lastSegmentLen, n);
+                lastSegmentLen += n;
+                totalChars += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * Called when the last segment is full, before starting a new one.
+         *
+         * @return false if the text limit was reached and the rest must be
+         *         discarded.
+         */
+        private boolean newSegment(char[] last, boolean diskCacheEnabled) throws IOException {
+            if (isSpilled()) {
+                if (channel == null) {
+                    // previous error writing to disk
+                    return false;
+                }
+                try {
+                    writeBlock(last);
+                    segments.clear();
+                    release(last);
+                    return true;
+
+                } catch (IOException e) {
+                    // maybe no space left, keep what was already stored
+                    logger.warn("Error writing text cache to " + tmp.getAbsolutePath(), e);
+                    IOUtil.closeQuietly(channel);
+                    channel = null;
+                    return false;
+                }
+            }
+            boolean overLimit = memoryChars >= MAX_MEMORY_CHARS;
+            if (diskCacheEnabled && (overLimit || usedMemoryChars.get() > MAX_TOTAL_MEMORY_CHARS)) {
+                try {
+                    spill();
+                    return newSegment(last, diskCacheEnabled);
+
+                } catch (IOException e) {
+                    logger.warn("Error creating text cache file", e);
+                    IOUtil.closeQuietly(channel);
+                    channel = null;
+                    if (numBlocks > 0) {
+                        // part of the text is already on disk, keep it
+                        return false;
+                    }
+                    if (tmp != null) {
+                        tmp.delete();
+                        tmp = null;
+                    }
+                }
+            }
+            return !overLimit;
+        }
+    }
+
+    public static long getUsedMemoryChars() {
+        return usedMemoryChars.get();
+    }
+
+    /**
+     * @return number of readers which got the text just from memory
+     */
+    public static long getMemoryReads() {
+        return memoryReads.get();
+    }
+
+    /**
+     * @return number of readers which needed to decompress text from disk
+     */
+    public static long getDiskReads() {
+        return diskReads.get();
+    }
+
+    public static long getSpilledTexts() {
+        return spilledTexts.get();
+    }
+
+    public static long getSpilledChars() {
+        return spilledChars.get();
+    }
+
+    public static long getSpilledBytes() {
+        return spilledBytes.get();
+    }
 
     public void setSourceItem(IItem sourceItem) {
         this.sourceItem = sourceItem;
@@ -50,36 +276,19 @@ public void setEnableDiskCache(boolean diskCacheEnabled) {
     }
 
     public void write(String string) throws IOException {
-        this.write(string.toCharArray(), 0, string.length());
+        char[] buf = new char[Math.min(string.length(), SEGMENT_CHARS)];
+        for (int i = 0; i < string.length(); i += buf.length) {
+            int len = Math.min(buf.length, string.length() - i);
+            string.getChars(i, i + len, buf, 0);
+            this.write(buf, 0, len);
+        }
     }
 
     public void write(char[] buf, int off, int len) throws IOException {
-        if (tmp == null && sb != null && sb.length() + len > MAX_MEMORY_CHARS && diskCacheEnabled) {
-            tmp = File.createTempFile("text", null);
-            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
-            writer.write(sb.toString());
-            sb = null;
-        }
-
-        if (sb != null && sb.length() < MAX_MEMORY_CHARS) {
-            if (sb.length() + len > MAX_MEMORY_CHARS)
-                len = MAX_MEMORY_CHARS - sb.length();
-            sb.append(buf, off, len);
+        synchronized (store) {
+            store.write(buf, off, len, diskCacheEnabled);
+            size = store.totalChars - offset;
         }
-
-        if (writer != null)
-            try {
-                writer.write(buf, off, len);
-            } catch (IOException e) {
-                // maybe no space left
-                e.printStackTrace();
-                IOUtil.closeQuietly(writer);
-                writer = null;
-                tmp.delete();
-                tmp = null;
-            }
-
-        size += len;
     }
 
     public long getSize() {
@@ -87,39 +296,26 @@ public long getSize() {
     }
 
     public Reader getTextReader() throws IOException {
-        if (writer != null) {
-            writer.close();
-            writer = null;
-        }
-
-        Reader reader = null;
-        if (sb != null)
-            reader = new StringReader(sb.toString());
-
-        if (tmp != null) {
-            try {
-                if (offset == -1) {
-                    reader = Files.newBufferedReader(tmp.toPath());
-                } else {
-                    RandomAccessFile raf = new RandomAccessFile(tmp, "r");
-                    raf.seek(offset);
-                    reader = new InputStreamReader(new RandomAccessFileInputStream(raf, true), StandardCharsets.UTF_8);
-                    reader = new BufferedReader(new BoundedReader(reader, (int) size));
+        Reader reader;
+        synchronized (store) {
+            if (offset < store.getDiskChars()) {
+                diskReads.incrementAndGet();
+                try {
+                    FileChannel channel = FileChannel.open(store.tmp.toPath(), StandardOpenOption.READ);
+                    reader = new SegmentsReader(store, offset, offset + size, channel);
+
+                } catch (FileSystemException | FileNotFoundException e) {
+                    logger.error("Error reading extracted text file{}, maybe your antivirus blocked or deleted it? {}",
+                            sourceItem != null ? " from " + sourceItem.getPath() : "", e.toString());
+                    e.printStackTrace();
+                    return new StringReader("");
                 }
-
-            } catch (FileSystemException | FileNotFoundException e) {
-                logger.error("Error reading extracted text file{}, maybe your antivirus blocked or deleted it? {}",
-                        sourceItem != null ? " from " + sourceItem.getPath() : "", e.toString());
-                e.printStackTrace();
-                return new StringReader("");
+            } else {
+                memoryReads.incrementAndGet();
+                reader = new SegmentsReader(store, offset, offset + size, null);
             }
         }
-
-        if (reader != null) {
-            return new KnownSizeReader(reader);
-        }
-
-        return null;
+        return new KnownSizeReader(reader);
     }
 
     public void setTextBounds(long offset, int size) {
@@ -129,16 +325,113 @@ public void setTextBounds(long offset, int size) {
         if (offset + size > this.size) {
             throw new IllegalArgumentException("offset + size must be less than or equal to original text size.");
         }
-        this.offset = offset;
+        this.offset += offset;
         this.size = size;
     }
 
     @Override
     public void close() throws IOException {
-        if (writer != null)
-            writer.close();
-        if (tmp != null && refCount.decrementAndGet() == 0)
-            tmp.delete();
+        if (store.refCount.decrementAndGet() == 0)
+            store.releaseAll();
+    }
+
+    /**
+     * Reads a range of the text directly from the segments in memory, or
+     * decompressing the blocks on disk which contain it.
+     */
+    private static class SegmentsReader extends Reader {
+
+        private final Store store;
+        private FileChannel channel;
+        private long pos;
+        private final long end;
+
+        private char[] block;
+        private long blockStart = -1;
+        private byte[] compressed;
+        private byte[] raw;
+        private LZ4FastDecompressor decompressor;
+
+        private SegmentsReader(Store store, long start, long end, FileChannel channel) {
+            this.store = store;
+            this.pos = start;
+            this.end = end;
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (pos >= end) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            char[] segment;
+            long segmentStart;
+            synchronized (store) {
+                long diskChars = store.getDiskChars();
+                if (pos < diskChars) {
+                    int b = (int) (pos / SEGMENT_CHARS);
+                    segmentStart = (long) b * SEGMENT_CHARS;
+                    if (segmentStart != blockStart) {
+                        readBlock(b);
+                        blockStart = segmentStart;
+                    }
+                    segment = block;
+                } else {
+                    int s = (int) ((pos - diskChars) / SEGMENT_CHARS);
+                    if (s >= store.segments.size()) {
+                        // text was discarded or released
+                        return -1;
+                    }
+                    segment = store.segments.get(s);
+                    segmentStart = diskChars + (long) s * SEGMENT_CHARS;
+                }
+            }
+            int segmentOff = (int) (pos - segmentStart);
+            int n = (int) Math.min(Math.min(len, end - pos), SEGMENT_CHARS - segmentOff);
+            if (segment != block) {
+                n = Math.min(n, segment.length - segmentOff);
+            }
+            System.arraycopy(segment, segmentOff, cbuf, off, n);
+            pos += n;
+            return n;
+        }
+
+        private void readBlock(int b) throws IOException {
+            if (channel == null) {
+                // text was spilled after this reader was created
+                channel = FileChannel.open(store.tmp.toPath(), StandardOpenOption.READ);
+            }
+            if (block == null) {
+                block = new char[SEGMENT_CHARS];
+                raw = new byte[SEGMENT_CHARS * 2];
+                decompressor = lz4.fastDecompressor();
+            }
+            int len = store.blockLen[b];
+            if (compressed == null || compressed.length < len) {
+                compressed = new byte[len];
+            }
+            ByteBuffer bb = ByteBuffer.wrap(compressed, 0, len);
+            long filePos = store.blockPos[b];
+            while (bb.hasRemaining()) {
+                if (channel.read(bb, filePos + bb.position()) == -1) {
+                    throw new EOFException("Truncated text cache file " + store.tmp.getAbsolutePath());
+                }
+            }
+            decompressor.decompress(compressed, 0, raw, 0, raw.length);
+            for (int i = 0, j = 0; i < SEGMENT_CHARS; i++, j += 2) {
+                block[i] = (char) (((raw[j] & 0xff) << 8) | (raw[j + 1] & 0xff));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
     }
 
     public class KnownSizeReader extends Reader {
@@ -169,15 +462,12 @@ public long getSize() {
     public TextCache clone() {
         TextCache o = new TextCache();
         o.sourceItem = sourceItem;
-        o.sb = sb;
-        o.tmp = tmp;
+        o.store = store;
         // we just use clone for reading for now
-        // o.writer = writer;
         o.size = size;
         o.diskCacheEnabled = diskCacheEnabled;
         o.offset = offset;
-        o.refCount = refCount;
-        refCount.incrementAndGet();
+        store.refCount.incrementAndGet();
         return o;
     }
 
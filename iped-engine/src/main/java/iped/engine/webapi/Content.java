@@ -1,20 +1,25 @@
 package iped.engine.webapi;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
 
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
-import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
 
-import org.apache.commons.io.IOUtils;
 import org.sleuthkit.datamodel.TskCoreException;
 
 import io.swagger.annotations.Api;
@@ -26,23 +31,166 @@
 @Path("sources/{sourceID}/docs/{id}/content")
 public class Content {
 
-    @ApiOperation(value = "Get document's raw content")
+    private static final String BYTES_UNIT = "bytes"; //$NON-NLS-1$
+
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    @ApiOperation(value = "Get document's raw content, supports single byte ranges")
     @GET
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
-    public Response content(@PathParam("sourceID") String sourceID, @PathParam("id") int id)
+    public Response content(@PathParam("sourceID") String sourceID, @PathParam("id") int id,
+            @HeaderParam("Range") String range, @HeaderParam("If-Range") String ifRange, @Context Request request)
             throws TskCoreException, IOException, URISyntaxException {
 
         IIPEDSource source = Sources.getSource(sourceID);
         final IItem item = source.getItemByID(id);
-        return Response.status(200).header("Content-Length", String.valueOf(item.getLength()))
+
+        ResponseBuilder notModified = evaluatePreconditions(request, item);
+        if (notModified != null) {
+            return notModified.build();
+        }
+
+        Long length = item.getLength();
+        if (length == null) {
+            // unknown size, ranges are not supported
+            return addValidators(Response.ok(new ItemContentOutput(item, 0, -1)), item)
+                    .header("Content-Disposition", "attachment; filename=\"" + item.getName() + "\"").build();
+        }
+
+        long start = 0;
+        long end = length - 1;
+        boolean partial = false;
+        if (range != null && isRangeValid(ifRange, item)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == UNSATISFIABLE) {
+                return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header("Content-Range", BYTES_UNIT + " */" + length).build(); //$NON-NLS-1$
+            }
+            if (bounds != null) {
+                start = bounds[0];
+                end = bounds[1];
+                partial = true;
+            }
+        }
+
+        ResponseBuilder builder = partial ? Response.status(Status.PARTIAL_CONTENT) : Response.ok();
+        if (partial) {
+            builder.header("Content-Range", BYTES_UNIT + " " + start + "-" + end + "/" + length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        return addValidators(builder, item).header("Accept-Ranges", BYTES_UNIT)
+                .header("Content-Length", String.valueOf(end - start + 1))
                 .header("Content-Disposition", "attachment; filename=\"" + item.getName() + "\"")
-                .entity(new StreamingOutput() {
-                    @Override
-                    public void write(OutputStream arg0) throws IOException, WebApplicationException {
-                        try (InputStream is = item.getBufferedInputStream()) {
-                            IOUtils.copy(is, arg0);
-                        }
-                    }
-                }).build();
+                .entity(new ItemContentOutput(item, start, end - start + 1)).build();
+    }
+
+    /**
+     * Parses a Range header with a single byte range. Multiple ranges and
+     * malformed headers are ignored, so the whole content is returned, as allowed
+     * by RFC 7233.
+     *
+     * @return the first and last positions of the range, null to ignore the
+     *         header or UNSATISFIABLE
+     */
+    static long[] parseRange(String range, long length) {
+        range = range.trim();
+        if (!range.startsWith(BYTES_UNIT + "=") || range.indexOf(',') != -1) { //$NON-NLS-1$
+            return null;
+        }
+        String spec = range.substring(BYTES_UNIT.length() + 1).trim();
+        int dash = spec.indexOf('-');
+        if (dash == -1) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start, end;
+            if (first.isEmpty()) {
+                // suffix range, the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+                if (start < 0 || (!last.isEmpty() && Long.parseLong(last) < start)) {
+                    return null;
+                }
+                if (start >= length) {
+                    return UNSATISFIABLE;
+                }
+            }
+            return new long[] { start, end };
+
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Content never changes after processing, so the item hash is used as a
+     * strong entity tag.
+     */
+    static EntityTag getEntityTag(IItem item) {
+        String hash = item.getHash();
+        return hash != null && !hash.isEmpty() ? new EntityTag(hash) : null;
+    }
+
+    /**
+     * Evaluates If-None-Match and If-Modified-Since headers.
+     *
+     * @return a Not Modified response builder, or null if content must be sent
+     */
+    static ResponseBuilder evaluatePreconditions(Request request, IItem item) {
+        EntityTag etag = getEntityTag(item);
+        Date modDate = item.getModDate();
+        if (etag != null && modDate != null) {
+            return request.evaluatePreconditions(modDate, etag);
+        } else if (etag != null) {
+            return request.evaluatePreconditions(etag);
+        } else if (modDate != null) {
+            return request.evaluatePreconditions(modDate);
+        }
+        return null;
+    }
+
+    static ResponseBuilder addValidators(ResponseBuilder builder, IItem item) {
+        EntityTag etag = getEntityTag(item);
+        if (etag != null) {
+            builder.tag(etag);
+        }
+        if (item.getModDate() != null) {
+            builder.lastModified(item.getModDate());
+        }
+        return builder;
+    }
+
+    /**
+     * If-Range tells to ignore the Range header if the content has changed since
+     * the client cached part of it.
+     */
+    private static boolean isRangeValid(String ifRange, IItem item) {
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) { //$NON-NLS-1$ //$NON-NLS-2$
+            EntityTag etag = getEntityTag(item);
+            // weak tags can not be used with ranges
+            return etag != null && ifRange.equals(etag.toString());
+        }
+        Date modDate = item.getModDate();
+        if (modDate == null) {
+            return false;
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return date.toEpochSecond() == Math.floorDiv(modDate.getTime(), 1000);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
     }
 }
@@ -0,0 +1,110 @@
+package iped.engine.webapi;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import iped.data.IItem;
+import iped.io.SeekableInputStream;
+import iped.utils.IOUtil;
+import iped.utils.SeekableFileInputStream;
+
+/**
+ * Writes a byte range of the item content to the response. Items backed by a
+ * file are sent with {@link FileChannel#transferTo}, without copying them
+ * through the java heap. Other items are read from their
+ * {@link SeekableInputStream}, positioned at the start of the range, using
+ * buffers from a pool shared by all requests.
+ */
+class ItemContentOutput implements StreamingOutput {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private static final ArrayBlockingQueue<byte[]> bufferPool = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+    private final IItem item;
+    private final long start;
+    private final long length;
+
+    /**
+     * @param length
+     *            bytes to send, or -1 to send up to the end of the content
+     */
+    ItemContentOutput(IItem item, long start, long length) {
+        this.item = item;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException, WebApplicationException {
+        if (length == 0) {
+            return;
+        }
+        File file = IOUtil.getFile(item);
+        if (file != null && file.isFile()) {
+            transferFile(file, out);
+            return;
+        }
+        try (SeekableInputStream sis = item.getSeekableInputStream()) {
+            if (sis instanceof SeekableFileInputStream && ((SeekableFileInputStream) sis).getFile() != null) {
+                // item extracted to a temp file
+                transferFile(((SeekableFileInputStream) sis).getFile(), out);
+            } else {
+                copyStream(sis, out);
+            }
+        }
+    }
+
+    private void transferFile(File file, OutputStream out) throws IOException {
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long pos = start;
+            long end = length < 0 ? fc.size() : start + length;
+            while (pos < end) {
+                long n = fc.transferTo(pos, end - pos, target);
+                if (n <= 0) {
+                    throw new EOFException("File shorter than expected: " + file); //$NON-NLS-1$
+                }
+                pos += n;
+            }
+        }
+    }
+
+    private void copyStream(SeekableInputStream sis, OutputStream out) throws IOException {
+        if (start > 0) {
+            sis.seek(start);
+        }
+        byte[] buf = bufferPool.poll();
+        if (buf == null) {
+            buf = new byte[BUFFER_SIZE];
+        }
+        try {
+            long remaining = length < 0 ? Long.MAX_VALUE : length;
+            while (remaining > 0) {
+                int n = sis.read(buf, 0, (int) Math.min(buf.length, remaining));
+                if (n == -1) {
+                    if (length < 0) {
+                        break;
+                    }
+                    throw new EOFException("Item content shorter than expected: " + item.getId()); //$NON-NLS-1$
+                }
+                out.write(buf, 0, n);
+                remaining -= n;
+            }
+        } finally {
+            bufferPool.offer(buf);
+        }
+    }
+
+}
@@ -1,18 +1,17 @@
 package iped.engine.webapi;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.URISyntaxException;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
-import javax.ws.rs.WebApplicationException;
-import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
-import org.apache.commons.io.IOUtils;
 import org.sleuthkit.datamodel.TskCoreException;
 
 import io.swagger.annotations.Api;
@@ -27,17 +26,17 @@ public class Thumbnail {
     @ApiOperation(value = "Get document's thumbnail")
     @GET
     @Produces("image/jpg")
-    public StreamingOutput content(@PathParam("sourceID") String sourceID, @PathParam("id") int id)
-            throws TskCoreException, IOException, URISyntaxException {
+    public Response content(@PathParam("sourceID") String sourceID, @PathParam("id") int id,
+            @Context Request request) throws TskCoreException, IOException, URISyntaxException {
 
         IIPEDSource source = Sources.getSource(sourceID);
         IItem item = source.getItemByID(id);
+
+        ResponseBuilder notModified = Content.evaluatePreconditions(request, item);
+        if (notModified != null) {
+            return notModified.build();
+        }
         final byte[] thumb = item.getThumb() != null ? item.getThumb() : new byte[0];
-        return new StreamingOutput() {
-            @Override
-            public void write(OutputStream arg0) throws IOException, WebApplicationException {
-                IOUtils.copy(new ByteArrayInputStream(thumb), arg0);
-            }
-        };
+        return Content.addValidators(Response.ok(thumb), item).build();
     }
-}
\ No newline at end of file
+}
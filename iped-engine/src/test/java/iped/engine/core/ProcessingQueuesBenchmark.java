@@ -0,0 +1,235 @@
+package iped.engine.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import iped.data.IItem;
+import iped.engine.data.CaseData;
+import iped.engine.data.Item;
+import iped.properties.BasicProps;
+
+/**
+ * Compares the throughput (items/s) of {@link ProcessingQueues} against the
+ * previous implementation, which used a single monitor for all operations.
+ *
+ * Workers poll items, spend a small amount of CPU on them and, like container
+ * parsers do, insert some subitems on the top of the queue.
+ *
+ * Usage: ProcessingQueuesBenchmark [numItems] [workers...]
+ */
+public class ProcessingQueuesBenchmark {
+
+    private static final String TRACK_ID = "0123456789abcdef0123456789abcdef";
+    private static final int SUBITEMS_EACH = 3;
+    private static final int MAX_DEPTH = 2;
+
+    private interface BenchQueue {
+        void add(IItem item, boolean first) throws InterruptedException;
+
+        /** polls and marks the item as being processed */
+        IItem poll() throws InterruptedException;
+
+        void done();
+
+        boolean isIdle();
+    }
+
+    private static class NewQueue implements BenchQueue {
+
+        private final ThreadLocal<Integer> workerId = ThreadLocal.withInitial(() -> -1);
+        private final ProcessingQueues queues;
+
+        NewQueue(int numWorkers) {
+            queues = new ProcessingQueues(new CaseData(), numWorkers, 100_000, true) {
+                @Override
+                int getCurrentWorkerId() {
+                    return workerId.get();
+                }
+            };
+        }
+
+        @Override
+        public void add(IItem item, boolean first) throws InterruptedException {
+            if (first) {
+                queues.addItemFirstNonBlocking(item);
+            } else {
+                queues.addItem(item);
+            }
+        }
+
+        @Override
+        public IItem poll() throws InterruptedException {
+            return queues.pollFromCurrentQueue();
+        }
+
+        @Override
+        public void done() {
+            queues.decItemsBeingProcessed();
+        }
+
+        @Override
+        public boolean isIdle() {
+            return queues.isNoItemInQueueOrBeingProcessed();
+        }
+    }
+
+    /**
+     * Copy of the previous synchronized algorithm.
+     */
+    private static class LegacyQueue implements BenchQueue {
+
+        private final LinkedList<IItem> top = new LinkedList<>();
+        private final ArrayList<IItem> rest = new ArrayList<>();
+        private final SplittableRandom rnd = new SplittableRandom();
+        private final int maxQueueSize = 100_000;
+        private int beingProcessed = 0;
+
+        @Override
+        public void add(IItem item, boolean first) throws InterruptedException {
+            boolean sleep = false;
+            while (true) {
+                if (sleep) {
+                    sleep = false;
+                    Thread.sleep(1000);
+                }
+                synchronized (this) {
+                    if (!first && top.size() + rest.size() >= maxQueueSize) {
+                        sleep = true;
+                        continue;
+                    }
+                    if (first) {
+                        top.addFirst(item);
+                    } else {
+                        rest.add(item);
+                    }
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public synchronized IItem poll() {
+            IItem item = null;
+            if (!top.isEmpty()) {
+                item = top.pollFirst();
+            } else if (rest.size() > 2) {
+                int pos = rnd.nextInt(rest.size() - 1);
+                item = rest.get(pos);
+                Collections.swap(rest, pos, rest.size() - 2);
+                rest.remove(rest.size() - 2);
+            } else if (!rest.isEmpty()) {
+                item = rest.remove(0);
+            }
+            if (item != null) {
+                beingProcessed++;
+            }
+            return item;
+        }
+
+        @Override
+        public synchronized void done() {
+            beingProcessed--;
+        }
+
+        @Override
+        public synchronized boolean isIdle() {
+            return beingProcessed == 0 && top.isEmpty() && rest.isEmpty();
+        }
+    }
+
+    private static IItem newItem(int depth) {
+        Item item = new Item();
+        item.setExtraAttribute(BasicProps.TRACK_ID, TRACK_ID);
+        item.setSubitemId(depth);
+        return item;
+    }
+
+    private static double run(BenchQueue queue, int numWorkers, int numItems) throws Exception {
+        AtomicLong processed = new AtomicLong();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < numItems; i++) {
+                    queue.add(newItem(0), false);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread[] workers = new Thread[numWorkers];
+        for (int k = 0; k < numWorkers; k++) {
+            final int id = k;
+            workers[k] = new Thread(() -> {
+                if (queue instanceof NewQueue) {
+                    ((NewQueue) queue).workerId.set(id);
+                }
+                try {
+                    while (true) {
+                        IItem item = queue.poll();
+                        if (item == null) {
+                            if (!producer.isAlive() && queue.isIdle()) {
+                                break;
+                            }
+                            Thread.onSpinWait();
+                            continue;
+                        }
+                        int depth = item.getSubitemId();
+                        // simulates some processing
+                        long acc = 0;
+                        for (int i = 0; i < 200; i++) {
+                            acc += ThreadLocalRandom.current().nextInt();
+                        }
+                        if (acc == 42) {
+                            System.out.print("");
+                        }
+                        if (depth < MAX_DEPTH) {
+                            for (int i = 0; i < SUBITEMS_EACH; i++) {
+                                queue.add(newItem(depth + 1), true);
+                            }
+                        }
+                        processed.incrementAndGet();
+                        queue.done();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        long start = System.nanoTime();
+        producer.start();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        producer.join();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        return processed.get() * 1e9 / elapsed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numItems = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int[] numWorkers = { 8, 32, 128 };
+        if (args.length > 1) {
+            numWorkers = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                numWorkers[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        // warm up
+        run(new LegacyQueue(), 4, numItems / 10);
+        run(new NewQueue(4), 4, numItems / 10);
+
+        System.out.println("workers\tlegacy items/s\tnew items/s");
+        for (int n : numWorkers) {
+            double legacy = run(new LegacyQueue(), n, numItems);
+            double current = run(new NewQueue(n), n, numItems);
+            System.out.printf("%d\t%.0f\t%.0f%n", n, legacy, current);
+        }
+    }
+
+}
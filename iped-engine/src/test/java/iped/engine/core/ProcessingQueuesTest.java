@@ -0,0 +1,211 @@
+package iped.engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import iped.data.IItem;
+import iped.engine.data.CaseData;
+import iped.engine.data.Item;
+import iped.properties.BasicProps;
+
+public class ProcessingQueuesTest {
+
+    private static final String TRACK_ID = "0123456789abcdef0123456789abcdef";
+
+    private static IItem newItem(int depth) {
+        Item item = new Item();
+        item.setExtraAttribute(BasicProps.TRACK_ID, TRACK_ID);
+        item.setSubitemId(depth);
+        return item;
+    }
+
+    private static IItem newQueueEnd() {
+        Item item = (Item) newItem(0);
+        item.setQueueEnd(true);
+        return item;
+    }
+
+    private static ProcessingQueues newQueues(int numWorkers, int maxQueueSize, ThreadLocal<Integer> workerId) {
+        return new ProcessingQueues(new CaseData(), numWorkers, maxQueueSize, true) {
+            @Override
+            int getCurrentWorkerId() {
+                return workerId.get();
+            }
+        };
+    }
+
+    @Test
+    public void testWorkerDequeOrder() {
+        WorkStealingItemQueue queue = new WorkStealingItemQueue(2);
+        IItem a = newItem(1), b = newItem(1), c = newItem(1);
+        queue.addFirst(a, 0);
+        queue.addFirst(b, 0);
+        queue.addFirst(c, 0);
+        assertEquals(3, queue.size());
+
+        // the owner takes the last inserted, other workers steal the oldest
+        assertSame(c, queue.poll(0));
+        assertSame(a, queue.poll(1));
+        assertSame(b, queue.poll(1));
+        assertNull(queue.poll(0));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testFifoAndQueueEnd() {
+        WorkStealingItemQueue queue = new WorkStealingItemQueue(2);
+        IItem queueEnd = newQueueEnd();
+        queue.addLast(queueEnd);
+        List<IItem> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            IItem item = newItem(0);
+            items.add(item);
+            queue.addLast(item);
+        }
+        // items added by non worker threads are also taken before the queue end
+        IItem top = newItem(1);
+        queue.addFirst(top, -1);
+
+        assertSame(top, queue.poll(0));
+        for (IItem item : items) {
+            assertSame(item, queue.poll(1));
+        }
+        assertSame(queueEnd, queue.peek());
+        assertSame(queueEnd, queue.poll(0));
+        assertNull(queue.poll(0));
+    }
+
+    @Test
+    public void testRandomOrderReturnsAll() {
+        WorkStealingItemQueue queue = new WorkStealingItemQueue(8);
+        Set<IItem> added = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 1000; i++) {
+            IItem item = newItem(0);
+            added.add(item);
+            queue.addRandom(item);
+        }
+        Set<IItem> polled = Collections.newSetFromMap(new IdentityHashMap<>());
+        IItem item;
+        while ((item = queue.poll(-1)) != null) {
+            assertTrue(polled.add(item));
+        }
+        assertEquals(added, polled);
+    }
+
+    @Test
+    public void testConcurrentProcessing() throws Exception {
+        final int numWorkers = 8, numItems = 2000, subitems = 3, maxDepth = 2;
+        ThreadLocal<Integer> workerId = ThreadLocal.withInitial(() -> -1);
+        ProcessingQueues queues = newQueues(numWorkers, 100, workerId);
+        Set<IItem> processed = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        AtomicInteger duplicates = new AtomicInteger();
+
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < numItems; i++) {
+                    queues.addItem(newItem(0));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread[] workers = new Thread[numWorkers];
+        for (int k = 0; k < numWorkers; k++) {
+            final int id = k;
+            workers[k] = new Thread(() -> {
+                workerId.set(id);
+                while (true) {
+                    IItem item;
+                    try {
+                        item = queues.pollFromCurrentQueue();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (item == null) {
+                        if (!producer.isAlive() && queues.isNoItemInQueueOrBeingProcessed()) {
+                            return;
+                        }
+                        Thread.yield();
+                        continue;
+                    }
+                    if (!processed.add(item)) {
+                        duplicates.incrementAndGet();
+                    }
+                    int depth = item.getSubitemId();
+                    if (depth < maxDepth) {
+                        for (int i = 0; i < subitems; i++) {
+                            queues.addItemFirstNonBlocking(newItem(depth + 1));
+                        }
+                    }
+                    queues.decItemsBeingProcessed();
+                }
+            });
+        }
+        producer.start();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        producer.join();
+        for (Thread worker : workers) {
+            worker.join(60_000);
+            assertFalse(worker.isAlive());
+        }
+
+        assertEquals(0, duplicates.get());
+        // each item plus 3 subitems, plus 9 subitems of them
+        assertEquals(numItems * 13, processed.size());
+        assertEquals(0, queues.getCurrentQueueSize());
+        assertEquals(0, queues.getItemsBeingProcessed());
+        assertTrue(queues.isNoItemInQueueOrBeingProcessed());
+    }
+
+    @Test
+    public void testProducerBlockedWhileFull() throws Exception {
+        ThreadLocal<Integer> workerId = ThreadLocal.withInitial(() -> -1);
+        ProcessingQueues queues = newQueues(2, 10, workerId);
+        for (int i = 0; i < 10; i++) {
+            queues.addItem(newItem(0));
+        }
+        // subitems are never blocked
+        queues.addItemFirstNonBlocking(newItem(1));
+        assertEquals(11, queues.getCurrentQueueSize());
+
+        Thread producer = new Thread(() -> {
+            try {
+                queues.addItem(newItem(0));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(500);
+        assertTrue(producer.isAlive());
+        assertEquals(11, queues.getCurrentQueueSize());
+
+        // still full after taking the subitem
+        queues.pollFromCurrentQueue();
+        queues.decItemsBeingProcessed();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        queues.pollFromCurrentQueue();
+        queues.decItemsBeingProcessed();
+        producer.join(10_000);
+        assertFalse(producer.isAlive());
+        assertEquals(10, queues.getCurrentQueueSize());
+        assertFalse(queues.isNoItemInQueueOrBeingProcessed());
+    }
+
+}
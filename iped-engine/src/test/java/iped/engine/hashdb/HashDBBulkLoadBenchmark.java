@@ -0,0 +1,107 @@
+package iped.engine.hashdb;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Compares HashDBTool bulk build ("-bulk") against the default row by row
+ * import, using synthetic CSV files with MD5 and SHA1 hashes. About 10% of the
+ * records repeat a hash of other file, with a different property value, so
+ * they must be combined. The row by row import is measured with a sample, as it
+ * would take many hours with 100M hashes.
+ *
+ * Usage: HashDBBulkLoadBenchmark <work folder> [hashes] [files] [row by row
+ * sample] [threads]
+ */
+public class HashDBBulkLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args[0]);
+        long numHashes = args.length > 1 ? Long.parseLong(args[1]) : 100_000_000L;
+        int numFiles = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        long sample = args.length > 3 ? Long.parseLong(args[3]) : 1_000_000L;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        File bulkInput = new File(dir, "bulk-input");
+        File sampleInput = new File(dir, "sample-input");
+        long t = System.currentTimeMillis();
+        generate(bulkInput, numHashes, numFiles);
+        generate(sampleInput, Math.min(sample, numHashes), numFiles);
+        System.out.println("Input generated in " + (System.currentTimeMillis() - t) / 1000 + "s");
+
+        double bulkRate = run(bulkInput, new File(dir, "bulk.db"), numHashes, "-bulk", "-threads",
+                String.valueOf(threads));
+        double rowRate = run(sampleInput, new File(dir, "sample.db"), Math.min(sample, numHashes));
+
+        System.out.printf("bulk: %.0f records/s, row by row: %.0f records/s, speedup: %.1fx%n", bulkRate, rowRate,
+                bulkRate / rowRate);
+    }
+
+    private static double run(File input, File db, long records, String... options) throws Exception {
+        db.delete();
+        String[] args = new String[4 + options.length];
+        args[0] = "-d";
+        args[1] = input.getPath();
+        args[2] = "-o";
+        args[3] = db.getPath();
+        System.arraycopy(options, 0, args, 4, options.length);
+
+        long t = System.nanoTime();
+        HashDBTool tool = new HashDBTool();
+        boolean success = tool.run(args);
+        tool.finish(success);
+        double seconds = (System.nanoTime() - t) / 1e9;
+        if (!success) {
+            throw new IOException("Import failed: " + String.join(" ", args));
+        }
+        System.out.printf("%s: %d records in %.0fs, database with %d MB%n", db.getName(), records, seconds,
+                db.length() >> 20);
+        return records / seconds;
+    }
+
+    private static void generate(File dir, long numHashes, int numFiles) throws IOException {
+        Files.createDirectories(dir.toPath());
+        long perFile = (numHashes + numFiles - 1) / numFiles;
+        for (int f = 0; f < numFiles; f++) {
+            File file = new File(dir, "hashes-" + f + ".csv");
+            long first = f * perFile;
+            long last = Math.min(numHashes, first + perFile);
+            try (BufferedWriter out = new BufferedWriter(new FileWriter(file), 1 << 20)) {
+                out.write("MD5,SHA1,Category\n");
+                StringBuilder sb = new StringBuilder();
+                for (long i = first; i < last; i++) {
+                    // every 10th record repeats a hash of a previous file
+                    long id = i % 10 == 9 && first > 0 ? i % first : i;
+                    sb.setLength(0);
+                    appendHex(sb, id, 16);
+                    sb.append(',');
+                    appendHex(sb, ~id, 20);
+                    sb.append(",category").append(i % 7).append('\n');
+                    out.append(sb);
+                }
+            }
+        }
+    }
+
+    private static void appendHex(StringBuilder sb, long seed, int bytes) {
+        long x = seed;
+        for (int i = 0; i < bytes; i += 8) {
+            // splitmix64
+            x += 0x9E3779B97F4A7C15L;
+            long z = x;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z ^= z >>> 31;
+            String hex = Long.toHexString(z);
+            int len = Math.min(16, (bytes - i) * 2);
+            for (int j = hex.length(); j < 16; j++) {
+                hex = "0" + hex;
+            }
+            sb.append(hex, 0, len);
+        }
+    }
+
+}
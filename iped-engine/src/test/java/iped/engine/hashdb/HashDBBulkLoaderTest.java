@@ -0,0 +1,188 @@
+package iped.engine.hashdb;
+
+import static iped.engine.hashdb.HashDBTestUtils.NUM_HASHES;
+import static iped.engine.hashdb.HashDBTestUtils.build;
+import static iped.engine.hashdb.HashDBTestUtils.createTempDir;
+import static iped.engine.hashdb.HashDBTestUtils.delete;
+import static iped.engine.hashdb.HashDBTestUtils.lookup;
+import static iped.engine.hashdb.HashDBTestUtils.randomHashes;
+import static iped.engine.hashdb.HashDBTestUtils.run;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteConfig;
+
+public class HashDBBulkLoaderTest {
+
+    private static final List<String> BULK_OPTIONS = Arrays.asList("-bulk", "-threads", "2");
+
+    private File dir;
+
+    // all MD5 and SHA1 pairs written to the inputs
+    private List<byte[][]> hashes;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = createTempDir("hashdbbulk");
+        hashes = randomHashes(new Random(1), NUM_HASHES);
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    /**
+     * Writes a CSV with the given hash types of the hashes from start to end.
+     */
+    private File writeCsv(String name, int start, int end, int[] hashTypes, String category) throws IOException {
+        File csv = new File(dir, name);
+        try (PrintWriter out = new PrintWriter(csv, StandardCharsets.UTF_8)) {
+            for (int hashType : hashTypes) {
+                out.print(HashDB.hashTypes[hashType] + ",");
+            }
+            out.println("Category");
+            for (int i = start; i < end; i++) {
+                for (int hashType : hashTypes) {
+                    out.print(HashDB.hashBytesToStr(hashes.get(i)[hashType]) + ",");
+                }
+                out.println(category + i % 3);
+            }
+        }
+        return csv;
+    }
+
+    private static void buildBulk(File db, File... inputs) {
+        assertTrue(run(db, true, BULK_OPTIONS, inputs));
+    }
+
+    private static long countHashes(File db) throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        try (Connection conn = config.createConnection("jdbc:sqlite:" + db.getAbsolutePath());
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("select count(*) from HASHES")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Checks both databases return the same properties looking up each hash
+     * alone.
+     */
+    private void assertSameLookups(File expectedDB, File db) throws Exception {
+        assertEquals(countHashes(expectedDB), countHashes(db));
+        HashDBDataSource expected = new HashDBDataSource(expectedDB, false);
+        HashDBDataSource actual = new HashDBDataSource(db, false);
+        try {
+            for (byte[][] h : hashes) {
+                for (int hashType = 0; hashType < 2; hashType++) {
+                    assertEquals(lookup(expected, hashType, h[hashType]), lookup(actual, hashType, h[hashType]));
+                }
+            }
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    @Test
+    public void testSameAsRowByRowBuild() throws Exception {
+        // overlapped inputs, so records read by different threads are combined
+        File a = writeCsv("a.csv", 0, NUM_HASHES * 2 / 3, new int[] { 0, 1 }, "a");
+        File b = writeCsv("b.csv", NUM_HASHES / 3, NUM_HASHES, new int[] { 0, 1 }, "b");
+        File rowDB = new File(dir, "row.db");
+        File bulkDB = new File(dir, "bulk.db");
+        build(rowDB, a, b);
+        buildBulk(bulkDB, a, b);
+
+        assertEquals(NUM_HASHES, countHashes(bulkDB));
+        assertSameLookups(rowDB, bulkDB);
+        assertFalse(HashDBBulkLoader.getWorkDir(bulkDB).exists());
+    }
+
+    @Test
+    public void testRecordsKeyedByDifferentHashTypes() throws Exception {
+        // records with just the SHA1 are keyed by other hash type than the MD5 and
+        // SHA1 ones, so they are combined after the merge, when the unique indexes are
+        // created, while the ones with just the MD5 are combined by the merge
+        File a = writeCsv("a.csv", 0, NUM_HASHES / 2, new int[] { 0, 1 }, "a");
+        File b = writeCsv("b.csv", NUM_HASHES / 4, NUM_HASHES * 3 / 4, new int[] { 1 }, "b");
+        File c = writeCsv("c.csv", NUM_HASHES / 4, NUM_HASHES, new int[] { 0 }, "c");
+        File rowDB = new File(dir, "row.db");
+        File bulkDB = new File(dir, "bulk.db");
+        build(rowDB, a, b, c);
+        buildBulk(bulkDB, a, b, c);
+
+        assertEquals(NUM_HASHES * 5 / 4, countHashes(bulkDB));
+        assertSameLookups(rowDB, bulkDB);
+
+        HashDBDataSource dataSource = new HashDBDataSource(bulkDB, false);
+        try {
+            int i = NUM_HASHES / 3;
+            String expected = "a" + i % 3 + "|b" + i % 3 + "|c" + i % 3;
+            assertEquals(expected, lookup(dataSource, 0, hashes.get(i)[0]).get("Category"));
+            assertEquals(expected, lookup(dataSource, 1, hashes.get(i)[1]).get("Category"));
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void testResumeAfterInterruption() throws Exception {
+        File a = writeCsv("a.csv", 0, NUM_HASHES / 2, new int[] { 0, 1 }, "a");
+        File b = writeCsv("b.csv", NUM_HASHES / 2, NUM_HASHES, new int[] { 0, 1 }, "b");
+        File bulkDB = new File(dir, "bulk.db");
+
+        // a.csv read, but the database was not committed
+        assertTrue(run(bulkDB, false, BULK_OPTIONS, a));
+        File workDir = HashDBBulkLoader.getWorkDir(bulkDB);
+        assertTrue(workDir.isDirectory());
+        // run being written when the build was interrupted
+        Files.write(new File(workDir, "run-99.bin").toPath(), new byte[] { 1, 2, 3 });
+
+        // same size and date, so the resumed build uses the runs already sorted instead
+        // of reading it again
+        long lastModified = a.lastModified();
+        List<byte[][]> original = new ArrayList<>(hashes);
+        for (int i = 0; i < NUM_HASHES / 2; i++) {
+            byte[][] h = hashes.get(i).clone();
+            h[0] = h[0].clone();
+            h[0][0] ^= 1;
+            hashes.set(i, h);
+        }
+        File changed = writeCsv("a.csv", 0, NUM_HASHES / 2, new int[] { 0, 1 }, "a");
+        changed.setLastModified(lastModified);
+        assertEquals(a.length(), changed.length());
+
+        buildBulk(bulkDB, a, b);
+        assertFalse(workDir.exists());
+
+        File rowDB = new File(dir, "row.db");
+        File originalA = new File(dir, "original");
+        Files.createDirectories(originalA.toPath());
+        hashes.clear();
+        hashes.addAll(original);
+        build(rowDB, writeCsv("original/a.csv", 0, NUM_HASHES / 2, new int[] { 0, 1 }, "a"), b);
+        assertSameLookups(rowDB, bulkDB);
+    }
+
+}
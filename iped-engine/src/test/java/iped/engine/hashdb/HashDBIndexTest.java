@@ -0,0 +1,134 @@
+package iped.engine.hashdb;
+
+import static iped.engine.hashdb.HashDBTestUtils.NUM_HASHES;
+import static iped.engine.hashdb.HashDBTestUtils.build;
+import static iped.engine.hashdb.HashDBTestUtils.createTempDir;
+import static iped.engine.hashdb.HashDBTestUtils.delete;
+import static iped.engine.hashdb.HashDBTestUtils.lookup;
+import static iped.engine.hashdb.HashDBTestUtils.randomHash;
+import static iped.engine.hashdb.HashDBTestUtils.randomHashes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashDBIndexTest {
+
+    private File dir, db;
+
+    // categories expected for each MD5 and SHA1 pair
+    private List<byte[][]> hashes;
+    private final List<Set<String>> categories = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        dir = createTempDir("hashdb");
+        db = new File(dir, "hashes.db");
+        File csv = new File(dir, "hashes.csv");
+        hashes = randomHashes(new Random(1), NUM_HASHES);
+        try (PrintWriter out = new PrintWriter(csv, StandardCharsets.UTF_8)) {
+            out.println("MD5,SHA1,Category");
+            for (int i = 0; i < NUM_HASHES; i++) {
+                categories.add(new TreeSet<>());
+                addRecord(out, i, "cat" + i % 5);
+                // every 10th hash repeated later with other category, must be combined
+                if (i % 10 == 9) {
+                    addRecord(out, i - 5, "repeated");
+                }
+            }
+        }
+        build(db, csv);
+        HashDBIndex.build(db);
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    private void addRecord(PrintWriter out, int i, String category) {
+        byte[][] h = hashes.get(i);
+        out.println(HashDB.hashBytesToStr(h[0]) + "," + HashDB.hashBytesToStr(h[1]) + "," + category);
+        categories.get(i).add(category);
+    }
+
+    @Test
+    public void testLookupHits() throws Exception {
+        HashDBDataSource sqlite = new HashDBDataSource(db, false);
+        HashDBDataSource compiled = new HashDBDataSource(db, true);
+        try {
+            assertTrue(compiled.isUsingCompiledIndex());
+            for (int i = 0; i < hashes.size(); i++) {
+                String expected = HashDB.toStr(categories.get(i));
+                for (int hashType = 0; hashType < 2; hashType++) {
+                    byte[] hash = hashes.get(i)[hashType];
+                    Map<String, String> properties = lookup(compiled, hashType, hash);
+                    assertEquals(expected, properties.get("Category"));
+                    assertEquals(lookup(sqlite, hashType, hash), properties);
+                }
+                Map<String, String> properties = new HashMap<>();
+                compiled.lookup(hashes.get(i), properties);
+                assertEquals(expected, properties.get("Category"));
+            }
+        } finally {
+            sqlite.close();
+            compiled.close();
+        }
+    }
+
+    @Test
+    public void testLookupMisses() throws Exception {
+        HashDBDataSource sqlite = new HashDBDataSource(db, false);
+        HashDBDataSource compiled = new HashDBDataSource(db, true);
+        HashDBIndex index = HashDBIndex.open(db);
+        try {
+            assertNotNull(index);
+            assertEquals(NUM_HASHES, index.getCount(0));
+            assertFalse(index.isPresent(2));
+            Random r = new Random(2);
+            for (int i = 0; i < NUM_HASHES; i++) {
+                for (int hashType = 0; hashType < 2; hashType++) {
+                    byte[] hash = randomHash(r, hashType);
+                    assertEquals(-1, index.findHashId(hashType, hash));
+                    assertTrue(lookup(compiled, hashType, hash).isEmpty());
+                    assertTrue(lookup(sqlite, hashType, hash).isEmpty());
+                }
+                // hash of a type not in the database
+                assertTrue(lookup(compiled, 2, randomHash(r, 2)).isEmpty());
+            }
+        } finally {
+            sqlite.close();
+            compiled.close();
+        }
+    }
+
+    @Test
+    public void testOutdatedIndex() throws IOException {
+        assertNotNull(HashDBIndex.open(db));
+        File csv = new File(dir, "other.csv");
+        try (PrintWriter out = new PrintWriter(csv, StandardCharsets.UTF_8)) {
+            out.println("MD5,Category");
+            out.println(HashDB.hashBytesToStr(randomHash(new Random(3), 0)) + ",other");
+        }
+        build(db, csv);
+        assertNull(HashDBIndex.open(db));
+    }
+
+}
@@ -0,0 +1,110 @@
+package iped.engine.hashdb;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Compares the lookup rate of the compiled hashes database index against the
+ * SQLite queries, using hashes sampled from the database plus the same number
+ * of absent hashes. The index must be built before, with HashDBTool -compile.
+ *
+ * Usage: HashDBLookupBenchmark <hashes DB file> [samples] [seconds] [threads...]
+ */
+public class HashDBLookupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File dbFile = new File(args[0]);
+        int samples = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int[] threads = { 1, 8, 32 };
+        if (args.length > 3) {
+            threads = new int[args.length - 3];
+            for (int i = 3; i < args.length; i++) {
+                threads[i - 3] = Integer.parseInt(args[i]);
+            }
+        }
+
+        List<byte[]> hashes = sample(dbFile, samples);
+        System.out.println("Sampled hashes: " + hashes.size());
+
+        HashDBDataSource sqlite = new HashDBDataSource(dbFile, false);
+        HashDBDataSource compiled = new HashDBDataSource(dbFile, true);
+        if (!compiled.isUsingCompiledIndex()) {
+            System.out.println("Compiled index not found or outdated, run HashDBTool -compile first.");
+            return;
+        }
+
+        System.out.println("threads\tsqlite lookups/s\tcompiled lookups/s");
+        for (int n : threads) {
+            double a = run(sqlite, hashes, n, seconds);
+            double b = run(compiled, hashes, n, seconds);
+            System.out.printf("%d\t%.0f\t%.0f%n", n, a, b);
+        }
+        sqlite.close();
+        compiled.close();
+    }
+
+    private static List<byte[]> sample(File dbFile, int samples) throws Exception {
+        List<byte[]> hashes = new ArrayList<>();
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        try (Connection conn = config.createConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+                Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt
+                    .executeQuery("select MD5 from HASHES where MD5 is not null order by random() limit " + samples);
+            while (rs.next()) {
+                byte[] md5 = rs.getBytes(1);
+                hashes.add(md5);
+                // an absent hash, most lookups during processing do not find a hit
+                byte[] absent = md5.clone();
+                absent[0] ^= 0x5A;
+                absent[7] ^= 0xA5;
+                hashes.add(absent);
+            }
+            rs.close();
+        }
+        return hashes;
+    }
+
+    private static double run(HashDBDataSource dataSource, List<byte[]> hashes, int numThreads, int seconds)
+            throws Exception {
+        AtomicLong lookups = new AtomicLong();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] workers = new Thread[numThreads];
+        for (int k = 0; k < numThreads; k++) {
+            final int start = k * 7919;
+            workers[k] = new Thread(() -> {
+                byte[][] query = new byte[HashDB.hashTypes.length][];
+                Map<String, String> properties = new HashMap<>();
+                long cnt = 0;
+                int i = start;
+                try {
+                    while (System.nanoTime() < end) {
+                        query[0] = hashes.get(i++ % hashes.size());
+                        properties.clear();
+                        dataSource.lookup(query, properties);
+                        cnt++;
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                lookups.addAndGet(cnt);
+            });
+            workers[k].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return lookups.get() / (double) seconds;
+    }
+
+}
@@ -0,0 +1,96 @@
+package iped.engine.hashdb;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Fixture shared by the hashes database tests.
+ */
+class HashDBTestUtils {
+
+    static final int NUM_HASHES = 2000;
+
+    static File createTempDir(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    static byte[] randomHash(Random r, int hashType) {
+        byte[] hash = new byte[HashDB.hashBytesLen[hashType]];
+        r.nextBytes(hash);
+        return hash;
+    }
+
+    /**
+     * @return random MD5 and SHA1 pairs, indexed by hash type.
+     */
+    static List<byte[][]> randomHashes(Random r, int count) {
+        List<byte[][]> hashes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[][] h = new byte[HashDB.hashTypes.length][];
+            h[0] = randomHash(r, 0);
+            h[1] = randomHash(r, 1);
+            hashes.add(h);
+        }
+        return hashes;
+    }
+
+    /**
+     * Builds the database with HashDBTool, adding the inputs if it exists.
+     */
+    static void build(File db, File... inputs) {
+        assertTrue(run(db, true, Collections.emptyList(), inputs));
+    }
+
+    /**
+     * Runs HashDBTool with the given options over the inputs.
+     * 
+     * @param commit
+     *            false to leave the database as if the tool was interrupted.
+     * @return if the inputs were successfully read.
+     */
+    static boolean run(File db, boolean commit, List<String> options, File... inputs) {
+        List<String> args = new ArrayList<>();
+        for (File input : inputs) {
+            args.add("-d");
+            args.add(input.getPath());
+        }
+        args.add("-o");
+        args.add(db.getPath());
+        args.addAll(options);
+        HashDBTool tool = new HashDBTool();
+        boolean success = tool.run(args.toArray(new String[0]));
+        tool.finish(success && commit);
+        return success;
+    }
+
+    /**
+     * @return properties found looking up just the given hash.
+     */
+    static Map<String, String> lookup(HashDBDataSource dataSource, int hashType, byte[] hash) throws Exception {
+        byte[][] query = new byte[HashDB.hashTypes.length][];
+        query[hashType] = hash;
+        Map<String, String> properties = new HashMap<>();
+        dataSource.lookup(query, properties);
+        return properties;
+    }
+
+}
@@ -0,0 +1,287 @@
+package iped.engine.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlobStoreTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("blobstore").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        BlobStore store = BlobStore.get(dir);
+        if (store != null) {
+            store.close();
+        }
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private static byte[] content(int len, int seed) {
+        byte[] data = new byte[len];
+        Random r = new Random(seed);
+        // half zeros, half random, so some chunks are compressible
+        for (int i = len / 2; i < len; i++) {
+            data[i] = (byte) r.nextInt();
+        }
+        return data;
+    }
+
+    private static byte[] md5(byte[] data) throws Exception {
+        return MessageDigest.getInstance("MD5").digest(data);
+    }
+
+    private static byte[] read(SeekableByteChannel channel, long pos, int len) throws IOException {
+        channel.position(pos);
+        ByteBuffer bb = ByteBuffer.allocate(len);
+        while (bb.hasRemaining() && channel.read(bb) != -1) {
+        }
+        byte[] result = new byte[bb.position()];
+        bb.flip();
+        bb.get(result);
+        return result;
+    }
+
+    @Test
+    public void testRandomAccess() throws Exception {
+        byte[] data = content(1_000_000, 1);
+        byte[] hash = md5(data);
+        BlobStore store = BlobStore.open(dir, true);
+        assertTrue(store.put(hash, data, data.length));
+        assertFalse(store.put(hash, data, data.length));
+
+        try (SeekableByteChannel channel = store.openChannel(hash)) {
+            assertEquals(data.length, channel.size());
+            assertArrayEquals(data, read(channel, 0, data.length));
+            byte[] expected = new byte[200_000];
+            System.arraycopy(data, 700_000, expected, 0, expected.length);
+            assertArrayEquals(expected, read(channel, 700_000, expected.length));
+            assertEquals(0, read(channel, data.length, 10).length);
+        }
+
+        byte[] empty = new byte[0];
+        assertTrue(store.put(md5(empty), empty, 0));
+        try (SeekableByteChannel channel = store.openChannel(md5(empty))) {
+            assertEquals(0, channel.size());
+            assertEquals(-1, channel.read(ByteBuffer.allocate(10)));
+        }
+    }
+
+    @Test
+    public void testReopenAndRemove() throws Exception {
+        List<byte[]> contents = new ArrayList<>();
+        BlobStore store = BlobStore.open(dir, true);
+        // more contents than the initial index of some stripes supports
+        for (int i = 0; i < 60_000; i++) {
+            byte[] data = content(10 + i % 100, i);
+            contents.add(data);
+            store.put(md5(data), data, data.length);
+        }
+        store.close();
+
+        store = BlobStore.open(dir, false);
+        for (byte[] data : contents) {
+            try (SeekableByteChannel channel = store.openChannel(md5(data))) {
+                assertArrayEquals(data, read(channel, 0, data.length));
+            }
+        }
+
+        int removed = store.removeIf(hash -> (hash[15] & 1) == 0);
+        int expected = 0;
+        for (byte[] data : contents) {
+            byte[] hash = md5(data);
+            boolean isRemoved = (hash[15] & 1) == 0;
+            expected += isRemoved ? 1 : 0;
+            assertEquals(!isRemoved, store.contains(hash));
+        }
+        assertEquals(expected, removed);
+        store.close();
+
+        store = BlobStore.open(dir, false);
+        for (byte[] data : contents) {
+            byte[] hash = md5(data);
+            if ((hash[15] & 1) != 0) {
+                try (SeekableByteChannel channel = store.openChannel(hash)) {
+                    assertArrayEquals(data, read(channel, 0, data.length));
+                }
+            }
+        }
+    }
+
+    private static File getDataFile(File dir, byte[] hash) {
+        // same stripe selection of BlobStore
+        int stripe = (hash[0] & 0xFF) >> 4;
+        for (File file : dir.listFiles()) {
+            if (file.getName().startsWith(stripe + ".") && file.getName().endsWith(".dat")) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testIndexAheadOfData() throws Exception {
+        // contents in the same stripe
+        byte[] data1 = null, data2 = null;
+        for (int i = 0; data2 == null; i++) {
+            byte[] data = content(100_000, 100 + i);
+            if ((md5(data)[0] & 0xF0) == 0) {
+                if (data1 == null) {
+                    data1 = data;
+                } else {
+                    data2 = data;
+                }
+            }
+        }
+        BlobStore store = BlobStore.open(dir, true);
+        store.put(md5(data1), data1, data1.length);
+        store.close();
+        File dataFile = getDataFile(dir, md5(data1));
+        long size1 = dataFile.length();
+
+        store = BlobStore.open(dir, false);
+        store.put(md5(data2), data2, data2.length);
+        store.close();
+
+        // simulates a crash where the index entry reached the disk, but not the data
+        try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(size1 + 1000);
+        }
+        store = BlobStore.open(dir, false);
+        assertTrue(store.contains(md5(data1)));
+        assertFalse(store.contains(md5(data2)));
+        assertEquals(size1, dataFile.length());
+
+        assertTrue(store.put(md5(data2), data2, data2.length));
+        try (SeekableByteChannel channel = store.openChannel(md5(data2))) {
+            assertArrayEquals(data2, read(channel, 0, data2.length));
+        }
+        try (SeekableByteChannel channel = store.openChannel(md5(data1))) {
+            assertArrayEquals(data1, read(channel, 0, data1.length));
+        }
+    }
+
+    @Test
+    public void testDiscardIncompleteRecord() throws Exception {
+        byte[] data = content(200_000, 3);
+        BlobStore store = BlobStore.open(dir, true);
+        store.put(md5(data), data, data.length);
+        store.close();
+        File dataFile = getDataFile(dir, md5(data));
+        long size = dataFile.length();
+
+        // record partially written after the last commit, with the index kept
+        try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[5000]), size);
+        }
+        store = BlobStore.open(dir, false);
+        assertEquals(size, dataFile.length());
+        byte[] other = content(1000, 4);
+        assertTrue(store.put(md5(other), other, other.length));
+        try (SeekableByteChannel channel = store.openChannel(md5(data))) {
+            assertArrayEquals(data, read(channel, 0, data.length));
+        }
+    }
+
+    @Test
+    public void testRebuildLostIndex() throws Exception {
+        byte[] data = content(300_000, 2);
+        BlobStore store = BlobStore.open(dir, true);
+        store.put(md5(data), data, data.length);
+        store.close();
+        for (File file : dir.listFiles()) {
+            if (file.getName().endsWith(".idx")) {
+                file.delete();
+            }
+        }
+        store = BlobStore.open(dir, false);
+        try (SeekableByteChannel channel = store.openChannel(md5(data))) {
+            assertArrayEquals(data, read(channel, 0, data.length));
+        }
+    }
+
+    @Test
+    public void testInterruptedRemoval() throws Exception {
+        byte[] data = content(100_000, 5);
+        BlobStore store = BlobStore.open(dir, true);
+        store.put(md5(data), data, data.length);
+        store.close();
+        File dataFile = getDataFile(dir, md5(data));
+
+        // next generation files left by a removal interrupted before completing
+        String stripe = dataFile.getName().substring(0, dataFile.getName().indexOf('.'));
+        File tempData = new File(dir, stripe + ".1.dat.tmp");
+        File newIndex = new File(dir, stripe + ".1.12.idx");
+        Files.write(tempData.toPath(), new byte[1000]);
+        Files.write(newIndex.toPath(), new byte[1000]);
+
+        store = BlobStore.open(dir, false);
+        assertFalse(tempData.exists());
+        assertFalse(newIndex.exists());
+        assertEquals(dataFile, getDataFile(dir, md5(data)));
+        try (SeekableByteChannel channel = store.openChannel(md5(data))) {
+            assertArrayEquals(data, read(channel, 0, data.length));
+        }
+        assertEquals(1, store.removeIf(hash -> true));
+        assertFalse(store.contains(md5(data)));
+        for (File file : dir.listFiles()) {
+            assertFalse(file.getName().endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public void testOpenReadOnly() throws Exception {
+        byte[] data = content(200_000, 6);
+        BlobStore store = BlobStore.open(dir, true);
+        store.put(md5(data), data, data.length);
+        store.close();
+        File dataFile = getDataFile(dir, md5(data));
+        long size = dataFile.length();
+        try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[5000]), size);
+        }
+        int numFiles = dir.listFiles().length;
+
+        // the incomplete record is not discarded, but ignored
+        store = BlobStore.open(dir, false, true);
+        assertEquals(size + 5000, dataFile.length());
+        assertEquals(numFiles, dir.listFiles().length);
+        try (SeekableByteChannel channel = store.openChannel(md5(data))) {
+            assertArrayEquals(data, read(channel, 0, data.length));
+        }
+        byte[] other = content(1000, 7);
+        try {
+            store.put(md5(other), other, other.length);
+            fail("store is read only");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}
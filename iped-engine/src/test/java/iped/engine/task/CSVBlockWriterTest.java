@@ -0,0 +1,160 @@
+package iped.engine.task;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CSVBlockWriterTest {
+
+    private static final byte[] HEADER = "Name,Value\r\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final int NUM_PRODUCERS = 4;
+
+    private static final int LINES_PER_PRODUCER = 20_000;
+
+    // lines per block, so each producer submits many blocks
+    private static final int LINES_PER_BLOCK = 100;
+
+    private File dir;
+    private Path csv;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("csvblockwriter").toFile();
+        csv = new File(dir, "test.csv").toPath();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private static String line(int producer, int i) {
+        return producer + "," + i + "\r\n";
+    }
+
+    private static void submit(CSVBlockWriter writer, String... lines) throws IOException {
+        ByteBuffer block = writer.getFreeBlock();
+        for (String line : lines) {
+            block.put(line.getBytes(StandardCharsets.UTF_8));
+        }
+        writer.submit(block);
+    }
+
+    @Test
+    public void testHeaderAndAppend() throws IOException {
+        try (CSVBlockWriter writer = new CSVBlockWriter(csv, HEADER)) {
+            submit(writer, line(0, 0), line(0, 1));
+            assertEquals(HEADER.length + line(0, 0).length() + line(0, 1).length(), writer.sync());
+        }
+        // header is not written again to a non empty file
+        try (CSVBlockWriter writer = new CSVBlockWriter(csv, HEADER)) {
+            assertEquals(Files.size(csv), writer.sync());
+            submit(writer, line(1, 0));
+        }
+        String expected = new String(HEADER, StandardCharsets.UTF_8) + line(0, 0) + line(0, 1) + line(1, 0);
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(csv));
+    }
+
+    @Test
+    public void testBlocksOrderAndSyncOffsets() throws Exception {
+        AtomicLong submittedBytes = new AtomicLong();
+        List<Long> syncSizes = new ArrayList<>();
+        List<Long> minSizes = new ArrayList<>();
+        IOException[] error = new IOException[1];
+
+        try (CSVBlockWriter writer = new CSVBlockWriter(csv, HEADER)) {
+            Thread[] producers = new Thread[NUM_PRODUCERS];
+            for (int p = 0; p < NUM_PRODUCERS; p++) {
+                final int producer = p;
+                producers[p] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < LINES_PER_PRODUCER; i += LINES_PER_BLOCK) {
+                            String[] lines = new String[LINES_PER_BLOCK];
+                            long length = 0;
+                            for (int k = 0; k < LINES_PER_BLOCK; k++) {
+                                lines[k] = line(producer, i + k);
+                                length += lines[k].length();
+                            }
+                            submit(writer, lines);
+                            submittedBytes.addAndGet(length);
+                        }
+                    } catch (IOException e) {
+                        error[0] = e;
+                    }
+                });
+                producers[p].start();
+            }
+            // commits while the producers keep appending
+            boolean running = true;
+            while (running) {
+                running = false;
+                for (Thread producer : producers) {
+                    running |= producer.isAlive();
+                }
+                long minSize = HEADER.length + submittedBytes.get();
+                syncSizes.add(writer.sync());
+                minSizes.add(minSize);
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+
+        byte[] content = Files.readAllBytes(csv);
+        long expectedSize = HEADER.length + submittedBytes.get();
+        assertEquals(expectedSize, content.length);
+        assertArrayEquals(HEADER, Arrays.copyOf(content, HEADER.length));
+
+        // every line written once, lines of each block together and blocks of each
+        // producer in the order submitted
+        String[] lines = new String(content, HEADER.length, content.length - HEADER.length, StandardCharsets.UTF_8)
+                .split("\r\n");
+        assertEquals(NUM_PRODUCERS * LINES_PER_PRODUCER, lines.length);
+        int[] next = new int[NUM_PRODUCERS];
+        for (int n = 0; n < lines.length; n++) {
+            String[] fields = lines[n].split(",");
+            int producer = Integer.parseInt(fields[0]);
+            int i = Integer.parseInt(fields[1]);
+            assertEquals(next[producer]++, i);
+            if (i % LINES_PER_BLOCK != 0) {
+                assertEquals(line(producer, i - 1), lines[n - 1] + "\r\n");
+            }
+        }
+
+        // each commit offset covers the blocks submitted before it and is a line
+        // boundary
+        long previous = HEADER.length;
+        for (int n = 0; n < syncSizes.size(); n++) {
+            long size = syncSizes.get(n);
+            assertTrue(size >= previous);
+            assertTrue(size >= minSizes.get(n));
+            assertTrue(size <= expectedSize);
+            assertTrue(size == HEADER.length || (content[(int) size - 2] == '\r' && content[(int) size - 1] == '\n'));
+            previous = size;
+        }
+        assertEquals(expectedSize, previous);
+    }
+
+}
@@ -0,0 +1,207 @@
+package iped.engine.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.DirectoryStream.Filter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import iped.configuration.Configurable;
+import iped.data.IItem;
+import iped.engine.config.ConfigurationManager;
+import iped.engine.data.Item;
+import iped.engine.task.index.IndexItem;
+
+public class TaskResultsStoreTest {
+
+    private static final String HASH = "0123456789ABCDEF0123456789ABCDEF";
+
+    private File dir;
+    private TestConfig taskConfig, textConfig;
+    private TestTask task;
+
+    public static class TestConfig implements Configurable<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private String value;
+
+        private TestConfig(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public Filter<Path> getResourceLookupFilter() {
+            return path -> false;
+        }
+
+        @Override
+        public void processConfig(Path resource) {
+        }
+
+        @Override
+        public String getConfiguration() {
+            return value;
+        }
+
+        @Override
+        public void setConfiguration(String config) {
+            this.value = config;
+        }
+    }
+
+    /**
+     * Config the test task depends on, e.g. the text extraction one.
+     */
+    public static class TextConfig extends TestConfig {
+
+        private static final long serialVersionUID = 1L;
+
+        private TextConfig(String value) {
+            super(value);
+        }
+    }
+
+    private static class TestTask extends AbstractTask {
+
+        @Override
+        public List<Configurable<?>> getConfigurables() {
+            return Collections.singletonList(new TestConfig(null));
+        }
+
+        @Override
+        protected boolean isResultReplayable() {
+            return true;
+        }
+
+        @Override
+        protected List<Configurable<?>> getResultDependencies() {
+            return Collections.singletonList(new TextConfig(null));
+        }
+
+        @Override
+        public void init(ConfigurationManager configurationManager) {
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        protected void process(IItem evidence) {
+            TestConfig config = ConfigurationManager.get().findObject(TestConfig.class);
+            evidence.setExtraAttribute("result", config.getConfiguration());
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("taskresults").toFile();
+        ConfigurationManager configurationManager = ConfigurationManager.createInstance(null);
+        taskConfig = new TestConfig("a");
+        textConfig = new TextConfig("b");
+        configurationManager.addObject(taskConfig);
+        configurationManager.addObject(textConfig);
+
+        task = new TestTask();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TaskResultsStore.close();
+        ConfigurationManager.get().removeObject(taskConfig);
+        ConfigurationManager.get().removeObject(textConfig);
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private static Item newItem(String trackId, String hash) {
+        Item item = new Item();
+        item.setExtraAttribute(IndexItem.TRACK_ID, trackId);
+        item.setHash(hash);
+        return item;
+    }
+
+    /**
+     * Processes the item storing its results in a new store, as a first
+     * processing of the case.
+     */
+    private void processAndStore(Item item) throws Exception {
+        TaskResultsStore.open(new File(dir, TaskResultsStore.DB_NAME));
+        TaskResultsStore store = TaskResultsStore.get();
+        TaskResultsStore.Results before = store.snapshot(item);
+        task.process(item);
+        store.store(task, item, before);
+        TaskResultsStore.close();
+    }
+
+    /**
+     * Tries to replay the results in a new store, as processing the case again.
+     */
+    private boolean replay(Item item) throws Exception {
+        TaskResultsStore.open(new File(dir, TaskResultsStore.DB_NAME));
+        try {
+            return TaskResultsStore.get().replay(task, item);
+        } finally {
+            TaskResultsStore.close();
+        }
+    }
+
+    @Test
+    public void testReplaySameConfig() throws Exception {
+        processAndStore(newItem("1", HASH));
+
+        Item item = newItem("1", HASH);
+        assertTrue(replay(item));
+        assertEquals("a", item.getExtraAttribute("result"));
+    }
+
+    @Test
+    public void testChangedItem() throws Exception {
+        processAndStore(newItem("1", HASH));
+
+        Item item = newItem("1", HASH.replace('0', 'F'));
+        assertFalse(replay(item));
+        assertNull(item.getExtraAttribute("result"));
+        assertFalse(replay(newItem("2", HASH)));
+    }
+
+    @Test
+    public void testChangedTaskConfig() throws Exception {
+        processAndStore(newItem("1", HASH));
+
+        taskConfig.setConfiguration("c");
+        Item item = newItem("1", HASH);
+        assertFalse(replay(item));
+        assertNull(item.getExtraAttribute("result"));
+
+        // results of the new config replace the previous ones
+        processAndStore(newItem("1", HASH));
+        assertTrue(replay(item));
+        assertEquals("c", item.getExtraAttribute("result"));
+    }
+
+    @Test
+    public void testChangedResultDependency() throws Exception {
+        processAndStore(newItem("1", HASH));
+
+        textConfig.setConfiguration("c");
+        assertFalse(replay(newItem("1", HASH)));
+
+        textConfig.setConfiguration("b");
+        assertTrue(replay(newItem("1", HASH)));
+    }
+
+}
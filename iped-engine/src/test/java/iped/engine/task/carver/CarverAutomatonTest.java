@@ -0,0 +1,223 @@
+package iped.engine.task.carver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.arabidopsis.ahocorasick.AhoCorasick;
+import org.arabidopsis.ahocorasick.SearchResult;
+import org.junit.Test;
+
+import iped.carvers.api.CarverType;
+import iped.carvers.api.Signature;
+
+public class CarverAutomatonTest {
+
+    private static CarverType[] getCarverTypes() throws Exception {
+        CarverType zip = new CarverType();
+        zip.setName("ZIP");
+        zip.addHeader("PK\\03\\04");
+        zip.addFooter("PK\\05\\06??????????????????");
+
+        CarverType ole = new CarverType();
+        ole.setName("OLE");
+        ole.addHeader("\\d0\\cf\\11\\e0\\a1\\b1\\1a\\e1");
+
+        CarverType split = new CarverType();
+        split.setName("SPLIT");
+        split.addHeader("RIFF????WAVE");
+        split.addHeader("K\\03");
+
+        return new CarverType[] { zip, ole, split };
+    }
+
+    private static byte[] getData(CarverType[] types) {
+        Random r = new Random(0);
+        byte[] data = new byte[1 << 20];
+        // few distinct bytes, so prefixes of the patterns are frequent
+        String chars = "PK\03\04\05\06RIFWAVE\u00d0\u00cf";
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) chars.charAt(r.nextInt(chars.length()));
+        }
+        for (int n = 0; n < 500; n++) {
+            CarverType type = types[r.nextInt(types.length)];
+            Signature sig = type.getSignatures().get(r.nextInt(type.getSignatures().size()));
+            int pos = r.nextInt(data.length - sig.getLength());
+            for (int k = 0; k < sig.seqs.length; k++) {
+                byte[] seq = sig.seqs[k];
+                System.arraycopy(seq, 0, data, pos + sig.seqEndPos[k] - seq.length, seq.length);
+            }
+        }
+        return data;
+    }
+
+    private static List<String> toList(CarverAutomaton automaton, CarverAutomaton.Hits hits, int base) {
+        List<String> result = new ArrayList<>();
+        for (int h = 0; h < hits.size(); h++) {
+            int state = hits.getState(h);
+            for (int o = automaton.getOutputStart(state); o < automaton.getOutputEnd(state); o++) {
+                int p = automaton.getOutput(o);
+                result.add((base + hits.getEnd(h)) + ":" + automaton.getSignature(p).getSigString() + ":"
+                        + automaton.getSequence(p));
+            }
+        }
+        return result;
+    }
+
+    private static List<String> searchTree(CarverType[] types, byte[] data) {
+        AhoCorasick tree = new AhoCorasick();
+        for (CarverType type : types) {
+            for (Signature sig : type.getSignatures()) {
+                for (int k = 0; k < sig.seqs.length; k++) {
+                    tree.add(sig.seqs[k], new Object[] { sig, k });
+                }
+            }
+        }
+        tree.prepare();
+        List<String> result = new ArrayList<>();
+        Iterator<SearchResult> it = tree.search(data);
+        while (it.hasNext()) {
+            SearchResult sr = it.next();
+            for (Object out : sr.getOutputs()) {
+                Object[] o = (Object[]) out;
+                result.add(sr.getLastIndex() + ":" + ((Signature) o[0]).getSigString() + ":" + o[1]);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testSameHitsOfPointerTree() throws Exception {
+        CarverType[] types = getCarverTypes();
+        byte[] data = getData(types);
+        CarverAutomaton automaton = CarverAutomaton.compile(types);
+        assertEquals(8, automaton.getMaxPatternLength());
+
+        CarverAutomaton.Hits hits = new CarverAutomaton.Hits();
+        automaton.scan(data, 0, data.length, 0, CarverAutomaton.ROOT, hits);
+        List<String> expected = searchTree(types, data);
+        assertEquals(expected, toList(automaton, hits, 0));
+    }
+
+    @Test
+    public void testContinuedScan() throws Exception {
+        CarverType[] types = getCarverTypes();
+        byte[] data = getData(types);
+        CarverAutomaton automaton = CarverAutomaton.compile(types);
+
+        CarverAutomaton.Hits hits = new CarverAutomaton.Hits();
+        automaton.scan(data, 0, data.length, 0, CarverAutomaton.ROOT, hits);
+        List<String> expected = toList(automaton, hits, 0);
+
+        List<String> result = new ArrayList<>();
+        int state = CarverAutomaton.ROOT;
+        for (int start = 0; start < data.length; start += 1001) {
+            int end = Math.min(data.length, start + 1001);
+            byte[] chunk = new byte[end - start];
+            System.arraycopy(data, start, chunk, 0, chunk.length);
+            hits.clear();
+            state = automaton.scan(chunk, 0, chunk.length, 0, state, hits);
+            result.addAll(toList(automaton, hits, start));
+        }
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void testOverlappedSegments() throws Exception {
+        CarverType[] types = getCarverTypes();
+        byte[] data = getData(types);
+        CarverAutomaton automaton = CarverAutomaton.compile(types);
+
+        CarverAutomaton.Hits hits = new CarverAutomaton.Hits();
+        int expectedState = automaton.scan(data, 0, data.length, 0, CarverAutomaton.ROOT, hits);
+        List<String> expected = toList(automaton, hits, 0);
+
+        List<String> result = new ArrayList<>();
+        int state = CarverAutomaton.ROOT;
+        int segmentLen = data.length / 7;
+        for (int i = 0; i < 7; i++) {
+            int start = i * segmentLen;
+            int end = i == 6 ? data.length : start + segmentLen;
+            int from = Math.max(0, start - automaton.getMaxPatternLength());
+            hits.clear();
+            state = automaton.scan(data, from, end, start, CarverAutomaton.ROOT, hits);
+            result.addAll(toList(automaton, hits, 0));
+        }
+        assertEquals(expected, result);
+        assertEquals(expectedState, state);
+    }
+
+    @Test
+    public void testFoldedPatternsAcrossChunks() {
+        // hex viewer search: arbitrary patterns, text ones matched ignoring case
+        List<byte[]> patterns = Arrays.asList("needle".getBytes(StandardCharsets.US_ASCII),
+                "dle".getBytes(StandardCharsets.US_ASCII), new byte[] { 0, (byte) 0xFF, 0 },
+                new byte[] { (byte) 0xFF, 0 });
+        byte[] fold = new byte[256];
+        for (int c = 0; c < 256; c++) {
+            fold[c] = (byte) (c >= 'A' && c <= 'Z' ? c + 32 : c);
+        }
+        CarverAutomaton automaton = CarverAutomaton.compile(patterns, fold);
+        assertEquals(4, automaton.getNumPatterns());
+        assertEquals(6, automaton.getMaxPatternLength());
+
+        Random r = new Random(0);
+        byte[] data = new byte[100_000];
+        byte[] chars = "nNeEdDlL\0\u00ff".getBytes(StandardCharsets.ISO_8859_1);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = chars[r.nextInt(chars.length)];
+        }
+        for (int n = 0; n < 500; n++) {
+            byte[] pattern = patterns.get(r.nextInt(patterns.size()));
+            int pos = r.nextInt(data.length - pattern.length);
+            for (int k = 0; k < pattern.length; k++) {
+                boolean upper = pattern[k] >= 'a' && pattern[k] <= 'z' && r.nextBoolean();
+                data[pos + k] = (byte) (upper ? pattern[k] - 32 : pattern[k]);
+            }
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (int p = 0; p < patterns.size(); p++) {
+            byte[] pattern = patterns.get(p);
+            assertEquals(pattern.length, automaton.getPatternLength(p));
+            for (int start = 0; start + pattern.length <= data.length; start++) {
+                int k = 0;
+                while (k < pattern.length && fold[data[start + k] & 0xFF] == pattern[k]) {
+                    k++;
+                }
+                if (k == pattern.length) {
+                    expected.add(start + ":" + p);
+                }
+            }
+        }
+        Collections.sort(expected);
+
+        // chunks shorter than the patterns, so matches cross many buffers
+        for (int chunkSize : new int[] { 1, 4, 1001 }) {
+            List<String> result = new ArrayList<>();
+            CarverAutomaton.Hits hits = new CarverAutomaton.Hits();
+            int state = CarverAutomaton.ROOT;
+            for (int start = 0; start < data.length; start += chunkSize) {
+                byte[] chunk = Arrays.copyOfRange(data, start, Math.min(data.length, start + chunkSize));
+                hits.clear();
+                state = automaton.scan(chunk, 0, chunk.length, 0, state, hits);
+                for (int h = 0; h < hits.size(); h++) {
+                    int hitState = hits.getState(h);
+                    for (int o = automaton.getOutputStart(hitState); o < automaton.getOutputEnd(hitState); o++) {
+                        int p = automaton.getOutput(o);
+                        result.add((start + hits.getEnd(h) - automaton.getPatternLength(p)) + ":" + p);
+                    }
+                }
+            }
+            Collections.sort(result);
+            assertEquals(expected, result);
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package iped.engine.task.carver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.arabidopsis.ahocorasick.AhoCorasick;
+import org.arabidopsis.ahocorasick.SearchResult;
+import org.arabidopsis.ahocorasick.Searcher;
+
+import iped.carvers.api.CarverType;
+import iped.carvers.api.Signature;
+
+/**
+ * Measures the signature scanning throughput of the default carver
+ * configuration, in MB/s and MB/s per core, of the pointer based automaton
+ * against the compiled one, scanning 1MB buffers sequentially and windows split
+ * in overlapping segments scanned in parallel. Data is random with signatures
+ * of the configuration spread over it.
+ *
+ * Usage: CarverScanBenchmark [CarverConfig.xml] [MB] [threads...]
+ */
+public class CarverScanBenchmark {
+
+    private static final int BUF_SIZE = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        File config = new File(args.length > 0 ? args[0] : "../iped-app/resources/config/conf/CarverConfig.xml");
+        int mb = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        int[] threads = { 1, 2, 4, Runtime.getRuntime().availableProcessors() };
+        if (args.length > 2) {
+            threads = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                threads[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+
+        XMLCarverConfiguration carverConfig = new XMLCarverConfiguration();
+        carverConfig.loadXMLConfigFile(config);
+        carverConfig.configListener(null);
+        CarverAutomaton automaton = carverConfig.getAutomaton();
+        AhoCorasick tree = carverConfig.getPopulatedTree();
+        System.out.println("Patterns: " + automaton.getNumPatterns() + " states: " + automaton.getNumStates());
+
+        byte[] data = getData(automaton.getCarverTypes(), mb);
+
+        // warm up
+        scanTree(tree, data);
+        scanCompiled(automaton, data);
+
+        long t = System.nanoTime();
+        long hits = scanTree(tree, data);
+        print("pointer tree", 1, hits, mb, System.nanoTime() - t);
+
+        t = System.nanoTime();
+        hits = scanCompiled(automaton, data);
+        print("compiled", 1, hits, mb, System.nanoTime() - t);
+
+        for (int n : threads) {
+            if (n <= 1) {
+                continue;
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(n);
+            scanParallel(automaton, data, n, executor);
+            t = System.nanoTime();
+            hits = scanParallel(automaton, data, n, executor);
+            print("compiled parallel", n, hits, mb, System.nanoTime() - t);
+            executor.shutdown();
+        }
+    }
+
+    private static void print(String name, int threads, long hits, int mb, long nanos) {
+        double mbs = mb / (nanos / 1e9);
+        System.out.printf("%-20s threads=%-3d hits=%-8d %8.1f MB/s %8.1f MB/s per core%n", name, threads, hits, mbs,
+                mbs / threads);
+    }
+
+    private static byte[] getData(CarverType[] types, int mb) {
+        Random r = new Random(0);
+        byte[] data = new byte[mb * BUF_SIZE];
+        r.nextBytes(data);
+        List<Signature> sigs = new ArrayList<>();
+        for (CarverType type : types) {
+            for (Signature sig : type.getSignatures()) {
+                if (sig.seqs != null) {
+                    sigs.add(sig);
+                }
+            }
+        }
+        // about one signature each 64KB
+        for (int n = 0; n < data.length / 65536 && !sigs.isEmpty(); n++) {
+            Signature sig = sigs.get(r.nextInt(sigs.size()));
+            int pos = r.nextInt(data.length - sig.getLength());
+            for (int k = 0; k < sig.seqs.length; k++) {
+                byte[] seq = sig.seqs[k];
+                System.arraycopy(seq, 0, data, pos + sig.seqEndPos[k] - seq.length, seq.length);
+            }
+        }
+        return data;
+    }
+
+    private static long scanTree(AhoCorasick tree, byte[] data) {
+        long hits = 0;
+        byte[] buf = new byte[BUF_SIZE];
+        SearchResult lastResult = new SearchResult(tree.root, null, 0);
+        for (int off = 0; off < data.length; off += BUF_SIZE) {
+            // CarverTask used to copy each buffer
+            System.arraycopy(data, off, buf, 0, BUF_SIZE);
+            byte[] cBuf = new byte[BUF_SIZE];
+            System.arraycopy(buf, 0, cBuf, 0, BUF_SIZE);
+            lastResult = new SearchResult(lastResult.lastMatchedState, cBuf, 0);
+            Iterator<SearchResult> searcher = new Searcher(tree, tree.continueSearch(lastResult));
+            while (searcher.hasNext()) {
+                lastResult = searcher.next();
+                hits += lastResult.getOutputs().size();
+            }
+        }
+        return hits;
+    }
+
+    private static long countHits(CarverAutomaton automaton, CarverAutomaton.Hits hits) {
+        long count = 0;
+        for (int h = 0; h < hits.size(); h++) {
+            int state = hits.getState(h);
+            count += automaton.getOutputEnd(state) - automaton.getOutputStart(state);
+        }
+        return count;
+    }
+
+    private static long scanCompiled(CarverAutomaton automaton, byte[] data) {
+        long count = 0;
+        byte[] buf = new byte[BUF_SIZE];
+        CarverAutomaton.Hits hits = new CarverAutomaton.Hits();
+        int state = CarverAutomaton.ROOT;
+        for (int off = 0; off < data.length; off += BUF_SIZE) {
+            System.arraycopy(data, off, buf, 0, BUF_SIZE);
+            hits.clear();
+            state = automaton.scan(buf, 0, BUF_SIZE, 0, state, hits);
+            count += countHits(automaton, hits);
+        }
+        return count;
+    }
+
+    /**
+     * Same approach of CarverTask: windows of one segment per thread, the
+     * first continuing from the previous state and the others starting before
+     * their range.
+     */
+    private static long scanParallel(CarverAutomaton automaton, byte[] data, int threads, ExecutorService executor)
+            throws Exception {
+        long count = 0;
+        int window = threads * BUF_SIZE;
+        byte[] buf = new byte[window];
+        CarverAutomaton.Hits[] hits = new CarverAutomaton.Hits[threads];
+        for (int i = 0; i < threads; i++) {
+            hits[i] = new CarverAutomaton.Hits();
+        }
+        int overlap = automaton.getMaxPatternLength();
+        int state = CarverAutomaton.ROOT;
+        for (int off = 0; off + window <= data.length; off += window) {
+            System.arraycopy(data, off, buf, 0, window);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 1; i < threads; i++) {
+                CarverAutomaton.Hits segmentHits = hits[i];
+                int start = i * BUF_SIZE;
+                futures.add(executor.submit(() -> {
+                    segmentHits.clear();
+                    return automaton.scan(buf, start - overlap, start + BUF_SIZE, start, CarverAutomaton.ROOT,
+                            segmentHits);
+                }));
+            }
+            hits[0].clear();
+            automaton.scan(buf, 0, BUF_SIZE, 0, state, hits[0]);
+            for (Future<Integer> future : futures) {
+                state = future.get();
+            }
+            for (int i = 0; i < threads; i++) {
+                count += countHits(automaton, hits[i]);
+            }
+        }
+        return count;
+    }
+
+}
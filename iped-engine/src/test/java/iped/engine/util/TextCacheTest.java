@@ -0,0 +1,83 @@
+package iped.engine.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TextCacheTest {
+
+    private static String randomText(int len) {
+        Random r = new Random(len);
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            sb.append((char) (r.nextInt(10) == 0 ? ' ' : 'a' + r.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private static String read(TextCache cache) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        try (Reader reader = cache.getTextReader()) {
+            char[] cbuf = new char[10_000];
+            int i;
+            while ((i = reader.read(cbuf)) != -1) {
+                sb.append(cbuf, 0, i);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static TextCache write(String text, boolean diskCache) throws IOException {
+        TextCache cache = new TextCache();
+        cache.setEnableDiskCache(diskCache);
+        char[] buf = text.toCharArray();
+        for (int i = 0; i < buf.length; i += 7777) {
+            cache.write(buf, i, Math.min(7777, buf.length - i));
+        }
+        return cache;
+    }
+
+    @Test
+    public void testSmallText() throws IOException {
+        TextCache cache = write("some text", true);
+        assertEquals(9, cache.getSize());
+        assertEquals("some text", read(cache));
+        assertEquals("some text", read(cache));
+        cache.close();
+    }
+
+    @Test
+    public void testSpilledText() throws IOException {
+        String text = randomText(12_000_000);
+        long spilled = TextCache.getSpilledTexts();
+        TextCache cache = write(text, true);
+        assertEquals(spilled + 1, TextCache.getSpilledTexts());
+        assertEquals(text.length(), cache.getSize());
+        assertEquals(text, read(cache));
+
+        TextCache chunk = cache.clone();
+        chunk.setTextBounds(5_000_123, 1_000_000);
+        assertEquals(text.substring(5_000_123, 6_000_123), read(chunk));
+        chunk.close();
+
+        TextCache end = cache.clone();
+        end.setTextBounds(11_999_000, 1000);
+        assertEquals(text.substring(11_999_000), read(end));
+        end.close();
+        cache.close();
+    }
+
+    @Test
+    public void testTruncatedWithoutDiskCache() throws IOException {
+        String text = randomText(10_500_000);
+        TextCache cache = write(text, false);
+        assertEquals(10_027_008, cache.getSize());
+        assertEquals(text.substring(0, 10_027_008), read(cache));
+        cache.close();
+    }
+
+}
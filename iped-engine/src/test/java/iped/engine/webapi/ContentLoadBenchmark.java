@@ -0,0 +1,150 @@
+package iped.engine.webapi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+
+/**
+ * Load test of the content endpoint against a local case. Starts the web API
+ * in process, then concurrent clients request random byte ranges of random
+ * items, checking each partial response against the same slice of the whole
+ * content, and conditional requests with the returned ETag.
+ *
+ * Usage: ContentLoadBenchmark caseDir [clients] [requestsPerClient]
+ */
+public class ContentLoadBenchmark {
+
+    private static final String SOURCE_ID = "case";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: ContentLoadBenchmark caseDir [clients] [requestsPerClient]");
+            return;
+        }
+        File caseDir = new File(args[0]).getCanonicalFile();
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        File sources = File.createTempFile("sources", ".json");
+        sources.deleteOnExit();
+        String json = "[{\"id\":\"" + SOURCE_ID + "\",\"path\":\"" + caseDir.getPath().replace("\\", "\\\\") + "\"}]";
+        Files.write(sources.toPath(), json.getBytes(StandardCharsets.UTF_8));
+
+        HttpServer server = Main.startServer("localhost", port, sources.getPath());
+        try {
+            String baseUrl = "http://localhost:" + port + "/sources/" + SOURCE_ID + "/docs/";
+            int lastId = Sources.getSource(SOURCE_ID).getLastId();
+
+            AtomicLong bytes = new AtomicLong();
+            AtomicLong partials = new AtomicLong();
+            AtomicLong notModified = new AtomicLong();
+            AtomicLong errors = new AtomicLong();
+
+            ExecutorService executor = Executors.newFixedThreadPool(clients);
+            List<Future<?>> futures = new ArrayList<>();
+            long t = System.currentTimeMillis();
+            for (int c = 0; c < clients; c++) {
+                long seed = c;
+                futures.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    for (int i = 0; i < requests; i++) {
+                        String url = baseUrl + random.nextInt(lastId + 1) + "/content";
+                        try {
+                            HttpURLConnection conn = open(url, null, null);
+                            if (conn.getResponseCode() != 200) {
+                                // deleted ids have no content
+                                conn.disconnect();
+                                continue;
+                            }
+                            byte[] whole = read(conn);
+                            String etag = conn.getHeaderField("ETag");
+                            bytes.addAndGet(whole.length);
+                            if (whole.length == 0) {
+                                continue;
+                            }
+
+                            int start = random.nextInt(whole.length);
+                            int end = start + random.nextInt(whole.length - start);
+                            conn = open(url, "bytes=" + start + "-" + end, null);
+                            byte[] part = read(conn);
+                            bytes.addAndGet(part.length);
+                            if (conn.getResponseCode() != 206
+                                    || !Arrays.equals(part, Arrays.copyOfRange(whole, start, end + 1))) {
+                                System.err.println("Wrong range " + start + "-" + end + " of " + url);
+                                errors.incrementAndGet();
+                            } else {
+                                partials.incrementAndGet();
+                            }
+
+                            if (etag != null) {
+                                conn = open(url, null, etag);
+                                if (conn.getResponseCode() == 304) {
+                                    notModified.incrementAndGet();
+                                } else {
+                                    System.err.println("Expected 304 for " + url);
+                                    errors.incrementAndGet();
+                                }
+                                conn.disconnect();
+                            }
+                        } catch (IOException e) {
+                            System.err.println(url + ": " + e);
+                            errors.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            t = System.currentTimeMillis() - t;
+
+            System.out.println("Clients: " + clients + " Requests per client: " + requests);
+            System.out.println("Partial responses: " + partials + " Not modified: " + notModified + " Errors: " + errors);
+            System.out.println("Time: " + t + "ms Throughput: " + (bytes.get() >> 20) * 1000 / Math.max(1, t) + " MB/s");
+        } finally {
+            server.shutdownNow();
+        }
+    }
+
+    private static HttpURLConnection open(String url, String range, String ifNoneMatch) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        if (range != null) {
+            conn.setRequestProperty("Range", range);
+        }
+        if (ifNoneMatch != null) {
+            conn.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        return conn;
+    }
+
+    private static byte[] read(HttpURLConnection conn) throws IOException {
+        try (InputStream is = conn.getInputStream()) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            is.transferTo(baos);
+            return baos.toByteArray();
+        }
+    }
+
+}
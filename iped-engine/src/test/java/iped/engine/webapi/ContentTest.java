@@ -0,0 +1,131 @@
+package iped.engine.webapi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import iped.engine.data.Item;
+import iped.utils.FileInputStreamFactory;
+
+public class ContentTest {
+
+    // larger than the copy buffer
+    private static final int CONTENT_LEN = 200_000;
+
+    // content of the item stored at this offset of the container file
+    private static final int OFFSET = 1000;
+
+    private File dir;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("content").toFile();
+        content = new byte[CONTENT_LEN];
+        new Random(1).nextBytes(content);
+        Files.write(new File(dir, "item.bin").toPath(), content);
+
+        byte[] container = new byte[OFFSET + CONTENT_LEN];
+        System.arraycopy(content, 0, container, OFFSET, CONTENT_LEN);
+        Files.write(new File(dir, "container.bin").toPath(), container);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testParseRange() {
+        assertArrayEquals(new long[] { 0, 99 }, Content.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[] { 100, 999 }, Content.parseRange(" bytes=100- ", 1000));
+        assertArrayEquals(new long[] { 500, 999 }, Content.parseRange("bytes=500-5000", 1000));
+        assertArrayEquals(new long[] { 900, 999 }, Content.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[] { 0, 999 }, Content.parseRange("bytes=-5000", 1000));
+        assertArrayEquals(new long[] { 999, 999 }, Content.parseRange("bytes=999-999", 1000));
+
+        // ignored, whole content is sent
+        assertNull(Content.parseRange("items=0-99", 1000));
+        assertNull(Content.parseRange("bytes=0-9,20-29", 1000));
+        assertNull(Content.parseRange("bytes=100", 1000));
+        assertNull(Content.parseRange("bytes=a-b", 1000));
+        assertNull(Content.parseRange("bytes=100-99", 1000));
+
+        long[] unsatisfiable = Content.parseRange("bytes=1000-", 1000);
+        assertSame(unsatisfiable, Content.parseRange("bytes=2000-3000", 1000));
+        assertSame(unsatisfiable, Content.parseRange("bytes=-0", 1000));
+        assertSame(unsatisfiable, Content.parseRange("bytes=-10", 0));
+        assertArrayEquals(new long[0], unsatisfiable);
+    }
+
+    private Item newFileItem() {
+        Item item = new Item();
+        item.setInputStreamFactory(new FileInputStreamFactory(dir.toPath()));
+        item.setIdInDataSource("item.bin");
+        item.setLength((long) CONTENT_LEN);
+        return item;
+    }
+
+    private Item newContainedItem() {
+        Item item = new Item();
+        item.setInputStreamFactory(new FileInputStreamFactory(dir.toPath()));
+        item.setIdInDataSource("container.bin");
+        item.setFileOffset(OFFSET);
+        item.setLength((long) CONTENT_LEN);
+        return item;
+    }
+
+    private static byte[] write(Item item, long start, long length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ItemContentOutput(item, start, length).write(out);
+        return out.toByteArray();
+    }
+
+    private void assertRanges(Item item) throws IOException {
+        assertArrayEquals(content, write(item, 0, -1));
+        assertArrayEquals(content, write(item, 0, CONTENT_LEN));
+        assertArrayEquals(Arrays.copyOfRange(content, 70_000, 150_000), write(item, 70_000, 80_000));
+        assertArrayEquals(Arrays.copyOfRange(content, CONTENT_LEN - 10, CONTENT_LEN),
+                write(item, CONTENT_LEN - 10, 10));
+        assertArrayEquals(new byte[0], write(item, 100, 0));
+    }
+
+    @Test
+    public void testFileRanges() throws IOException {
+        assertRanges(newFileItem());
+    }
+
+    @Test
+    public void testStreamRanges() throws IOException {
+        assertRanges(newContainedItem());
+    }
+
+    @Test
+    public void testContentShorterThanExpected() throws IOException {
+        for (Item item : new Item[] { newFileItem(), newContainedItem() }) {
+            try {
+                write(item, CONTENT_LEN - 10, 20);
+                fail("content is shorter than the range");
+            } catch (EOFException e) {
+                // expected
+            }
+        }
+    }
+
+}
@@ -124,6 +124,8 @@ public class OCRParser extends AbstractParser implements AutoCloseable {
     public static final String TEXT_DIR = "text"; //$NON-NLS-1$
     public static final String PROCESS_NON_STANDARD_FORMATS_PROP = "ocr.processNonStandard"; //$NON-NLS-1$
     public static final String MAX_CONV_IMAGE_SIZE_PROP = "ocr.maxConvImageSize"; //$NON-NLS-1$
+    public static final String USE_WORKERS_PROP = "ocr.useWorkers"; //$NON-NLS-1$
+    public static final String MAX_IMAGES_PER_WORKER_PROP = "ocr.maxImagesPerWorker"; //$NON-NLS-1$
 
     private boolean ENABLED = Boolean.valueOf(System.getProperty(ENABLE_PROP, "false")); //$NON-NLS-1$
     private String TOOL_PATH = System.getProperty(TOOL_PATH_PROP, ""); //$NON-NLS-1$
@@ -136,12 +138,17 @@ public class OCRParser extends AbstractParser implements AutoCloseable {
             .asList(System.getProperty(SUBSET_TO_OCR, SUBSET_SEPARATOR).split(SUBSET_SEPARATOR)); // $NON-NLS-1$;
     private boolean PROCESS_NON_STANDARD_FORMATS = Boolean.valueOf(System.getProperty(PROCESS_NON_STANDARD_FORMATS_PROP, "true")); //$NON-NLS-1$
     private int MAX_CONV_IMAGE_SIZE = Integer.valueOf(System.getProperty(MAX_CONV_IMAGE_SIZE_PROP, "3000")); //$NON-NLS-1$
+    private boolean USE_WORKERS = Boolean.valueOf(System.getProperty(USE_WORKERS_PROP, "true")); //$NON-NLS-1$
+    private int MAX_IMAGES_PER_WORKER = Integer.valueOf(System.getProperty(MAX_IMAGES_PER_WORKER_PROP, "10000")); //$NON-NLS-1$
 
     private static AtomicBoolean checked = new AtomicBoolean();
     private static String tessVersion = "";
 
     private static HashMap<File, Connection> connMap = new HashMap<>();
 
+    private static TesseractWorkerPool workerPool;
+    private static AtomicBoolean workersFailed = new AtomicBoolean();
+
     private static final Set<MediaType> directSupportedTypes = getDirectSupportedTypes();
     private static final Set<MediaType> nonStandardSupportedTypes = getNonStandardSupportedTypes();
     private static final Set<MediaType> nonImageSupportedTypes = getNonImageSupportedTypes();
@@ -334,6 +341,10 @@ public void close() throws SQLException {
                 con.close();
             }
             connMap.clear();
+            if (workerPool != null) {
+                workerPool.close();
+                workerPool = null;
+            }
         }
     }
 
@@ -602,6 +613,61 @@ private void parsePDF(XHTMLContentHandler xhtml, TemporaryResources tmp, File in
     private void parse(XHTMLContentHandler xhtml, File input, File output, String itemPath)
             throws IOException, SAXException, TikaException {
 
+        String outputPrefix = output.getPath().substring(0, output.getPath().length() - 4);
+        if (!USE_WORKERS || !parseWithWorker(input, outputPrefix)) {
+            parseWithProcess(input, outputPrefix, itemPath);
+        }
+        if (output.exists())
+            extractOutput(output, xhtml);
+
+    }
+
+    private TesseractWorkerPool getWorkerPool() {
+        synchronized (this.getClass()) {
+            if (workersFailed.get()) {
+                return null;
+            }
+            if (workerPool == null) {
+                workerPool = new TesseractWorkerPool(TOOL_PATH, LANGUAGE, PAGESEGMODE, MAX_IMAGES_PER_WORKER);
+            }
+            return workerPool;
+        }
+    }
+
+    /**
+     * OCR using a long lived worker, which has the language models already
+     * loaded.
+     * 
+     * @return false if no worker could be started
+     */
+    private boolean parseWithWorker(File input, String outputPrefix) throws TikaException {
+        TesseractWorkerPool pool = getWorkerPool();
+        if (pool == null) {
+            return false;
+        }
+        try {
+            int status = pool.process(input, outputPrefix);
+            if (status != 0) {
+                throw new TikaException(TESSERACT_ERROR_MSG + status);
+            }
+            return true;
+
+        } catch (IOException e) {
+            if (!pool.hasStartedWorkers() && !workersFailed.getAndSet(true)) {
+                LOGGER.warn("OCR workers disabled, starting a tesseract process per image. " + e.getMessage()); //$NON-NLS-1$
+            } else {
+                LOGGER.warn(e.getMessage());
+            }
+            return false;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TikaException(this.getClass().getSimpleName() + " interrupted", e); //$NON-NLS-1$
+        }
+    }
+
+    private void parseWithProcess(File input, String outputPrefix, String itemPath) throws IOException, TikaException {
+
         // Build our command
         String[] cmd = new String[command.length];
         System.arraycopy(command, 0, cmd, 0, command.length);
@@ -610,7 +676,6 @@ private void parse(XHTMLContentHandler xhtml, File input, File output, String it
                 cmd[i] = cmd[i].replace(INPUT_FILE_TOKEN, input.getPath());
             }
             if (cmd[i].indexOf(OUTPUT_FILE_TOKEN) != -1) {
-                String outputPrefix = output.getPath().substring(0, output.getPath().length() - 4);
                 cmd[i] = cmd[i].replace(OUTPUT_FILE_TOKEN, outputPrefix);
             }
         }
@@ -643,9 +708,6 @@ private void parse(XHTMLContentHandler xhtml, File input, File output, String it
             throw new TikaException(this.getClass().getSimpleName() + " interrupted", e); //$NON-NLS-1$
 
         }
-        if (output.exists())
-            extractOutput(output, xhtml);
-
     }
 
     private void extractOutput(File output, XHTMLContentHandler xhtml) throws SAXException, IOException {
@@ -0,0 +1,64 @@
+package iped.parsers.ocr;
+
+import com.sun.jna.Library;
+import com.sun.jna.Pointer;
+
+/*
+ * Subset of the Tesseract C API (tesseract/capi.h) used by TesseractWorker.
+ * https://github.com/tesseract-ocr/tesseract
+ */
+public interface TesseractLibrary extends Library {
+
+    /*
+     * const char* TessVersion();
+     */
+    String TessVersion();
+
+    /*
+     * TessBaseAPI* TessBaseAPICreate();
+     */
+    Pointer TessBaseAPICreate();
+
+    /*
+     * Returns 0 on success. int TessBaseAPIInit3(TessBaseAPI* handle, const char*
+     * datapath, const char* language);
+     */
+    int TessBaseAPIInit3(Pointer handle, String datapath, String language);
+
+    /*
+     * void TessBaseAPISetPageSegMode(TessBaseAPI* handle, TessPageSegMode mode);
+     */
+    void TessBaseAPISetPageSegMode(Pointer handle, int mode);
+
+    /*
+     * Creates a renderer writing plain text to outputbase.txt, as the tesseract
+     * command line does. TessResultRenderer* TessTextRendererCreate(const char*
+     * outputbase);
+     */
+    Pointer TessTextRendererCreate(String outputbase);
+
+    /*
+     * Recognizes all pages of the image file. Returns TRUE (non zero) on success.
+     * BOOL TessBaseAPIProcessPages(TessBaseAPI* handle, const char* filename,
+     * const char* retry_config, int timeout_millisec, TessResultRenderer*
+     * renderer);
+     */
+    int TessBaseAPIProcessPages(Pointer handle, String filename, String retry_config, int timeout_millisec,
+            Pointer renderer);
+
+    /*
+     * void TessDeleteResultRenderer(TessResultRenderer* renderer);
+     */
+    void TessDeleteResultRenderer(Pointer renderer);
+
+    /*
+     * void TessBaseAPIEnd(TessBaseAPI* handle);
+     */
+    void TessBaseAPIEnd(Pointer handle);
+
+    /*
+     * void TessBaseAPIDelete(TessBaseAPI* handle);
+     */
+    void TessBaseAPIDelete(Pointer handle);
+
+}
@@ -0,0 +1,128 @@
+package iped.parsers.ocr;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Long lived OCR process used by {@link TesseractWorkerPool}. It loads the
+ * Tesseract library and the language models once and then recognizes each
+ * image received through stdin, writing the text to a file, as the tesseract
+ * command line would do. This avoids starting a process and loading the models
+ * for each image or PDF page.
+ *
+ * Protocol, one line per message: after starting, the worker writes
+ * {@link #READY} followed by the library version, or {@link #ERROR} followed by
+ * a message. Then it reads lines with "&lt;input image&gt;\t&lt;output
+ * base&gt;" (text is written to output base.txt) and answers {@link #OK} or
+ * {@link #ERROR}, until {@link #TERMINATE} or the end of stdin.
+ */
+public class TesseractWorker {
+
+    // native code may also write to stdout, so responses have a prefix
+    static final String PREFIX = "tesseract_worker_"; //$NON-NLS-1$
+    static final String READY = PREFIX + "ready "; //$NON-NLS-1$
+    static final String OK = PREFIX + "ok"; //$NON-NLS-1$
+    static final String ERROR = PREFIX + "error "; //$NON-NLS-1$
+    static final String TERMINATE = "terminate"; //$NON-NLS-1$
+    static final char SEPARATOR = '\t';
+
+    private static final String LIB_NAME = "tesseract"; //$NON-NLS-1$
+    private static final Pattern LIB_FILE_REGEX = Pattern
+            .compile("(lib)?tesseract[-_.0-9]*\\.(dll|dylib|so(\\.[0-9]+)*)"); //$NON-NLS-1$
+
+    /**
+     * Loads the library from the tesseract folder, if there is one (bundled on
+     * Windows), or from the system library path.
+     */
+    static TesseractLibrary loadLibrary(String toolPath) {
+        if (!toolPath.isEmpty()) {
+            File[] libs = new File(toolPath).listFiles(f -> LIB_FILE_REGEX.matcher(f.getName().toLowerCase()).matches());
+            if (libs != null && libs.length > 0) {
+                Arrays.sort(libs);
+                return Native.load(libs[0].getAbsolutePath(), TesseractLibrary.class);
+            }
+        }
+        return Native.load(LIB_NAME, TesseractLibrary.class);
+    }
+
+    private static String getDataPath(String toolPath) {
+        if (!toolPath.isEmpty()) {
+            File tessdata = new File(toolPath, "tessdata"); //$NON-NLS-1$
+            if (tessdata.isDirectory()) {
+                return tessdata.getAbsolutePath();
+            }
+        }
+        // TESSDATA_PREFIX or library default
+        return null;
+    }
+
+    /**
+     * @param args
+     *            tesseract folder (may be empty), language and page segmentation
+     *            mode
+     */
+    public static void main(String[] args) throws IOException {
+        String toolPath = args[0];
+        String language = args[1];
+        int pageSegMode = Integer.parseInt(args[2]);
+
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), true, "UTF-8"); //$NON-NLS-1$
+        // anything else written to stdout would break the protocol
+        System.setOut(System.err);
+
+        TesseractLibrary lib;
+        Pointer api;
+        try {
+            lib = loadLibrary(toolPath);
+            api = lib.TessBaseAPICreate();
+            if (lib.TessBaseAPIInit3(api, getDataPath(toolPath), language) != 0) {
+                out.println(ERROR + "Error loading language models " + language); //$NON-NLS-1$
+                System.exit(1);
+                return;
+            }
+            lib.TessBaseAPISetPageSegMode(api, pageSegMode);
+            out.println(READY + lib.TessVersion());
+
+        } catch (Throwable e) {
+            out.println(ERROR + e.toString().replaceAll("\r?\n", " ")); //$NON-NLS-1$ //$NON-NLS-2$
+            System.exit(1);
+            return;
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null && !line.equals(TERMINATE)) {
+            int idx = line.indexOf(SEPARATOR);
+            if (idx == -1) {
+                out.println(ERROR + "Invalid request: " + line); //$NON-NLS-1$
+                continue;
+            }
+            String input = line.substring(0, idx);
+            String outputBase = line.substring(idx + 1);
+            boolean success;
+            Pointer renderer = lib.TessTextRendererCreate(outputBase);
+            try {
+                success = lib.TessBaseAPIProcessPages(api, input, null, 0, renderer) != 0;
+            } finally {
+                // closes the output file
+                lib.TessDeleteResultRenderer(renderer);
+            }
+            out.println(success ? OK : ERROR + "Error processing " + input); //$NON-NLS-1$
+        }
+
+        lib.TessBaseAPIEnd(api);
+        lib.TessBaseAPIDelete(api);
+    }
+
+}
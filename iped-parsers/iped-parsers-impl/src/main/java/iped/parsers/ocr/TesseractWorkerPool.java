@@ -0,0 +1,269 @@
+package iped.parsers.ocr;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.io.URLUtil;
+
+/**
+ * Pool of {@link TesseractWorker} processes, shared by the parsing threads.
+ * Each thread takes an idle worker, or starts a new one, so there are at most
+ * as many workers as threads doing OCR at the same time. Workers are restarted
+ * after a number of images, to release memory possibly leaked by the native
+ * library, and after crashing. If the parsing thread is interrupted, e.g. by a
+ * parsing timeout, the worker is killed, as tesseract processes were before.
+ */
+class TesseractWorkerPool {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(TesseractWorkerPool.class);
+
+    private static final String MAX_MEM = "-Xmx64M"; //$NON-NLS-1$
+
+    private static final int STARTUP_TIMEOUT_SECONDS = 300;
+
+    private static final int TERMINATE_TIMEOUT_SECONDS = 3;
+
+    // put in the responses queue when the worker stdout is closed
+    private static final String CRASHED = "\0crashed"; //$NON-NLS-1$
+
+    private final String toolPath;
+    private final String language;
+    private final String pageSegMode;
+    private final int maxImagesPerWorker;
+
+    private final LinkedBlockingDeque<Worker> idleWorkers = new LinkedBlockingDeque<>();
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger startedWorkers = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    // removed when closed, OCRParser creates a new pool after each close()
+    private final Thread shutdownHook = new Thread(this::close);
+
+    private class Worker {
+        Process process;
+        OutputStream stdin;
+        BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+        int imagesDone;
+        long busyNanos;
+        long startTime = System.nanoTime();
+    }
+
+    TesseractWorkerPool(String toolPath, String language, String pageSegMode, int maxImagesPerWorker) {
+        this.toolPath = toolPath;
+        this.language = language;
+        this.pageSegMode = pageSegMode;
+        this.maxImagesPerWorker = maxImagesPerWorker;
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * @return true if at least one worker was started successfully
+     */
+    boolean hasStartedWorkers() {
+        return startedWorkers.get() > 0;
+    }
+
+    /**
+     * Recognizes the text of the image, writing it to outputBase.txt.
+     *
+     * @return 0 on success, or an error code as the tesseract command line would
+     *         return
+     * @throws IOException
+     *             if a worker could not be started
+     */
+    int process(File input, String outputBase) throws IOException, InterruptedException {
+        Worker worker = idleWorkers.pollFirst();
+        if (worker != null && (worker.imagesDone >= maxImagesPerWorker || !worker.process.isAlive())) {
+            terminate(worker);
+            worker = null;
+        }
+        if (worker == null) {
+            worker = startWorker();
+        }
+        long start = System.nanoTime();
+        try {
+            String request = input.getAbsolutePath() + TesseractWorker.SEPARATOR + outputBase + "\n"; //$NON-NLS-1$
+            worker.stdin.write(request.getBytes(StandardCharsets.UTF_8));
+            worker.stdin.flush();
+
+            String response = worker.responses.take();
+            worker.imagesDone++;
+            worker.busyNanos += System.nanoTime() - start;
+
+            if (response == CRASHED) {
+                int exitCode = worker.process.waitFor();
+                LOGGER.warn("OCR worker pid={} crashed with exit code {} processing {}", worker.process.pid(), //$NON-NLS-1$
+                        exitCode, input.getAbsolutePath());
+                terminate(worker);
+                return exitCode != 0 ? exitCode : 1;
+            }
+            idleWorkers.addFirst(worker);
+            if (!response.equals(TesseractWorker.OK)) {
+                LOGGER.debug("OCR worker pid={} {}", worker.process.pid(), response); //$NON-NLS-1$
+                return 1;
+            }
+            return 0;
+
+        } catch (IOException e) {
+            // broken pipe, worker died before receiving the request
+            LOGGER.warn("Error sending image to OCR worker pid={}: {}", worker.process.pid(), e.toString()); //$NON-NLS-1$
+            terminate(worker);
+            return 1;
+
+        } catch (InterruptedException e) {
+            worker.process.destroyForcibly();
+            terminate(worker);
+            throw e;
+        }
+    }
+
+    private Worker startWorker() throws IOException, InterruptedException {
+        if (closed) {
+            throw new IOException("OCR workers already closed"); //$NON-NLS-1$
+        }
+        URL url = URLUtil.getURL(this.getClass());
+        String classpath;
+        try {
+            classpath = new File(url.toURI()).getParent() + "/*"; //$NON-NLS-1$
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        String java = System.getProperty("java.home") + "/bin/java"; //$NON-NLS-1$ //$NON-NLS-2$
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", classpath, MAX_MEM, //$NON-NLS-1$
+                TesseractWorker.class.getName(), toolPath, language, pageSegMode);
+        Map<String, String> env = pb.environment();
+        // try to disable OpenMP
+        env.put("OMP_THREAD_LIMIT", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+        if (!toolPath.isEmpty()) {
+            // dependencies of the tesseract library
+            env.put("PATH", toolPath + File.pathSeparator + env.getOrDefault("PATH", "")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+
+        Worker worker = new Worker();
+        worker.process = pb.start();
+        worker.stdin = worker.process.getOutputStream();
+        readResponses(worker);
+        logErrors(worker);
+
+        String response = worker.responses.poll(STARTUP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (response == null || !response.startsWith(TesseractWorker.READY)) {
+            worker.process.destroyForcibly();
+            String msg = response == null ? "timeout" //$NON-NLS-1$
+                    : response == CRASHED ? "process exited" : response; //$NON-NLS-1$
+            throw new IOException("Error starting OCR worker: " + msg); //$NON-NLS-1$
+        }
+        if (startedWorkers.getAndIncrement() == 0) {
+            LOGGER.info("Started OCR workers with Tesseract library " //$NON-NLS-1$
+                    + response.substring(TesseractWorker.READY.length()));
+        }
+        workers.add(worker);
+        return worker;
+    }
+
+    private void readResponses(Worker worker) {
+        Thread t = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(worker.process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(TesseractWorker.PREFIX)) {
+                        worker.responses.add(line);
+                    } else if (!line.isBlank()) {
+                        LOGGER.debug("OCR msg from worker pid={}\t{}", worker.process.pid(), line.trim()); //$NON-NLS-1$
+                    }
+                }
+            } catch (IOException e) {
+                // process killed
+            } finally {
+                worker.responses.add(CRASHED);
+            }
+        }, "OCRWorkerReader"); //$NON-NLS-1$
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void logErrors(Worker worker) {
+        Thread t = new Thread(() -> {
+            InputStream stream = worker.process.getErrorStream();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty()) {
+                        LOGGER.debug("OCR msg from worker pid={}\t{}", worker.process.pid(), line); //$NON-NLS-1$
+                    }
+                }
+            } catch (IOException e) {
+                // process killed
+            }
+        }, "OCRWorkerLogger"); //$NON-NLS-1$
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void terminate(Worker worker) {
+        workers.remove(worker);
+        Process process = worker.process;
+        try {
+            if (process.isAlive()) {
+                try {
+                    worker.stdin.write((TesseractWorker.TERMINATE + "\n").getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+                    worker.stdin.flush();
+                } catch (IOException e) {
+                    // ignore
+                }
+                if (!process.waitFor(TERMINATE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        logThroughput(worker);
+    }
+
+    private void logThroughput(Worker worker) {
+        if (worker.imagesDone == 0) {
+            return;
+        }
+        double busySecs = worker.busyNanos / 1e9;
+        double aliveSecs = (System.nanoTime() - worker.startTime) / 1e9;
+        LOGGER.info(String.format("OCR worker pid=%d processed %d images in %.1fs (alive for %.1fs), %.2f images/s", //$NON-NLS-1$
+                worker.process.pid(), worker.imagesDone, busySecs, aliveSecs, worker.imagesDone / busySecs));
+    }
+
+    void close() {
+        closed = true;
+        List<Worker> list = new ArrayList<>(workers);
+        idleWorkers.clear();
+        for (Worker worker : list) {
+            terminate(worker);
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // JVM is shutting down
+        }
+    }
+
+}
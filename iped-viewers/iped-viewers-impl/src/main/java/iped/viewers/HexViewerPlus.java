@@ -210,7 +210,12 @@ public class HexViewerPlus extends AbstractViewer implements KeyListener, MouseL
 
     public interface HexSearcher {
 
-        abstract void doSearch(CodeArea codeArea, HighlightCodeAreaPainter painter, Hits hits, SeekableInputStream data, Charset charset, Set<String> highlightTerms, long offset, boolean searchString, boolean ignoreCaseSearch,
+        /**
+         * Searches all highlightTerms together, from offset to the end of data,
+         * updating painter and hits as matches are found. data may be opened more
+         * than once, to search different ranges in parallel.
+         */
+        abstract void doSearch(CodeArea codeArea, HighlightCodeAreaPainter painter, Hits hits, IStreamSource data, Charset charset, Set<String> highlightTerms, long offset, boolean searchString, boolean ignoreCaseSearch,
                 JLabel resultSearch, int max_hits) throws Exception;
     }
 
@@ -2580,7 +2585,7 @@ public void actionPerformed(ActionEvent e) {
                     try {
 
                         dialogPesquisar.setVisible(false);
-                        hexSearcher.doSearch(codeArea, painter, hits, contentAux.getSeekableInputStream(), charsetParam, palavras, off, jrbTexto.isSelected(), !jcbCase.isSelected(), resultSearch, max_hits);
+                        hexSearcher.doSearch(codeArea, painter, hits, contentAux, charsetParam, palavras, off, jrbTexto.isSelected(), !jcbCase.isSelected(), resultSearch, max_hits);
 
                     } catch (Exception ex) {
                         ex.printStackTrace();